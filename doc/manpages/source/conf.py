@@ -31,6 +31,7 @@ man_pages = [
     ('commit', 'geogig-commit', 'Commits staged changes to the repository', ['OpenGeo <http://opengeo.org>'], '1'),
     ('config', 'geogig-config', 'Get and set repository or global options', ['OpenGeo <http://opengeo.org>'], '1'),
     ('cherrypick', 'geogig-cherrypick', 'Apply the changes introduced by some existing commits', ['OpenGeo <http://opengeo.org>'], '1'),
+    ('daemon', 'geogig-daemon', 'Run commands sent by geogig clients, keeping repositories open between them', ['OpenGeo <http://opengeo.org>'], '1'),
     ('diff', 'geogig-diff', 'Show changes between two tree-ish references.', ['OpenGeo <http://opengeo.org>'], '1'),
     ('log', 'geogig-log', 'Show commit logs', ['OpenGeo <http://opengeo.org>'], '1'),
     ('help', 'geogig-help', 'Get help for a command', ['OpenGeo <http://opengeo.org'], 1),
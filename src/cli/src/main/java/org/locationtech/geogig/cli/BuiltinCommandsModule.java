@@ -30,9 +30,12 @@ import org.locationtech.geogig.cli.porcelain.Clone;
 import org.locationtech.geogig.cli.porcelain.Commit;
 import org.locationtech.geogig.cli.porcelain.Config;
 import org.locationtech.geogig.cli.porcelain.Conflicts;
+import org.locationtech.geogig.cli.porcelain.Daemon;
 import org.locationtech.geogig.cli.porcelain.Diff;
 import org.locationtech.geogig.cli.porcelain.Fetch;
 import org.locationtech.geogig.cli.porcelain.FormatPatch;
+import org.locationtech.geogig.cli.porcelain.Fsck;
+import org.locationtech.geogig.cli.porcelain.Gc;
 import org.locationtech.geogig.cli.porcelain.Help;
 import org.locationtech.geogig.cli.porcelain.Init;
 import org.locationtech.geogig.cli.porcelain.Log;
@@ -65,9 +68,12 @@ import com.google.inject.AbstractModule;
  * @see Clean
  * @see Commit
  * @see Config
+ * @see Daemon
  * @see Conflicts
  * @see Diff
  * @see FormatPatch
+ * @see Fsck
+ * @see Gc
  * @see Help
  * @see Init
  * @see Merge
@@ -100,10 +106,13 @@ public class BuiltinCommandsModule extends AbstractModule implements CLIModule {
         bind(Clean.class);
         bind(Commit.class);
         bind(Config.class);
+        bind(Daemon.class);
         bind(Conflicts.class);
         bind(Diff.class);
         bind(DiffTree.class);
         bind(FormatPatch.class);
+        bind(Fsck.class);
+        bind(Gc.class);
         bind(Help.class);
         bind(Init.class);
         bind(Insert.class);
@@ -0,0 +1,113 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.cli;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.beust.jcommander.Parameters;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+
+/**
+ * The commands bound by the {@link CLIModule}s found in the classpath, indexed by the names and
+ * aliases declared in their {@link Parameters} annotation.
+ * <p>
+ * The index is built once per JVM out of the bound classes, without creating any command, so that
+ * running a command only needs to create that command and its dependencies.
+ */
+class CommandRegistry {
+
+    private static CommandRegistry instance;
+
+    private final Injector injector;
+
+    private final Map<String, Key<?>> commands;
+
+    private final Set<Key<?>> keys;
+
+    CommandRegistry(Injector injector) {
+        this.injector = injector;
+        Map<String, Key<?>> commands = new LinkedHashMap<>();
+        Set<Key<?>> keys = new LinkedHashSet<>();
+        for (Key<?> key : injector.getBindings().keySet()) {
+            Class<?> type = key.getTypeLiteral().getRawType();
+            if (!CLICommand.class.isAssignableFrom(type)
+                    && !CLICommandExtension.class.isAssignableFrom(type)) {
+                continue;
+            }
+            keys.add(key);
+            Parameters parameters = type.getAnnotation(Parameters.class);
+            if (parameters != null) {
+                for (String name : parameters.commandNames()) {
+                    if (!commands.containsKey(name)) {
+                        commands.put(name, key);
+                    }
+                }
+            }
+        }
+        this.commands = ImmutableMap.copyOf(commands);
+        this.keys = ImmutableSet.copyOf(keys);
+    }
+
+    /**
+     * @return the registry of the commands provided by the {@link CLIModule}s declared in the
+     *         classpath's {@code META-INF/services/org.locationtech.geogig.cli.CLIModule} files
+     */
+    static synchronized CommandRegistry get() {
+        if (instance == null) {
+            Iterable<CLIModule> plugins = ServiceLoader.load(CLIModule.class);
+            instance = new CommandRegistry(Guice.createInjector(plugins));
+        }
+        return instance;
+    }
+
+    /**
+     * @return whether there's a command with the given name or alias
+     */
+    public boolean contains(String commandName) {
+        return commands.containsKey(commandName);
+    }
+
+    /**
+     * Creates the command with the given name or alias.
+     *
+     * @return the {@link CLICommand} or {@link CLICommandExtension}, or {@code null} if there's no
+     *         such command
+     */
+    @Nullable
+    public Object newCommand(String commandName) {
+        Preconditions.checkNotNull(commandName);
+        Key<?> key = commands.get(commandName);
+        return key == null ? null : injector.getInstance(key);
+    }
+
+    /**
+     * @return a new instance of every command
+     */
+    public Collection<Object> newCommands() {
+        Collection<Object> all = new ArrayList<>();
+        for (Key<?> key : keys) {
+            all.add(injector.getInstance(key));
+        }
+        return all;
+    }
+}
@@ -18,12 +18,10 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.text.NumberFormat;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.ServiceLoader;
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 
@@ -61,9 +59,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.inject.Binding;
 import com.google.inject.Guice;
-import com.google.inject.Key;
 import com.google.inject.Module;
 
 //import org.python.core.exceptions;
@@ -83,12 +79,6 @@ public class GeogigCLI {
         GlobalContextBuilder.builder = new CLIContextBuilder();
     }
 
-    private static final com.google.inject.Injector commandsInjector;
-    static {
-        Iterable<CLIModule> plugins = ServiceLoader.load(CLIModule.class);
-        commandsInjector = Guice.createInjector(plugins);
-    }
-
     private Context geogigInjector;
 
     private Platform platform;
@@ -347,23 +337,27 @@ public class GeogigCLI {
     }
 
     /**
-     * Finds all commands that are bound do the command injector.
-     * 
-     * @return a collection of keys, one for each command
+     * @return a command parser for all the available commands
      */
-    private Collection<Key<?>> findCommands() {
-        Map<Key<?>, Binding<?>> commands = commandsInjector.getBindings();
-        return commands.keySet();
+    public JCommander newCommandParser() {
+        JCommander jc = new JCommander(this);
+        jc.setProgramName("geogig");
+        for (Object cmd : CommandRegistry.get().newCommands()) {
+            jc.addCommand(cmd);
+        }
+        return jc;
     }
 
-    public JCommander newCommandParser() {
+    /**
+     * @return a command parser for the given command only, so that running it doesn't require
+     *         creating all the other commands
+     */
+    private JCommander newCommandParser(String commandName) {
         JCommander jc = new JCommander(this);
         jc.setProgramName("geogig");
-        for (Key<?> cmd : findCommands()) {
-            Object obj = commandsInjector.getInstance(cmd);
-            if (obj instanceof CLICommand || obj instanceof CLICommandExtension) {
-                jc.addCommand(obj);
-            }
+        Object cmd = CommandRegistry.get().newCommand(commandName);
+        if (cmd != null) {
+            jc.addCommand(cmd);
         }
         return jc;
     }
@@ -443,7 +437,6 @@ public class GeogigCLI {
     private void executeInternal(String... args) throws ParameterException, CommandFailedException,
             IOException, CannotRunGeogigOperationException {
 
-        JCommander mainCommander = newCommandParser();
         String repoURI = parseRepoURI(args);
         if (repoURI != null) {
             this.repositoryURI = repoURI;
@@ -457,22 +450,22 @@ public class GeogigCLI {
             this.platform.setWorkingDir(pwd);
         }
         if (null == args || args.length == 0) {
-            printShortCommandList(mainCommander);
+            printShortCommandList(newCommandParser());
             return;
         }
+        JCommander mainCommander;
         {
+            final CommandRegistry commands = CommandRegistry.get();
             String commandName = args[0];
-            JCommander commandParser = mainCommander.getCommands().get(commandName);
-            if (commandParser == null) {
+            if (!commands.contains(commandName)) {
                 args = unalias(args);
                 commandName = args[0];
-                commandParser = mainCommander.getCommands().get(commandName);
             }
-            
-            if (commandParser == null) {
+
+            if (!commands.contains(commandName)) {
                 consoleReader.println(args[0] + " is not a geogig command. See geogig --help.");
                 // check for similar commands
-                Map<String, JCommander> candidates = spellCheck(mainCommander.getCommands(),
+                Map<String, JCommander> candidates = spellCheck(newCommandParser().getCommands(),
                         commandName);
                 if (!candidates.isEmpty()) {
                     String msg = candidates.size() == 1 ? "Did you mean this?"
@@ -488,6 +481,8 @@ public class GeogigCLI {
                         commandName));
             }
 
+            mainCommander = newCommandParser(commandName);
+            JCommander commandParser = mainCommander.getCommands().get(commandName);
             Object object = commandParser.getObjects().get(0);
             if (object instanceof CLICommandExtension) {
                 args = Arrays.asList(args).subList(1, args.length)
@@ -615,7 +610,8 @@ public class GeogigCLI {
         GeoGIG geogig = this.providedGeogig == null ? this.geogig : this.providedGeogig;
         if (geogig == null) { // in case the repo is not initialized yet
             closeGeogig = true;
-            geogig = newGeoGIG(Hints.readOnly());
+            // only the config is needed, don't open the repository
+            geogig = new GeoGIG(newGeogigInjector(Hints.readOnly()), platform.pwd());
         }
         try {
             Optional<String> unaliased = Optional.absent();
@@ -0,0 +1,125 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Thin command line client that sends the command to the {@link GeogigDaemon} running for the
+ * user and prints its output, or runs it in-process through {@link GeogigCLI#main(String[])} if
+ * there's no daemon running or the daemon doesn't run that command.
+ */
+public class GeogigClient {
+
+    /**
+     * Entry point for the command line client.
+     *
+     * @param args the command arguments
+     */
+    public static void main(String[] args) {
+        final File userHome = new File(System.getProperty("user.home"));
+        final File pwd = new File(System.getProperty("user.dir"));
+        Integer exitCode;
+        try {
+            exitCode = run(userHome, pwd, args, System.out, System.err);
+        } catch (IOException e) {
+            System.err.println("Error communicating with the geogig daemon: " + e.getMessage());
+            exitCode = Integer.valueOf(-1);
+        }
+        if (exitCode == null) {
+            GeogigCLI.main(args);
+            return;
+        }
+        System.out.flush();
+        System.err.flush();
+        System.exit(exitCode.intValue());
+    }
+
+    /**
+     * Runs the command on the daemon, writing its output to {@code out} and its error output to
+     * {@code err}.
+     *
+     * @return the command's exit code, or {@code null} if there's no daemon running or it refused
+     *         to run the command
+     * @throws IOException if the connection to the daemon is lost while running the command
+     */
+    @Nullable
+    static Integer run(File userHome, File pwd, String[] args, OutputStream out,
+            OutputStream err) throws IOException {
+        final Properties daemon = GeogigDaemon.readDaemonFile(userHome);
+        if (daemon == null) {
+            return null;
+        }
+        final int port;
+        try {
+            port = Integer.parseInt(daemon.getProperty("port"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        final Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        } catch (ConnectException e) {
+            // stale daemon file
+            return null;
+        }
+        try {
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream()));
+            request.writeUTF(daemon.getProperty("token", ""));
+            request.writeUTF(pwd.getAbsolutePath());
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+
+            DataInputStream response = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream()));
+            byte[] buff = new byte[8192];
+            while (true) {
+                final byte frame = response.readByte();
+                if (frame == GeogigDaemon.REFUSED) {
+                    return null;
+                }
+                if (frame == GeogigDaemon.EXIT) {
+                    out.flush();
+                    err.flush();
+                    return Integer.valueOf(response.readInt());
+                }
+                final OutputStream target = frame == GeogigDaemon.ERROR ? err : out;
+                int length = response.readInt();
+                while (length > 0) {
+                    int read = response.read(buff, 0, Math.min(length, buff.length));
+                    if (read < 0) {
+                        throw new IOException("Connection closed by the daemon");
+                    }
+                    target.write(buff, 0, read);
+                    length -= read;
+                }
+                target.flush();
+            }
+        } finally {
+            socket.close();
+        }
+    }
+}
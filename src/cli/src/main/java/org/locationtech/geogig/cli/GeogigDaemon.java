@@ -0,0 +1,528 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.GeoGIG;
+import org.locationtech.geogig.api.GlobalContextBuilder;
+import org.locationtech.geogig.api.plumbing.ResolveGeogigURI;
+import org.locationtech.geogig.repository.Hints;
+import org.locationtech.geogig.repository.RepositoryResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Runs the commands sent by {@link GeogigClient}s in a long lived JVM, so that they don't pay for
+ * starting the JVM, loading the commands, and optionally opening the repository and filling its
+ * caches every time.
+ * <p>
+ * The daemon listens on an ephemeral port of the loopback interface, and writes the port and a
+ * random token clients must present to the {@code .geogigdaemon} file in the user's home
+ * directory, readable by the user only. It exits after not receiving any command for the given
+ * idle timeout.
+ * <p>
+ * Commands are run one at a time, with a {@link GeogigCLI} whose console, {@code System.out} and
+ * {@code System.err} write to the client, and with the client's working directory. Only the
+ * {@link #COMMANDS commands} known to need nothing else from the client's process are run, any
+ * other command is refused and the client runs it in-process. A relative {@code --repo} argument
+ * is resolved against the client's working directory.
+ * <p>
+ * By default the repository a command runs on is closed after the command, as it would be
+ * in-process. If a keep open time is given, the repository is kept open until no command used it
+ * for that long, so its caches stay warm. Meanwhile the daemon holds it open for writing, and
+ * storage backends that allow a single writer process, like Berkeley DB JE, will refuse to open it
+ * from any other process. A repository is reopened if its {@code .geogig} directory was replaced
+ * since, and commands using {@code --repo} always run on a repository opened for them alone.
+ * <p>
+ * Protocol: the client sends the token, its working directory, the number of arguments, and the
+ * arguments, as {@link DataOutputStream#writeUTF UTF strings} and an int. The daemon answers with
+ * {@link #OUTPUT} and {@link #ERROR} frames (length and bytes) with the command's standard and
+ * error output, and an {@link #EXIT} frame with the command's exit code; or with a single
+ * {@link #REFUSED} frame if the client shall run the command itself.
+ */
+public class GeogigDaemon {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeogigDaemon.class);
+
+    /**
+     * Name of the file in the user's home directory where the daemon port and token are written
+     */
+    static final String DAEMON_FILE = ".geogigdaemon";
+
+    static final byte EXIT = 0;
+
+    static final byte OUTPUT = 1;
+
+    static final byte ERROR = 2;
+
+    static final byte REFUSED = 3;
+
+    static final int MAX_OPEN_REPOSITORIES = 16;
+
+    /**
+     * The commands the daemon runs. They only write to the console, don't read from it, and don't
+     * take file system paths as arguments, so they behave the same as in the client's process.
+     */
+    static final Set<String> COMMANDS = ImmutableSet.of("--help", "help", "--version",
+            "version", "add", "blame", "branch", "checkout", "cherry-pick", "commit", "config",
+            "conflicts", "diff", "log", "ls", "merge", "rebase", "reset", "revert", "rm", "show",
+            "squash", "status", "tag", "diff-tree", "ls-tree", "merge-base", "rev-list",
+            "rev-parse", "show-ref", "walk-graph");
+
+    private static final int MAX_ARGS = 4096;
+
+    /**
+     * Time a client has to send its command once connected
+     */
+    private static final int REQUEST_TIMEOUT_MILLIS = 10_000;
+
+    private final File userHome;
+
+    private final long idleTimeoutMillis;
+
+    private final long keepOpenMillis;
+
+    private ServerSocket server;
+
+    private String token;
+
+    private final Map<File, OpenRepository> repositories = new HashMap<>();
+
+    private static class OpenRepository {
+
+        final GeoGIG geogig;
+
+        final Object identity;
+
+        long lastUsed;
+
+        OpenRepository(GeoGIG geogig, Object identity) {
+            this.geogig = geogig;
+            this.identity = identity;
+        }
+    }
+
+    /**
+     * @param userHome the directory to write the {@link #DAEMON_FILE daemon file} to
+     * @param idleTimeoutMillis how long to wait for a command before exiting
+     * @param keepOpenMillis how long to keep a repository open after the last command that used
+     *        it, or zero to close it right after each command
+     */
+    public GeogigDaemon(File userHome, long idleTimeoutMillis, long keepOpenMillis) {
+        Preconditions.checkNotNull(userHome);
+        Preconditions.checkArgument(idleTimeoutMillis > 0, "idle timeout must be > 0");
+        Preconditions.checkArgument(keepOpenMillis >= 0, "keep open time must be >= 0");
+        this.userHome = userHome;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.keepOpenMillis = keepOpenMillis;
+    }
+
+    /**
+     * Starts listening for clients and writes the daemon file.
+     *
+     * @return the port the daemon listens on
+     * @throws IllegalStateException if another daemon is running for the same user home
+     */
+    public synchronized int start() throws IOException {
+        Preconditions.checkState(server == null, "Daemon already started");
+        Optional<Integer> running = runningPort(userHome);
+        Preconditions.checkState(!running.isPresent(), "A daemon is already running on port %s",
+                running.orNull());
+
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        token = new BigInteger(130, new SecureRandom()).toString(32);
+
+        final File file = new File(userHome, DAEMON_FILE);
+        Properties props = new Properties();
+        props.setProperty("port", String.valueOf(server.getLocalPort()));
+        props.setProperty("token", token);
+        file.delete();
+        file.createNewFile();
+        // owner only
+        file.setReadable(false, false);
+        file.setWritable(false, false);
+        file.setReadable(true, true);
+        file.setWritable(true, true);
+        try (OutputStream out = new FileOutputStream(file)) {
+            props.store(out, "geogig daemon");
+        }
+        return server.getLocalPort();
+    }
+
+    /**
+     * Serves clients until no command is received for the idle timeout or the daemon is
+     * {@link #stop() stopped}, then closes the open repositories and removes the daemon file.
+     */
+    public void run() throws IOException {
+        Preconditions.checkState(server != null, "Daemon not started");
+        long lastCommand = System.currentTimeMillis();
+        try {
+            server.setSoTimeout((int) Math.min(idleTimeoutMillis, 1000));
+            while (!server.isClosed()) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    final long now = System.currentTimeMillis();
+                    closeRepositories(now - keepOpenMillis);
+                    if (now - lastCommand > idleTimeoutMillis) {
+                        LOGGER.info("No commands received in {}ms, exiting", idleTimeoutMillis);
+                        break;
+                    }
+                    continue;
+                }
+                try {
+                    serve(socket);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.warn("Error serving client", e);
+                } finally {
+                    socket.close();
+                    lastCommand = System.currentTimeMillis();
+                }
+            }
+        } catch (IOException e) {
+            if (!server.isClosed()) {
+                throw e;
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Makes {@link #run()} return
+     */
+    public void stop() throws IOException {
+        server.close();
+    }
+
+    private synchronized void shutdown() throws IOException {
+        closeRepositories(Long.MAX_VALUE);
+        server.close();
+        Properties props = readDaemonFile(userHome);
+        if (props != null && token.equals(props.getProperty("token"))) {
+            new File(userHome, DAEMON_FILE).delete();
+        }
+    }
+
+    /**
+     * Closes the repositories last used before the given time
+     */
+    private synchronized void closeRepositories(long usedBefore) {
+        for (Iterator<OpenRepository> it = repositories.values().iterator(); it.hasNext();) {
+            OpenRepository open = it.next();
+            if (open.lastUsed < usedBefore) {
+                it.remove();
+                open.geogig.close();
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                socket.getOutputStream()));
+
+        final String clientToken;
+        try {
+            clientToken = in.readUTF();
+        } catch (EOFException e) {
+            // just checking whether the daemon is running
+            return;
+        }
+        if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                clientToken.getBytes(StandardCharsets.UTF_8))) {
+            LOGGER.warn("Rejected client with an invalid token");
+            return;
+        }
+        final File pwd = new File(in.readUTF());
+        final int argc = in.readInt();
+        if (argc < 0 || argc > MAX_ARGS) {
+            throw new IOException("Invalid number of arguments: " + argc);
+        }
+        final String[] args = new String[argc];
+        for (int i = 0; i < argc; i++) {
+            args[i] = in.readUTF();
+        }
+        socket.setSoTimeout(0);
+
+        if (!accepts(args)) {
+            out.writeByte(REFUSED);
+            out.flush();
+            return;
+        }
+        final int exitCode = execute(pwd, args, new FrameOutputStream(out, OUTPUT),
+                new FrameOutputStream(out, ERROR));
+        out.writeByte(EXIT);
+        out.writeInt(exitCode);
+        out.flush();
+    }
+
+    /**
+     * @return whether the daemon runs the given command, or the client shall run it in-process
+     */
+    static boolean accepts(String[] args) {
+        return args.length == 0 || COMMANDS.contains(args[0]);
+    }
+
+    /**
+     * Runs the command as {@link GeogigCLI#execute(String...)} would from the given working
+     * directory, on the repository's open {@link GeoGIG} if it's kept open between commands.
+     *
+     * @return the command's exit code
+     */
+    @VisibleForTesting
+    int execute(File pwd, String[] args, OutputStream output, OutputStream error)
+            throws IOException {
+        Preconditions.checkArgument(accepts(args), "Not a daemon command: %s", args[0]);
+        args = resolveRepoArgument(pwd, args);
+
+        InputStream noInput = new ByteArrayInputStream(new byte[0]);
+        Console console = new Console(noInput, output).disableAnsi();
+        final PrintStream stdout = System.out;
+        final PrintStream stderr = System.err;
+        System.setOut(new PrintStream(output, true));
+        System.setErr(new PrintStream(error, true));
+        try {
+            GeoGIG geogig = null;
+            if (keepOpenMillis > 0 && !Arrays.asList(args).contains("--repo")) {
+                geogig = openRepository(pwd);
+            }
+            GeogigCLI cli = geogig == null ? new GeogigCLI(console) : new GeogigCLI(geogig,
+                    console);
+            cli.getPlatform().setWorkingDir(pwd);
+            try {
+                return cli.execute(args);
+            } finally {
+                cli.close();
+                console.flush();
+            }
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    /**
+     * Makes a relative {@code --repo} location absolute, resolving it against the client's working
+     * directory instead of the daemon's
+     */
+    @VisibleForTesting
+    static String[] resolveRepoArgument(File pwd, String[] args) {
+        String[] resolved = args.clone();
+        for (int i = 0; i < resolved.length - 1; i++) {
+            if ("--repo".equals(resolved[i])) {
+                final String location = resolved[i + 1];
+                try {
+                    URI uri = new URI(location);
+                    if (uri.getScheme() == null && !new File(location).isAbsolute()) {
+                        resolved[i + 1] = new File(pwd, location).toURI().toString();
+                    }
+                } catch (URISyntaxException e) {
+                    // leave it for GeogigCLI to report
+                }
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Returns the open repository for the working directory, opening it if needed, or
+     * {@code null} if there's no repository in it.
+     */
+    @Nullable
+    private synchronized GeoGIG openRepository(File pwd) throws IOException {
+        if (!pwd.isDirectory()) {
+            return null;
+        }
+        final Optional<URI> location = ResolveGeogigURI.lookup(pwd);
+        if (!location.isPresent()
+                || !RepositoryResolver.lookup(location.get()).repoExists(location.get())) {
+            return null;
+        }
+        final File repoDir = new File(location.get());
+        final Object identity = identity(repoDir);
+        OpenRepository open = repositories.get(repoDir);
+        if (open != null && !open.identity.equals(identity)) {
+            // deleted and created anew since it was opened
+            repositories.remove(repoDir);
+            open.geogig.close();
+            open = null;
+        }
+        if (open == null) {
+            if (repositories.size() >= MAX_OPEN_REPOSITORIES) {
+                closeLeastRecentlyUsed();
+            }
+            GeoGIG geogig = new GeoGIG(GlobalContextBuilder.builder.build(Hints.readWrite()),
+                    repoDir.getParentFile());
+            if (geogig.getRepository() == null) {
+                geogig.close();
+                return null;
+            }
+            open = new OpenRepository(geogig, identity);
+            repositories.put(repoDir, open);
+        }
+        open.lastUsed = System.currentTimeMillis();
+        open.geogig.getPlatform().setWorkingDir(pwd);
+        return open.geogig;
+    }
+
+    /**
+     * @return the repositories kept open, by {@code .geogig} directory
+     */
+    @VisibleForTesting
+    synchronized Map<File, GeoGIG> openRepositories() {
+        Map<File, GeoGIG> open = new HashMap<>();
+        for (Map.Entry<File, OpenRepository> e : repositories.entrySet()) {
+            open.put(e.getKey(), e.getValue().geogig);
+        }
+        return open;
+    }
+
+    private void closeLeastRecentlyUsed() {
+        Map.Entry<File, OpenRepository> eldest = null;
+        for (Map.Entry<File, OpenRepository> e : repositories.entrySet()) {
+            if (eldest == null || e.getValue().lastUsed < eldest.getValue().lastUsed) {
+                eldest = e;
+            }
+        }
+        if (eldest != null) {
+            repositories.remove(eldest.getKey());
+            eldest.getValue().geogig.close();
+        }
+    }
+
+    private static Object identity(File repoDir) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(repoDir.toPath(),
+                BasicFileAttributes.class);
+        return Arrays.asList(attributes.fileKey(), attributes.creationTime());
+    }
+
+    /**
+     * @return the contents of the daemon file in the given directory, or {@code null} if there's
+     *         none
+     */
+    @Nullable
+    static Properties readDaemonFile(File userHome) {
+        final File file = new File(userHome, DAEMON_FILE);
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        } catch (IOException e) {
+            return null;
+        }
+        return props;
+    }
+
+    /**
+     * @return the port of the daemon running for the given user home, if it accepts connections
+     */
+    static Optional<Integer> runningPort(File userHome) {
+        Properties props = readDaemonFile(userHome);
+        if (props == null || props.getProperty("port") == null) {
+            return Optional.absent();
+        }
+        try {
+            Integer port = Integer.valueOf(props.getProperty("port"));
+            new Socket(InetAddress.getLoopbackAddress(), port.intValue()).close();
+            return Optional.of(port);
+        } catch (NumberFormatException | IOException e) {
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * Writes everything it's given as frames of the given type. The standard and error output
+     * streams of a command share the same connection, hence writes are synchronized on it.
+     */
+    private static class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                synchronized (out) {
+                    out.writeByte(type);
+                    out.writeInt(len);
+                    out.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.cli.porcelain;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.locationtech.geogig.cli.AbstractCommand;
+import org.locationtech.geogig.cli.CLICommand;
+import org.locationtech.geogig.cli.CommandFailedException;
+import org.locationtech.geogig.cli.Console;
+import org.locationtech.geogig.cli.GeogigCLI;
+import org.locationtech.geogig.cli.GeogigClient;
+import org.locationtech.geogig.cli.GeogigDaemon;
+import org.locationtech.geogig.cli.InvalidParameterException;
+import org.locationtech.geogig.cli.annotation.RequiresRepository;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+/**
+ * Runs the commands sent by {@link GeogigClient}s, until no command is received for the idle
+ * timeout. The repositories the commands run on are closed after each command, unless a keep open
+ * time is given.
+ * <p>
+ * Usage:
+ * <ul>
+ * <li> {@code geogig daemon [--idle-timeout <seconds>] [--keep-open <seconds>]}
+ * </ul>
+ *
+ * @see GeogigDaemon
+ */
+@RequiresRepository(false)
+@Parameters(commandNames = "daemon", commandDescription = "Run commands sent by geogig clients, keeping repositories open between them")
+public class Daemon extends AbstractCommand implements CLICommand {
+
+    @Parameter(names = "--idle-timeout", description = "Seconds without receiving a command after which the daemon exits")
+    private int idleTimeout = 600;
+
+    @Parameter(names = "--keep-open", description = "Seconds to keep a repository open after the last command run on it. Other processes may not be able to open it meanwhile")
+    private int keepOpen = 0;
+
+    @Override
+    protected void runInternal(GeogigCLI cli) throws InvalidParameterException,
+            CommandFailedException, IOException {
+        checkParameter(idleTimeout > 0, "--idle-timeout must be a positive number of seconds");
+        checkParameter(keepOpen >= 0, "--keep-open must be zero or a positive number of seconds");
+
+        final File userHome = cli.getPlatform().getUserHome();
+        GeogigDaemon daemon = new GeogigDaemon(userHome, TimeUnit.SECONDS.toMillis(idleTimeout),
+                TimeUnit.SECONDS.toMillis(keepOpen));
+        final int port;
+        try {
+            port = daemon.start();
+        } catch (IllegalStateException e) {
+            throw new CommandFailedException(e.getMessage(), e);
+        }
+        Console console = cli.getConsole();
+        console.println(String.format(
+                "Listening on port %d, exiting after %d seconds without commands.", port,
+                idleTimeout));
+        console.flush();
+        daemon.run();
+    }
+}
@@ -0,0 +1,68 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.cli.porcelain;
+
+import java.io.IOException;
+
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.porcelain.FsckOp;
+import org.locationtech.geogig.api.porcelain.FsckReport;
+import org.locationtech.geogig.cli.AbstractCommand;
+import org.locationtech.geogig.cli.CLICommand;
+import org.locationtech.geogig.cli.CommandFailedException;
+import org.locationtech.geogig.cli.Console;
+import org.locationtech.geogig.cli.GeogigCLI;
+import org.locationtech.geogig.cli.annotation.ReadOnly;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+/**
+ * Verifies the integrity of the repository, listing the objects reachable from the repository refs
+ * that are missing or whose contents don't match their id.
+ * 
+ * @see FsckOp
+ */
+@ReadOnly
+@Parameters(commandNames = "fsck", commandDescription = "Verifies the integrity of the repository objects")
+public class Fsck extends AbstractCommand implements CLICommand {
+
+    @Parameter(names = "--no-verify", description = "Only check that reachable objects exist, don't verify their hashes.")
+    private boolean noVerify;
+
+    @Parameter(names = "--threads", description = "Number of threads to use. Defaults to the number of available processors.")
+    private Integer threads;
+
+    @Override
+    public void runInternal(GeogigCLI cli) throws IOException {
+        FsckOp op = cli.getGeogig().command(FsckOp.class).setVerifyHashes(!noVerify);
+        if (threads != null) {
+            checkParameter(threads.intValue() > 0, "threads must be a positive integer");
+            op.setThreads(threads.intValue());
+        }
+        FsckReport report = op.setProgressListener(cli.getProgressListener()).call();
+
+        final Console console = cli.getConsole();
+        for (ObjectId id : report.getMissing()) {
+            console.println("missing " + id);
+        }
+        for (ObjectId id : report.getCorrupt()) {
+            console.println("corrupt " + id);
+        }
+        console.println(String.format("Checked %,d objects in %,dms (%,.0f objects/s).",
+                report.getObjectCount(), report.getElapsedMillis(),
+                report.getObjectsPerSecond()));
+        if (!report.isOk()) {
+            throw new CommandFailedException(String.format(
+                    "Found %,d missing and %,d corrupt objects.", report.getMissing().size(),
+                    report.getCorrupt().size()));
+        }
+    }
+}
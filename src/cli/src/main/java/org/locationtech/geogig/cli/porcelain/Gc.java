@@ -0,0 +1,52 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.cli.porcelain;
+
+import java.io.IOException;
+
+import org.locationtech.geogig.api.porcelain.GcOp;
+import org.locationtech.geogig.api.porcelain.GcReport;
+import org.locationtech.geogig.cli.AbstractCommand;
+import org.locationtech.geogig.cli.CLICommand;
+import org.locationtech.geogig.cli.Console;
+import org.locationtech.geogig.cli.GeogigCLI;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+/**
+ * Removes the objects that are not reachable from any of the repository refs.
+ * 
+ * @see GcOp
+ */
+@Parameters(commandNames = "gc", commandDescription = "Removes unreachable objects from the repository")
+public class Gc extends AbstractCommand implements CLICommand {
+
+    @Parameter(names = { "--dry-run", "-n" }, description = "Don't actually remove anything, just report what would be removed.")
+    private boolean dryRun;
+
+    @Override
+    public void runInternal(GeogigCLI cli) throws IOException {
+        GcReport report = cli.getGeogig().command(GcOp.class).setDryRun(dryRun)
+                .setProgressListener(cli.getProgressListener()).call();
+
+        final Console console = cli.getConsole();
+        console.println(String.format("Storage: %s", report.getStorage() == null ? "unknown"
+                : report.getStorage()));
+        console.println(String.format("Reachable objects: %,d (marked in %,dms)",
+                report.getReachable(), report.getMarkMillis()));
+        console.println(String.format("Unreachable objects: %,d, %s: %,d (swept in %,dms, %,.0f objects/s)",
+                report.getUnreachable(), dryRun ? "would be removed" : "removed",
+                dryRun ? report.getUnreachable() : report.getRemoved(), report.getSweepMillis(),
+                report.getSweptPerSecond()));
+        console.println(String.format("Space %s: %,d bytes", dryRun ? "to reclaim" : "reclaimed",
+                report.getReclaimedBytes()));
+    }
+}
@@ -51,7 +51,7 @@ import com.google.common.base.Suppliers;
  * <p>
  * Usage:
  * <ul>
- * <li> {@code geogig rebase [--onto <newbase>] [<upstream>] [<branch>]}
+ * <li> {@code geogig rebase [--onto <newbase>] [--in-memory] [<upstream>] [<branch>]}
  * </ul>
  * 
  * @see RebaseOp
@@ -74,6 +74,9 @@ public class Rebase extends AbstractCommand implements CLICommand {
     @Parameter(names = { "--squash" }, description = "Squash commits instead of applying them one by one. A message has to be provided to use for the squashed commit")
     private String squash;
 
+    @Parameter(names = { "--in-memory" }, description = "Apply commits without going through the working tree while their changes apply cleanly")
+    private boolean inMemory;
+
     @Parameter(description = "[<upstream>] [<branch>]")
     private List<String> arguments;
 
@@ -89,7 +92,7 @@ public class Rebase extends AbstractCommand implements CLICommand {
 
         GeoGIG geogig = cli.getGeogig();
         RebaseOp rebase = geogig.command(RebaseOp.class).setSkip(skip).setContinue(continueRebase)
-                .setAbort(abort).setSquashMessage(squash);
+                .setAbort(abort).setSquashMessage(squash).setInMemory(inMemory);
         rebase.setProgressListener(cli.getProgressListener());
 
         if (arguments == null || arguments.size() == 0) {
@@ -0,0 +1,339 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.cli;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.geogig.api.GeoGIG;
+
+import com.google.common.collect.Iterables;
+
+public class GeogigDaemonTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File home;
+
+    private File pwd;
+
+    private GeogigDaemon daemon;
+
+    private Thread daemonThread;
+
+    private final AtomicReference<Throwable> daemonFailure = new AtomicReference<>();
+
+    private ByteArrayOutputStream out;
+
+    private ByteArrayOutputStream err;
+
+    @Before
+    public void before() throws Exception {
+        home = tmp.newFolder("home");
+        pwd = tmp.newFolder("pwd");
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+    }
+
+    @After
+    public void after() throws Exception {
+        if (daemon != null) {
+            daemon.stop();
+            daemonThread.join(5000);
+        }
+        if (daemonFailure.get() != null) {
+            throw new AssertionError("Daemon failed", daemonFailure.get());
+        }
+    }
+
+    private int startDaemon(long idleTimeoutMillis) throws IOException {
+        return startDaemon(idleTimeoutMillis, 0);
+    }
+
+    private int startDaemon(long idleTimeoutMillis, long keepOpenMillis) throws IOException {
+        daemon = new GeogigDaemon(home, idleTimeoutMillis, keepOpenMillis);
+        int port = daemon.start();
+        daemonThread = new Thread(() -> {
+            try {
+                daemon.run();
+            } catch (IOException | RuntimeException e) {
+                daemonFailure.set(e);
+            }
+        });
+        daemonThread.start();
+        return port;
+    }
+
+    private void init(File dir) {
+        Console console = new Console(System.in, new ByteArrayOutputStream()).disableAnsi();
+        GeogigCLI cli = new GeogigCLI(console);
+        cli.getPlatform().setWorkingDir(dir);
+        try {
+            assertEquals(0, cli.execute("init"));
+        } finally {
+            cli.close();
+        }
+    }
+
+    private void status(File dir) throws IOException {
+        assertEquals(0, daemon.execute(dir, new String[] { "status" }, out, err));
+    }
+
+    private GeoGIG openRepository() {
+        Map<File, GeoGIG> open = daemon.openRepositories();
+        assertEquals(1, open.size());
+        return Iterables.getOnlyElement(open.values());
+    }
+
+    private GeoGIG openRepository(File dir) throws IOException {
+        for (Map.Entry<File, GeoGIG> e : daemon.openRepositories().entrySet()) {
+            if (e.getKey().getParentFile().getCanonicalFile().equals(dir.getCanonicalFile())) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testNoDaemonRunning() throws Exception {
+        assertNull(GeogigClient.run(home, pwd, new String[] { "--version" }, out, err));
+    }
+
+    @Test
+    public void testStartWritesDaemonFile() throws Exception {
+        final int port = startDaemon(60_000);
+        Properties props = GeogigDaemon.readDaemonFile(home);
+        assertNotNull(props);
+        assertEquals(String.valueOf(port), props.getProperty("port"));
+        assertNotNull(props.getProperty("token"));
+        assertEquals(Integer.valueOf(port), GeogigDaemon.runningPort(home).orNull());
+        try {
+            new GeogigDaemon(home, 60_000, 0).start();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("already running"));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        startDaemon(60_000);
+        Integer exitCode = GeogigClient.run(home, pwd, new String[] { "--version" }, out, err);
+        assertEquals(Integer.valueOf(0), exitCode);
+        assertTrue(out.toString(), out.toString().contains("Project Version"));
+
+        ByteArrayOutputStream inProcess = new ByteArrayOutputStream();
+        Console console = new Console(System.in, inProcess).disableAnsi();
+        GeogigCLI cli = new GeogigCLI(console);
+        cli.getPlatform().setWorkingDir(pwd);
+        assertEquals(0, cli.execute("--version"));
+        cli.close();
+        assertEquals(inProcess.toString(), out.toString());
+    }
+
+    @Test
+    public void testExitCode() throws Exception {
+        startDaemon(60_000);
+        Integer exitCode = GeogigClient.run(home, pwd, new String[] { "log" }, out, err);
+        assertNotNull(exitCode);
+        assertNotEquals(0, exitCode.intValue());
+        assertTrue(out.toString(), out.toString().contains("Not in a geogig repository"));
+    }
+
+    @Test
+    public void testRefusedCommands() throws Exception {
+        startDaemon(60_000);
+        // commands that read files relative to the client's directory or write to System.out
+        // directly are run by the client
+        assertNull(GeogigClient.run(home, pwd, new String[] { "apply", "patch.diff" }, out, err));
+        assertNull(GeogigClient.run(home, pwd, new String[] { "cat", "HEAD" }, out, err));
+        assertNull(GeogigClient.run(home, pwd, new String[] { "daemon" }, out, err));
+        assertEquals(0, out.size());
+
+        // the daemon is still serving
+        assertEquals(Integer.valueOf(0),
+                GeogigClient.run(home, pwd, new String[] { "--version" }, out, err));
+    }
+
+    @Test
+    public void testInvalidTokenRejected() throws Exception {
+        final int port = startDaemon(60_000);
+        File otherHome = tmp.newFolder("otherhome");
+        Properties props = new Properties();
+        props.setProperty("port", String.valueOf(port));
+        props.setProperty("token", "not-the-token");
+        try (OutputStream o = new FileOutputStream(new File(otherHome,
+                GeogigDaemon.DAEMON_FILE))) {
+            props.store(o, null);
+        }
+        try {
+            GeogigClient.run(otherHome, pwd, new String[] { "--version" }, out, err);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            assertEquals(0, out.size());
+        }
+        // still serving clients with the right token
+        assertEquals(Integer.valueOf(0),
+                GeogigClient.run(home, pwd, new String[] { "--version" }, out, err));
+    }
+
+    @Test
+    public void testIdleShutdown() throws Exception {
+        startDaemon(500);
+        assertEquals(Integer.valueOf(0),
+                GeogigClient.run(home, pwd, new String[] { "--version" }, out, err));
+        daemonThread.join(10_000);
+        assertFalse(daemonThread.isAlive());
+        assertFalse(new File(home, GeogigDaemon.DAEMON_FILE).exists());
+        assertNull(GeogigClient.run(home, pwd, new String[] { "--version" }, out, err));
+        daemon = null;
+    }
+
+    @Test
+    public void testKeepOpen() throws Exception {
+        startDaemon(60_000, 60_000);
+        init(pwd);
+        status(pwd);
+        final GeoGIG geogig = openRepository();
+        assertTrue(geogig.isOpen());
+
+        status(pwd);
+        assertSame(geogig, openRepository());
+        assertTrue(geogig.isOpen());
+
+        // commands using --repo don't use the kept open repository
+        assertEquals(0, daemon.execute(home, new String[] { "status", "--repo",
+                pwd.getAbsolutePath() }, out, err));
+        assertSame(geogig, openRepository());
+    }
+
+    @Test
+    public void testNotKeptOpenByDefault() throws Exception {
+        startDaemon(60_000);
+        init(pwd);
+        status(pwd);
+        assertTrue(daemon.openRepositories().isEmpty());
+    }
+
+    @Test
+    public void testReopenRecreatedRepository() throws Exception {
+        startDaemon(60_000, 60_000);
+        init(pwd);
+        status(pwd);
+        final GeoGIG geogig = openRepository();
+
+        // make sure the new .geogig directory doesn't get the same timestamps
+        Thread.sleep(1000);
+        // created elsewhere, as by another process, not to share the open repository's storage
+        File recreated = tmp.newFolder("recreated");
+        init(recreated);
+        delete(new File(pwd, ".geogig"));
+        assertTrue(new File(recreated, ".geogig").renameTo(new File(pwd, ".geogig")));
+
+        status(pwd);
+        GeoGIG reopened = openRepository();
+        assertNotEquals(geogig, reopened);
+        assertFalse(geogig.isOpen());
+        assertTrue(reopened.isOpen());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedClosed() throws Exception {
+        startDaemon(60_000, 60_000);
+        List<File> dirs = new ArrayList<>();
+        for (int i = 0; i <= GeogigDaemon.MAX_OPEN_REPOSITORIES; i++) {
+            File dir = tmp.newFolder("repo" + i);
+            init(dir);
+            dirs.add(dir);
+        }
+        for (int i = 0; i < GeogigDaemon.MAX_OPEN_REPOSITORIES; i++) {
+            status(dirs.get(i));
+            Thread.sleep(2);
+        }
+        // the first one is used again, the second one becomes the least recently used
+        status(dirs.get(0));
+        assertEquals(GeogigDaemon.MAX_OPEN_REPOSITORIES, daemon.openRepositories().size());
+        final GeoGIG second = openRepository(dirs.get(1));
+        assertNotNull(second);
+
+        status(dirs.get(GeogigDaemon.MAX_OPEN_REPOSITORIES));
+        assertEquals(GeogigDaemon.MAX_OPEN_REPOSITORIES, daemon.openRepositories().size());
+        assertNull(openRepository(dirs.get(1)));
+        assertNotNull(openRepository(dirs.get(0)));
+        assertNotNull(openRepository(dirs.get(GeogigDaemon.MAX_OPEN_REPOSITORIES)));
+        assertFalse(second.isOpen());
+    }
+
+    @Test
+    public void testKeptOpenRepositoryExpires() throws Exception {
+        startDaemon(60_000, 200);
+        init(pwd);
+        assertEquals(Integer.valueOf(0),
+                GeogigClient.run(home, pwd, new String[] { "status" }, out, err));
+        final GeoGIG geogig = openRepository();
+
+        // closed by the daemon loop once unused for the keep open time
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!daemon.openRepositories().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertTrue(daemon.openRepositories().isEmpty());
+        assertFalse(geogig.isOpen());
+    }
+
+    @Test
+    public void testResolveRepoArgument() throws Exception {
+        String[] args = { "log", "--repo", "some/repo" };
+        String[] resolved = GeogigDaemon.resolveRepoArgument(pwd, args);
+        assertEquals(new File(pwd, "some/repo").toURI().toString(), resolved[2]);
+        assertEquals("some/repo", args[2]);
+
+        String absolute = new File(pwd, "repo").getAbsolutePath();
+        args = new String[] { "log", "--repo", absolute };
+        assertArrayEquals(args, GeogigDaemon.resolveRepoArgument(pwd, args));
+
+        args = new String[] { "log", "--repo", "postgresql://localhost/db/repo" };
+        assertArrayEquals(args, GeogigDaemon.resolveRepoArgument(pwd, args));
+    }
+}
@@ -0,0 +1,97 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.cli.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.geogig.cli.GeogigCLI;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+
+/**
+ * Measures how long common commands take to run each on a new JVM, the way scripts calling the
+ * {@code geogig} command run them, so that startup cost dominates.
+ */
+public class CLIStartupPerformanceTest {
+
+    private static final int RUNS = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File home;
+
+    private File log;
+
+    @Ignore
+    @Test
+    public void testStartupLatency() throws Exception {
+        home = folder.newFolder("home");
+        log = folder.newFile("output.log");
+        final File repo = folder.newFolder("repo");
+        final File noRepo = folder.newFolder("norepo");
+
+        assertEquals(0, run(repo, "config", "--global", "user.name", "perf"));
+        assertEquals(0, run(repo, "config", "--global", "user.email", "perf@example.com"));
+        assertEquals(0, run(repo, "init"));
+
+        benchmark(noRepo, "version");
+        benchmark(noRepo, "help");
+        benchmark(repo, "status");
+        benchmark(repo, "log");
+        benchmark(repo, "branch");
+        benchmark(repo, "config", "--global", "--get", "user.name");
+    }
+
+    private void benchmark(File dir, String... args) throws Exception {
+        long min = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < RUNS; i++) {
+            Stopwatch sw = Stopwatch.createStarted();
+            run(dir, args);
+            long millis = sw.stop().elapsed(TimeUnit.MILLISECONDS);
+            min = Math.min(min, millis);
+            total += millis;
+        }
+        System.err.printf("geogig %-25s avg: %,5dms, min: %,5dms\n", Joiner.on(' ').join(args),
+                total / RUNS, min);
+    }
+
+    /**
+     * Runs the command on a new JVM and returns its exit code
+     */
+    private int run(File dir, String... args) throws Exception {
+        final String java = new File(new File(System.getProperty("java.home"), "bin"), "java")
+                .getAbsolutePath();
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Duser.home=" + home.getAbsolutePath());
+        command.add(GeogigCLI.class.getName());
+        command.addAll(Arrays.asList(args));
+
+        Process process = new ProcessBuilder(command).directory(dir).redirectErrorStream(true)
+                .redirectOutput(Redirect.appendTo(log)).start();
+        return process.waitFor();
+    }
+}
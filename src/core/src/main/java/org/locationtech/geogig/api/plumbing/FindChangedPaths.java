@@ -0,0 +1,90 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.plumbing.diff.DiffEntry;
+import org.locationtech.geogig.repository.Repository;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Finds the paths, features and trees, that changed in a commit with respect to any of its
+ * parents, or all the paths in it for a root commit or the bottom of a shallow clone.
+ * <p>
+ * The result maps each changed path to its node at the commit, or to {@code null} if it was
+ * removed.
+ */
+public class FindChangedPaths extends AbstractGeoGigOp<Map<String, NodeRef>> {
+
+    private RevCommit commit;
+
+    private Long maxChanges;
+
+    public FindChangedPaths setCommit(RevCommit commit) {
+        this.commit = commit;
+        return this;
+    }
+
+    /**
+     * Cuts the search short once more than {@code maxChanges} paths are found, in which case the
+     * result has more than {@code maxChanges} paths but is incomplete
+     */
+    public FindChangedPaths setMaxChanges(@Nullable Long maxChanges) {
+        checkArgument(maxChanges == null || maxChanges.longValue() >= 0L,
+                "maxChanges must be >= 0: ", maxChanges);
+        this.maxChanges = maxChanges;
+        return this;
+    }
+
+    @Override
+    protected Map<String, NodeRef> _call() {
+        checkState(commit != null, "commit not set");
+        final Repository repository = repository();
+        List<ObjectId> parentTrees = Lists.newArrayList();
+        for (ObjectId parentId : commit.getParentIds()) {
+            if (repository.commitExists(parentId)) {
+                parentTrees.add(repository.getCommit(parentId).getTreeId());
+            }
+        }
+        if (parentTrees.isEmpty()) {
+            parentTrees.add(RevTree.EMPTY_TREE_ID);
+        }
+        final Long maxDiffs = maxChanges == null ? null : Long.valueOf(maxChanges + 1);
+        Map<String, NodeRef> changes = Maps.newHashMap();
+        for (ObjectId parentTree : parentTrees) {
+            Iterator<DiffEntry> diffs = command(DiffTree.class).setOldTree(parentTree)
+                    .setNewTree(commit.getTreeId()).setReportTrees(true).setMaxDiffs(maxDiffs)
+                    .call();
+            while (diffs.hasNext()) {
+                DiffEntry diff = diffs.next();
+                NodeRef newObject = diff.getNewObject();
+                changes.put(newObject == null ? diff.oldPath() : diff.newPath(), newObject);
+            }
+            if (maxChanges != null && changes.size() > maxChanges.longValue()) {
+                break;
+            }
+        }
+        return changes;
+    }
+}
@@ -31,7 +31,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.hash.Funnel;
-import com.google.common.hash.Hasher;
 
 /**
  * Hashes a RevObject and returns the ObjectId.
@@ -64,6 +63,10 @@ public class HashObject extends AbstractGeoGigOp<ObjectId> {
 
     /**
      * Hashes a RevObject using a SHA1 hasher.
+     * <p>
+     * The object's canonical byte stream is fed straight into the calling thread's
+     * {@link HashObjectSink}, which yields the same ids as hashing it with
+     * {@link ObjectId#HASH_FUNCTION} without creating a hasher per object.
      * 
      * @return a new ObjectId created from the hash of the RevObject.
      */
@@ -71,25 +74,25 @@ public class HashObject extends AbstractGeoGigOp<ObjectId> {
     protected ObjectId _call() {
         Preconditions.checkState(object != null, "Object has not been set.");
 
-        final Hasher hasher = ObjectId.HASH_FUNCTION.newHasher();
         @SuppressWarnings("unchecked")
         final Funnel<RevObject> funnel = (Funnel<RevObject>) FUNNELS[object.getType().value()];
-        funnel.funnel(object, hasher);
-        final byte[] rawKey = hasher.hash().asBytes();
-        final ObjectId id = ObjectId.createNoClone(rawKey);
-
-        return id;
+        final HashObjectSink sink = HashObjectSink.get();
+        try {
+            funnel.funnel(object, sink);
+            return sink.hash();
+        } finally {
+            sink.release();
+        }
     }
 
     public static ObjectId hashFeature(List<Optional<Object>> values) {
-        final Hasher hasher = ObjectId.HASH_FUNCTION.newHasher();
-
-        HashObjectFunnels.featureFunnel().funnel(values, hasher);
-
-        final byte[] rawKey = hasher.hash().asBytes();
-        final ObjectId id = ObjectId.createNoClone(rawKey);
-
-        return id;
+        final HashObjectSink sink = HashObjectSink.get();
+        try {
+            HashObjectFunnels.featureFunnel().funnel(values, sink);
+            return sink.hash();
+        } finally {
+            sink.release();
+        }
     }
 
     public static ObjectId hashTree(@Nullable ImmutableList<Node> trees,
@@ -103,13 +106,12 @@ public class HashObject extends AbstractGeoGigOp<ObjectId> {
     public static ObjectId hashTree(Optional<ImmutableList<Node>> trees,
             Optional<ImmutableList<Node>> features,
             Optional<ImmutableSortedMap<Integer, Bucket>> buckets) {
-        final Hasher hasher = ObjectId.HASH_FUNCTION.newHasher();
-
-        HashObjectFunnels.treeFunnel().funnel(hasher, trees, features, buckets);
-
-        final byte[] rawKey = hasher.hash().asBytes();
-        final ObjectId id = ObjectId.createNoClone(rawKey);
-
-        return id;
+        final HashObjectSink sink = HashObjectSink.get();
+        try {
+            HashObjectFunnels.treeFunnel().funnel(sink, trees, features, buckets);
+            return sink.hash();
+        } finally {
+            sink.release();
+        }
     }
 }
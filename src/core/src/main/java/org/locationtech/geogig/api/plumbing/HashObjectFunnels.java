@@ -52,8 +52,8 @@ import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.hash.Funnel;
 import com.google.common.hash.Funnels;
 import com.google.common.hash.PrimitiveSink;
-import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.CoordinateFilter;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFilter;
 import com.vividsolutions.jts.geom.Geometry;
 
 /**
@@ -370,6 +370,10 @@ class HashObjectFunnels {
 
     /**
      * Rounds geometry ordinates to 9 decimals before hashing them
+     * <p>
+     * Ordinates are read straight from the geometry's coordinate sequences, in the same order a
+     * {@code CoordinateFilter} visits them, so no {@code Coordinate} is created for sequences that
+     * don't store them.
      */
     private static final Funnel<Geometry> GeometryFunnel = new Funnel<Geometry>() {
         private static final long serialVersionUID = 1L;
@@ -377,17 +381,29 @@ class HashObjectFunnels {
         @Override
         public void funnel(final Geometry geom, final PrimitiveSink into) {
 
-            CoordinateFilter filter = new CoordinateFilter() {
+            CoordinateSequenceFilter filter = new CoordinateSequenceFilter() {
 
                 final double scale = 1E9D;
 
                 @Override
-                public void filter(Coordinate coord) {
-                    double x = Math.round(coord.x * scale) / scale;
-                    double y = Math.round(coord.y * scale) / scale;
+                public void filter(CoordinateSequence seq, int i) {
+                    double x = Math.round(seq.getOrdinate(i, CoordinateSequence.X) * scale)
+                            / scale;
+                    double y = Math.round(seq.getOrdinate(i, CoordinateSequence.Y) * scale)
+                            / scale;
                     into.putDouble(x);
                     into.putDouble(y);
                 }
+
+                @Override
+                public boolean isDone() {
+                    return false;
+                }
+
+                @Override
+                public boolean isGeometryChanged() {
+                    return false;
+                }
             };
             geom.apply(filter);
         }
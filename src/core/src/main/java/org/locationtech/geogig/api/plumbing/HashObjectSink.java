@@ -0,0 +1,198 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.locationtech.geogig.api.ObjectId;
+
+import com.google.common.base.Throwables;
+import com.google.common.hash.PrimitiveSink;
+
+/**
+ * A {@link PrimitiveSink} that feeds the {@link HashObjectFunnels funneled} bytes straight into a
+ * SHA-1 {@link MessageDigest}, producing the same ids as {@link ObjectId#HASH_FUNCTION} does
+ * without creating a new hasher for every object.
+ * <p>
+ * Primitives are written in little endian order, like Guava's hashers do, to a fixed size buffer
+ * that's handed over to the digest whenever it fills up. Each thread reuses its own instance:
+ *
+ * <pre>
+ * <code>
+ * HashObjectSink sink = HashObjectSink.get();
+ * try {
+ *     funnel.funnel(object, sink);
+ *     return sink.hash();
+ * } finally {
+ *     sink.release();
+ * }
+ * </code>
+ * </pre>
+ */
+final class HashObjectSink implements PrimitiveSink {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final ThreadLocal<HashObjectSink> SINKS = new ThreadLocal<HashObjectSink>() {
+        @Override
+        protected HashObjectSink initialValue() {
+            return new HashObjectSink();
+        }
+    };
+
+    private final MessageDigest digest;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int count;
+
+    private boolean inUse;
+
+    private HashObjectSink() {
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * @return the calling thread's sink, or a new one if it's already in use, ready to hash a new
+     *         object
+     */
+    static HashObjectSink get() {
+        HashObjectSink sink = SINKS.get();
+        if (sink.inUse) {
+            sink = new HashObjectSink();
+        }
+        sink.inUse = true;
+        sink.count = 0;
+        sink.digest.reset();
+        return sink;
+    }
+
+    /**
+     * @return the id of the bytes funneled since {@link #get()}
+     */
+    ObjectId hash() {
+        flush();
+        return ObjectId.createNoClone(digest.digest());
+    }
+
+    /**
+     * Makes this sink available to the next call to {@link #get()} on this thread
+     */
+    void release() {
+        inUse = false;
+    }
+
+    private void flush() {
+        if (count > 0) {
+            digest.update(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (count + bytes > BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    @Override
+    public PrimitiveSink putByte(byte b) {
+        ensureCapacity(1);
+        buffer[count++] = b;
+        return this;
+    }
+
+    @Override
+    public PrimitiveSink putBytes(byte[] bytes) {
+        return putBytes(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public PrimitiveSink putBytes(byte[] bytes, int off, int len) {
+        if (len > BUFFER_SIZE - count) {
+            flush();
+            digest.update(bytes, off, len);
+        } else {
+            System.arraycopy(bytes, off, buffer, count, len);
+            count += len;
+        }
+        return this;
+    }
+
+    @Override
+    public PrimitiveSink putShort(short s) {
+        ensureCapacity(2);
+        buffer[count++] = (byte) s;
+        buffer[count++] = (byte) (s >>> 8);
+        return this;
+    }
+
+    @Override
+    public PrimitiveSink putInt(int i) {
+        ensureCapacity(4);
+        buffer[count++] = (byte) i;
+        buffer[count++] = (byte) (i >>> 8);
+        buffer[count++] = (byte) (i >>> 16);
+        buffer[count++] = (byte) (i >>> 24);
+        return this;
+    }
+
+    @Override
+    public PrimitiveSink putLong(long l) {
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[count++] = (byte) (l >>> (i * 8));
+        }
+        return this;
+    }
+
+    @Override
+    public PrimitiveSink putFloat(float f) {
+        return putInt(Float.floatToRawIntBits(f));
+    }
+
+    @Override
+    public PrimitiveSink putDouble(double d) {
+        return putLong(Double.doubleToRawLongBits(d));
+    }
+
+    @Override
+    public PrimitiveSink putBoolean(boolean b) {
+        return putByte(b ? (byte) 1 : (byte) 0);
+    }
+
+    @Override
+    public PrimitiveSink putChar(char c) {
+        ensureCapacity(2);
+        buffer[count++] = (byte) c;
+        buffer[count++] = (byte) (c >>> 8);
+        return this;
+    }
+
+    @Override
+    public PrimitiveSink putUnencodedChars(CharSequence charSequence) {
+        final int length = charSequence.length();
+        for (int i = 0; i < length; i++) {
+            putChar(charSequence.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public PrimitiveSink putString(CharSequence charSequence, Charset charset) {
+        return putBytes(charSequence.toString().getBytes(charset));
+    }
+}
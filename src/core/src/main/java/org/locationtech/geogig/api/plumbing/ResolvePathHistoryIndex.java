@@ -0,0 +1,41 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing;
+
+import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.porcelain.ConfigGet;
+import org.locationtech.geogig.storage.PathHistoryIndex;
+
+import com.google.common.base.Optional;
+
+/**
+ * Returns the repository's {@link PathHistoryIndex} as it is, without updating it, for read only
+ * commands to look up the changes of the commits that are {@link PathHistoryIndex#isIndexed
+ * indexed} and resort to comparing trees for the rest.
+ * <p>
+ * Returns {@link Optional#absent()} unless the index is enabled through the
+ * {@link PathHistoryIndex#ENABLED_CONFIG_KEY} config option.
+ * 
+ * @see UpdatePathHistoryIndex
+ */
+public class ResolvePathHistoryIndex extends AbstractGeoGigOp<Optional<PathHistoryIndex>> {
+
+    @Override
+    protected Optional<PathHistoryIndex> _call() {
+        Optional<String> enabled = command(ConfigGet.class).setName(
+                PathHistoryIndex.ENABLED_CONFIG_KEY).call();
+        if (!enabled.isPresent() || !Boolean.parseBoolean(enabled.get())) {
+            return Optional.absent();
+        }
+        // the repository's blob store rather than the context's one, so that commits made inside
+        // a transaction stay indexed after it's closed
+        return Optional.of(new PathHistoryIndex(repository().blobStore()));
+    }
+}
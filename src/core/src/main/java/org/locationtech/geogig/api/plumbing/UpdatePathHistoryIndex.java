@@ -0,0 +1,191 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.channels.FileLock;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.repository.Repository;
+import org.locationtech.geogig.storage.PathHistoryIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * Brings the {@link PathHistoryIndex} up to date with the history of the given commits, indexing
+ * any of them, or of their ancestors, that's not indexed yet.
+ * <p>
+ * Commits are indexed parents first, so the cost is proportional to the number of commits added
+ * since the last update, usually just one when called right after a commit is made. Commits
+ * created by other means (merge, rebase, fetch, etc.) are picked up the next time the index is
+ * updated for a descendant of them. Read only commands don't update the index, they get it through
+ * {@link ResolvePathHistoryIndex} instead.
+ * <p>
+ * Updates of the same repository are serialized, by a lock shared by all the instances of this
+ * command in the process and, for repositories on the local file system, by a lock on the
+ * {@code pathhistory.lock} file of the repository directory, so that concurrent updates don't
+ * overwrite each other's segments.
+ * <p>
+ * Does nothing and returns {@link Optional#absent()} unless the index is enabled through the
+ * {@link PathHistoryIndex#ENABLED_CONFIG_KEY} config option.
+ */
+public class UpdatePathHistoryIndex extends AbstractGeoGigOp<Optional<PathHistoryIndex>> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UpdatePathHistoryIndex.class);
+
+    private static final Striped<Lock> LOCKS = Striped.lock(64);
+
+    private static final String LOCK_FILE = "pathhistory.lock";
+
+    private List<ObjectId> commits = Lists.newArrayList();
+
+    private Map<ObjectId, Map<String, NodeRef>> knownChanges = Maps.newHashMap();
+
+    /**
+     * Adds a commit whose history shall be indexed
+     */
+    public UpdatePathHistoryIndex addCommit(ObjectId commitId) {
+        this.commits.add(commitId);
+        return this;
+    }
+
+    /**
+     * Adds a commit whose history shall be indexed, along with its already known
+     * {@link FindChangedPaths changed paths}, so that they're not searched for again
+     */
+    public UpdatePathHistoryIndex addCommit(ObjectId commitId, Map<String, NodeRef> changes) {
+        this.commits.add(commitId);
+        this.knownChanges.put(commitId, changes);
+        return this;
+    }
+
+    /**
+     * @return the up to date index, or {@link Optional#absent()} if it's not enabled
+     */
+    @Override
+    protected Optional<PathHistoryIndex> _call() {
+        final Optional<PathHistoryIndex> index = command(ResolvePathHistoryIndex.class).call();
+        if (!index.isPresent()) {
+            return index;
+        }
+        final Repository repository = repository();
+        final Lock lock = LOCKS.get(repository.getLocation());
+        lock.lock();
+        try (Closeable fileLock = lockFile(repository.getLocation())) {
+            update(repository, index.get());
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.unlock();
+        }
+        return index;
+    }
+
+    private void update(final Repository repository, final PathHistoryIndex index) {
+        // iterative post-order traversal, so that a commit is only marked as indexed after all
+        // its ancestors are
+        final Deque<ObjectId> stack = new ArrayDeque<>();
+        final Set<ObjectId> visited = Sets.newHashSet();
+        final Set<ObjectId> done = Sets.newHashSet();
+        for (ObjectId commitId : commits) {
+            if (!commitId.isNull()) {
+                stack.push(commitId);
+            }
+        }
+        int count = 0;
+        while (!stack.isEmpty()) {
+            final ObjectId commitId = stack.peek();
+            if (done.contains(commitId)) {
+                stack.pop();
+            } else if (visited.add(commitId)) {
+                if (index.isIndexed(commitId)) {
+                    done.add(commitId);
+                    stack.pop();
+                    continue;
+                }
+                for (ObjectId parentId : repository.getCommit(commitId).getParentIds()) {
+                    if (!visited.contains(parentId) && repository.commitExists(parentId)) {
+                        stack.push(parentId);
+                    }
+                }
+            } else {
+                stack.pop();
+                index(repository.getCommit(commitId), index);
+                done.add(commitId);
+                count++;
+            }
+        }
+        if (count > 0) {
+            LOGGER.debug("Indexed path history of {} commits", count);
+        }
+    }
+
+    /**
+     * Locks the repository's lock file against other processes, if it's on the local file system
+     */
+    private static Closeable lockFile(final URI location) throws IOException {
+        final File dir = "file".equals(location.getScheme()) ? new File(location) : null;
+        if (dir == null || !dir.isDirectory()) {
+            return new Closeable() {
+                @Override
+                public void close() {
+                    // nothing to release
+                }
+            };
+        }
+        final RandomAccessFile file = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+        final FileLock fileLock;
+        try {
+            fileLock = file.getChannel().lock();
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        return new Closeable() {
+            @Override
+            public void close() throws IOException {
+                try {
+                    fileLock.release();
+                } finally {
+                    file.close();
+                }
+            }
+        };
+    }
+
+    private void index(final RevCommit commit, final PathHistoryIndex index) {
+        Map<String, NodeRef> changes = knownChanges.get(commit.getId());
+        if (changes == null) {
+            changes = command(FindChangedPaths.class).setCommit(commit).call();
+        }
+        index.put(commit.getId(), changes);
+        index.setIndexed(commit.getId());
+    }
+}
@@ -0,0 +1,67 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.storage.ChangedPathsFilters;
+
+/**
+ * Stores the {@link ChangedPathsFilters changed paths filter} of a commit, out of the
+ * {@link FindChangedPaths paths changed} with respect to each of its parents.
+ * <p>
+ * Unless the changed paths are given, they're searched for and the search is cut short as soon as
+ * more than {@link ChangedPathsFilters#MAX_PATHS} changes are found, so the cost is bounded for
+ * large commits.
+ */
+public class WriteChangedPathsFilter extends AbstractGeoGigOp<Boolean> {
+
+    private RevCommit commit;
+
+    private Set<String> changedPaths;
+
+    public WriteChangedPathsFilter setCommit(RevCommit commit) {
+        this.commit = commit;
+        return this;
+    }
+
+    /**
+     * Sets the already known paths changed by the commit, so that they're not searched for again
+     */
+    public WriteChangedPathsFilter setChangedPaths(@Nullable Set<String> changedPaths) {
+        this.changedPaths = changedPaths;
+        return this;
+    }
+
+    /**
+     * @return {@code true} if a filter was stored, {@code false} if the commit has too many changes
+     */
+    @Override
+    protected Boolean _call() {
+        checkState(commit != null, "commit not set");
+        Set<String> changedPaths = this.changedPaths;
+        if (changedPaths == null) {
+            changedPaths = command(FindChangedPaths.class).setCommit(commit)
+                    .setMaxChanges(Long.valueOf(ChangedPathsFilters.MAX_PATHS)).call().keySet();
+        }
+        final ChangedPathsFilters filters = new ChangedPathsFilters(repository().blobStore());
+        if (changedPaths.size() > ChangedPathsFilters.MAX_PATHS) {
+            filters.put(commit.getId(), null);
+            return Boolean.FALSE;
+        }
+        filters.put(commit.getId(), changedPaths);
+        return Boolean.TRUE;
+    }
+}
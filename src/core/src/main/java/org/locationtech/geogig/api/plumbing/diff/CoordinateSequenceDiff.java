@@ -0,0 +1,1042 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing.diff;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.storage.datastream.Varint;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Computes and applies differences between two geometries working directly on their coordinates.
+ * <p>
+ * Each geometry is flattened to a sequence of tokens, one per (x, y) coordinate plus separators
+ * between sub-geometries and between polygon rings, stored as pairs of {@code long}s holding the
+ * raw bits of the ordinates. The token sequences are compared with Myers' O(ND) difference
+ * algorithm (using its linear space "middle snake" variant), so comparing two tokens is just
+ * comparing two pairs of {@code long}s, and no string representation of the geometries is ever
+ * built.
+ * <p>
+ * The resulting patch is a list of hunks, each one holding the deleted and inserted tokens and one
+ * token of context at each side. Applying a patch locates each hunk at its original position (as
+ * shifted by the preceding hunks) or otherwise at the nearest position where its context and
+ * deleted tokens match, which allows to apply a patch on a geometry that was modified elsewhere
+ * (e.g. to merge non conflicting edits to the same geometry).
+ * <p>
+ * Geometry collections of mixed types can't be rebuilt out of a token sequence, so a diff
+ * involving them is kept as a replacement of the whole geometry.
+ * <p>
+ * Patches have a compact binary representation, see {@link #toBytes()} and
+ * {@link #fromBytes(byte[])}.
+ */
+public final class CoordinateSequenceDiff {
+
+    /**
+     * NaN payloads used as separator tokens, they can't collide with the raw bits of any actual
+     * ordinate value
+     */
+    private static final long SUBGEOM = 0x7ff0000000000001L;
+
+    private static final long INNER_RING = 0x7ff0000000000002L;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte TOKEN_COORD = 0, TOKEN_SUBGEOM = 1, TOKEN_INNER_RING = 2;
+
+    private static final long[] NO_TOKENS = new long[0];
+
+    private static final GeometryFactory DEFAULT_FACTORY = new GeometryFactory();
+
+    enum GeometryType {
+        NONE, POINT, LINESTRING, LINEARRING, POLYGON, MULTIPOINT, MULTILINESTRING, MULTIPOLYGON, COLLECTION;
+
+        static GeometryType of(Optional<Geometry> geom) {
+            if (!geom.isPresent()) {
+                return NONE;
+            }
+            Geometry g = geom.get();
+            if (g instanceof Point) {
+                return POINT;
+            }
+            if (g instanceof LinearRing) {
+                return LINEARRING;
+            }
+            if (g instanceof LineString) {
+                return LINESTRING;
+            }
+            if (g instanceof Polygon) {
+                return POLYGON;
+            }
+            if (g instanceof MultiPoint) {
+                return MULTIPOINT;
+            }
+            if (g instanceof MultiLineString) {
+                return MULTILINESTRING;
+            }
+            if (g instanceof MultiPolygon) {
+                return MULTIPOLYGON;
+            }
+            return COLLECTION;
+        }
+    }
+
+    private static final class Hunk {
+
+        final int oldStart;
+
+        final int newStart;
+
+        final long[] before;
+
+        final long[] deleted;
+
+        final long[] inserted;
+
+        final long[] after;
+
+        Hunk(int oldStart, int newStart, long[] before, long[] deleted, long[] inserted,
+                long[] after) {
+            this.oldStart = oldStart;
+            this.newStart = newStart;
+            this.before = before;
+            this.deleted = deleted;
+            this.inserted = inserted;
+            this.after = after;
+        }
+
+        Hunk reversed() {
+            return new Hunk(newStart, oldStart, before, inserted, deleted, after);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Hunk)) {
+                return false;
+            }
+            Hunk h = (Hunk) o;
+            return oldStart == h.oldStart && newStart == h.newStart
+                    && Arrays.equals(before, h.before) && Arrays.equals(deleted, h.deleted)
+                    && Arrays.equals(inserted, h.inserted) && Arrays.equals(after, h.after);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * oldStart + newStart) + Arrays.hashCode(deleted);
+        }
+    }
+
+    private final GeometryType oldType;
+
+    private final GeometryType newType;
+
+    private final ImmutableList<Hunk> hunks;
+
+    /**
+     * Whole geometry replacement, only used when any of the geometries is a
+     * {@link GeometryType#COLLECTION}
+     */
+    @Nullable
+    private final Optional<Geometry> replacedGeom, replacementGeom;
+
+    private final int deletions;
+
+    private final int insertions;
+
+    private final int replacings;
+
+    /**
+     * Human readable representation of the diff, only available when the diff was computed rather
+     * than decoded
+     */
+    @Nullable
+    private final String diffCoordsString;
+
+    private CoordinateSequenceDiff(GeometryType oldType, GeometryType newType,
+            ImmutableList<Hunk> hunks, @Nullable Optional<Geometry> replacedGeom,
+            @Nullable Optional<Geometry> replacementGeom, int deletions, int insertions,
+            int replacings, @Nullable String diffCoordsString) {
+        this.oldType = oldType;
+        this.newType = newType;
+        this.hunks = hunks;
+        this.replacedGeom = replacedGeom;
+        this.replacementGeom = replacementGeom;
+        this.deletions = deletions;
+        this.insertions = insertions;
+        this.replacings = replacings;
+        this.diffCoordsString = diffCoordsString;
+    }
+
+    /**
+     * Computes the difference between two geometries
+     */
+    public static CoordinateSequenceDiff compute(Optional<Geometry> oldGeom,
+            Optional<Geometry> newGeom) {
+
+        final GeometryType oldType = GeometryType.of(oldGeom);
+        final GeometryType newType = GeometryType.of(newGeom);
+        final long[] a = tokenize(oldGeom);
+        final long[] b = tokenize(newGeom);
+        final int n = a.length / 2;
+        final int m = b.length / 2;
+
+        final boolean[] deleted = new boolean[n];
+        final boolean[] inserted = new boolean[m];
+        diff(a, 0, n, b, 0, m, deleted, inserted);
+
+        StringBuilder text = new StringBuilder();
+        if (oldType == newType) {
+            text.append(oldGeom.isPresent() ? oldGeom.get().getGeometryType() : "").append(' ');
+        } else {
+            if (oldGeom.isPresent()) {
+                text.append('[').append(oldGeom.get().getGeometryType()).append("] ");
+            }
+            if (newGeom.isPresent()) {
+                text.append('(').append(newGeom.get().getGeometryType()).append(") ");
+            }
+        }
+
+        ImmutableList.Builder<Hunk> hunks = ImmutableList.builder();
+        int totalDeletions = 0, totalInsertions = 0, replacings = 0;
+        int i = 0, j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && !deleted[i] && !inserted[j]) {
+                appendToken(text, a, i);
+                text.append(' ');
+                i++;
+                j++;
+                continue;
+            }
+            final int i0 = i, j0 = j;
+            while (i < n && deleted[i]) {
+                i++;
+            }
+            while (j < m && inserted[j]) {
+                j++;
+            }
+            long[] before = i0 == 0 ? NO_TOKENS : Arrays.copyOfRange(a, 2 * (i0 - 1), 2 * i0);
+            long[] after = i == n ? NO_TOKENS : Arrays.copyOfRange(a, 2 * i, 2 * (i + 1));
+            long[] del = Arrays.copyOfRange(a, 2 * i0, 2 * i);
+            long[] ins = Arrays.copyOfRange(b, 2 * j0, 2 * j);
+            hunks.add(new Hunk(i0, j0, before, del, ins, after));
+
+            appendRun(text, del, '[', ']');
+            appendRun(text, ins, '(', ')');
+
+            final int delCoords = countCoordinates(del);
+            final int insCoords = countCoordinates(ins);
+            replacings += Math.min(delCoords, insCoords);
+            totalDeletions += Math.max(delCoords - insCoords, 0);
+            totalInsertions += Math.max(insCoords - delCoords, 0);
+        }
+
+        Optional<Geometry> replaced = null, replacement = null;
+        ImmutableList<Hunk> patch = hunks.build();
+        if (oldType == GeometryType.COLLECTION || newType == GeometryType.COLLECTION) {
+            // hunks were still computed for the counts and the human readable diff
+            replaced = oldGeom;
+            replacement = newGeom;
+            patch = ImmutableList.of();
+        }
+        return new CoordinateSequenceDiff(oldType, newType, patch, replaced, replacement,
+                totalDeletions, totalInsertions, replacings, text.toString().trim());
+    }
+
+    public int getDeletions() {
+        return deletions;
+    }
+
+    public int getInsertions() {
+        return insertions;
+    }
+
+    public int getReplacings() {
+        return replacings;
+    }
+
+    /**
+     * @return a human readable representation of the diff, as described in
+     *         {@link LCSGeometryDiffImpl#getDiffCoordsString()}, or {@code null} if this diff was
+     *         {@link #fromBytes decoded} instead of computed
+     */
+    @Nullable
+    public String getDiffCoordsString() {
+        return diffCoordsString;
+    }
+
+    public CoordinateSequenceDiff reversed() {
+        ImmutableList.Builder<Hunk> reversed = ImmutableList.builder();
+        for (Hunk h : hunks) {
+            reversed.add(h.reversed());
+        }
+        return new CoordinateSequenceDiff(newType, oldType, reversed.build(), replacementGeom,
+                replacedGeom, insertions, deletions, replacings, null);
+    }
+
+    public boolean canBeAppliedOn(Optional<Geometry> geom) {
+        if (GeometryType.of(geom) != oldType) {
+            return false;
+        }
+        if (replacedGeom != null) {
+            return sameGeometry(replacedGeom, geom);
+        }
+        return apply(tokenize(geom)) != null;
+    }
+
+    public Optional<Geometry> applyOn(Optional<Geometry> geom) {
+        checkState(GeometryType.of(geom) == oldType, "Patch can't be applied on a %s",
+                GeometryType.of(geom));
+        if (replacedGeom != null) {
+            checkState(sameGeometry(replacedGeom, geom), "Patch can't be applied");
+            return replacementGeom;
+        }
+        final long[] result = apply(tokenize(geom));
+        checkState(result != null, "Patch can't be applied");
+        if (newType == GeometryType.NONE) {
+            return Optional.absent();
+        }
+        GeometryFactory factory = geom.isPresent() ? geom.get().getFactory() : DEFAULT_FACTORY;
+        return Optional.of(build(newType, result, factory));
+    }
+
+    private static boolean sameGeometry(Optional<Geometry> g1, Optional<Geometry> g2) {
+        if (g1.isPresent() && g2.isPresent()) {
+            return g1.get().equalsExact(g2.get());
+        }
+        return g1.isPresent() == g2.isPresent();
+    }
+
+    /**
+     * @return the result of applying the hunks to {@code target}, or {@code null} if any of them
+     *         could not be located
+     */
+    @Nullable
+    private long[] apply(final long[] target) {
+        final int targetSize = target.length / 2;
+        long[] result = new long[target.length + 64];
+        int resultSize = 0;
+        int pos = 0;
+        int shift = 0;
+        TokenIndex index = null;
+        for (Hunk h : hunks) {
+            final int expected = h.oldStart + shift;
+            final int at;
+            if (expected >= pos && matches(h, target, expected)) {
+                at = expected;
+            } else {
+                if (index == null) {
+                    index = new TokenIndex(target);
+                }
+                at = index.locate(h, expected, pos);
+            }
+            if (at < 0) {
+                return null;
+            }
+            final int copy = 2 * (at - pos);
+            final int ins = h.inserted.length;
+            if (resultSize + copy + ins > result.length) {
+                result = Arrays.copyOf(result, Math.max(2 * result.length, resultSize + copy
+                        + ins));
+            }
+            System.arraycopy(target, 2 * pos, result, resultSize, copy);
+            resultSize += copy;
+            System.arraycopy(h.inserted, 0, result, resultSize, ins);
+            resultSize += ins;
+            pos = at + h.deleted.length / 2;
+            shift = at - h.oldStart;
+        }
+        final int rest = 2 * (targetSize - pos);
+        if (resultSize + rest > result.length) {
+            result = Arrays.copyOf(result, resultSize + rest);
+        }
+        System.arraycopy(target, 2 * pos, result, resultSize, rest);
+        resultSize += rest;
+        return Arrays.copyOf(result, resultSize);
+    }
+
+    /**
+     * The positions of each token of a sequence, sorted by token hash and position, to locate the
+     * hunks that don't apply at their expected position with a binary search instead of a scan of
+     * the whole sequence for each of them
+     */
+    private static final class TokenIndex {
+
+        private final long[] target;
+
+        /**
+         * Token hash in the high 32 bits, token position in the low ones
+         */
+        private final long[] sorted;
+
+        TokenIndex(long[] target) {
+            this.target = target;
+            final int size = target.length / 2;
+            this.sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = entry(hash(target, i), i);
+            }
+            Arrays.sort(sorted);
+        }
+
+        private static long entry(int hash, int position) {
+            return ((long) hash << 32) | (position & 0xFFFFFFFFL);
+        }
+
+        private static int hash(long[] tokens, int i) {
+            long h = tokens[2 * i] * 0x9E3779B97F4A7C15L + tokens[2 * i + 1];
+            return (int) (h ^ (h >>> 32));
+        }
+
+        /**
+         * @return the position in the target where {@code h} applies that's closest to
+         *         {@code expected}, the lowest one if two are equally close; {@code -1} if it
+         *         doesn't match anywhere at or after {@code minPos}
+         */
+        int locate(final Hunk h, final int expected, final int minPos) {
+            // a token that must be at a fixed offset of the position the hunk applies at
+            final long[] anchor;
+            final int offset;
+            if (h.deleted.length > 0) {
+                anchor = h.deleted;
+                offset = 0;
+            } else if (h.before.length > 0) {
+                anchor = h.before;
+                offset = -1;
+            } else if (h.after.length > 0) {
+                anchor = h.after;
+                offset = 0;
+            } else {
+                return minPos == 0 && matches(h, target, 0) ? 0 : -1;
+            }
+            final int hash = hash(anchor, 0);
+            final long lo = entry(hash, 0);
+            final long hi = entry(hash, -1);
+            final int expectedAnchor = Math.max(0, expected + offset);
+            int i = Arrays.binarySearch(sorted, entry(hash, expectedAnchor));
+            if (i < 0) {
+                i = -i - 1;
+            }
+            int below = -1;
+            for (int k = i - 1; k >= 0 && sorted[k] >= lo; k--) {
+                int p = (int) sorted[k] - offset;
+                if (p < minPos) {
+                    break;
+                }
+                if (matches(h, target, p)) {
+                    below = p;
+                    break;
+                }
+            }
+            int above = -1;
+            for (int k = i; k < sorted.length && sorted[k] <= hi; k++) {
+                int p = (int) sorted[k] - offset;
+                if (p >= minPos && matches(h, target, p)) {
+                    above = p;
+                    break;
+                }
+            }
+            if (below == -1) {
+                return above;
+            }
+            if (above == -1 || expected - below <= above - expected) {
+                return below;
+            }
+            return above;
+        }
+    }
+
+    private static boolean matches(Hunk h, long[] t, int p) {
+        final int targetSize = t.length / 2;
+        final int d = h.deleted.length / 2;
+        if (p < 0 || p + d > targetSize) {
+            return false;
+        }
+        if (h.before.length == 0) {
+            if (p != 0) {
+                return false;
+            }
+        } else if (p == 0 || !equal(h.before, 0, t, p - 1)) {
+            return false;
+        }
+        if (h.after.length == 0) {
+            if (p + d != targetSize) {
+                return false;
+            }
+        } else if (p + d >= targetSize || !equal(h.after, 0, t, p + d)) {
+            return false;
+        }
+        for (int k = 0; k < d; k++) {
+            if (!equal(h.deleted, k, t, p + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(long[] a, int i, long[] b, int j) {
+        return a[2 * i] == b[2 * j] && a[2 * i + 1] == b[2 * j + 1];
+    }
+
+    /**
+     * Marks the tokens in {@code a[aLo, aHi)} that are not part of the longest common subsequence
+     * with {@code b[bLo, bHi)} as deleted, and the ones in {@code b[bLo, bHi)} as inserted.
+     */
+    private static void diff(long[] a, int aLo, int aHi, long[] b, int bLo, int bHi,
+            boolean[] deleted, boolean[] inserted) {
+
+        while (aLo < aHi && bLo < bHi && equal(a, aLo, b, bLo)) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && equal(a, aHi - 1, b, bHi - 1)) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            Arrays.fill(inserted, bLo, bHi, true);
+            return;
+        }
+        if (bLo == bHi) {
+            Arrays.fill(deleted, aLo, aHi, true);
+            return;
+        }
+        if (aHi - aLo == 1 || bHi - bLo == 1) {
+            diffSingle(a, aLo, aHi, b, bLo, bHi, deleted, inserted);
+            return;
+        }
+        bisect(a, aLo, aHi, b, bLo, bHi, deleted, inserted);
+    }
+
+    /**
+     * Handles the case where one of the ranges has a single token, not suitable for
+     * {@link #bisect}
+     */
+    private static void diffSingle(long[] a, int aLo, int aHi, long[] b, int bLo, int bHi,
+            boolean[] deleted, boolean[] inserted) {
+        if (aHi - aLo == 1) {
+            for (int j = bLo; j < bHi; j++) {
+                if (equal(a, aLo, b, j)) {
+                    Arrays.fill(inserted, bLo, j, true);
+                    Arrays.fill(inserted, j + 1, bHi, true);
+                    return;
+                }
+            }
+        } else {
+            for (int i = aLo; i < aHi; i++) {
+                if (equal(a, i, b, bLo)) {
+                    Arrays.fill(deleted, aLo, i, true);
+                    Arrays.fill(deleted, i + 1, aHi, true);
+                    return;
+                }
+            }
+        }
+        Arrays.fill(deleted, aLo, aHi, true);
+        Arrays.fill(inserted, bLo, bHi, true);
+    }
+
+    /**
+     * Finds the "middle snake" of the edit graph running the forward and reverse paths at the same
+     * time, and recurses on both sides of it. Adapted from {@code diff_bisect} in
+     * {@link DiffMatchPatch}.
+     */
+    private static void bisect(long[] a, int aLo, int aHi, long[] b, int bLo, int bHi,
+            boolean[] deleted, boolean[] inserted) {
+
+        final int n = aHi - aLo;
+        final int m = bHi - bLo;
+        final int maxD = (n + m + 1) / 2;
+        final int vOffset = maxD;
+        final int vLength = 2 * maxD;
+        final int[] v1 = new int[vLength];
+        final int[] v2 = new int[vLength];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[vOffset + 1] = 0;
+        v2[vOffset + 1] = 0;
+        final int delta = n - m;
+        // if the total number of tokens is odd, the front path will collide with the reverse path
+        final boolean front = (delta % 2 != 0);
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        for (int d = 0; d < maxD; d++) {
+            // walk the front path one step
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                final int k1Offset = vOffset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1])) {
+                    x1 = v1[k1Offset + 1];
+                } else {
+                    x1 = v1[k1Offset - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && equal(a, aLo + x1, b, bLo + y1)) {
+                    x1++;
+                    y1++;
+                }
+                v1[k1Offset] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    final int k2Offset = vOffset + delta - k1;
+                    if (k2Offset >= 0 && k2Offset < vLength && v2[k2Offset] != -1) {
+                        final int x2 = n - v2[k2Offset];
+                        if (x1 >= x2) {
+                            split(a, aLo, aHi, b, bLo, bHi, x1, y1, deleted, inserted);
+                            return;
+                        }
+                    }
+                }
+            }
+            // walk the reverse path one step
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                final int k2Offset = vOffset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1])) {
+                    x2 = v2[k2Offset + 1];
+                } else {
+                    x2 = v2[k2Offset - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m && equal(a, aHi - x2 - 1, b, bHi - y2 - 1)) {
+                    x2++;
+                    y2++;
+                }
+                v2[k2Offset] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    final int k1Offset = vOffset + delta - k2;
+                    if (k1Offset >= 0 && k1Offset < vLength && v1[k1Offset] != -1) {
+                        final int x1 = v1[k1Offset];
+                        final int y1 = vOffset + x1 - k1Offset;
+                        if (x1 >= n - x2) {
+                            split(a, aLo, aHi, b, bLo, bHi, x1, y1, deleted, inserted);
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+        // no common tokens at all
+        Arrays.fill(deleted, aLo, aHi, true);
+        Arrays.fill(inserted, bLo, bHi, true);
+    }
+
+    private static void split(long[] a, int aLo, int aHi, long[] b, int bLo, int bHi, int x,
+            int y, boolean[] deleted, boolean[] inserted) {
+        diff(a, aLo, aLo + x, b, bLo, bLo + y, deleted, inserted);
+        diff(a, aLo + x, aHi, b, bLo + y, bHi, deleted, inserted);
+    }
+
+    private static int countCoordinates(long[] tokens) {
+        int count = 0;
+        for (int i = 0; i < tokens.length; i += 2) {
+            if (!isSeparator(tokens[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isSeparator(long x) {
+        return x == SUBGEOM || x == INNER_RING;
+    }
+
+    private static void appendToken(StringBuilder sb, long[] tokens, int index) {
+        final long x = tokens[2 * index];
+        if (x == SUBGEOM) {
+            sb.append(LCSGeometryDiffImpl.SUBGEOM_SEPARATOR);
+        } else if (x == INNER_RING) {
+            sb.append(LCSGeometryDiffImpl.INNER_RING_SEPARATOR);
+        } else {
+            sb.append(Double.toString(Double.longBitsToDouble(x))).append(',')
+                    .append(Double.toString(Double.longBitsToDouble(tokens[2 * index + 1])));
+        }
+    }
+
+    /**
+     * Appends a run of deleted or inserted tokens, enclosing consecutive coordinates between
+     * {@code open} and {@code close}, and leaving separators outside of them.
+     */
+    private static void appendRun(StringBuilder sb, long[] tokens, char open, char close) {
+        boolean inGroup = false;
+        for (int i = 0; i < tokens.length / 2; i++) {
+            if (isSeparator(tokens[2 * i])) {
+                if (inGroup) {
+                    sb.append(close).append(' ');
+                    inGroup = false;
+                }
+                appendToken(sb, tokens, i);
+                sb.append(' ');
+            } else {
+                if (inGroup) {
+                    sb.append(' ');
+                } else {
+                    sb.append(open);
+                    inGroup = true;
+                }
+                appendToken(sb, tokens, i);
+            }
+        }
+        if (inGroup) {
+            sb.append(close).append(' ');
+        }
+    }
+
+    private static final class TokenBuffer {
+
+        long[] tokens = new long[64];
+
+        int size;
+
+        void add(long x, long y) {
+            if (size + 2 > tokens.length) {
+                tokens = Arrays.copyOf(tokens, 2 * tokens.length);
+            }
+            tokens[size++] = x;
+            tokens[size++] = y;
+        }
+
+        void add(CoordinateSequence seq) {
+            final int n = seq.size();
+            if (size + 2 * n > tokens.length) {
+                tokens = Arrays.copyOf(tokens, Math.max(2 * tokens.length, size + 2 * n));
+            }
+            for (int i = 0; i < n; i++) {
+                tokens[size++] = Double.doubleToRawLongBits(seq.getX(i));
+                tokens[size++] = Double.doubleToRawLongBits(seq.getY(i));
+            }
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(tokens, size);
+        }
+    }
+
+    private static long[] tokenize(Optional<Geometry> geom) {
+        if (!geom.isPresent()) {
+            return NO_TOKENS;
+        }
+        TokenBuffer buff = new TokenBuffer();
+        tokenize(geom.get(), buff);
+        return buff.toArray();
+    }
+
+    private static void tokenize(Geometry geom, TokenBuffer buff) {
+        final int n = geom.getNumGeometries();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                buff.add(SUBGEOM, 0L);
+            }
+            final Geometry part = geom.getGeometryN(i);
+            if (part instanceof Polygon) {
+                Polygon poly = (Polygon) part;
+                buff.add(poly.getExteriorRing().getCoordinateSequence());
+                for (int r = 0; r < poly.getNumInteriorRing(); r++) {
+                    buff.add(INNER_RING, 0L);
+                    buff.add(poly.getInteriorRingN(r).getCoordinateSequence());
+                }
+            } else if (part instanceof LineString) {
+                buff.add(((LineString) part).getCoordinateSequence());
+            } else if (part instanceof Point) {
+                buff.add(((Point) part).getCoordinateSequence());
+            } else {
+                // nested collection, only used for counting since it's not rebuilt from tokens
+                buff.add(part.getFactory().getCoordinateSequenceFactory()
+                        .create(part.getCoordinates()));
+            }
+        }
+    }
+
+    private static Geometry build(GeometryType type, long[] tokens, GeometryFactory factory) {
+        final List<List<double[]>> parts = split(tokens, SUBGEOM);
+        switch (type) {
+        case POINT:
+            return point(parts.get(0), factory);
+        case LINESTRING:
+            return factory.createLineString(coordinates(parts.get(0), factory));
+        case LINEARRING:
+            return factory.createLinearRing(coordinates(parts.get(0), factory));
+        case POLYGON:
+            return polygon(parts.get(0), factory);
+        case MULTIPOINT: {
+            if (tokens.length == 0) {
+                return factory.createMultiPoint(new Point[0]);
+            }
+            Point[] points = new Point[parts.size()];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = point(parts.get(i), factory);
+            }
+            return factory.createMultiPoint(points);
+        }
+        case MULTILINESTRING: {
+            if (tokens.length == 0) {
+                return factory.createMultiLineString(new LineString[0]);
+            }
+            LineString[] lines = new LineString[parts.size()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = factory.createLineString(coordinates(parts.get(i), factory));
+            }
+            return factory.createMultiLineString(lines);
+        }
+        case MULTIPOLYGON: {
+            if (tokens.length == 0) {
+                return factory.createMultiPolygon(new Polygon[0]);
+            }
+            Polygon[] polygons = new Polygon[parts.size()];
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = polygon(parts.get(i), factory);
+            }
+            return factory.createMultiPolygon(polygons);
+        }
+        default:
+            throw new IllegalArgumentException("Can't build geometry of type " + type);
+        }
+    }
+
+    /**
+     * Splits a token sequence by {@code separator}, returning each part as a list of tokens, where
+     * each token is a {@code double[]{x, y}}, or {@code double[]{NaN}} for an inner ring separator
+     */
+    private static List<List<double[]>> split(long[] tokens, long separator) {
+        List<List<double[]>> parts = new ArrayList<>();
+        List<double[]> current = new ArrayList<>();
+        parts.add(current);
+        for (int i = 0; i < tokens.length; i += 2) {
+            if (tokens[i] == separator) {
+                current = new ArrayList<>();
+                parts.add(current);
+            } else if (tokens[i] == INNER_RING) {
+                current.add(new double[] { Double.NaN });
+            } else {
+                current.add(new double[] { Double.longBitsToDouble(tokens[i]),
+                        Double.longBitsToDouble(tokens[i + 1]) });
+            }
+        }
+        return parts;
+    }
+
+    private static Point point(List<double[]> coords, GeometryFactory factory) {
+        return factory.createPoint(coordinates(coords, factory));
+    }
+
+    private static Polygon polygon(List<double[]> tokens, GeometryFactory factory) {
+        List<CoordinateSequence> rings = new ArrayList<>();
+        List<double[]> ring = new ArrayList<>();
+        for (double[] token : tokens) {
+            if (token.length == 1) {
+                rings.add(coordinates(ring, factory));
+                ring = new ArrayList<>();
+            } else {
+                ring.add(token);
+            }
+        }
+        rings.add(coordinates(ring, factory));
+
+        LinearRing shell = factory.createLinearRing(rings.get(0));
+        LinearRing[] holes = new LinearRing[rings.size() - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = factory.createLinearRing(rings.get(i + 1));
+        }
+        return factory.createPolygon(shell, holes);
+    }
+
+    private static CoordinateSequence coordinates(List<double[]> coords, GeometryFactory factory) {
+        CoordinateSequence seq = factory.getCoordinateSequenceFactory().create(coords.size(), 2);
+        for (int i = 0; i < coords.size(); i++) {
+            double[] c = coords.get(i);
+            seq.setOrdinate(i, 0, c[0]);
+            seq.setOrdinate(i, 1, c[1]);
+        }
+        return seq;
+    }
+
+    /**
+     * Encodes this diff in its binary format.
+     */
+    public byte[] toBytes() {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        try {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(oldType.ordinal());
+            out.writeByte(newType.ordinal());
+            Varint.writeUnsignedVarInt(deletions, out);
+            Varint.writeUnsignedVarInt(insertions, out);
+            Varint.writeUnsignedVarInt(replacings, out);
+            if (replacedGeom != null) {
+                out.writeBoolean(true);
+                writeGeometry(replacedGeom, out);
+                writeGeometry(replacementGeom, out);
+            } else {
+                out.writeBoolean(false);
+                Varint.writeUnsignedVarInt(hunks.size(), out);
+                for (Hunk h : hunks) {
+                    Varint.writeUnsignedVarInt(h.oldStart, out);
+                    Varint.writeUnsignedVarInt(h.newStart, out);
+                    writeTokens(h.before, out);
+                    writeTokens(h.deleted, out);
+                    writeTokens(h.inserted, out);
+                    writeTokens(h.after, out);
+                }
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a diff encoded by {@link #toBytes()}
+     */
+    public static CoordinateSequenceDiff fromBytes(byte[] bytes) {
+        ByteArrayDataInput in = ByteStreams.newDataInput(bytes);
+        try {
+            final byte version = in.readByte();
+            checkArgument(version == FORMAT_VERSION, "Unknown geometry diff format version: %s",
+                    version);
+            final GeometryType oldType = GeometryType.values()[in.readByte()];
+            final GeometryType newType = GeometryType.values()[in.readByte()];
+            final int deletions = Varint.readUnsignedVarInt(in);
+            final int insertions = Varint.readUnsignedVarInt(in);
+            final int replacings = Varint.readUnsignedVarInt(in);
+            if (in.readBoolean()) {
+                Optional<Geometry> replaced = readGeometry(in);
+                Optional<Geometry> replacement = readGeometry(in);
+                return new CoordinateSequenceDiff(oldType, newType, ImmutableList.<Hunk> of(),
+                        replaced, replacement, deletions, insertions, replacings, null);
+            }
+            final int size = Varint.readUnsignedVarInt(in);
+            ImmutableList.Builder<Hunk> hunks = ImmutableList.builder();
+            for (int i = 0; i < size; i++) {
+                int oldStart = Varint.readUnsignedVarInt(in);
+                int newStart = Varint.readUnsignedVarInt(in);
+                long[] before = readTokens(in);
+                long[] deleted = readTokens(in);
+                long[] inserted = readTokens(in);
+                long[] after = readTokens(in);
+                hunks.add(new Hunk(oldStart, newStart, before, deleted, inserted, after));
+            }
+            return new CoordinateSequenceDiff(oldType, newType, hunks.build(), null, null,
+                    deletions, insertions, replacings, null);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static void writeTokens(long[] tokens, DataOutput out) throws IOException {
+        Varint.writeUnsignedVarInt(tokens.length / 2, out);
+        for (int i = 0; i < tokens.length; i += 2) {
+            final long x = tokens[i];
+            if (x == SUBGEOM) {
+                out.writeByte(TOKEN_SUBGEOM);
+            } else if (x == INNER_RING) {
+                out.writeByte(TOKEN_INNER_RING);
+            } else {
+                out.writeByte(TOKEN_COORD);
+                out.writeLong(x);
+                out.writeLong(tokens[i + 1]);
+            }
+        }
+    }
+
+    private static long[] readTokens(DataInput in) throws IOException {
+        final int size = Varint.readUnsignedVarInt(in);
+        long[] tokens = new long[2 * size];
+        for (int i = 0; i < tokens.length; i += 2) {
+            final byte kind = in.readByte();
+            switch (kind) {
+            case TOKEN_SUBGEOM:
+                tokens[i] = SUBGEOM;
+                break;
+            case TOKEN_INNER_RING:
+                tokens[i] = INNER_RING;
+                break;
+            case TOKEN_COORD:
+                tokens[i] = in.readLong();
+                tokens[i + 1] = in.readLong();
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid token type: " + kind);
+            }
+        }
+        return tokens;
+    }
+
+    private static void writeGeometry(Optional<Geometry> geom, DataOutput out) throws IOException {
+        if (geom.isPresent()) {
+            byte[] wkb = new WKBWriter().write(geom.get());
+            Varint.writeUnsignedVarInt(wkb.length, out);
+            out.write(wkb);
+        } else {
+            Varint.writeUnsignedVarInt(0, out);
+        }
+    }
+
+    private static Optional<Geometry> readGeometry(DataInput in) throws IOException {
+        final int length = Varint.readUnsignedVarInt(in);
+        if (length == 0) {
+            return Optional.absent();
+        }
+        byte[] wkb = new byte[length];
+        in.readFully(wkb);
+        try {
+            return Optional.of(new WKBReader().read(wkb));
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CoordinateSequenceDiff)) {
+            return false;
+        }
+        CoordinateSequenceDiff d = (CoordinateSequenceDiff) o;
+        return oldType == d.oldType && newType == d.newType && hunks.equals(d.hunks)
+                && (replacedGeom == null ? d.replacedGeom == null : d.replacedGeom != null
+                        && sameGeometry(replacedGeom, d.replacedGeom)
+                        && sameGeometry(replacementGeom, d.replacementGeom));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * oldType.hashCode() + hunks.hashCode();
+    }
+}
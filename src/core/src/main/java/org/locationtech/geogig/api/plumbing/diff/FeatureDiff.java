@@ -176,6 +176,16 @@ public class FeatureDiff {
      * @return
      */
     public String asText() {
+        return asText(false);
+    }
+
+    /**
+     * Returns a serialized text version of this object
+     * 
+     * @param binaryGeometryDiffs whether to write the diffs of modified geometries in the binary
+     *        format, see {@link LCSGeometryDiffImpl#asText(boolean)}
+     */
+    public String asText(boolean binaryGeometryDiffs) {
 
         StringBuilder sb = new StringBuilder();
         Set<Entry<PropertyDescriptor, AttributeDiff>> entries = diffs.entrySet();
@@ -184,7 +194,9 @@ public class FeatureDiff {
             Entry<PropertyDescriptor, AttributeDiff> entry = iter.next();
             PropertyDescriptor pd = entry.getKey();
             AttributeDiff ad = entry.getValue();
-            sb.append(pd.getName().toString() + "\t" + ad.asText() + "\n");
+            String text = ad instanceof GeometryAttributeDiff ? ((GeometryAttributeDiff) ad)
+                    .asText(binaryGeometryDiffs) : ad.asText();
+            sb.append(pd.getName().toString() + "\t" + text + "\n");
         }
         return sb.toString();
 
@@ -214,10 +226,40 @@ public class FeatureDiff {
             return false;
         }
         FeatureDiff f = (FeatureDiff) o;
-        return f.asText().equals(asText());
+        if (f.diffs.size() != diffs.size()) {
+            return false;
+        }
+        Map<String, AttributeDiff> otherDiffs = Maps.newHashMap();
+        for (Entry<PropertyDescriptor, AttributeDiff> entry : f.diffs.entrySet()) {
+            otherDiffs.put(entry.getKey().getName().toString(), entry.getValue());
+        }
+        for (Entry<PropertyDescriptor, AttributeDiff> entry : diffs.entrySet()) {
+            AttributeDiff ad = entry.getValue();
+            AttributeDiff otherAd = otherDiffs.get(entry.getKey().getName().toString());
+            if (otherAd == null || !sameChange(ad, otherAd)) {
+                return false;
+            }
+        }
+        return true;
         // return f.diffs.equals(diffs) && f.path.equals(path);
     }
 
+    /**
+     * Compares modified geometries on their coordinate sequence diffs, instead of on the text
+     * patches over their WKT that {@link AttributeDiff#asText()} writes, and any other attribute
+     * on its text
+     */
+    private static boolean sameChange(AttributeDiff ad, AttributeDiff otherAd) {
+        if (ad instanceof GeometryAttributeDiff && otherAd instanceof GeometryAttributeDiff) {
+            LCSGeometryDiffImpl diff = ((GeometryAttributeDiff) ad).getDiff();
+            LCSGeometryDiffImpl otherDiff = ((GeometryAttributeDiff) otherAd).getDiff();
+            if (diff != null && otherDiff != null) {
+                return ad.getType().equals(otherAd.getType()) && diff.equals(otherDiff);
+            }
+        }
+        return ad.asText().equals(otherAd.asText());
+    }
+
     /**
      * Checks whether a FeatureDiff conflicts with this one
      * 
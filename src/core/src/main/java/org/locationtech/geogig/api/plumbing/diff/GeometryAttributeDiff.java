@@ -147,6 +147,14 @@ public class GeometryAttributeDiff implements AttributeDiff {
 
     @Override
     public String asText() {
+        return asText(false);
+    }
+
+    /**
+     * @param binary whether to write a modified geometry's diff in the binary format, see
+     *        {@link LCSGeometryDiffImpl#asText(boolean)}
+     */
+    public String asText(boolean binary) {
         switch (type) {
         case ADDED:
             return type.name().toCharArray()[0]
@@ -160,7 +168,7 @@ public class GeometryAttributeDiff implements AttributeDiff {
                             .orNull()));
         case MODIFIED:
         default:
-            return type.name().toCharArray()[0] + "\t" + diff.asText();
+            return type.name().toCharArray()[0] + "\t" + diff.asText(binary);
         }
     }
 
@@ -9,35 +9,28 @@
  */
 package org.locationtech.geogig.api.plumbing.diff;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.locationtech.geogig.api.plumbing.diff.DiffMatchPatch.Diff;
-import org.locationtech.geogig.api.plumbing.diff.DiffMatchPatch.LinesToCharsResult;
 import org.locationtech.geogig.api.plumbing.diff.DiffMatchPatch.Operation;
 import org.locationtech.geogig.api.plumbing.diff.DiffMatchPatch.Patch;
 import org.locationtech.geogig.storage.FieldType;
 import org.locationtech.geogig.storage.text.TextValueSerializer;
 
-import com.google.common.base.Function;
-import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Splitter;
-import com.google.common.collect.Iterators;
-import com.vividsolutions.jts.geom.Coordinate;
+import com.google.common.io.BaseEncoding;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.Polygon;
 
 /**
  * An class that computes differences between geometries using a Longest-Common-Subsequence
- * algorithm on string representations of them
- * 
+ * algorithm on the sequences of their coordinates.
+ * <p>
+ * The actual work is done by {@link CoordinateSequenceDiff}. {@link #asText()} still writes the
+ * text patch over the WKT representation of the geometries that older versions read, while
+ * {@link #asText(boolean) asText(true)} writes the coordinate sequence diff itself, which is
+ * smaller and faster to apply but can only be read by versions that know about it.
  */
 public class LCSGeometryDiffImpl {
 
@@ -45,6 +38,26 @@ public class LCSGeometryDiffImpl {
 
     public static final String INNER_RING_SEPARATOR = "@";
 
+    /**
+     * Prefix of the Base64 encoded {@link CoordinateSequenceDiff} in {@link #asText(boolean)}, as
+     * opposed to text patches, which always start with {@code @@}
+     */
+    private static final String BINARY_PREFIX = "B:";
+
+    @Nullable
+    private CoordinateSequenceDiff coordsDiff;
+
+    /**
+     * The geometries a computed diff was created from, to create its text patch on demand
+     */
+    @Nullable
+    private Optional<Geometry> oldGeom, newGeom;
+
+    /**
+     * Patch over the WKT representation of the geometries, present for diffs parsed from the text
+     * format and created on demand for computed ones
+     */
+    @Nullable
     private LinkedList<Patch> patches;
 
     private DiffMatchPatch diffMatchPatch;
@@ -58,28 +71,18 @@ public class LCSGeometryDiffImpl {
     private String diffText;
 
     public LCSGeometryDiffImpl(Optional<Geometry> oldGeom, Optional<Geometry> newGeom) {
-        String oldText = oldGeom.isPresent() ? oldGeom.get().toText() : "";
-        String newText = newGeom.isPresent() ? newGeom.get().toText() : "";
-        diffMatchPatch = new DiffMatchPatch();
-        LinkedList<Diff> diffs = diffMatchPatch.diff_main(oldText, newText);
-        patches = diffMatchPatch.patch_make(diffs);
-
-        // to calculate number of edits in the geometry, we do a diffing based on a string
-        // representation of the coordinates of the geometry, instead of the WKT.
-        // This is more more practical for counting added/removed/edited points and generating a
-        // human-readable and easy-to-parse string representation of the diff.
-        // NOTE! This is limited to geometries with less than 65535 different points, and might
-        // yield wrong results for geometries over that limit.
-        // This is a temporary hack, until a better solution is developed.
-
-        oldText = geomToStringOfCoordinates(oldGeom);
-        newText = geomToStringOfCoordinates(newGeom);
-        LinesToCharsResult chars = coordsToChars(oldText, newText);
-        diffs = diffMatchPatch.diff_main(chars.chars1, chars.chars2);
-        charsToCoords(diffs, chars.lineArray);
-
-        processDiffs(diffs);
+        this(CoordinateSequenceDiff.compute(oldGeom, newGeom), oldGeom, newGeom);
+    }
 
+    private LCSGeometryDiffImpl(CoordinateSequenceDiff coordsDiff,
+            @Nullable Optional<Geometry> oldGeom, @Nullable Optional<Geometry> newGeom) {
+        this.coordsDiff = coordsDiff;
+        this.oldGeom = oldGeom;
+        this.newGeom = newGeom;
+        this.totalDeletions = coordsDiff.getDeletions();
+        this.totalInsertions = coordsDiff.getInsertions();
+        this.replacings = coordsDiff.getReplacings();
+        this.diffText = coordsDiff.getDiffCoordsString();
     }
 
     private LCSGeometryDiffImpl(LinkedList<Patch> patches) {
@@ -92,118 +95,24 @@ public class LCSGeometryDiffImpl {
         Preconditions.checkArgument(tokens.length == 2);
         String[] countings = tokens[0].split("/");
         Preconditions.checkArgument(countings.length == 3);
+        if (tokens[1].startsWith(BINARY_PREFIX)) {
+            byte[] bytes = BaseEncoding.base64().decode(
+                    tokens[1].substring(BINARY_PREFIX.length()));
+            coordsDiff = CoordinateSequenceDiff.fromBytes(bytes);
+        } else {
+            diffMatchPatch = new DiffMatchPatch();
+            String unescaped = tokens[1].replace("\\n", "\n");
+            patches = (LinkedList<Patch>) diffMatchPatch.patch_fromText(unescaped);
+        }
         totalDeletions = Integer.parseInt(countings[0]);
         totalInsertions = Integer.parseInt(countings[1]);
         replacings = Integer.parseInt(countings[2]);
-        diffMatchPatch = new DiffMatchPatch();
-        String unescaped = tokens[1].replace("\\n", "\n");
-        patches = (LinkedList<Patch>) diffMatchPatch.patch_fromText(unescaped);
-    }
-
-    private void processDiffs(List<Diff> diffs) {
-        totalInsertions = 0;
-        totalDeletions = 0;
-        replacings = 0;
-        int insertions = 0;
-        int deletions = 0;
-        StringBuilder sb = new StringBuilder();
-        for (Diff diff : diffs) {
-            String text = diff.text;
-            int nCoords = 0;
-            String[] tokens = diff.text.split(" ");
-            for (String token : tokens) {
-                if (token.contains(",")) {
-                    nCoords++;
-                }
-            }
-            switch (diff.operation) {
-            case INSERT:
-                text = text.replace(" " + SUBGEOM_SEPARATOR, ")" + SUBGEOM_SEPARATOR + "(");
-                sb.append('(');
-                sb.append(text);
-                sb.append(") ");
-                insertions += nCoords;
-                break;
-            case DELETE:
-                sb.append('[');
-                sb.append(text);
-                sb.append("] ");
-                deletions += nCoords;
-                break;
-            case EQUAL:
-                sb.append(text.trim());
-                sb.append(' ');
-                replacings += Math.min(deletions, insertions);
-                totalDeletions += Math.max(deletions - insertions, 0);
-                totalInsertions += Math.max(insertions - deletions, 0);
-                insertions = 0;
-                deletions = 0;
-                break;
-            }
-        }
-        replacings += Math.min(deletions, insertions);
-        totalDeletions += Math.max(deletions - insertions, 0);
-        totalInsertions += Math.max(insertions - deletions, 0);
-
-        diffText = sb.toString();
-        // some final dirty minor corrections
-        diffText = diffText.replace("(" + SUBGEOM_SEPARATOR, SUBGEOM_SEPARATOR + "(");
-        diffText = diffText.replace("(" + INNER_RING_SEPARATOR, INNER_RING_SEPARATOR + "(");
-        diffText = diffText.replace("[" + SUBGEOM_SEPARATOR, SUBGEOM_SEPARATOR + "[");
-        diffText = diffText.replace("[" + INNER_RING_SEPARATOR, INNER_RING_SEPARATOR + "[");
-        diffText = diffText.replace(" )", ")");
-        diffText = diffText.replace(" ]", "]");
-    }
-
-    private String geomToStringOfCoordinates(Optional<Geometry> opt) {
-        if (!opt.isPresent()) {
-            return "";
-        }
-        Function<Coordinate, String> printCoords = new Function<Coordinate, String>() {
-            @Override
-            @Nullable
-            public String apply(@Nullable Coordinate coord) {
-                return Double.toString(coord.x) + "," + Double.toString(coord.y);
-            }
-
-        };
-
-        StringBuilder sb = new StringBuilder();
-        Geometry geom = opt.get();
-        sb.append(geom.getGeometryType() + " ");
-        int n = geom.getNumGeometries();
-        for (int i = 0; i < n; i++) {
-            Geometry subgeom = geom.getGeometryN(i);
-            if (subgeom instanceof Polygon) {
-                Polygon polyg = (Polygon) subgeom;
-                Coordinate[] coords = polyg.getExteriorRing().getCoordinates();
-                Iterator<String> iter = Iterators
-                        .transform(Iterators.forArray(coords), printCoords);
-                sb.append(Joiner.on(' ').join(iter));
-                for (int j = 0; j < polyg.getNumInteriorRing(); j++) {
-                    coords = polyg.getInteriorRingN(j).getCoordinates();
-                    iter = Iterators.transform(Iterators.forArray(coords), printCoords);
-                    sb.append(" " + INNER_RING_SEPARATOR + " ");
-                    sb.append(Joiner.on(' ').join(iter));
-                }
-                if (i < n - 1) {
-                    sb.append(" " + SUBGEOM_SEPARATOR + " ");
-                }
-            } else {
-                Coordinate[] coords = subgeom.getCoordinates();
-                Iterator<String> iter = Iterators
-                        .transform(Iterators.forArray(coords), printCoords);
-                sb.append(Joiner.on(' ').join(iter));
-                sb.append(" " + SUBGEOM_SEPARATOR + " ");
-            }
-        }
-
-        String s = sb.toString().trim();
-        return s;
-
     }
 
     public LCSGeometryDiffImpl reversed() {
+        if (coordsDiff != null) {
+            return new LCSGeometryDiffImpl(coordsDiff.reversed(), newGeom, oldGeom);
+        }
         LinkedList<Patch> reversedPatches = diffMatchPatch.patch_deepCopy(patches);
         for (Patch patch : reversedPatches) {
             LinkedList<Diff> diffs = patch.diffs;
@@ -215,10 +124,17 @@ public class LCSGeometryDiffImpl {
                 }
             }
         }
-        return new LCSGeometryDiffImpl(reversedPatches);
+        LCSGeometryDiffImpl reversed = new LCSGeometryDiffImpl(reversedPatches);
+        reversed.totalDeletions = totalInsertions;
+        reversed.totalInsertions = totalDeletions;
+        reversed.replacings = replacings;
+        return reversed;
     }
 
     public boolean canBeAppliedOn(Optional<Geometry> obj) {
+        if (coordsDiff != null) {
+            return coordsDiff.canBeAppliedOn(obj);
+        }
         String wkt = obj.isPresent() ? obj.get().toText() : "";
         Object[] res = diffMatchPatch.patch_apply(patches, wkt);
         boolean[] bool = (boolean[]) res[1];
@@ -232,6 +148,9 @@ public class LCSGeometryDiffImpl {
 
     public Optional<Geometry> applyOn(Optional<Geometry> obj) {
         Preconditions.checkState(canBeAppliedOn(obj));
+        if (coordsDiff != null) {
+            return coordsDiff.applyOn(obj);
+        }
         String wkt = obj.isPresent() ? obj.get().toText() : "";
         String res = (String) diffMatchPatch.patch_apply(patches, wkt)[0];
         if (!res.isEmpty()) {
@@ -255,9 +174,22 @@ public class LCSGeometryDiffImpl {
     }
 
     /**
-     * Returns a serialized text version of the difference
+     * Returns a serialized text version of the difference, in the text patch format all versions
+     * can read
      */
     public String asText() {
+        return asText(false);
+    }
+
+    /**
+     * Returns a serialized text version of the difference
+     * 
+     * @param binary whether to write the Base64 encoded coordinate sequence diff instead of the
+     *        text patch. Only versions that know about it can read it back. Diffs that were parsed
+     *        from it are always written that way, since the geometries to create the text patch
+     *        from are unknown, and diffs parsed from a text patch are always written as such.
+     */
+    public String asText(boolean binary) {
         StringBuilder sb = new StringBuilder();
         sb.append(Integer.toString(totalDeletions));
         sb.append('/');
@@ -265,19 +197,48 @@ public class LCSGeometryDiffImpl {
         sb.append('/');
         sb.append(Integer.toString(replacings));
         sb.append('\t');
-        sb.append(diffMatchPatch.patch_toText(patches).replace("\n", "\\n"));
+        LinkedList<Patch> textPatches = binary && coordsDiff != null ? null : textPatches();
+        if (textPatches == null) {
+            sb.append(BINARY_PREFIX);
+            sb.append(BaseEncoding.base64().encode(coordsDiff.toBytes()));
+        } else {
+            sb.append(diffMatchPatch.patch_toText(textPatches).replace("\n", "\\n"));
+        }
         return sb.toString();
     }
 
+    /**
+     * @return the patch over the WKT representation of the geometries, or {@code null} if this diff
+     *         was parsed from the binary format
+     */
+    @Nullable
+    private LinkedList<Patch> textPatches() {
+        if (patches == null && oldGeom != null) {
+            String oldText = oldGeom.isPresent() ? oldGeom.get().toText() : "";
+            String newText = newGeom.isPresent() ? newGeom.get().toText() : "";
+            diffMatchPatch = new DiffMatchPatch();
+            patches = diffMatchPatch.patch_make(diffMatchPatch.diff_main(oldText, newText));
+        }
+        return patches;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof LCSGeometryDiffImpl)) {
             return false;
         }
         LCSGeometryDiffImpl d = (LCSGeometryDiffImpl) o;
-        for (int i = 0; i < d.patches.size(); i++) {
+        if (coordsDiff != null && d.coordsDiff != null) {
+            return coordsDiff.equals(d.coordsDiff);
+        }
+        LinkedList<Patch> patches = textPatches();
+        LinkedList<Patch> otherPatches = d.textPatches();
+        if (patches == null || otherPatches == null || patches.size() != otherPatches.size()) {
+            return false;
+        }
+        for (int i = 0; i < otherPatches.size(); i++) {
             Patch patchA = patches.get(i);
-            Patch patchB = d.patches.get(i);
+            Patch patchB = otherPatches.get(i);
             if (!patchA.equals(patchB)) {
                 return false;
             }
@@ -285,52 +246,9 @@ public class LCSGeometryDiffImpl {
         return true;
     }
 
-    // ========================================================================================
-    // These 2 methods are meant to be used to split a text containing a representation of
-    // coordinate in a geometry into chunks representing points that can be then hashed
-    // as characters.
-    // They are just an adapted version of the diff_lineToChars method in diff_match_patch, using a
-    // different split character and some extra behaviour
-
-    protected LinesToCharsResult coordsToChars(String text1, String text2) {
-        List<String> lineArray = new ArrayList<String>();
-        Map<String, Integer> lineHash = new HashMap<String, Integer>();
-        lineArray.add("");
-
-        String chars1 = splitAndHash(text1, lineArray, lineHash, ' ');
-        String chars2 = splitAndHash(text2, lineArray, lineHash, ' ');
-        return new LinesToCharsResult(chars1, chars2, lineArray);
-    }
-
-    private String splitAndHash(String text, List<String> lineArray, Map<String, Integer> lineHash,
-            char splitChar) {
-        StringBuilder chars = new StringBuilder();
-        Iterable<String> tokens = Splitter.on(" ").split(text);
-        for (String token : tokens) {
-            if (lineHash.containsKey(token)) {
-                chars.append(String.valueOf((char) (int) lineHash.get(token)));
-            } else {
-                lineArray.add(token);
-                lineHash.put(token, lineArray.size() - 1);
-                chars.append(String.valueOf((char) (lineArray.size() - 1)));
-            }
-        }
-        return chars.toString();
-    }
-
-    protected void charsToCoords(LinkedList<Diff> diffs, List<String> lineArray) {
-        StringBuilder text;
-        for (Diff diff : diffs) {
-            text = new StringBuilder();
-            for (int y = 0; y < diff.text.length(); y++) {
-                String coordText = lineArray.get(diff.text.charAt(y));
-                text.append(coordText);
-                if (coordText.length() > 2) {
-                    text.append(' ');
-                }
-            }
-            diff.text = text.toString();
-        }
+    @Override
+    public int hashCode() {
+        return 31 * (31 * totalDeletions + totalInsertions) + replacings;
     }
 
     /**
@@ -353,8 +271,10 @@ public class LCSGeometryDiffImpl {
      * 20.0,35.0 @ 30.0,20.0 20.0,25.0 20.0,15.0 30.0,20.0`` represents a geometry with two
      * polygons, the last one of them with an inner ring.
      * 
-     * @return
+     * @return the human-readable diff, or {@code null} if this diff was parsed from its
+     *         {@link #asText() text representation} instead of computed
      */
+    @Nullable
     public String getDiffCoordsString() {
         return diffText;
     }
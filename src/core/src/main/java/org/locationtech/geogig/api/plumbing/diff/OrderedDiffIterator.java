@@ -0,0 +1,263 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing.diff;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.locationtech.geogig.api.RevTree.EMPTY;
+import static org.locationtech.geogig.api.RevTree.EMPTY_TREE_ID;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.Bucket;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevObject.TYPE;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.storage.NodePathStorageOrder;
+import org.locationtech.geogig.storage.NodeStorageOrder;
+import org.locationtech.geogig.storage.ObjectStore;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.PeekingIterator;
+
+/**
+ * A sequential iterator over the differences between two trees that, unlike {@link PreOrderDiffWalk}
+ * , returns its {@link DiffEntry diff entries} in a deterministic order: the canonical
+ * {@link NodeStorageOrder storage order} of the nodes at each level of nesting, with tree entries
+ * reported right before their contents (pre-order).
+ * <p>
+ * The resulting order is the one defined by {@link #PATH_ORDER}, which makes it possible to walk
+ * two diffs against the same tree together as a sorted merge-join without holding any of them in
+ * memory.
+ * <p>
+ * Like {@link org.locationtech.geogig.api.plumbing.DiffTree DiffTree} with
+ * {@code reportTrees == true}, the root tree is never reported, equal subtrees and buckets are
+ * skipped, and added or removed trees report all their contents.
+ */
+public class OrderedDiffIterator extends AbstractIterator<DiffEntry> {
+
+    private static final NodeStorageOrder ORDER = new NodeStorageOrder();
+
+    /**
+     * Full path ordering consistent with the order in which this iterator returns its entries:
+     * paths are compared component by component using the {@link NodePathStorageOrder canonical
+     * node order}, and a path always sorts before its children.
+     */
+    public static final Ordering<String> PATH_ORDER = new Ordering<String>() {
+
+        private final Splitter splitter = Splitter.on(NodeRef.PATH_SEPARATOR);
+
+        @Override
+        public int compare(String p1, String p2) {
+            Iterator<String> i1 = splitter.split(p1).iterator();
+            Iterator<String> i2 = splitter.split(p2).iterator();
+            while (i1.hasNext() && i2.hasNext()) {
+                String n1 = i1.next();
+                String n2 = i2.next();
+                int c = NodePathStorageOrder.INSTANCE.compare(n1, n2);
+                if (c == 0) {
+                    c = n1.compareTo(n2);
+                }
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return i1.hasNext() ? 1 : (i2.hasNext() ? -1 : 0);
+        }
+    };
+
+    private final ObjectStore leftSource;
+
+    private final ObjectStore rightSource;
+
+    /**
+     * Stack of pending node pair iterators, one per tree being traversed
+     */
+    private final Deque<Iterator<NodeRef[]>> stack = new ArrayDeque<>();
+
+    /**
+     * @param left the old version of the tree
+     * @param right the new version of the tree
+     * @param leftSource where to get the objects for the left tree from
+     * @param rightSource where to get the objects for the right tree from
+     */
+    public OrderedDiffIterator(RevTree left, RevTree right, ObjectStore leftSource,
+            ObjectStore rightSource) {
+        checkNotNull(left, "left tree is null");
+        checkNotNull(right, "right tree is null");
+        checkNotNull(leftSource, "left source is null");
+        checkNotNull(rightSource, "right source is null");
+        this.leftSource = leftSource;
+        this.rightSource = rightSource;
+
+        NodeRef lroot = NodeRef.createRoot(Node.tree(NodeRef.ROOT, left.getId(), ObjectId.NULL));
+        NodeRef rroot = NodeRef.createRoot(Node.tree(NodeRef.ROOT, right.getId(), ObjectId.NULL));
+        stack.push(contents(lroot, rroot, left, right));
+    }
+
+    /**
+     * Shorthand for {@link #OrderedDiffIterator(RevTree, RevTree, ObjectStore, ObjectStore)} when
+     * both trees come from the same object store
+     */
+    public OrderedDiffIterator(RevTree left, RevTree right, ObjectStore source) {
+        this(left, right, source, source);
+    }
+
+    @Override
+    protected DiffEntry computeNext() {
+        while (!stack.isEmpty()) {
+            Iterator<NodeRef[]> top = stack.peek();
+            if (!top.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            NodeRef[] pair = top.next();
+            NodeRef left = pair[0];
+            NodeRef right = pair[1];
+            TYPE type = (left == null ? right : left).getType();
+            if (TYPE.TREE.equals(type)) {
+                RevTree ltree = tree(leftSource, left);
+                RevTree rtree = tree(rightSource, right);
+                stack.push(contents(left, right, ltree, rtree));
+            }
+            return new DiffEntry(left, right);
+        }
+        return endOfData();
+    }
+
+    private static RevTree tree(ObjectStore source, @Nullable NodeRef ref) {
+        if (ref == null || EMPTY_TREE_ID.equals(ref.getObjectId())) {
+            return EMPTY;
+        }
+        return source.getTree(ref.getObjectId());
+    }
+
+    /**
+     * Returns the differing pairs of direct children of two versions of a tree, in canonical
+     * order, lazily descending into their buckets
+     */
+    private Iterator<NodeRef[]> contents(final NodeRef lparent, final NodeRef rparent,
+            final RevTree left, final RevTree right) {
+
+        if (left.getId().equals(right.getId())) {
+            return Collections.emptyIterator();
+        }
+        final boolean leftIsLeaf = !left.buckets().isPresent();
+        final boolean rightIsLeaf = !right.buckets().isPresent();
+
+        if (leftIsLeaf && rightIsLeaf) {
+            return new NodePairs(lparent, rparent, left.children(), right.children());
+        }
+        if (leftIsLeaf || rightIsLeaf) {
+            return new NodePairs(lparent, rparent, children(leftSource, left), children(
+                    rightSource, right));
+        }
+
+        final SortedMap<Integer, Bucket> lbuckets = left.buckets().get();
+        final SortedMap<Integer, Bucket> rbuckets = right.buckets().get();
+        final SortedSet<Integer> indexes = new TreeSet<>(lbuckets.keySet());
+        indexes.addAll(rbuckets.keySet());
+
+        Function<Integer, Iterator<NodeRef[]>> bucketContents = new Function<Integer, Iterator<NodeRef[]>>() {
+            @Override
+            public Iterator<NodeRef[]> apply(Integer index) {
+                Bucket lbucket = lbuckets.get(index);
+                Bucket rbucket = rbuckets.get(index);
+                if (lbucket != null && rbucket != null
+                        && lbucket.getObjectId().equals(rbucket.getObjectId())) {
+                    return Collections.emptyIterator();
+                }
+                RevTree lbucketTree = lbucket == null ? EMPTY : leftSource.getTree(lbucket
+                        .getObjectId());
+                RevTree rbucketTree = rbucket == null ? EMPTY : rightSource.getTree(rbucket
+                        .getObjectId());
+                return contents(lparent, rparent, lbucketTree, rbucketTree);
+            }
+        };
+        return Iterators.concat(Iterators.transform(indexes.iterator(), bucketContents));
+    }
+
+    /**
+     * Returns all the direct children of a tree in canonical order, regardless of whether it's a
+     * leaf or a bucket tree
+     */
+    private static Iterator<Node> children(final ObjectStore source, RevTree tree) {
+        if (!tree.buckets().isPresent()) {
+            return tree.children();
+        }
+        Function<Bucket, Iterator<Node>> bucketChildren = new Function<Bucket, Iterator<Node>>() {
+            @Override
+            public Iterator<Node> apply(Bucket bucket) {
+                return children(source, source.getTree(bucket.getObjectId()));
+            }
+        };
+        return Iterators.concat(Iterators.transform(tree.buckets().get().values().iterator(),
+                bucketChildren));
+    }
+
+    /**
+     * Merges two sorted iterators of nodes returning only the pairs of nodes that differ, as
+     * {@code NodeRef[]{left, right}}, where either of them may be {@code null}
+     */
+    private static class NodePairs extends AbstractIterator<NodeRef[]> {
+
+        private final NodeRef lparent, rparent;
+
+        private final PeekingIterator<Node> left, right;
+
+        NodePairs(NodeRef lparent, NodeRef rparent, Iterator<Node> left, Iterator<Node> right) {
+            this.lparent = lparent;
+            this.rparent = rparent;
+            this.left = Iterators.peekingIterator(left);
+            this.right = Iterators.peekingIterator(right);
+        }
+
+        @Override
+        protected NodeRef[] computeNext() {
+            while (left.hasNext() || right.hasNext()) {
+                Node l = left.hasNext() ? left.peek() : null;
+                Node r = right.hasNext() ? right.peek() : null;
+                int order = l == null ? 1 : (r == null ? -1 : ORDER.compare(l, r));
+                if (order < 0) {
+                    left.next();
+                    return new NodeRef[] { ref(lparent, l), null };
+                }
+                if (order > 0) {
+                    right.next();
+                    return new NodeRef[] { null, ref(rparent, r) };
+                }
+                left.next();
+                right.next();
+                if (!Objects.equal(l, r)) {
+                    return new NodeRef[] { ref(lparent, l), ref(rparent, r) };
+                }
+            }
+            return endOfData();
+        }
+
+        private static NodeRef ref(NodeRef parent, Node node) {
+            return NodeRef.create(parent.path(), node, parent.getMetadataId());
+        }
+    }
+
+}
@@ -158,6 +158,15 @@ public class PatchSerializer {
     }
 
     public static void write(Writer w, Patch patch) throws IOException {
+        write(w, patch, false);
+    }
+
+    /**
+     * @param binaryGeometryDiffs whether to write the diffs of modified geometries in the more
+     *        compact binary format, which older versions can't read
+     */
+    public static void write(Writer w, Patch patch, boolean binaryGeometryDiffs)
+            throws IOException {
         StringBuilder sb = new StringBuilder();
         List<RevFeatureType> featureTypes = patch.getFeatureTypes();
         for (RevFeatureType featureType : featureTypes) {
@@ -194,7 +203,7 @@ public class PatchSerializer {
         for (FeatureDiff diff : patch.getModifiedFeatures()) {
             sb.append("M\t" + diff.getPath() + "\t" + diff.getOldFeatureType().getId().toString()
                     + "\t" + diff.getNewFeatureType().getId().toString() + "\n");
-            sb.append(diff.asText() + "\n");
+            sb.append(diff.asText(binaryGeometryDiffs) + "\n");
         }
         for (FeatureTypeDiff diff : patch.getAlteredTrees()) {
             sb.append(diff.toString() + "\n");
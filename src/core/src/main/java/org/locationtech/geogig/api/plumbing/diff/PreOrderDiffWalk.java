@@ -22,6 +22,7 @@ import static org.locationtech.geogig.storage.BulkOpListener.NOOP_LISTENER;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -55,6 +56,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
@@ -396,12 +398,25 @@ public class PreOrderDiffWalk {
                 return;
             }
             if (consumer.tree(leftNode, rightNode)) {
+                final ObjectId leftId = leftNode == null ? EMPTY_TREE_ID : leftNode.getObjectId();
+                final ObjectId rightId = rightNode == null ? EMPTY_TREE_ID
+                        : rightNode.getObjectId();
                 RevTree left;
                 RevTree right;
-                left = leftNode == null || EMPTY_TREE_ID.equals(leftNode.getObjectId()) ? EMPTY
-                        : leftSource.getTree(leftNode.getObjectId());
-                right = rightNode == null || EMPTY_TREE_ID.equals(rightNode.getObjectId()) ? EMPTY
-                        : rightSource.getTree(rightNode.getObjectId());
+                if (leftSource == rightSource && !EMPTY_TREE_ID.equals(leftId)
+                        && !EMPTY_TREE_ID.equals(rightId) && !leftId.equals(rightId)) {
+                    // both trees at once, saves a round trip to remote databases
+                    Map<ObjectId, RevTree> trees = uniqueIndex(leftSource.getAll(
+                            ImmutableList.of(leftId, rightId), NOOP_LISTENER, RevTree.class),
+                            (t) -> t.getId());
+                    left = trees.get(leftId);
+                    right = trees.get(rightId);
+                    checkState(left != null, "Tree %s not found", leftId);
+                    checkState(right != null, "Tree %s not found", rightId);
+                } else {
+                    left = EMPTY_TREE_ID.equals(leftId) ? EMPTY : leftSource.getTree(leftId);
+                    right = EMPTY_TREE_ID.equals(rightId) ? EMPTY : rightSource.getTree(rightId);
+                }
 
                 TraverseTreeContents traverseTreeContents = new TraverseTreeContents(consumer,
                         leftSource, rightSource, leftNode, rightNode, left, right,
@@ -619,14 +634,15 @@ public class PreOrderDiffWalk {
                         (i) -> this.bucketIndex.append(i));
                 availableIndexes = newTreeSet(indexes);
             }
-            final Map<ObjectId, RevTree> trees = loadTrees(lb, rb);
 
             @Nullable
             Bucket lbucket, rbucket;
             RevTree ltree, rtree;
 
-            List<TraverseTreeContents> tasks = new ArrayList<>();
-
+            // only the buckets that changed and the consumer wants to traverse are loaded
+            final Map<BucketIndex, Bucket> lchanged = new TreeMap<>();
+            final Map<BucketIndex, Bucket> rchanged = new TreeMap<>();
+            final List<BucketIndex> traverse = new ArrayList<>();
             for (BucketIndex index : availableIndexes) {
                 lbucket = lb.get(index.lastIndex());
                 rbucket = rb.get(index.lastIndex());
@@ -636,14 +652,30 @@ public class PreOrderDiffWalk {
                 Preconditions.checkState(lbucket != null || rbucket != null);
 
                 if (consumer.bucket(leftParent, rightParent, index, lbucket, rbucket)) {
+                    traverse.add(index);
+                    if (lbucket != null) {
+                        lchanged.put(index, lbucket);
+                    }
+                    if (rbucket != null) {
+                        rchanged.put(index, rbucket);
+                    }
+                }
+            }
 
-                    ltree = lbucket == null ? EMPTY : trees.get(lbucket.getObjectId());
-                    rtree = rbucket == null ? EMPTY : trees.get(rbucket.getObjectId());
+            final Map<ObjectId, RevTree> trees = loadTrees(lchanged.values(), rchanged.values());
 
-                    TraverseTreeContents task = traverseTreeContents(leftParent, rightParent, ltree,
-                            rtree, index);
-                    tasks.add(task);
-                }
+            List<TraverseTreeContents> tasks = new ArrayList<>();
+
+            for (BucketIndex index : traverse) {
+                lbucket = lchanged.get(index);
+                rbucket = rchanged.get(index);
+
+                ltree = lbucket == null ? EMPTY : trees.get(lbucket.getObjectId());
+                rtree = rbucket == null ? EMPTY : trees.get(rbucket.getObjectId());
+
+                TraverseTreeContents task = traverseTreeContents(leftParent, rightParent, ltree,
+                        rtree, index);
+                tasks.add(task);
             }
 
             // fork()
@@ -659,13 +691,13 @@ public class PreOrderDiffWalk {
             }
         }
 
-        private Map<ObjectId, RevTree> loadTrees(final ImmutableSortedMap<Integer, Bucket> lb,
-                final ImmutableSortedMap<Integer, Bucket> rb) {
+        private Map<ObjectId, RevTree> loadTrees(final Collection<Bucket> lb,
+                final Collection<Bucket> rb) {
             final Map<ObjectId, RevTree> trees;
             final Set<ObjectId> lbucketIds = Sets
-                    .newHashSet(transform(lb.values(), (b) -> b.getObjectId()));
+                    .newHashSet(transform(lb, (b) -> b.getObjectId()));
             final Set<ObjectId> rbucketIds = Sets
-                    .newHashSet(transform(rb.values(), (b) -> b.getObjectId()));
+                    .newHashSet(transform(rb, (b) -> b.getObjectId()));
 
             // get all buckets at once, to leverage ObjectStore optimizations
             if (leftSource == rightSource) {
@@ -675,13 +707,11 @@ public class PreOrderDiffWalk {
             } else {
                 trees = new HashMap<>();
                 trees.putAll(uniqueIndex(
-                        leftSource.getAll(transform(lb.values(), (b) -> b.getObjectId()),
-                                NOOP_LISTENER, RevTree.class),
+                        leftSource.getAll(lbucketIds, NOOP_LISTENER, RevTree.class),
                         (t) -> t.getId()));
 
                 trees.putAll(uniqueIndex(
-                        rightSource.getAll(transform(rb.values(), (b) -> b.getObjectId()),
-                                NOOP_LISTENER, RevTree.class),
+                        rightSource.getAll(rbucketIds, NOOP_LISTENER, RevTree.class),
                         (t) -> t.getId()));
 
             }
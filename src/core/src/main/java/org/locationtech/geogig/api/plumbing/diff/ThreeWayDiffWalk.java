@@ -0,0 +1,344 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing.diff;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.locationtech.geogig.api.RevTree.EMPTY;
+import static org.locationtech.geogig.api.RevTree.EMPTY_TREE_ID;
+
+import java.util.Iterator;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.Bucket;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevObject.TYPE;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.storage.NodeStorageOrder;
+import org.locationtech.geogig.storage.ObjectStore;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+/**
+ * Walks the differences between three versions of a tree, a common {@code ancestor} and two
+ * descendants, {@code ours} and {@code theirs}, in a single traversal, emitting merge events to a
+ * {@link Consumer}.
+ * <p>
+ * Unlike running two {@link PreOrderDiffWalk two-way diffs} from the ancestor and correlating them
+ * afterwards, the three trees are descended at the same time, and any tree, bucket or feature where
+ * two of the three versions are the same is resolved right away without looking any further:
+ * <ul>
+ * <li>{@code ours == theirs}: both sides agree (either unchanged or changed the same way), nothing
+ * to report;
+ * <li>{@code ancestor == theirs}: only {@code ours} changed, nothing to report since that's the
+ * version a merge keeps;
+ * <li>{@code ancestor == ours}: only {@code theirs} changed, reported through
+ * {@link Consumer#theirs} at the coarsest level possible: a whole tree if the tree node changed
+ * only on their side, or the individual nodes of a bucket changed only on their side.
+ * </ul>
+ * Only trees and features changed on both sides are reported through {@link Consumer#tree} and
+ * {@link Consumer#feature}, so the cost of the walk is proportional to the number of changed
+ * buckets rather than to the size of the trees or the diffs.
+ * <p>
+ * The walk is sequential and events are emitted in the canonical {@link NodeStorageOrder storage
+ * order} of each tree, pre-order.
+ * <p>
+ * Nodes are considered the same if they have the same name, type, object id and metadata id.
+ */
+public class ThreeWayDiffWalk {
+
+    private static final NodeStorageOrder ORDER = new NodeStorageOrder();
+
+    private final RevTree ancestor;
+
+    private final RevTree ours;
+
+    private final RevTree theirs;
+
+    private final ObjectStore source;
+
+    public ThreeWayDiffWalk(RevTree ancestor, RevTree ours, RevTree theirs, ObjectStore source) {
+        checkNotNull(ancestor, "ancestor tree is null");
+        checkNotNull(ours, "ours tree is null");
+        checkNotNull(theirs, "theirs tree is null");
+        checkNotNull(source, "source is null");
+        this.ancestor = ancestor;
+        this.ours = ours;
+        this.theirs = theirs;
+        this.source = source;
+    }
+
+    /**
+     * Walks the three trees calling the {@code consumer} for each merge event, starting with the
+     * root trees, and returns once the traversal is finished or aborted by the consumer.
+     * <p>
+     * As with {@link PreOrderDiffWalk#walk}, if {@link Consumer#theirs} or {@link Consumer#feature}
+     * returns {@code false} the whole traversal is aborted: no other event is emitted but the
+     * {@link Consumer#endTree endTree} calls of the trees being traversed. If
+     * {@link Consumer#tree} returns {@code false}, only the contents of that tree are skipped, and
+     * the traversal continues with its siblings, or its parents' siblings if there are no more.
+     */
+    public void walk(Consumer consumer) {
+        checkNotNull(consumer);
+        Node a = Node.tree(NodeRef.ROOT, ancestor.getId(), ObjectId.NULL);
+        Node o = Node.tree(NodeRef.ROOT, ours.getId(), ObjectId.NULL);
+        Node t = Node.tree(NodeRef.ROOT, theirs.getId(), ObjectId.NULL);
+        new Walk(consumer).node(null, null, null, a, o, t);
+    }
+
+    private static boolean same(@Nullable Node n1, @Nullable Node n2) {
+        if (n1 == null || n2 == null) {
+            return n1 == n2;
+        }
+        return n1.equals(n2) && n1.getMetadataId().equals(n2.getMetadataId());
+    }
+
+    private static boolean same(@Nullable Bucket b1, @Nullable Bucket b2) {
+        ObjectId id1 = b1 == null ? EMPTY_TREE_ID : b1.getObjectId();
+        ObjectId id2 = b2 == null ? EMPTY_TREE_ID : b2.getObjectId();
+        return id1.equals(id2);
+    }
+
+    private static boolean isTree(@Nullable Node node) {
+        return node == null || TYPE.TREE.equals(node.getType());
+    }
+
+    @Nullable
+    private static NodeRef ref(@Nullable NodeRef parent, @Nullable Node node) {
+        if (node == null) {
+            return null;
+        }
+        if (parent == null) {
+            return NodeRef.createRoot(node);
+        }
+        return NodeRef.create(parent.path(), node, parent.getMetadataId());
+    }
+
+    /**
+     * The state of a single traversal
+     */
+    private class Walk {
+
+        private final Consumer consumer;
+
+        private boolean aborted;
+
+        Walk(Consumer consumer) {
+            this.consumer = consumer;
+        }
+
+        /**
+         * Evaluates the three versions of a node with the given parents
+         */
+        void node(@Nullable NodeRef aparent, @Nullable NodeRef oparent,
+                @Nullable NodeRef tparent, @Nullable Node a, @Nullable Node o, @Nullable Node t) {
+
+            if (same(o, t) || same(a, t)) {
+                return;
+            }
+            final NodeRef aref = ref(aparent, a);
+            final NodeRef tref = ref(tparent, t);
+            if (same(a, o)) {
+                aborted = !consumer.theirs(aref, tref);
+                return;
+            }
+            final NodeRef oref = ref(oparent, o);
+            if (!(isTree(a) && isTree(o) && isTree(t))) {
+                aborted = !consumer.feature(aref, oref, tref);
+                return;
+            }
+            if (consumer.tree(aref, oref, tref)) {
+                RevTree atree = tree(aref);
+                RevTree otree = tree(oref);
+                RevTree ttree = tree(tref);
+                contents(aref, oref, tref, atree, otree, ttree);
+            }
+            consumer.endTree(aref, oref, tref);
+        }
+
+        private RevTree tree(@Nullable NodeRef ref) {
+            if (ref == null || EMPTY_TREE_ID.equals(ref.getObjectId())) {
+                return EMPTY;
+            }
+            return source.getTree(ref.getObjectId());
+        }
+
+        /**
+         * Compares the contents of three versions of a tree (or of a bucket of it), descending only
+         * into the buckets where the three versions differ, or where only theirs changed.
+         */
+        void contents(@Nullable final NodeRef aparent, @Nullable final NodeRef oparent,
+                @Nullable final NodeRef tparent, final RevTree a, final RevTree o,
+                final RevTree t) {
+
+            if (aborted || o.getId().equals(t.getId()) || a.getId().equals(t.getId())) {
+                return;
+            }
+            // only theirs changed, a two-way walk of ancestor vs theirs will do
+            final boolean theirsOnly = a.getId().equals(o.getId());
+
+            final boolean bucketed = a.buckets().isPresent() && t.buckets().isPresent()
+                    && (theirsOnly || o.buckets().isPresent());
+
+            if (!bucketed) {
+                Iterator<Node> achildren = children(a);
+                Iterator<Node> ochildren = theirsOnly ? null : children(o);
+                Iterator<Node> tchildren = children(t);
+                nodes(aparent, oparent, tparent, achildren, ochildren, tchildren);
+                return;
+            }
+
+            final SortedMap<Integer, Bucket> abuckets = a.buckets().get();
+            final SortedMap<Integer, Bucket> obuckets = theirsOnly ? abuckets : o.buckets().get();
+            final SortedMap<Integer, Bucket> tbuckets = t.buckets().get();
+
+            final SortedSet<Integer> indexes = new TreeSet<>(abuckets.keySet());
+            indexes.addAll(obuckets.keySet());
+            indexes.addAll(tbuckets.keySet());
+
+            for (Integer index : indexes) {
+                if (aborted) {
+                    return;
+                }
+                Bucket abucket = abuckets.get(index);
+                Bucket obucket = obuckets.get(index);
+                Bucket tbucket = tbuckets.get(index);
+                if (same(obucket, tbucket) || same(abucket, tbucket)) {
+                    continue;
+                }
+                RevTree abucketTree = bucketTree(abucket);
+                RevTree obucketTree = same(abucket, obucket) ? abucketTree : bucketTree(obucket);
+                RevTree tbucketTree = bucketTree(tbucket);
+                contents(aparent, oparent, tparent, abucketTree, obucketTree, tbucketTree);
+            }
+        }
+
+        private RevTree bucketTree(@Nullable Bucket bucket) {
+            return bucket == null ? EMPTY : source.getTree(bucket.getObjectId());
+        }
+
+        /**
+         * Merges the sorted child nodes of the three versions of a tree, evaluating each name found
+         * in any of them; if {@code ours} is {@code null} it's taken to be the same as the ancestor
+         */
+        private void nodes(@Nullable NodeRef aparent, @Nullable NodeRef oparent,
+                @Nullable NodeRef tparent, Iterator<Node> achildren,
+                @Nullable Iterator<Node> ochildren, Iterator<Node> tchildren) {
+
+            final boolean theirsOnly = ochildren == null;
+            PeekingIterator<Node> ai = Iterators.peekingIterator(achildren);
+            PeekingIterator<Node> oi = theirsOnly ? null : Iterators.peekingIterator(ochildren);
+            PeekingIterator<Node> ti = Iterators.peekingIterator(tchildren);
+
+            while (!aborted && (ai.hasNext() || ti.hasNext() || (!theirsOnly && oi.hasNext()))) {
+                Node min = min(null, ai);
+                min = min(min, ti);
+                if (!theirsOnly) {
+                    min = min(min, oi);
+                }
+                Node a = next(ai, min);
+                Node t = next(ti, min);
+                Node o = theirsOnly ? a : next(oi, min);
+                node(aparent, oparent, tparent, a, o, t);
+            }
+        }
+
+        private Node min(@Nullable Node current, PeekingIterator<Node> it) {
+            if (!it.hasNext()) {
+                return current;
+            }
+            Node peek = it.peek();
+            return current == null || ORDER.compare(peek, current) < 0 ? peek : current;
+        }
+
+        @Nullable
+        private Node next(PeekingIterator<Node> it, Node min) {
+            if (it.hasNext() && ORDER.compare(it.peek(), min) == 0) {
+                return it.next();
+            }
+            return null;
+        }
+
+        /**
+         * Returns all the direct children of a tree in canonical order, regardless of whether it's
+         * a leaf or a bucket tree
+         */
+        private Iterator<Node> children(RevTree tree) {
+            if (!tree.buckets().isPresent()) {
+                return tree.children();
+            }
+            Function<Bucket, Iterator<Node>> bucketChildren = new Function<Bucket, Iterator<Node>>() {
+                @Override
+                public Iterator<Node> apply(Bucket bucket) {
+                    return children(source.getTree(bucket.getObjectId()));
+                }
+            };
+            return Iterators.concat(Iterators.transform(tree.buckets().get().values().iterator(),
+                    bucketChildren));
+        }
+    }
+
+    /**
+     * Receives the events of a {@link ThreeWayDiffWalk}.
+     * <p>
+     * The first call will be for the root trees, either to {@link #theirs} if only the
+     * {@code theirs} root tree differs from the ancestor one, or to {@link #tree} if both do, or
+     * there may be no call at all if no merge is needed.
+     */
+    public static interface Consumer {
+
+        /**
+         * Called for a node that changed only on the {@code theirs} side. If it's a tree, its
+         * contents are not traversed, as the whole {@code theirs} version applies.
+         *
+         * @param ancestor the node at the common ancestor, {@code null} if added by theirs
+         * @param theirs the node at theirs, {@code null} if removed by theirs
+         * @return {@code false} if the WHOLE traversal shall be aborted, {@code true} to continue
+         */
+        public abstract boolean theirs(@Nullable NodeRef ancestor, @Nullable NodeRef theirs);
+
+        /**
+         * Called for a feature that changed on both sides, each to a different version. Also
+         * called in the unlikely case of a tree replaced by a feature or vice versa on any side, in
+         * which case the nodes may be of different types.
+         *
+         * @param ancestor the node at the common ancestor, {@code null} if added on both sides
+         * @param ours the node at ours, {@code null} if removed by ours
+         * @param theirs the node at theirs, {@code null} if removed by theirs
+         * @return {@code false} if the WHOLE traversal shall be aborted, {@code true} to continue
+         */
+        public abstract boolean feature(@Nullable NodeRef ancestor, @Nullable NodeRef ours,
+                @Nullable NodeRef theirs);
+
+        /**
+         * Called for a tree that changed on both sides, each to a different version. At most one
+         * of the nodes is {@code null}.
+         *
+         * @return {@code true} if the contents of the trees shall be traversed, {@code false}
+         *         otherwise. Note this differs from the return value of {@link #feature} and
+         *         {@link #theirs} in that {@code false} only avoids going deeper into this tree,
+         *         instead of aborting the whole traversal
+         */
+        public abstract boolean tree(@Nullable NodeRef ancestor, @Nullable NodeRef ours,
+                @Nullable NodeRef theirs);
+
+        /**
+         * Called once done with a {@link #tree}, regardless of the returned value
+         */
+        public abstract void endTree(@Nullable NodeRef ancestor, @Nullable NodeRef ours,
+                @Nullable NodeRef theirs);
+    }
+}
@@ -14,16 +14,22 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.NodeRef;
 import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.api.RevCommit;
 import org.locationtech.geogig.api.RevObject.TYPE;
+import org.locationtech.geogig.api.RevTree;
 import org.locationtech.geogig.api.plumbing.DiffTree;
 import org.locationtech.geogig.api.plumbing.FindCommonAncestor;
 import org.locationtech.geogig.api.plumbing.ResolveObjectType;
 import org.locationtech.geogig.api.plumbing.diff.DiffEntry;
 import org.locationtech.geogig.api.plumbing.diff.DiffEntry.ChangeType;
+import org.locationtech.geogig.api.plumbing.diff.ThreeWayDiffWalk;
+import org.locationtech.geogig.api.plumbing.diff.ThreeWayDiffWalk.Consumer;
+import org.locationtech.geogig.storage.ObjectDatabase;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
@@ -71,6 +77,10 @@ public class CheckMergeScenarioOp extends AbstractGeoGigOp<Boolean> {
             Preconditions.checkState(ancestor.isPresent(), "No ancestor commit could be found.");
         }
 
+        if (commits.size() == 2) {
+            return Boolean.valueOf(hasConflicts(ancestor.get(), commits.get(0), commits.get(1)));
+        }
+
         Map<String, List<DiffEntry>> diffs = Maps.newHashMap();
         Set<String> removedPaths = Sets.newTreeSet();
 
@@ -113,6 +123,52 @@ public class CheckMergeScenarioOp extends AbstractGeoGigOp<Boolean> {
 
     }
 
+    /**
+     * Two-way merges are checked with a single {@link ThreeWayDiffWalk}, which only looks into the
+     * trees and buckets changed on both sides.
+     */
+    private boolean hasConflicts(ObjectId ancestorCommit, RevCommit oursCommit,
+            RevCommit theirsCommit) {
+        final ObjectDatabase db = objectDatabase();
+        final RevTree ancestorTree = db.getTree(db.getCommit(ancestorCommit).getTreeId());
+        final RevTree oursTree = db.getTree(oursCommit.getTreeId());
+        final RevTree theirsTree = db.getTree(theirsCommit.getTreeId());
+
+        final AtomicBoolean conflicts = new AtomicBoolean();
+        new ThreeWayDiffWalk(ancestorTree, oursTree, theirsTree, db).walk(new Consumer() {
+
+            @Override
+            public boolean theirs(NodeRef ancestor, NodeRef theirs) {
+                return !conflicts.get();
+            }
+
+            @Override
+            public boolean feature(NodeRef ancestor, NodeRef ours, NodeRef theirs) {
+                if (ours == null || theirs == null
+                        || !ours.getObjectId().equals(theirs.getObjectId())) {
+                    conflicts.set(true);
+                }
+                return !conflicts.get();
+            }
+
+            @Override
+            public boolean tree(NodeRef ancestor, NodeRef ours, NodeRef theirs) {
+                if (ours == null || theirs == null
+                        || !ours.getMetadataId().equals(theirs.getMetadataId())) {
+                    conflicts.set(true);
+                }
+                // false only skips this tree, the next theirs or feature event aborts the walk
+                return !conflicts.get();
+            }
+
+            @Override
+            public void endTree(NodeRef ancestor, NodeRef ours, NodeRef theirs) {
+                // nothing to do
+            }
+        });
+        return conflicts.get();
+    }
+
     private boolean hasConflicts(DiffEntry diff, DiffEntry diff2) {
         if (!diff.changeType().equals(diff2.changeType())) {
             return true;
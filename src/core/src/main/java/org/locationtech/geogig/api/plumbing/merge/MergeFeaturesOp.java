@@ -85,13 +85,17 @@ public class MergeFeaturesOp extends AbstractGeoGigOp<Feature> {
                 "Non-matching feature types. Cannot merge");
 
         return merge(featureA.get(), featureB.get(), ancestorFeature.get(),
-                ancestorFeatureType.get());
+                ancestorFeatureType.get(), nodeRefA.name());
 
     }
 
+    /**
+     * Merges the changes made to {@code ancestor} in {@code featureA} and {@code featureB}, all of
+     * which must be of the given {@code featureType}, into a new feature with the given id.
+     */
     @SuppressWarnings("unchecked")
-    private Feature merge(RevFeature featureA, RevFeature featureB, RevFeature ancestor,
-            RevFeatureType featureType) {
+    static Feature merge(RevFeature featureA, RevFeature featureB, RevFeature ancestor,
+            RevFeatureType featureType, String featureId) {
 
         SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(
                 (SimpleFeatureType) featureType.type());
@@ -120,7 +124,7 @@ public class MergeFeaturesOp extends AbstractGeoGigOp<Feature> {
                 featureBuilder.set(name, valueB.orNull());
             }
         }
-        return featureBuilder.buildFeature(nodeRefA.name());
+        return featureBuilder.buildFeature(featureId);
 
     }
 
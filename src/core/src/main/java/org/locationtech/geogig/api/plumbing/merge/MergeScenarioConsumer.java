@@ -0,0 +1,45 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing.merge;
+
+import org.locationtech.geogig.api.FeatureInfo;
+import org.locationtech.geogig.api.plumbing.diff.DiffEntry;
+
+/**
+ * Receives the changes classified by {@link ReportMergeScenarioOp} as they're found, in the
+ * canonical path order of the merged trees, so that merges of arbitrary size can be processed
+ * without accumulating a {@link MergeScenarioReport} in memory.
+ * <p>
+ * All methods are called from the thread that calls {@link ReportMergeScenarioOp#call()}.
+ */
+public abstract class MergeScenarioConsumer {
+
+    /**
+     * Called for each change that can't be applied automatically
+     */
+    public abstract void conflicted(Conflict conflict);
+
+    /**
+     * Called for each change that can be applied as is
+     */
+    public abstract void unconflicted(DiffEntry diff);
+
+    /**
+     * Called for each feature changed on both sides whose changes have been automatically merged
+     */
+    public abstract void merged(FeatureInfo featureInfo);
+
+    /**
+     * Called once all the changes have been reported
+     */
+    public void finished() {
+        // no-op by default
+    }
+}
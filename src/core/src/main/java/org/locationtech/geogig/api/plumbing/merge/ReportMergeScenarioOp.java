@@ -9,50 +9,72 @@
  */
 package org.locationtech.geogig.api.plumbing.merge;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.eclipse.jdt.annotation.Nullable;
 import org.locationtech.geogig.api.AbstractGeoGigOp;
 import org.locationtech.geogig.api.FeatureInfo;
-import org.locationtech.geogig.api.NodeRef;
 import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.api.RevCommit;
 import org.locationtech.geogig.api.RevFeature;
 import org.locationtech.geogig.api.RevFeatureBuilder;
 import org.locationtech.geogig.api.RevFeatureType;
+import org.locationtech.geogig.api.RevObject;
 import org.locationtech.geogig.api.RevObject.TYPE;
 import org.locationtech.geogig.api.RevTree;
-import org.locationtech.geogig.api.plumbing.DiffFeature;
-import org.locationtech.geogig.api.plumbing.DiffTree;
 import org.locationtech.geogig.api.plumbing.FindCommonAncestor;
-import org.locationtech.geogig.api.plumbing.FindTreeChild;
-import org.locationtech.geogig.api.plumbing.ResolveObjectType;
-import org.locationtech.geogig.api.plumbing.RevObjectParse;
-import org.locationtech.geogig.api.plumbing.RevParse;
 import org.locationtech.geogig.api.plumbing.diff.DiffEntry;
-import org.locationtech.geogig.api.plumbing.diff.DiffEntry.ChangeType;
 import org.locationtech.geogig.api.plumbing.diff.FeatureDiff;
+import org.locationtech.geogig.api.plumbing.diff.OrderedDiffIterator;
+import org.locationtech.geogig.storage.ObjectDatabase;
 import org.opengis.feature.Feature;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Suppliers;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Reports conflicts between changes introduced by two different histories. Given a commit and
  * another reference commit, it returns the set of changes from the common ancestor to the first
  * commit, classified according to whether they can or not be safely applied onto the reference
  * commit. Changes that will have no effect on the target commit are not included as unconflicted.
+ * <p>
+ * Both diffs against the common ancestor are walked together in {@link OrderedDiffIterator#PATH_ORDER
+ * canonical path order}, so memory usage does not depend on the size of the merge. Features changed
+ * on both sides are fetched in batches and classified in parallel, while the results are still
+ * reported in path order. If a {@link #setConsumer(MergeScenarioConsumer) consumer} is given the
+ * results are handed over to it as they're found instead of being accumulated in the returned
+ * {@link MergeScenarioReport}.
  */
 public class ReportMergeScenarioOp extends AbstractGeoGigOp<MergeScenarioReport> {
 
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
     private RevCommit toMerge;
 
     private RevCommit mergeInto;
 
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    @Nullable
+    private MergeScenarioConsumer consumer;
+
     /**
      * @param toMerge the commit with the changes to apply {@link RevCommit}
      */
@@ -69,6 +91,25 @@ public class ReportMergeScenarioOp extends AbstractGeoGigOp<MergeScenarioReport>
         return this;
     }
 
+    /**
+     * @param batchSize how many changes to classify at once, defaults to
+     *        {@link #DEFAULT_BATCH_SIZE}
+     */
+    public ReportMergeScenarioOp setBatchSize(int batchSize) {
+        checkArgument(batchSize > 0, "batchSize must be > 0");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param consumer if given, receives the classified changes as they're found, and the report
+     *        returned by {@link #call()} is left empty
+     */
+    public ReportMergeScenarioOp setConsumer(@Nullable MergeScenarioConsumer consumer) {
+        this.consumer = consumer;
+        return this;
+    }
+
     @Override
     protected MergeScenarioReport _call() {
 
@@ -76,183 +117,305 @@ public class ReportMergeScenarioOp extends AbstractGeoGigOp<MergeScenarioReport>
                 .setRight(mergeInto).call();
         Preconditions.checkState(ancestor.isPresent(), "No ancestor commit could be found.");
 
-        Map<String, DiffEntry> mergeIntoDiffs = Maps.newHashMap();
-        MergeScenarioReport report = new MergeScenarioReport();
+        final ObjectDatabase db = objectDatabase();
+        final RevTree ancestorTree = db.getTree(db.getCommit(ancestor.get()).getTreeId());
+        final RevTree mergeIntoTree = db.getTree(mergeInto.getTreeId());
+        final RevTree toMergeTree = db.getTree(toMerge.getTreeId());
 
-        Iterator<DiffEntry> diffs = command(DiffTree.class).setOldTree(ancestor.get())
-                .setReportTrees(true).setNewTree(mergeInto.getId()).call();
-        while (diffs.hasNext()) {
-            DiffEntry diff = diffs.next();
-            String path = diff.oldPath() == null ? diff.newPath() : diff.oldPath();
-            mergeIntoDiffs.put(path, diff);
-        }
+        final MergeScenarioReport report = new MergeScenarioReport();
+        final MergeScenarioConsumer target = consumer == null ? new ReportBuilder(report)
+                : consumer;
+
+        final int nThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        final int maxPending = 2 * nThreads;
+        final ConcurrentMap<ObjectId, RevFeatureType> featureTypes = Maps.newConcurrentMap();
 
-        Iterator<DiffEntry> toMergeDiffs = command(DiffTree.class).setOldTree(ancestor.get())
-                .setReportTrees(true).setNewTree(toMerge.getId()).call();
-        while (toMergeDiffs.hasNext()) {
-            DiffEntry toMergeDiff = toMergeDiffs.next();
-            String path = toMergeDiff.oldPath() == null ? toMergeDiff.newPath() : toMergeDiff
-                    .oldPath();
-            if (mergeIntoDiffs.containsKey(path)) {
-                RevCommit ancestorCommit = command(RevObjectParse.class)
-                        .setRefSpec(ancestor.get().toString()).call(RevCommit.class).get();
-                RevTree ancestorTree = command(RevObjectParse.class)
-                        .setObjectId(ancestorCommit.getTreeId()).call(RevTree.class).get();
-                Optional<NodeRef> ancestorVersion = command(FindTreeChild.class).setChildPath(path)
-                        .setParent(ancestorTree).call();
-                ObjectId ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion.get()
-                        .getNode().getObjectId() : ObjectId.NULL;
-                ObjectId theirs = toMergeDiff.getNewObject() == null ? ObjectId.NULL : toMergeDiff
-                        .getNewObject().getObjectId();
-                DiffEntry mergeIntoDiff = mergeIntoDiffs.get(path);
-                ObjectId ours = mergeIntoDiff.getNewObject() == null ? ObjectId.NULL
-                        : mergeIntoDiff.getNewObject().getObjectId();
-                if (!mergeIntoDiff.changeType().equals(toMergeDiff.changeType())) {
-                    report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                    continue;
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads,
+                new ThreadFactoryBuilder().setNameFormat("ReportMergeScenarioOp-%d")
+                        .setDaemon(true).build());
+        try {
+            PeekingIterator<DiffEntry> mergeIntoDiffs = Iterators
+                    .peekingIterator(new OrderedDiffIterator(ancestorTree, mergeIntoTree, db));
+            Iterator<DiffEntry> toMergeDiffs = new OrderedDiffIterator(ancestorTree, toMergeTree,
+                    db);
+
+            Deque<Future<List<Object>>> pending = new ArrayDeque<>();
+            Batch batch = new Batch(db, featureTypes);
+            while (toMergeDiffs.hasNext()) {
+                final DiffEntry toMergeDiff = toMergeDiffs.next();
+                final String path = path(toMergeDiff);
+                while (mergeIntoDiffs.hasNext()
+                        && OrderedDiffIterator.PATH_ORDER.compare(path(mergeIntoDiffs.peek()),
+                                path) < 0) {
+                    mergeIntoDiffs.next();
                 }
-                switch (toMergeDiff.changeType()) {
-                case ADDED:
-                    if (toMergeDiff.getNewObject().equals(mergeIntoDiff.getNewObject())) {
-                        // already added in current branch, no need to do anything
-                    } else {
-                        TYPE type = command(ResolveObjectType.class).setObjectId(
-                                toMergeDiff.getNewObject().getObjectId()).call();
-                        if (TYPE.TREE.equals(type)) {
-                            boolean conflict = !toMergeDiff.getNewObject().getMetadataId()
-                                    .equals(mergeIntoDiff.getNewObject().getMetadataId());
-                            if (conflict) {
-                                // In this case, we store the metadata id, not the element id
-                                ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion
-                                        .get().getMetadataId() : ObjectId.NULL;
-                                ours = mergeIntoDiff.getNewObject().getMetadataId();
-                                theirs = toMergeDiff.getNewObject().getMetadataId();
-                                report.addConflict(new Conflict(path, ancestorVersionId, ours,
-                                        theirs));
-                            }
-                            // if the metadata ids match, it means both branches have added the same
-                            // tree, maybe with different content, but there is no need to do
-                            // anything. The correct tree is already there and the merge can be run
-                            // safely, so we do not add it neither as a conflicted change nor as an
-                            // unconflicted one
-                        } else {
-                            report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                        }
-                    }
-                    break;
-                case REMOVED:
-                    // removed by both histories => no conflict and no need to do anything
-                    break;
-                case MODIFIED:
-                    TYPE type = command(ResolveObjectType.class).setObjectId(
-                            toMergeDiff.getNewObject().getObjectId()).call();
-                    if (TYPE.TREE.equals(type)) {
-                        boolean conflict = !toMergeDiff.getNewObject().getMetadataId()
-                                .equals(mergeIntoDiff.getNewObject().getMetadataId());
-                        if (conflict) {
-                            // In this case, we store the metadata id, not the element id
-                            ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion.get()
-                                    .getMetadataId() : ObjectId.NULL;
-                            ours = mergeIntoDiff.getNewObject().getMetadataId();
-                            theirs = toMergeDiff.getNewObject().getMetadataId();
-                            report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                        }
-                    } else {
-                        FeatureDiff toMergeFeatureDiff = command(DiffFeature.class)
-                                .setOldVersion(Suppliers.ofInstance(toMergeDiff.getOldObject()))
-                                .setNewVersion(Suppliers.ofInstance(toMergeDiff.getNewObject()))
-                                .call();
-                        FeatureDiff mergeIntoFeatureDiff = command(DiffFeature.class)
-                                .setOldVersion(Suppliers.ofInstance(mergeIntoDiff.getOldObject()))
-                                .setNewVersion(Suppliers.ofInstance(mergeIntoDiff.getNewObject()))
-                                .call();
-                        if (toMergeFeatureDiff.conflicts(mergeIntoFeatureDiff)) {
-                            report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                        } else {
-                            // if the feature types are different we report a conflict and do not
-                            // try to perform automerge
-                            if (!toMergeDiff.getNewObject().getMetadataId()
-                                    .equals(mergeIntoDiff.getNewObject().getMetadataId())) {
-                                report.addConflict(new Conflict(path, ancestorVersionId, ours,
-                                        theirs));
-                            } else if (!toMergeFeatureDiff.equals(mergeIntoFeatureDiff)) {
-                                Feature mergedFeature = command(MergeFeaturesOp.class)
-                                        .setFirstFeature(mergeIntoDiff.getNewObject())
-                                        .setSecondFeature(toMergeDiff.getNewObject())
-                                        .setAncestorFeature(mergeIntoDiff.getOldObject()).call();
-                                RevFeature revFeature = RevFeatureBuilder.build(mergedFeature);
-                                if (revFeature.getId().equals(toMergeDiff.newObjectId())) {
-                                    // the resulting merged feature equals the feature to merge from
-                                    // the branch, which means that it exists in the repo and there
-                                    // is no need to add it
-                                    report.addUnconflicted(toMergeDiff);
-                                } else {
-                                    RevFeatureType featureType = command(RevObjectParse.class)
-                                            .setObjectId(
-                                                    mergeIntoDiff.getNewObject().getMetadataId())
-                                            .call(RevFeatureType.class).get();
-                                    FeatureInfo merged = new FeatureInfo(mergedFeature,
-                                            featureType, path);
-                                    report.addMerged(merged);
-                                }
-                            }
-                        }
+                if (mergeIntoDiffs.hasNext() && path.equals(path(mergeIntoDiffs.peek()))) {
+                    classify(mergeIntoDiffs.next(), toMergeDiff, batch);
+                } else {
+                    batch.add(toMergeDiff);
+                }
+                if (batch.size() >= batchSize) {
+                    pending.add(executor.submit(batch));
+                    batch = new Batch(db, featureTypes);
+                    while (pending.size() > maxPending) {
+                        report(pending.removeFirst(), target);
                     }
-                    break;
+                }
+            }
+            pending.add(executor.submit(batch));
+            while (!pending.isEmpty()) {
+                report(pending.removeFirst(), target);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        target.finished();
+        return report;
+    }
+
+    private static String path(DiffEntry diff) {
+        return diff.oldPath() == null ? diff.newPath() : diff.oldPath();
+    }
+
+    /**
+     * Classifies a change made on both sides, queueing it in {@code batch} as either the result or,
+     * for features modified on both sides, as a pair to be resolved when the batch is run.
+     */
+    private void classify(final DiffEntry mergeIntoDiff, final DiffEntry toMergeDiff,
+            final Batch batch) {
+
+        final String path = path(toMergeDiff);
+        ObjectId ancestorVersionId = toMergeDiff.oldObjectId();
+        ObjectId theirs = toMergeDiff.newObjectId();
+        ObjectId ours = mergeIntoDiff.newObjectId();
+
+        if (!mergeIntoDiff.changeType().equals(toMergeDiff.changeType())) {
+            batch.add(new Conflict(path, ancestorVersionId, ours, theirs));
+            return;
+        }
+        switch (toMergeDiff.changeType()) {
+        case ADDED:
+            if (toMergeDiff.getNewObject().equals(mergeIntoDiff.getNewObject())) {
+                // already added in current branch, no need to do anything
+            } else if (TYPE.TREE.equals(toMergeDiff.getNewObject().getType())) {
+                // if the metadata ids match, it means both branches have added the same tree,
+                // maybe with different content, but there is no need to do anything. The correct
+                // tree is already there and the merge can be run safely, so we do not add it
+                // neither as a conflicted change nor as an unconflicted one
+                ObjectId oursMetadataId = mergeIntoDiff.getNewObject().getMetadataId();
+                ObjectId theirsMetadataId = toMergeDiff.getNewObject().getMetadataId();
+                if (!theirsMetadataId.equals(oursMetadataId)) {
+                    // In this case, we store the metadata id, not the element id
+                    batch.add(new Conflict(path, ObjectId.NULL, oursMetadataId, theirsMetadataId));
+                }
+            } else {
+                batch.add(new Conflict(path, ancestorVersionId, ours, theirs));
+            }
+            break;
+        case REMOVED:
+            // removed by both histories => no conflict and no need to do anything
+            break;
+        case MODIFIED:
+            ObjectId oursMetadataId = mergeIntoDiff.getNewObject().getMetadataId();
+            ObjectId theirsMetadataId = toMergeDiff.getNewObject().getMetadataId();
+            if (TYPE.TREE.equals(toMergeDiff.getNewObject().getType())) {
+                if (!theirsMetadataId.equals(oursMetadataId)) {
+                    // In this case, we store the metadata id, not the element id
+                    ObjectId ancestorMetadataId = toMergeDiff.getOldObject().getMetadataId();
+                    batch.add(new Conflict(path, ancestorMetadataId, oursMetadataId,
+                            theirsMetadataId));
+                }
+            } else if (ours.equals(theirs)) {
+                // same change on both sides, nothing to do unless the feature types differ
+                if (!theirsMetadataId.equals(oursMetadataId)) {
+                    batch.add(new Conflict(path, ancestorVersionId, ours, theirs));
                 }
             } else {
-                // If the element is a tree, not a feature, it might be a conflict even if the other
-                // branch has not modified it.
-                // If we are removing the tree, we have to make sure that there are no features
-                // modified in the other branch under it.
-                if (ChangeType.REMOVED.equals(toMergeDiff.changeType())) {
-                    TYPE type = command(ResolveObjectType.class).setObjectId(
-                            toMergeDiff.oldObjectId()).call();
-                    if (TYPE.TREE.equals(type)) {
-                        String parentPath = toMergeDiff.oldPath();
-                        Set<Entry<String, DiffEntry>> entries = mergeIntoDiffs.entrySet();
-                        boolean conflict = false;
-                        for (Entry<String, DiffEntry> entry : entries) {
-                            if (entry.getKey().startsWith(parentPath)) {
-                                if (!ChangeType.REMOVED.equals(entry.getValue().changeType())) {
-                                    RevCommit ancestorCommit = command(RevObjectParse.class)
-                                            .setRefSpec(ancestor.get().toString())
-                                            .call(RevCommit.class).get();
-                                    RevTree ancestorTree = command(RevObjectParse.class)
-                                            .setObjectId(ancestorCommit.getTreeId())
-                                            .call(RevTree.class).get();
-                                    Optional<NodeRef> ancestorVersion = command(FindTreeChild.class)
-                                            .setChildPath(path).setParent(ancestorTree).call();
-                                    ObjectId ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion
-                                            .get().getNode().getObjectId()
-                                            : ObjectId.NULL;
-                                    ObjectId theirs = toMergeDiff.getNewObject() == null ? ObjectId.NULL
-                                            : toMergeDiff.getNewObject().getObjectId();
-                                    String oursRefSpec = mergeInto.getId().toString() + ":"
-                                            + parentPath;
-                                    Optional<ObjectId> ours = command(RevParse.class).setRefSpec(
-                                            oursRefSpec).call();
-                                    report.addConflict(new Conflict(path, ancestorVersionId, ours
-                                            .get(), theirs));
-                                    conflict = true;
-                                    break;
-                                }
-                            }
-                        }
-                        if (!conflict) {
-                            report.addUnconflicted(toMergeDiff);
-                        }
-                    } else {
-                        report.addUnconflicted(toMergeDiff);
+                batch.add(new FeaturePair(mergeIntoDiff, toMergeDiff));
+            }
+            break;
+        }
+    }
+
+    private static void report(Future<List<Object>> batch, MergeScenarioConsumer consumer) {
+        for (Object result : Futures.getUnchecked(batch)) {
+            if (result instanceof Conflict) {
+                consumer.conflicted((Conflict) result);
+            } else if (result instanceof DiffEntry) {
+                consumer.unconflicted((DiffEntry) result);
+            } else {
+                consumer.merged((FeatureInfo) result);
+            }
+        }
+    }
+
+    /**
+     * A feature modified on both sides of the merge
+     */
+    private static class FeaturePair {
+
+        final DiffEntry mergeIntoDiff;
+
+        final DiffEntry toMergeDiff;
+
+        FeaturePair(DiffEntry mergeIntoDiff, DiffEntry toMergeDiff) {
+            this.mergeIntoDiff = mergeIntoDiff;
+            this.toMergeDiff = toMergeDiff;
+        }
+    }
+
+    /**
+     * A run of classified changes in path order. Results ({@link Conflict}, {@link DiffEntry} or
+     * {@link FeatureInfo}) are returned as is, and {@link FeaturePair}s are resolved fetching all
+     * the features they need at once.
+     */
+    private static class Batch implements Callable<List<Object>> {
+
+        private final ObjectDatabase db;
+
+        private final ConcurrentMap<ObjectId, RevFeatureType> featureTypes;
+
+        private final List<Object> entries = new ArrayList<>();
+
+        private final List<ObjectId> featureIds = new ArrayList<>();
+
+        Batch(ObjectDatabase db, ConcurrentMap<ObjectId, RevFeatureType> featureTypes) {
+            this.db = db;
+            this.featureTypes = featureTypes;
+        }
+
+        void add(Object entry) {
+            entries.add(entry);
+            if (entry instanceof FeaturePair) {
+                FeaturePair pair = (FeaturePair) entry;
+                featureIds.add(pair.toMergeDiff.oldObjectId());
+                featureIds.add(pair.toMergeDiff.newObjectId());
+                featureIds.add(pair.mergeIntoDiff.newObjectId());
+            }
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        @Override
+        public List<Object> call() {
+            Map<ObjectId, RevFeature> features = Maps.newHashMap();
+            if (!featureIds.isEmpty()) {
+                Iterator<RevObject> objects = db.getAll(featureIds);
+                while (objects.hasNext()) {
+                    RevObject object = objects.next();
+                    features.put(object.getId(), (RevFeature) object);
+                }
+            }
+            List<Object> results = new ArrayList<>(entries.size());
+            for (Object entry : entries) {
+                if (entry instanceof FeaturePair) {
+                    Object result = merge((FeaturePair) entry, features);
+                    if (result != null) {
+                        results.add(result);
                     }
                 } else {
-                    report.addUnconflicted(toMergeDiff);
+                    results.add(entry);
                 }
             }
+            return results;
+        }
+
+        @Nullable
+        private Object merge(final FeaturePair pair, final Map<ObjectId, RevFeature> features) {
+            final DiffEntry mergeIntoDiff = pair.mergeIntoDiff;
+            final DiffEntry toMergeDiff = pair.toMergeDiff;
+            final String path = path(toMergeDiff);
+
+            final ObjectId ancestorVersionId = toMergeDiff.oldObjectId();
+            final ObjectId ours = mergeIntoDiff.newObjectId();
+            final ObjectId theirs = toMergeDiff.newObjectId();
+
+            final ObjectId ancestorMetadataId = toMergeDiff.getOldObject().getMetadataId();
+            final ObjectId oursMetadataId = mergeIntoDiff.getNewObject().getMetadataId();
+            final ObjectId theirsMetadataId = toMergeDiff.getNewObject().getMetadataId();
 
+            final RevFeature ancestorFeature = feature(features, ancestorVersionId);
+            final RevFeature oursFeature = feature(features, ours);
+            final RevFeature theirsFeature = feature(features, theirs);
+            final RevFeatureType ancestorType = featureType(ancestorMetadataId);
+            final RevFeatureType oursType = featureType(oursMetadataId);
+            final RevFeatureType theirsType = featureType(theirsMetadataId);
+
+            FeatureDiff toMergeFeatureDiff = new FeatureDiff(path, theirsFeature,
+                    ancestorFeature, theirsType, ancestorType, false);
+            FeatureDiff mergeIntoFeatureDiff = new FeatureDiff(path, oursFeature,
+                    ancestorFeature, oursType, ancestorType, false);
+
+            final Conflict conflict = new Conflict(path, ancestorVersionId, ours, theirs);
+            if (toMergeFeatureDiff.conflicts(mergeIntoFeatureDiff)) {
+                return conflict;
+            }
+            // if the feature types are different we report a conflict and do not try to perform
+            // automerge
+            if (!theirsMetadataId.equals(oursMetadataId)) {
+                return conflict;
+            }
+            if (toMergeFeatureDiff.equals(mergeIntoFeatureDiff)) {
+                return null;
+            }
+            if (!ancestorMetadataId.equals(oursMetadataId)) {
+                // both sides changed the feature type the same way, but automerge needs all three
+                // versions to share it
+                return conflict;
+            }
+            Feature mergedFeature = MergeFeaturesOp.merge(oursFeature, theirsFeature,
+                    ancestorFeature, oursType, mergeIntoDiff.getNewObject().name());
+            RevFeature revFeature = RevFeatureBuilder.build(mergedFeature);
+            if (revFeature.getId().equals(theirs)) {
+                // the resulting merged feature equals the feature to merge from the branch, which
+                // means that it exists in the repo and there is no need to add it
+                return toMergeDiff;
+            }
+            return new FeatureInfo(mergedFeature, oursType, path);
         }
 
-        return report;
+        private static RevFeature feature(Map<ObjectId, RevFeature> features, ObjectId id) {
+            RevFeature feature = features.get(id);
+            Preconditions.checkState(feature != null, "Feature %s not found", id);
+            return feature;
+        }
+
+        private RevFeatureType featureType(ObjectId metadataId) {
+            RevFeatureType featureType = featureTypes.get(metadataId);
+            if (featureType == null) {
+                featureType = db.getFeatureType(metadataId);
+                featureTypes.putIfAbsent(metadataId, featureType);
+            }
+            return featureType;
+        }
+    }
+
+    /**
+     * Default consumer, collects all the results in a {@link MergeScenarioReport}
+     */
+    private static class ReportBuilder extends MergeScenarioConsumer {
+
+        private final MergeScenarioReport report;
+
+        ReportBuilder(MergeScenarioReport report) {
+            this.report = report;
+        }
+
+        @Override
+        public void conflicted(Conflict conflict) {
+            report.addConflict(conflict);
+        }
 
+        @Override
+        public void unconflicted(DiffEntry diff) {
+            report.addUnconflicted(diff);
+        }
+
+        @Override
+        public void merged(FeatureInfo featureInfo) {
+            report.addMerged(featureInfo);
+        }
     }
 }
@@ -13,26 +13,32 @@ import java.util.Iterator;
 import java.util.Map;
 
 import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.NodeRef;
 import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.api.Ref;
 import org.locationtech.geogig.api.RevCommit;
 import org.locationtech.geogig.api.RevFeature;
 import org.locationtech.geogig.api.RevFeatureType;
 import org.locationtech.geogig.api.RevObject.TYPE;
+import org.locationtech.geogig.api.RevTree;
 import org.locationtech.geogig.api.plumbing.DiffFeature;
+import org.locationtech.geogig.api.plumbing.FindTreeChild;
 import org.locationtech.geogig.api.plumbing.ResolveFeatureType;
 import org.locationtech.geogig.api.plumbing.ResolveObjectType;
-import org.locationtech.geogig.api.plumbing.RevObjectParse;
+import org.locationtech.geogig.api.plumbing.ResolvePathHistoryIndex;
 import org.locationtech.geogig.api.plumbing.RevParse;
 import org.locationtech.geogig.api.plumbing.diff.AttributeDiff;
-import org.locationtech.geogig.api.plumbing.diff.DiffEntry;
 import org.locationtech.geogig.api.plumbing.diff.FeatureDiff;
 import org.locationtech.geogig.api.porcelain.BlameException.StatusCode;
 import org.locationtech.geogig.di.CanRunDuringConflict;
+import org.locationtech.geogig.storage.PathHistoryIndex;
+import org.locationtech.geogig.storage.PathHistoryIndex.Change;
 import org.opengis.feature.type.PropertyDescriptor;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
 
 /**
  * Creates a report that contains information about who was the last to change each attribute in a
@@ -84,37 +90,31 @@ public class BlameOp extends AbstractGeoGigOp<BlameReport> {
 
         BlameReport report = new BlameReport(featureType.get());
 
+        // the index is only read, versions of commits it doesn't have are looked up in their trees
+        final Optional<PathHistoryIndex> index = command(ResolvePathHistoryIndex.class).call();
+        final Map<ObjectId, Change> indexedChanges = index.isPresent() ? index.get().getChanges(
+                path) : ImmutableMap.<ObjectId, Change> of();
+
         Iterator<RevCommit> log = command(LogOp.class).addPath(path).setUntil(commit).call();
         RevCommit commit = log.next();
-        RevObjectParse revObjectParse = command(RevObjectParse.class);
-        DiffOp diffOp = command(DiffOp.class);
+        Optional<NodeRef> node = node(commit, indexedChanges);
         DiffFeature diffFeature = command(DiffFeature.class);
 
         while (!report.isComplete()) {
             if (!log.hasNext()) {
-                String refSpec = commit.getId().toString() + ":" + path;
-                RevFeature feature = revObjectParse.setRefSpec(refSpec).call(RevFeature.class)
-                        .get();
-                report.setFirstVersion(feature, commit);
+                report.setFirstVersion(feature(node.get()), commit);
                 break;
             }
             RevCommit commitB = log.next();
-            Iterator<DiffEntry> diffs = diffOp.setNewVersion(commit.getId())
-                    .setOldVersion(commitB.getId()).setReportTrees(false).call();
-
-            while (diffs.hasNext()) {
-                DiffEntry diff = diffs.next();
-                if (path.equals(diff.newPath())) {
-                    if (diff.isAdd()) {
-                        String refSpec = commit.getId().toString() + ":" + path;
-                        RevFeature feature = revObjectParse.setRefSpec(refSpec)
-                                .call(RevFeature.class).get();
-                        report.setFirstVersion(feature, commit);
-                        break;
-                    }
+            Optional<NodeRef> nodeB = node(commitB, indexedChanges);
+            // compare only the versions of the feature instead of the whole trees of both commits
+            if (node.isPresent()) {
+                if (!nodeB.isPresent()) {
+                    report.setFirstVersion(feature(node.get()), commit);
+                } else if (!node.get().getObjectId().equals(nodeB.get().getObjectId())) {
                     FeatureDiff featureDiff = diffFeature
-                            .setNewVersion(Suppliers.ofInstance(diff.getNewObject()))
-                            .setOldVersion(Suppliers.ofInstance(diff.getOldObject())).call();
+                            .setNewVersion(Suppliers.ofInstance(node.get()))
+                            .setOldVersion(Suppliers.ofInstance(nodeB.get())).call();
                     Map<PropertyDescriptor, AttributeDiff> attribDiffs = featureDiff.getDiffs();
                     Iterator<PropertyDescriptor> iter = attribDiffs.keySet().iterator();
                     while (iter.hasNext()) {
@@ -124,10 +124,32 @@ public class BlameOp extends AbstractGeoGigOp<BlameReport> {
                         report.addDiff(attribute, value, commit);
                     }
                 }
-
             }
             commit = commitB;
+            node = nodeB;
         }
         return report;
     }
+
+    /**
+     * Returns the feature node at the given commit, straight from the path history index if it
+     * has it, or by looking it up in the commit's tree otherwise
+     */
+    private Optional<NodeRef> node(RevCommit commit, Map<ObjectId, Change> indexedChanges) {
+        Change change = indexedChanges.get(commit.getId());
+        if (change != null) {
+            if (change.isRemoval()) {
+                return Optional.absent();
+            }
+            Node node = Node.create(NodeRef.nodeFromPath(path), change.objectId(),
+                    change.metadataId(), TYPE.FEATURE, null);
+            return Optional.of(NodeRef.create(NodeRef.parentPath(path), node));
+        }
+        RevTree tree = objectDatabase().getTree(commit.getTreeId());
+        return command(FindTreeChild.class).setParent(tree).setChildPath(path).call();
+    }
+
+    private RevFeature feature(NodeRef node) {
+        return objectDatabase().getFeature(node.getObjectId());
+    }
 }
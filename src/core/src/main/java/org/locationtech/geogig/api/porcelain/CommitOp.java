@@ -16,10 +16,12 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.locationtech.geogig.api.AbstractGeoGigOp;
 import org.locationtech.geogig.api.CommitBuilder;
+import org.locationtech.geogig.api.NodeRef;
 import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.api.Ref;
 import org.locationtech.geogig.api.RevCommit;
@@ -27,14 +29,19 @@ import org.locationtech.geogig.api.RevPerson;
 import org.locationtech.geogig.api.RevTree;
 import org.locationtech.geogig.api.SymRef;
 import org.locationtech.geogig.api.hooks.Hookable;
+import org.locationtech.geogig.api.plumbing.FindChangedPaths;
 import org.locationtech.geogig.api.plumbing.RefParse;
 import org.locationtech.geogig.api.plumbing.ResolveTreeish;
 import org.locationtech.geogig.api.plumbing.RevObjectParse;
+import org.locationtech.geogig.api.plumbing.UpdatePathHistoryIndex;
 import org.locationtech.geogig.api.plumbing.UpdateRef;
 import org.locationtech.geogig.api.plumbing.UpdateSymRef;
+import org.locationtech.geogig.api.plumbing.WriteChangedPathsFilter;
 import org.locationtech.geogig.api.plumbing.WriteTree2;
 import org.locationtech.geogig.api.plumbing.merge.ReadMergeCommitMessageOp;
+import org.locationtech.geogig.storage.ChangedPathsFilters;
 import org.locationtech.geogig.storage.ObjectStore;
+import org.locationtech.geogig.storage.PathHistoryIndex;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
@@ -367,6 +374,21 @@ public class CommitOp extends AbstractGeoGigOp<RevCommit> {
         checkState(treeId.isPresent());
         checkState(newTreeId.equals(treeId.get()));
 
+        // keep the changed paths filters and the path history index, if enabled, up to date, out
+        // of a single search for the changed paths
+        final Optional<String> pathHistory = command(ConfigGet.class).setName(
+                PathHistoryIndex.ENABLED_CONFIG_KEY).call();
+        final boolean indexPaths = pathHistory.isPresent()
+                && Boolean.parseBoolean(pathHistory.get());
+        final Map<String, NodeRef> changes = command(FindChangedPaths.class).setCommit(commit)
+                .setMaxChanges(indexPaths ? null : Long.valueOf(ChangedPathsFilters.MAX_PATHS))
+                .call();
+        command(WriteChangedPathsFilter.class).setCommit(commit).setChangedPaths(changes.keySet())
+                .call();
+        if (indexPaths) {
+            command(UpdatePathHistoryIndex.class).addCommit(commit.getId(), changes).call();
+        }
+
         getProgressListener().setProgress(100f);
         getProgressListener().complete();
 
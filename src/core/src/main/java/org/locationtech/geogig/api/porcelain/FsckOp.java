@@ -0,0 +1,276 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.porcelain;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.ProgressListener;
+import org.locationtech.geogig.api.Ref;
+import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.api.RevObject;
+import org.locationtech.geogig.api.RevTag;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.plumbing.CreateDeduplicator;
+import org.locationtech.geogig.api.plumbing.HashObject;
+import org.locationtech.geogig.api.plumbing.merge.Conflict;
+import org.locationtech.geogig.repository.PostOrderIterator;
+import org.locationtech.geogig.storage.BulkOpListener;
+import org.locationtech.geogig.storage.Deduplicator;
+import org.locationtech.geogig.storage.ObjectDatabase;
+import org.locationtech.geogig.storage.RefDatabase;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Checks the integrity of the repository by walking all the objects reachable from its refs
+ * (branches, tags, remote branches, {@code HEAD}, {@code WORK_HEAD}, {@code STAGE_HEAD}, etc., as
+ * well as the ones of open transactions) and unresolved conflicts, reporting the objects that are
+ * missing from the object database and, optionally, the ones whose contents don't hash to their
+ * id.
+ * <p>
+ * The commit graph is walked first, then the contents of each commit are walked in parallel,
+ * sharing a {@link Deduplicator} so that the trees and features shared among commits are checked
+ * only once.
+ * <p>
+ * Missing parents of the oldest commits of a shallow clone are expected and not reported.
+ */
+public class FsckOp extends AbstractGeoGigOp<FsckReport> {
+
+    private boolean verifyHashes = true;
+
+    private Deduplicator deduplicator;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param verifyHashes whether to check that each object's contents hash to its id, defaults
+     *        to {@code true}
+     */
+    public FsckOp setVerifyHashes(boolean verifyHashes) {
+        this.verifyHashes = verifyHashes;
+        return this;
+    }
+
+    /**
+     * @param deduplicator where to record the visited objects, so that the caller can tell the
+     *        reachable ones afterwards. It's up to the caller to release it. If not set, a
+     *        temporary one is used.
+     */
+    public FsckOp setDeduplicator(@Nullable Deduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+        return this;
+    }
+
+    /**
+     * @param threads how many threads to walk the commits contents with, defaults to the number of
+     *        available processors
+     */
+    public FsckOp setThreads(int threads) {
+        checkArgument(threads > 0, "threads must be a positive integer");
+        this.threads = threads;
+        return this;
+    }
+
+    @Override
+    protected FsckReport _call() {
+        final ProgressListener progress = getProgressListener();
+        final Stopwatch sw = Stopwatch.createStarted();
+        final ObjectDatabase db = objectDatabase();
+        final boolean shallow = repository().getDepth().isPresent();
+
+        final Deduplicator dedup = deduplicator == null ? command(CreateDeduplicator.class)
+                .call() : deduplicator;
+        final Deduplicator visited = new SynchronizedDeduplicator(dedup);
+
+        final AtomicLong count = new AtomicLong();
+        final Set<ObjectId> missing = Sets.newConcurrentHashSet();
+        final Set<ObjectId> corrupt = Sets.newConcurrentHashSet();
+        final BulkOpListener missingListener = new BulkOpListener() {
+            @Override
+            public void notFound(ObjectId id) {
+                // the empty tree is not necessarily stored
+                if (!RevTree.EMPTY_TREE_ID.equals(id)) {
+                    missing.add(id);
+                }
+            }
+        };
+        final BulkOpListener historyListener = shallow ? BulkOpListener.NOOP_LISTENER
+                : missingListener;
+
+        progress.started();
+        try {
+            progress.setDescription("Checking history...");
+            List<ObjectId> commitsAndTags = Lists.newArrayList();
+            Set<ObjectId> contents = Sets.newLinkedHashSet();
+            for (ObjectId id : roots()) {
+                RevObject root = db.getIfPresent(id);
+                if (root == null) {
+                    missingListener.notFound(id);
+                } else if (root instanceof RevCommit || root instanceof RevTag) {
+                    commitsAndTags.add(id);
+                } else {
+                    contents.add(id);
+                }
+            }
+            Iterator<RevObject> history = PostOrderIterator.historyOf(commitsAndTags, db, visited,
+                    historyListener);
+            while (history.hasNext()) {
+                RevObject object = history.next();
+                check(object, count, corrupt);
+                if (object instanceof RevCommit) {
+                    contents.add(((RevCommit) object).getTreeId());
+                }
+            }
+
+            progress.setDescription(String.format("Checking contents of %,d trees...",
+                    contents.size()));
+            ExecutorService executor = Executors.newFixedThreadPool(threads,
+                    new ThreadFactoryBuilder().setNameFormat("FsckOp-%d").setDaemon(true).build());
+            try {
+                List<Future<?>> tasks = Lists.newArrayListWithCapacity(contents.size());
+                for (ObjectId id : contents) {
+                    tasks.add(executor.submit(contentsTask(id, db, visited, missingListener, count,
+                            corrupt)));
+                }
+                int done = 0;
+                for (Future<?> task : tasks) {
+                    Futures.getUnchecked(task);
+                    progress.setProgress(++done * 100f / tasks.size());
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            if (deduplicator == null) {
+                dedup.release();
+            }
+        }
+        progress.complete();
+        return new FsckReport(count.get(), missing, corrupt, sw.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    private Runnable contentsTask(final ObjectId id, final ObjectDatabase db,
+            final Deduplicator visited, final BulkOpListener missingListener,
+            final AtomicLong count, final Set<ObjectId> corrupt) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                Iterator<RevObject> objects = PostOrderIterator.contentsOf(
+                        Collections.singletonList(id), db, visited, missingListener);
+                while (objects.hasNext()) {
+                    check(objects.next(), count, corrupt);
+                }
+            }
+        };
+    }
+
+    private void check(RevObject object, AtomicLong count, Set<ObjectId> corrupt) {
+        count.incrementAndGet();
+        if (verifyHashes) {
+            ObjectId id = new HashObject().setObject(object).call();
+            if (!id.equals(object.getId())) {
+                corrupt.add(object.getId());
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the objects pointed to by all the refs, including the ones of open
+     *         transactions, and by unresolved conflicts
+     */
+    private Set<ObjectId> roots() {
+        final RefDatabase refs = refDatabase();
+        Set<ObjectId> roots = Sets.newLinkedHashSet();
+        addIds(refs.getAll().values(), roots);
+        addIds(refs.getAll(Ref.TRANSACTIONS_PREFIX).values(), roots);
+        for (Conflict conflict : conflictsDatabase().getConflicts(null, null)) {
+            for (ObjectId id : new ObjectId[] { conflict.getAncestor(), conflict.getOurs(),
+                    conflict.getTheirs() }) {
+                if (!id.isNull()) {
+                    roots.add(id);
+                }
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Adds the values that are object ids to {@code target}, ignoring symbolic refs
+     */
+    private static void addIds(Iterable<String> values, Set<ObjectId> target) {
+        for (String value : values) {
+            if (value != null && value.length() == 2 * ObjectId.NUM_BYTES) {
+                ObjectId id;
+                try {
+                    id = ObjectId.valueOf(value);
+                } catch (IllegalArgumentException notAnId) {
+                    continue;
+                }
+                if (!id.isNull()) {
+                    target.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a {@link Deduplicator} safe to share among the threads walking the contents
+     */
+    private static class SynchronizedDeduplicator implements Deduplicator {
+
+        private final Deduplicator delegate;
+
+        SynchronizedDeduplicator(Deduplicator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized boolean isDuplicate(ObjectId id) {
+            return delegate.isDuplicate(id);
+        }
+
+        @Override
+        public synchronized boolean visit(ObjectId id) {
+            return delegate.visit(id);
+        }
+
+        @Override
+        public synchronized void removeDuplicates(List<ObjectId> ids) {
+            delegate.removeDuplicates(ids);
+        }
+
+        @Override
+        public synchronized void reset() {
+            delegate.reset();
+        }
+
+        @Override
+        public synchronized void release() {
+            delegate.release();
+        }
+    }
+}
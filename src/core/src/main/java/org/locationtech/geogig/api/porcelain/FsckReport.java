@@ -0,0 +1,86 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.porcelain;
+
+import java.util.Set;
+
+import org.locationtech.geogig.api.ObjectId;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * The outcome of a repository integrity check.
+ *
+ * @see FsckOp
+ */
+public class FsckReport {
+
+    private final long objectCount;
+
+    private final ImmutableSet<ObjectId> missing;
+
+    private final ImmutableSet<ObjectId> corrupt;
+
+    private final long elapsedMillis;
+
+    public FsckReport(long objectCount, Set<ObjectId> missing, Set<ObjectId> corrupt,
+            long elapsedMillis) {
+        this.objectCount = objectCount;
+        this.missing = ImmutableSet.copyOf(missing);
+        this.corrupt = ImmutableSet.copyOf(corrupt);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return the number of reachable objects found and checked
+     */
+    public long getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * @return the ids of the objects that are referenced but not present in the object database
+     */
+    public ImmutableSet<ObjectId> getMissing() {
+        return missing;
+    }
+
+    /**
+     * @return the ids of the objects whose contents don't hash to their id, always empty if hashes
+     *         weren't verified
+     */
+    public ImmutableSet<ObjectId> getCorrupt() {
+        return corrupt;
+    }
+
+    /**
+     * @return {@code true} if no missing nor corrupt objects were found
+     */
+    public boolean isOk() {
+        return missing.isEmpty() && corrupt.isEmpty();
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return the number of objects checked per second
+     */
+    public double getObjectsPerSecond() {
+        return elapsedMillis == 0 ? objectCount : objectCount * 1000D / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FsckReport[objects: %,d, missing: %,d, corrupt: %,d, time: %,dms]",
+                objectCount, missing.size(), corrupt.size(), elapsedMillis);
+    }
+}
@@ -0,0 +1,137 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.porcelain;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.GeogigTransaction;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.ProgressListener;
+import org.locationtech.geogig.api.plumbing.CreateDeduplicator;
+import org.locationtech.geogig.repository.RepositoryConnectionException.StorageType;
+import org.locationtech.geogig.storage.BulkOpListener;
+import org.locationtech.geogig.storage.Deduplicator;
+import org.locationtech.geogig.storage.ObjectDatabase;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
+
+/**
+ * Removes the objects that are not reachable from any of the repository refs, such as the ones
+ * left behind by aborted transactions, failed imports or rebases.
+ * <p>
+ * Reachable objects are marked by {@link FsckOp}, which walks the contents of each commit in
+ * parallel. Then all the {@link ObjectDatabase#objectIds() objects in the database} are scanned
+ * and the unreachable ones deleted in batches.
+ * <p>
+ * Garbage collection refuses to run if any reachable object is missing, since the objects only
+ * reachable through it can't be told apart from unreachable ones. It shall not run concurrently
+ * with commands that add objects to the repository, as objects not yet referenced by a ref would
+ * be removed.
+ */
+public class GcOp extends AbstractGeoGigOp<GcReport> {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private boolean dryRun;
+
+    /**
+     * @param dryRun if {@code true}, unreachable objects are found and reported but not removed
+     */
+    public GcOp setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+        return this;
+    }
+
+    @Override
+    protected GcReport _call() {
+        checkState(!(context instanceof GeogigTransaction),
+                "Garbage collection can't run inside a transaction");
+        final ProgressListener progress = getProgressListener();
+        progress.started();
+
+        final Deduplicator reachable = command(CreateDeduplicator.class).call();
+        try {
+            final Stopwatch sw = Stopwatch.createStarted();
+            FsckReport marked = command(FsckOp.class).setVerifyHashes(false)
+                    .setDeduplicator(reachable).setProgressListener(subProgress(50)).call();
+            checkState(marked.getMissing().isEmpty(),
+                    "Can't collect garbage, %s objects reachable from the repository refs are missing. Run fsck for details.",
+                    marked.getMissing().size());
+            final long markMillis = sw.elapsed(TimeUnit.MILLISECONDS);
+
+            progress.setDescription(dryRun ? "Finding unreachable objects..."
+                    : "Removing unreachable objects...");
+            sw.reset().start();
+            final ObjectDatabase db = objectDatabase();
+            final AtomicLong unreachable = new AtomicLong();
+            final AtomicLong bytes = new AtomicLong();
+            final BulkOpListener sizes = new BulkOpListener() {
+                @Override
+                public void found(ObjectId id, @Nullable Integer storageSizeBytes) {
+                    unreachable.incrementAndGet();
+                    if (storageSizeBytes != null) {
+                        bytes.addAndGet(storageSizeBytes.intValue());
+                    }
+                }
+            };
+            long removed = 0;
+            final Iterator<ObjectId> ids = db.objectIds();
+            try {
+                Iterator<List<ObjectId>> batches = Iterators.partition(
+                        Iterators.filter(ids, new Predicate<ObjectId>() {
+                            @Override
+                            public boolean apply(ObjectId id) {
+                                return !reachable.isDuplicate(id);
+                            }
+                        }), BATCH_SIZE);
+                while (batches.hasNext()) {
+                    List<ObjectId> batch = batches.next();
+                    // fetched to learn their storage size
+                    Iterators.size(db.getAll(batch, sizes));
+                    if (!dryRun) {
+                        removed += db.deleteAll(batch.iterator());
+                    }
+                }
+            } finally {
+                close(ids);
+            }
+            final long sweepMillis = sw.elapsed(TimeUnit.MILLISECONDS);
+
+            String storage = configDatabase().get("storage." + StorageType.OBJECT.key).orNull();
+            progress.complete();
+            return new GcReport(storage, marked.getObjectCount(), unreachable.get(), removed,
+                    bytes.get(), markMillis, sweepMillis);
+        } finally {
+            reachable.release();
+        }
+    }
+
+    private static void close(Iterator<ObjectId> ids) {
+        if (ids instanceof Closeable) {
+            try {
+                ((Closeable) ids).close();
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+}
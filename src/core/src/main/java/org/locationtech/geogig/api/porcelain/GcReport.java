@@ -0,0 +1,112 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.porcelain;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The outcome of a garbage collection run.
+ *
+ * @see GcOp
+ */
+public class GcReport {
+
+    private final String storage;
+
+    private final long reachable;
+
+    private final long unreachable;
+
+    private final long removed;
+
+    private final long reclaimedBytes;
+
+    private final long markMillis;
+
+    private final long sweepMillis;
+
+    public GcReport(@Nullable String storage, long reachable, long unreachable, long removed,
+            long reclaimedBytes, long markMillis, long sweepMillis) {
+        this.storage = storage;
+        this.reachable = reachable;
+        this.unreachable = unreachable;
+        this.removed = removed;
+        this.reclaimedBytes = reclaimedBytes;
+        this.markMillis = markMillis;
+        this.sweepMillis = sweepMillis;
+    }
+
+    /**
+     * @return the name of the object database storage format (e.g. {@code bdbje},
+     *         {@code postgres}), or {@code null} if unknown
+     */
+    @Nullable
+    public String getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return the number of objects reachable from the repository refs
+     */
+    public long getReachable() {
+        return reachable;
+    }
+
+    /**
+     * @return the number of unreachable objects found
+     */
+    public long getUnreachable() {
+        return unreachable;
+    }
+
+    /**
+     * @return the number of unreachable objects removed, zero for a dry run
+     */
+    public long getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the storage size of the unreachable objects as reported by the object database, or
+     *         zero if it doesn't report object sizes
+     */
+    public long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+
+    /**
+     * @return the time spent finding the reachable objects
+     */
+    public long getMarkMillis() {
+        return markMillis;
+    }
+
+    /**
+     * @return the time spent finding and removing the unreachable objects
+     */
+    public long getSweepMillis() {
+        return sweepMillis;
+    }
+
+    /**
+     * @return the number of objects scanned per second while sweeping
+     */
+    public double getSweptPerSecond() {
+        long scanned = reachable + unreachable;
+        return sweepMillis == 0 ? scanned : scanned * 1000D / sweepMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "GcReport[storage: %s, reachable: %,d, unreachable: %,d, removed: %,d, reclaimed: %,d bytes, mark: %,dms, sweep: %,dms]",
+                storage, reachable, unreachable, removed, reclaimedBytes, markMillis, sweepMillis);
+    }
+}
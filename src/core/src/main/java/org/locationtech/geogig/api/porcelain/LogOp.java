@@ -18,18 +18,26 @@ import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.eclipse.jdt.annotation.Nullable;
 import org.geotools.util.Range;
 import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.Bucket;
+import org.locationtech.geogig.api.Node;
 import org.locationtech.geogig.api.NodeRef;
 import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.api.Ref;
 import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.api.RevObject.TYPE;
 import org.locationtech.geogig.api.RevTree;
-import org.locationtech.geogig.api.plumbing.FindTreeChild;
 import org.locationtech.geogig.api.plumbing.RevParse;
+import org.locationtech.geogig.api.plumbing.ResolvePathHistoryIndex;
 import org.locationtech.geogig.di.CanRunDuringConflict;
+import org.locationtech.geogig.repository.DepthSearch;
 import org.locationtech.geogig.repository.Repository;
+import org.locationtech.geogig.storage.ChangedPathsFilters;
 import org.locationtech.geogig.storage.GraphDatabase;
+import org.locationtech.geogig.storage.NodePathStorageOrder;
+import org.locationtech.geogig.storage.PathHistoryIndex;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
@@ -39,6 +47,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.hash.BloomFilter;
 
 /**
  * Operation to query the commits logs.
@@ -49,7 +58,10 @@ import com.google.common.collect.Sets;
  * <li> {@link #setTimeRange(Range) timeRange}: return commits that fall in to the given time range.
  * <li> {@link #setSince(ObjectId) since}...{@link #setUntil(ObjectId) until}: Show only commits
  * between the named two commits.
- * <li> {@link #addPath(String) addPath}: Show only commits that affect the specified path.
+ * <li> {@link #addPath(String) addPath}: Show only commits that affect the specified path. If the
+ * {@link PathHistoryIndex path history index} is enabled, it's used to tell which of the indexed
+ * commits affect the paths instead of comparing each commit's tree against its parents. The index
+ * is not updated by this command.
  * </ul>
  * </p>
  * 
@@ -267,7 +279,12 @@ public class LogOp extends AbstractGeoGigOp<Iterator<RevCommit>> {
                 history = new ChronologicalHistoryIterator(commits, repository());
             }
         }
-        LogFilter filter = new LogFilter(oldestCommitId, timeRange, paths, author, commiter);
+        Optional<PathHistoryIndex> pathIndex = Optional.absent();
+        if (paths != null) {
+            pathIndex = command(ResolvePathHistoryIndex.class).call();
+        }
+        LogFilter filter = new LogFilter(oldestCommitId, timeRange, paths, author, commiter,
+                pathIndex);
         Iterator<RevCommit> filteredCommits = Iterators.filter(history, filter);
         if (skip != null) {
             Iterators.advance(filteredCommits, skip.intValue());
@@ -488,7 +505,23 @@ public class LogOp extends AbstractGeoGigOp<Iterator<RevCommit>> {
 
         private Pattern committer;
 
-        private FindTreeChild findTreeChild;
+        private final ChangedPathsFilters changedPathsFilters;
+
+        private final DepthSearch depthSearch;
+
+        @Nullable
+        private final PathHistoryIndex pathIndex;
+
+        /**
+         * The commits that changed any of {@link #paths} according to the path history index, read
+         * after the newest commit known to be indexed was found to be
+         */
+        private Set<ObjectId> indexedCommits;
+
+        /**
+         * Commits known to be indexed, as they're indexed or have an indexed descendant
+         */
+        private Set<ObjectId> knownIndexed;
 
         /**
          * Constructs a new {@code LogFilter} with the given parameters.
@@ -499,9 +532,12 @@ public class LogOp extends AbstractGeoGigOp<Iterator<RevCommit>> {
          *        of the provided paths
          * @param commiter the regexp pattern to filter author names
          * @param author the regexp pattern to filter commiter names
+         * @param pathIndex the path history index to use for the {@code paths} filter, if
+         *        enabled
          */
         public LogFilter(final ObjectId oldestCommitId, final Range<Long> timeRange,
-                final Set<String> paths, Pattern author, Pattern commiter) {
+                final Set<String> paths, Pattern author, Pattern commiter,
+                Optional<PathHistoryIndex> pathIndex) {
             Preconditions.checkNotNull(oldestCommitId);
             Preconditions.checkNotNull(timeRange);
             this.oldestCommitId = oldestCommitId;
@@ -509,7 +545,12 @@ public class LogOp extends AbstractGeoGigOp<Iterator<RevCommit>> {
             this.author = author;
             this.committer = commiter;
             this.paths = paths;
-            findTreeChild = command(FindTreeChild.class);
+            changedPathsFilters = new ChangedPathsFilters(repository().blobStore());
+            depthSearch = new DepthSearch(repository().objectDatabase());
+            this.pathIndex = paths == null ? null : pathIndex.orNull();
+            if (this.pathIndex != null) {
+                knownIndexed = new HashSet<ObjectId>();
+            }
         }
 
         /**
@@ -544,51 +585,157 @@ public class LogOp extends AbstractGeoGigOp<Iterator<RevCommit>> {
             if (!applies) {
                 return false;
             }
-            if (paths != null) {
-                applies = false;
-                final Repository repository = repository();
-                // did this commit touch any of the paths?
-                RevTree commitTree = repository.getTree(commit.getTreeId());
-                ObjectId currentValue, parentValue;
+            if (isIndexed(commit)) {
+                applies = indexedCommits.contains(commit.getId());
+            } else if (paths != null) {
+                applies = touchesAnyPath(commit);
+            }
+
+            return applies;
+        }
+
+        /**
+         * @return whether the commit's changes are in the path history index, in which case so are
+         *         its ancestors' ones
+         */
+        private boolean isIndexed(final RevCommit commit) {
+            if (pathIndex == null) {
+                return false;
+            }
+            if (knownIndexed.contains(commit.getId())) {
+                knownIndexed.addAll(commit.getParentIds());
+                return true;
+            }
+            if (pathIndex.isIndexed(commit.getId())) {
+                // (re)read the changes, as the index may have been updated since they were read,
+                // and a commit is only marked as indexed once its and its ancestors' changes are
+                indexedCommits = new HashSet<ObjectId>();
+                for (String path : paths) {
+                    indexedCommits.addAll(pathIndex.getChanges(path).keySet());
+                }
+                knownIndexed.addAll(commit.getParentIds());
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return whether the value of any of the {@link #paths} at the given commit differs from
+         *         the value at any of its parents
+         */
+        private boolean touchesAnyPath(final RevCommit commit) {
+            // the changed paths filter can tell for sure the commit didn't touch the paths,
+            // without reading any tree
+            Optional<BloomFilter<CharSequence>> filter = changedPathsFilters.get(commit.getId());
+            if (filter.isPresent()) {
+                boolean mightContain = false;
                 for (String path : paths) {
-                    currentValue = getPathHash(commitTree, path);
-                    // See if the new value is different from any of the parents.
-                    int parentIndex = 0;
-                    do {
-                        ObjectId parentId = commit.parentN(parentIndex++).or(ObjectId.NULL);
-                        if (parentId.isNull() || !repository.commitExists(parentId)) {
-                            // we have reached the bottom of a shallow clone or the end of history.
-                            if (!currentValue.isNull()) {
-                                applies = true;
-                                break;
-                            }
-                        } else {
-                            RevCommit otherCommit = repository.getCommit(parentId);
-                            RevTree parentTree = repository.getTree(otherCommit.getTreeId());
-                            parentValue = getPathHash(parentTree, path);
-                            if (!parentValue.equals(currentValue)) {
-                                applies = true;
-                                break;
-                            }
-                        }
-                    } while (parentIndex < commit.getParentIds().size());
-
-                    if (applies) {
+                    if (filter.get().mightContain(path)) {
+                        mightContain = true;
                         break;
                     }
                 }
+                if (!mightContain) {
+                    return false;
+                }
+            }
+            final Repository repository = repository();
+            List<ObjectId> parentTrees = Lists.newArrayList();
+            for (ObjectId parentId : commit.getParentIds()) {
+                if (repository.commitExists(parentId)) {
+                    parentTrees.add(repository.getCommit(parentId).getTreeId());
+                } else {
+                    // we have reached the bottom of a shallow clone
+                    parentTrees.add(RevTree.EMPTY_TREE_ID);
+                }
+            }
+            if (parentTrees.isEmpty()) {
+                // the end of history
+                parentTrees.add(RevTree.EMPTY_TREE_ID);
+            }
+            for (String path : paths) {
+                for (ObjectId parentTree : parentTrees) {
+                    if (changed(parentTree, commit.getTreeId(), path)) {
+                        return true;
+                    }
+                }
             }
+            return false;
+        }
 
-            return applies;
+        /**
+         * Compares the value of {@code path} in both trees, descending them top-down at the same
+         * time and stopping as soon as the subtrees or buckets where the path would be have the
+         * same id on both sides.
+         */
+        private boolean changed(final ObjectId leftTreeId, final ObjectId rightTreeId,
+                final String path) {
+            if (leftTreeId.equals(rightTreeId)) {
+                return false;
+            }
+            RevTree left = tree(leftTreeId);
+            RevTree right = tree(rightTreeId);
+            final List<String> names = NodeRef.split(path);
+            for (int i = 0; i < names.size(); i++) {
+                Node[] children = children(left, right, names.get(i), 0);
+                if (children == null) {
+                    return false;
+                }
+                ObjectId leftId = children[0] == null ? ObjectId.NULL : children[0].getObjectId();
+                ObjectId rightId = children[1] == null ? ObjectId.NULL : children[1]
+                        .getObjectId();
+                if (leftId.equals(rightId)) {
+                    return false;
+                }
+                if (i == names.size() - 1) {
+                    return true;
+                }
+                left = subtree(children[0]);
+                right = subtree(children[1]);
+            }
+            return true;
+        }
+
+        /**
+         * @return the direct children named {@code name} of both trees, either of which may be
+         *         {@code null} if not present, or {@code null} if the buckets where they'd be are
+         *         the same on both sides
+         */
+        @Nullable
+        private Node[] children(RevTree left, RevTree right, String name, int depth) {
+            if (left.getId().equals(right.getId())) {
+                return null;
+            }
+            if (left.buckets().isPresent() && right.buckets().isPresent()) {
+                Integer bucket = NodePathStorageOrder.INSTANCE.bucket(name, depth);
+                Bucket lbucket = left.buckets().get().get(bucket);
+                Bucket rbucket = right.buckets().get().get(bucket);
+                ObjectId lbucketId = lbucket == null ? RevTree.EMPTY_TREE_ID : lbucket
+                        .getObjectId();
+                ObjectId rbucketId = rbucket == null ? RevTree.EMPTY_TREE_ID : rbucket
+                        .getObjectId();
+                if (lbucketId.equals(rbucketId)) {
+                    return null;
+                }
+                return children(tree(lbucketId), tree(rbucketId), name, depth + 1);
+            }
+            Node lchild = depthSearch.getDirectChild(left, name, depth).orNull();
+            Node rchild = depthSearch.getDirectChild(right, name, depth).orNull();
+            return new Node[] { lchild, rchild };
+        }
+
+        private RevTree subtree(@Nullable Node node) {
+            if (node == null || !TYPE.TREE.equals(node.getType())) {
+                return RevTree.EMPTY;
+            }
+            return tree(node.getObjectId());
         }
 
-        private ObjectId getPathHash(RevTree tree, String path) {
-            ObjectId hash = ObjectId.NULL;
-            Optional<NodeRef> ref = findTreeChild.setChildPath(path).setParent(tree).call();
-            if (ref.isPresent()) {
-                hash = ref.get().getNode().getObjectId();
+        private RevTree tree(ObjectId treeId) {
+            if (RevTree.EMPTY_TREE_ID.equals(treeId)) {
+                return RevTree.EMPTY;
             }
-            return hash;
+            return repository().getTree(treeId);
         }
     }
 
@@ -11,18 +11,34 @@ package org.locationtech.geogig.api.porcelain;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.locationtech.geogig.api.AbstractGeoGigOp;
 import org.locationtech.geogig.api.CommitBuilder;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.NodeRef;
 import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.api.Platform;
+import org.locationtech.geogig.api.ProgressListener;
 import org.locationtech.geogig.api.Ref;
 import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.api.RevObject.TYPE;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.RevTreeBuilder;
 import org.locationtech.geogig.api.SymRef;
 import org.locationtech.geogig.api.hooks.Hookable;
 import org.locationtech.geogig.api.plumbing.CatObject;
@@ -40,9 +56,12 @@ import org.locationtech.geogig.api.plumbing.merge.MergeScenarioReport;
 import org.locationtech.geogig.api.plumbing.merge.ReportCommitConflictsOp;
 import org.locationtech.geogig.api.porcelain.ResetOp.ResetMode;
 import org.locationtech.geogig.di.CanRunDuringConflict;
+import org.locationtech.geogig.repository.DepthSearch;
 import org.locationtech.geogig.repository.Repository;
+import org.locationtech.geogig.repository.SpatialOps;
 import org.locationtech.geogig.storage.BlobStore;
 import org.locationtech.geogig.storage.Blobs;
+import org.locationtech.geogig.storage.ObjectDatabase;
 import org.locationtech.geogig.storage.text.TextSerializationFactory;
 
 import com.google.common.base.Charsets;
@@ -51,6 +70,12 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.vividsolutions.jts.geom.Envelope;
 
 /**
  * 
@@ -102,6 +127,8 @@ public class RebaseOp extends AbstractGeoGigOp<Boolean> {
 
     private String squashMessage;
 
+    private boolean inMemory;
+
     /**
      * Sets the commit to replay commits onto.
      * 
@@ -136,6 +163,24 @@ public class RebaseOp extends AbstractGeoGigOp<Boolean> {
         return this;
     }
 
+    /**
+     * Sets whether to apply commits without going through the working tree and the index while
+     * possible.
+     * <p>
+     * In this mode the diffs of the commits to apply are computed in parallel, and each new root
+     * tree is built straight out of the previous one. {@code WORK_HEAD} and {@code STAGE_HEAD} are
+     * only updated at the end, or before handing over to the regular process at the first commit
+     * that needs its changes merged at the feature level or conflicts with the upstream changes.
+     * It has no effect when squashing.
+     * 
+     * @param inMemory
+     * @return {@code this}
+     */
+    public RebaseOp setInMemory(boolean inMemory) {
+        this.inMemory = inMemory;
+        return this;
+    }
+
     /**
      * Sets whether to continue a rebase operation aborted due to conflicts
      * 
@@ -324,6 +369,10 @@ public class RebaseOp extends AbstractGeoGigOp<Boolean> {
                 }
                 applyCommit(squashCommit, true);
                 return true;
+            } else if (inMemory) {
+                // commitsToRebase is sorted newest first
+                List<RevCommit> remaining = applyCommitsInMemory(Lists.reverse(commitsToRebase));
+                createRebaseCommitsInfo(Lists.reverse(remaining));
             } else {
                 createRebaseCommitsInfo(commitsToRebase);
             }
@@ -517,6 +566,259 @@ public class RebaseOp extends AbstractGeoGigOp<Boolean> {
 
     }
 
+    /**
+     * Applies the given commits, in order, on top of {@link #rebaseHead} without going through the
+     * working tree and the index, for as long as their changes apply cleanly.
+     * <p>
+     * The diffs of the commits are computed ahead of time by a thread pool, bounded to a few
+     * commits ahead of the one being applied to keep memory usage in check. The current branch,
+     * {@code WORK_HEAD} and {@code STAGE_HEAD} are updated once all of them are applied, or when
+     * stopping at a commit that can't be applied this way.
+     * 
+     * @param commits the commits to apply, oldest first
+     * @return the commits that were not applied, starting with the first one that needs to be
+     *         merged at the feature level or conflicts, in the same order as {@code commits}
+     */
+    private List<RevCommit> applyCommitsInMemory(final List<RevCommit> commits) {
+        final ObjectDatabase db = objectDatabase();
+        final Platform platform = platform();
+        final ProgressListener progress = getProgressListener();
+        final int nThreads = Runtime.getRuntime().availableProcessors();
+        final int maxPending = 2 * nThreads;
+
+        RevTree root = db.getTree(db.getCommit(rebaseHead).getTreeId());
+        int applied = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads,
+                new ThreadFactoryBuilder().setNameFormat("RebaseOp-diff-%d").setDaemon(true)
+                        .build());
+        try {
+            Deque<Future<List<DiffEntry>>> pending = new ArrayDeque<>();
+            int next = 0;
+            for (; applied < commits.size(); applied++) {
+                while (next < commits.size() && pending.size() < maxPending) {
+                    pending.add(executor.submit(diffTask(commits.get(next++))));
+                }
+                final List<DiffEntry> changes = Futures.getUnchecked(pending.removeFirst());
+                final RevCommit commitToApply = commits.get(applied);
+
+                Optional<RevTree> newRoot = new InMemoryTreeEditor(db, root).apply(changes);
+                if (!newRoot.isPresent()) {
+                    break;
+                }
+                root = newRoot.get();
+
+                long timestamp = platform.currentTimeMillis();
+                CommitBuilder builder = new CommitBuilder(commitToApply);
+                builder.setParentIds(Arrays.asList(rebaseHead));
+                builder.setTreeId(root.getId());
+                builder.setCommitterTimestamp(timestamp);
+                builder.setCommitterTimeZoneOffset(platform.timeZoneOffset(timestamp));
+                RevCommit newCommit = builder.build();
+                db.put(newCommit);
+                rebaseHead = newCommit.getId();
+
+                progress.setProgress((applied + 1) * 100f / commits.size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (applied > 0) {
+            command(UpdateRef.class).setName(currentBranch).setNewValue(rebaseHead).call();
+            command(UpdateSymRef.class).setName(Ref.HEAD).setNewValue(currentBranch).call();
+            workingTree().updateWorkHead(root.getId());
+            index().updateStageHead(root.getId());
+        }
+        return commits.subList(applied, commits.size());
+    }
+
+    private Callable<List<DiffEntry>> diffTask(final RevCommit commit) {
+        return new Callable<List<DiffEntry>>() {
+            @Override
+            public List<DiffEntry> call() {
+                ObjectId parentTreeId = ObjectId.NULL;
+                if (commit.getParentIds().size() > 0) {
+                    ObjectId parentCommitId = commit.getParentIds().get(0);
+                    if (repository().commitExists(parentCommitId)) {
+                        parentTreeId = repository().getCommit(parentCommitId).getTreeId();
+                    }
+                }
+                Iterator<DiffEntry> diff = command(DiffTree.class).setOldTree(parentTreeId)
+                        .setNewTree(commit.getTreeId()).setReportTrees(true).call();
+                return Lists.newArrayList(diff);
+            }
+        };
+    }
+
+    /**
+     * Applies the changes of a single commit to a root tree, as long as each change applies
+     * cleanly (i.e. what the commit changes is still as it was in the commit's parent, or already
+     * as the commit leaves it), building the modified trees bottom up.
+     */
+    private static class InMemoryTreeEditor {
+
+        private final ObjectDatabase db;
+
+        private final RevTree root;
+
+        private final Map<String, RevTreeBuilder> builders = Maps.newHashMap();
+
+        private final Map<String, ObjectId> metadataIds = Maps.newHashMap();
+
+        private final Set<String> removedTrees = Sets.newHashSet();
+
+        InMemoryTreeEditor(ObjectDatabase db, RevTree root) {
+            this.db = db;
+            this.root = root;
+        }
+
+        /**
+         * @return the new root tree, or absent if any of the changes doesn't apply cleanly
+         */
+        public Optional<RevTree> apply(List<DiffEntry> changes) {
+            final DepthSearch search = new DepthSearch(db);
+            for (DiffEntry diff : changes) {
+                final NodeRef oldObject = diff.getOldObject();
+                final NodeRef newObject = diff.getNewObject();
+                final String path = diff.oldPath() == null ? diff.newPath() : diff.oldPath();
+                if (isRemoved(path)) {
+                    continue;
+                }
+                final Optional<NodeRef> current = search.find(root, path);
+                final boolean isTree = TYPE.TREE.equals((oldObject == null ? newObject
+                        : oldObject).getType());
+                if (isTree) {
+                    if (!applyTreeChange(oldObject, newObject, path, current)) {
+                        return Optional.absent();
+                    }
+                    continue;
+                }
+                if (current.isPresent()) {
+                    ObjectId currentId = current.get().getObjectId();
+                    if (newObject != null && currentId.equals(newObject.getObjectId())) {
+                        // already as the commit leaves it
+                        continue;
+                    }
+                    if (oldObject == null || !currentId.equals(oldObject.getObjectId())) {
+                        return Optional.absent();
+                    }
+                } else if (newObject == null) {
+                    // already removed
+                    continue;
+                }
+                final RevTreeBuilder parent = builder(NodeRef.parentPath(path));
+                if (newObject == null) {
+                    parent.remove(oldObject.name());
+                } else {
+                    parent.put(newObject.getNode());
+                }
+            }
+            return Optional.of(build());
+        }
+
+        private boolean applyTreeChange(@Nullable NodeRef oldObject, @Nullable NodeRef newObject,
+                String path, Optional<NodeRef> current) {
+            if (NodeRef.ROOT.equals(path)) {
+                return true;
+            }
+            if (current.isPresent() && !TYPE.TREE.equals(current.get().getType())) {
+                return false;
+            }
+            if (newObject == null) {
+                if (current.isPresent()) {
+                    if (!current.get().getObjectId().equals(oldObject.getObjectId())) {
+                        return false;
+                    }
+                    builder(NodeRef.parentPath(path)).remove(oldObject.name());
+                    builders.remove(path);
+                }
+                removedTrees.add(path);
+                return true;
+            }
+            final ObjectId newMetadataId = newObject.getMetadataId();
+            if (oldObject == null) {
+                if (current.isPresent()) {
+                    return current.get().getMetadataId().equals(newMetadataId);
+                }
+                builder(NodeRef.parentPath(path));
+                builders.put(path, new RevTreeBuilder(db, RevTree.EMPTY));
+                metadataIds.put(path, newMetadataId);
+                return true;
+            }
+            // modified tree, contents are handled by its children changes
+            if (!current.isPresent()) {
+                return false;
+            }
+            return oldObject.getMetadataId().equals(newMetadataId)
+                    || current.get().getMetadataId().equals(newMetadataId);
+        }
+
+        private boolean isRemoved(String path) {
+            for (String p = NodeRef.parentPath(path); p != null; p = NodeRef.parentPath(p)) {
+                if (removedTrees.contains(p)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the builder for the tree at {@code path}, creating the ones for it and all its
+         *         ancestors as needed
+         */
+        private RevTreeBuilder builder(final String path) {
+            RevTreeBuilder builder = builders.get(path);
+            if (builder == null) {
+                if (NodeRef.ROOT.equals(path)) {
+                    builder = new RevTreeBuilder(db, root);
+                } else {
+                    builder(NodeRef.parentPath(path));
+                    Optional<NodeRef> ref = new DepthSearch(db).find(root, path);
+                    if (ref.isPresent()) {
+                        builder = new RevTreeBuilder(db, db.getTree(ref.get().getObjectId()));
+                        metadataIds.put(path, ref.get().getMetadataId());
+                    } else {
+                        builder = new RevTreeBuilder(db, RevTree.EMPTY);
+                    }
+                }
+                builders.put(path, builder);
+            }
+            return builder;
+        }
+
+        private RevTree build() {
+            if (builders.isEmpty()) {
+                return root;
+            }
+            List<String> paths = Lists.newArrayList(builders.keySet());
+            // deepest trees first, so each one is built after all its children
+            Collections.sort(paths, new Comparator<String>() {
+                @Override
+                public int compare(String p1, String p2) {
+                    return NodeRef.depth(p2) - NodeRef.depth(p1);
+                }
+            });
+            RevTree newRoot = null;
+            for (String path : paths) {
+                RevTree tree = builders.get(path).build();
+                db.put(tree);
+                if (NodeRef.ROOT.equals(path)) {
+                    newRoot = tree;
+                } else {
+                    ObjectId metadataId = Optional.fromNullable(metadataIds.get(path)).or(
+                            ObjectId.NULL);
+                    // only include bounds for trees with a default feature type
+                    Envelope bounds = metadataId.isNull() ? null : SpatialOps.boundsOf(tree);
+                    Node node = Node.create(NodeRef.nodeFromPath(path), tree.getId(), metadataId,
+                            TYPE.TREE, bounds);
+                    builders.get(NodeRef.parentPath(path)).put(node);
+                }
+            }
+            return newRoot;
+        }
+    }
+
     /**
      * Return the commit that is the squashed version of all the commits to apply, reading it from
      * the 'squash' file. If the file does not exist (that is, we are not in the middle of a rebase
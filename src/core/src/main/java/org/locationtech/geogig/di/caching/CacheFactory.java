@@ -60,6 +60,14 @@ abstract class CacheFactory {
             this.cache = NO_CACHE;
             return;
         }
+        this.cache = newCache();
+    }
+
+    /**
+     * Creates the cache once it's been found enabled, subclasses may override to build a
+     * different kind of cache out of their own config properties
+     */
+    protected Cache<ObjectId, RevObject> newCache() {
         final int maxSize = getConfig("maxSize", 50_000);
         final int concurrencyLevel = getConfig("concurrencyLevel", 4);
 
@@ -72,8 +80,9 @@ abstract class CacheFactory {
         cacheBuilder.concurrencyLevel(concurrencyLevel);
         cacheBuilder.softValues();
 
+        final Cache<ObjectId, RevObject> cache;
         try {
-            this.cache = cacheBuilder.build();
+            cache = cacheBuilder.build();
         } catch (RuntimeException e) {
             LOGGER.error(
                     "Error configuring cache '{}' with maxSize: {}, expireSeconds: {}, initialCapacity: {}, concurrencyLevel: {}",
@@ -86,7 +95,7 @@ abstract class CacheFactory {
         LOGGER.debug(
                 "Cache '{}' configured with maxSize: {}, expireSeconds: {}, initialCapacity: {}, concurrencyLevel: {}",
                 configKeywordPrefix, maxSize, expireSeconds, initialCapacity, concurrencyLevel);
-
+        return cache;
     }
 
     private boolean cacheIsEnabled() {
@@ -99,7 +108,7 @@ abstract class CacheFactory {
     }
 
     @SuppressWarnings("unchecked")
-    private <T> T getConfig(final String keyword, final T defaultValue) {
+    protected <T> T getConfig(final String keyword, final T defaultValue) {
         final String kw = configKeywordPrefix + "." + keyword;
         ConfigDatabase configDatabase = configDb.get();
         try {
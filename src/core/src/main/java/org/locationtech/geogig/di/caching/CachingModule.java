@@ -27,6 +27,7 @@ import com.google.inject.Scopes;
  * @see ObjectDatabaseCacheInterceptor
  * @see ObjectDatabaseDeleteCacheInterceptor
  * @see ObjectDatabaseDeleteAllCacheInterceptor
+ * @see CachingRefDatabase
  */
 
 public class CachingModule extends AbstractModule {
@@ -38,10 +39,15 @@ public class CachingModule extends AbstractModule {
         // bind separate caches for the object and staging databases
 
         bind(ObjectDatabaseCacheFactory.class).in(Scopes.SINGLETON);
+        bind(TreeCacheFactory.class).in(Scopes.SINGLETON);
 
-        Decorator objectCachingDecorator = ObjectDatabaseCacheInterceptor
-                .objects(getProvider(ObjectDatabaseCacheFactory.class));
+        Decorator objectCachingDecorator = ObjectDatabaseCacheInterceptor.objects(
+                getProvider(ObjectDatabaseCacheFactory.class),
+                getProvider(TreeCacheFactory.class));
 
         GeogigModule.bindDecorator(binder(), objectCachingDecorator);
+
+        GeogigModule.bindDecorator(binder(),
+                CachingRefDatabase.decorator(getProvider(ConfigDatabase.class)));
     }
 }
@@ -0,0 +1,306 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.di.caching;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.di.Decorator;
+import org.locationtech.geogig.repository.RepositoryConnectionException;
+import org.locationtech.geogig.storage.ConfigDatabase;
+import org.locationtech.geogig.storage.ConfigException;
+import org.locationtech.geogig.storage.RefChangeTracker;
+import org.locationtech.geogig.storage.RefDatabase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.inject.Provider;
+
+/**
+ * A {@link RefDatabase} decorator that keeps the values of the refs it resolves, so that resolving
+ * {@code HEAD} and the branches it points to over and over doesn't hit the storage every time.
+ * <p>
+ * Cached values are discarded when:
+ * <ul>
+ * <li>A ref is written or removed through this database;
+ * <li>The decorated database is a {@link RefChangeTracker} and the
+ * {@link RefChangeTracker#version version} of the ref changed since it was read, meaning another
+ * process modified it. Such hits would have been stale reads, and are counted as
+ * {@link #getStaleReadsPrevented() prevented}.
+ * </ul>
+ * Databases that can't be modified by other processes need not track changes. While the calling
+ * thread holds the {@link #lock() lock}, refs are always read from the decorated database, so
+ * read-modify-write sequences under the lock see the latest values.
+ * <p>
+ * Listings ({@link #getAll()}, {@link #getAll(String)}) are not cached.
+ */
+public class CachingRefDatabase implements RefDatabase {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingRefDatabase.class);
+
+    /**
+     * Config key to disable the refs cache, defaults to {@code true}
+     */
+    public static final String KEY_ENABLED = "refdb.cache.enabled";
+
+    private final RefDatabase subject;
+
+    private final @Nullable RefChangeTracker tracker;
+
+    private final ConcurrentMap<String, Entry> refs = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Entry> symRefs = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on every write, entries read before a write are no longer valid
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final ThreadLocal<int[]> lockDepth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong staleReadsPrevented = new AtomicLong();
+
+    private static final class Entry {
+
+        final @Nullable String value;
+
+        final long generation;
+
+        final @Nullable Object version;
+
+        Entry(@Nullable String value, long generation, @Nullable Object version) {
+            this.value = value;
+            this.generation = generation;
+            this.version = version;
+        }
+    }
+
+    public CachingRefDatabase(RefDatabase subject) {
+        checkNotNull(subject);
+        this.subject = subject;
+        this.tracker = subject instanceof RefChangeTracker ? (RefChangeTracker) subject : null;
+    }
+
+    /**
+     * @return a decorator that caches the refs of the {@link RefDatabase}s it's applied to, unless
+     *         disabled through the {@code refdb.cache.enabled} config key
+     */
+    public static Decorator decorator(final Provider<ConfigDatabase> configDb) {
+        return new Decorator() {
+            @Override
+            public boolean canDecorate(Object instance) {
+                return instance instanceof RefDatabase && !(instance instanceof CachingRefDatabase);
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public <I> I decorate(I subject) {
+                if (!isEnabled(configDb)) {
+                    LOGGER.debug("Refs cache is disabled");
+                    return subject;
+                }
+                return (I) new CachingRefDatabase((RefDatabase) subject);
+            }
+        };
+    }
+
+    private static boolean isEnabled(Provider<ConfigDatabase> configDb) {
+        try {
+            Optional<Boolean> enabled = configDb.get().get(KEY_ENABLED, Boolean.class);
+            return enabled.or(Boolean.TRUE).booleanValue();
+        } catch (ConfigException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public String getRef(String name) {
+        checkNotNull(name);
+        return get(refs, name, false);
+    }
+
+    @Override
+    public String getSymRef(String name) {
+        checkNotNull(name);
+        return get(symRefs, name, true);
+    }
+
+    private String get(ConcurrentMap<String, Entry> cache, String name, boolean symRef) {
+        if (lockDepth.get()[0] > 0) {
+            misses.incrementAndGet();
+            return load(name, symRef);
+        }
+        // read both the generation and version before the value, so that a change in between
+        // invalidates the entry rather than going unnoticed
+        final long gen = generation.get();
+        final Object version = tracker == null ? null : tracker.version(name);
+        final Entry entry = cache.get(name);
+        if (entry != null && entry.generation == gen) {
+            if (Objects.equal(entry.version, version)) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            staleReadsPrevented.incrementAndGet();
+        }
+        misses.incrementAndGet();
+        String value = load(name, symRef);
+        cache.put(name, new Entry(value, gen, version));
+        return value;
+    }
+
+    private String load(String name, boolean symRef) {
+        return symRef ? subject.getSymRef(name) : subject.getRef(name);
+    }
+
+    private void invalidate() {
+        generation.incrementAndGet();
+        refs.clear();
+        symRefs.clear();
+    }
+
+    @Override
+    public void putRef(String refName, String refValue) {
+        try {
+            subject.putRef(refName, refValue);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void putSymRef(String name, String val) {
+        try {
+            subject.putSymRef(name, val);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public String remove(String refName) {
+        try {
+            return subject.remove(refName);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public Map<String, String> removeAll(String namespace) {
+        try {
+            return subject.removeAll(namespace);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public Map<String, String> getAll() {
+        return subject.getAll();
+    }
+
+    @Override
+    public Map<String, String> getAll(String prefix) {
+        return subject.getAll(prefix);
+    }
+
+    @Override
+    public void lock() throws TimeoutException {
+        subject.lock();
+        lockDepth.get()[0]++;
+    }
+
+    @Override
+    public void unlock() {
+        int[] depth = lockDepth.get();
+        if (depth[0] > 0) {
+            depth[0]--;
+        }
+        subject.unlock();
+    }
+
+    @Override
+    public void configure() throws RepositoryConnectionException {
+        subject.configure();
+    }
+
+    @Override
+    public void checkConfig() throws RepositoryConnectionException {
+        subject.checkConfig();
+    }
+
+    @Override
+    public void create() {
+        subject.create();
+    }
+
+    @Override
+    public void close() {
+        LOGGER.debug("{}", this);
+        invalidate();
+        subject.close();
+    }
+
+    /**
+     * @return the number of refs resolved from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of refs read from the decorated database
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of refs resolved from the cache, between {@code 0} and {@code 1}
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of cached refs found modified by another process, which would have been
+     *         stale reads without change tracking
+     */
+    public long getStaleReadsPrevented() {
+        return staleReadsPrevented.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s[%s, hits: %,d, misses: %,d, hit ratio: %.2f, stale reads prevented: %,d]",
+                getClass().getSimpleName(), subject, getHits(), getMisses(), getHitRatio(),
+                getStaleReadsPrevented());
+    }
+}
@@ -9,6 +9,7 @@
  */
 package org.locationtech.geogig.di.caching;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -19,6 +20,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
 import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.NodeRef;
 import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.api.RevCommit;
 import org.locationtech.geogig.api.RevFeature;
@@ -31,8 +33,10 @@ import org.locationtech.geogig.storage.BulkOpListener;
 import org.locationtech.geogig.storage.ForwardingObjectDatabase;
 import org.locationtech.geogig.storage.ObjectDatabase;
 import org.locationtech.geogig.storage.ObjectStore;
+import org.locationtech.geogig.storage.TreePathCache;
 
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.collect.AbstractIterator;
@@ -57,7 +61,8 @@ class ObjectDatabaseCacheInterceptor {
         // force use of factory methods
     }
 
-    public static Decorator objects(final Provider<? extends CacheFactory> cacheProvider) {
+    public static Decorator objects(final Provider<? extends CacheFactory> cacheProvider,
+            final Provider<? extends CacheFactory> treeCacheProvider) {
 
         return new Decorator() {
             @Override
@@ -70,21 +75,28 @@ class ObjectDatabaseCacheInterceptor {
             public ObjectStore decorate(Object subject) {
                 Provider<ObjectDatabase> odb = Providers.of((ObjectDatabase) subject);
                 CachingObjectDatabase cachingObjectDatabase = new CachingObjectDatabase(odb,
-                        cacheProvider);
+                        cacheProvider, treeCacheProvider);
                 return cachingObjectDatabase;
             }
         };
     }
 
-    private static class CachingObjectDatabase extends ForwardingObjectDatabase {
+    private static class CachingObjectDatabase extends ForwardingObjectDatabase
+            implements TreePathCache {
 
         private CacheHelper cache;
 
         public CachingObjectDatabase(final Provider<? extends ObjectDatabase> odb,
-                final Provider<? extends CacheFactory> cacheProvider) {
+                final Provider<? extends CacheFactory> cacheProvider,
+                final Provider<? extends CacheFactory> treeCacheProvider) {
 
             super(odb);
-            this.cache = new CacheHelper(cacheProvider);
+            this.cache = new CacheHelper(cacheProvider, treeCacheProvider);
+        }
+
+        @Override
+        public @Nullable Cache<List<Object>, Optional<NodeRef>> resolvedPaths() {
+            return cache.resolvedPaths();
         }
 
         @Override
@@ -185,23 +197,54 @@ class ObjectDatabaseCacheInterceptor {
 
     }
 
+    /**
+     * Keeps {@link RevTree}s in the tree cache and every other object in the object cache.
+     */
     private static class CacheHelper {
         private Provider<? extends CacheFactory> cacheProvider;
 
+        private Provider<? extends CacheFactory> treeCacheProvider;
+
         final boolean cacheFeatures = true;// TODO make configurable?
 
-        public CacheHelper(final Provider<? extends CacheFactory> cacheProvider) {
+        public CacheHelper(final Provider<? extends CacheFactory> cacheProvider,
+                final Provider<? extends CacheFactory> treeCacheProvider) {
             this.cacheProvider = cacheProvider;
+            this.treeCacheProvider = treeCacheProvider;
+        }
+
+        private Cache<ObjectId, RevObject> objects() {
+            return cacheProvider.get().get();
+        }
+
+        private Cache<ObjectId, RevObject> trees() {
+            return treeCacheProvider.get().get();
+        }
+
+        @Nullable
+        private Cache<List<Object>, Optional<NodeRef>> resolvedPaths() {
+            Cache<ObjectId, RevObject> trees = trees();
+            return trees instanceof TreeCache ? ((TreeCache) trees).resolvedPaths() : null;
+        }
+
+        private void put(RevObject obj) {
+            if (obj instanceof RevTree) {
+                trees().put(obj.getId(), obj);
+            } else if (isCacheable(obj, cacheFeatures)) {
+                objects().put(obj.getId(), obj);
+            }
         }
 
         @Nullable
         public RevObject getIfPresent(ObjectId id, ObjectStore db) throws IllegalArgumentException {
-            final Cache<ObjectId, RevObject> cache = cacheProvider.get().get();
-            RevObject obj = cache.getIfPresent(id);
+            RevObject obj = trees().getIfPresent(id);
+            if (obj == null) {
+                obj = objects().getIfPresent(id);
+            }
             if (obj == null) {
                 obj = db.getIfPresent(id);
-                if (obj != null && isCacheable(obj, cacheFeatures)) {
-                    cache.put(id, obj);
+                if (obj != null) {
+                    put(obj);
                 }
             }
             return obj;
@@ -214,11 +257,24 @@ class ObjectDatabaseCacheInterceptor {
         public <T extends RevObject> T get(ObjectId id, Class<T> type, ObjectStore db)
                 throws IllegalArgumentException {
 
-            final Cache<ObjectId, RevObject> cache = cacheProvider.get().get();
-
+            final ValueLoader loader = new ValueLoader(id, db);
             RevObject object;
             try {
-                object = cache.get(id, new ValueLoader(id, db));
+                if (RevTree.class.equals(type)) {
+                    object = trees().get(id, loader);
+                } else {
+                    object = type.isAssignableFrom(RevTree.class) ? trees().getIfPresent(id)
+                            : null;
+                    if (object == null) {
+                        final Cache<ObjectId, RevObject> cache = objects();
+                        object = cache.get(id, loader);
+                        if (object instanceof RevTree) {
+                            // not known to be a tree until loaded
+                            cache.invalidate(id);
+                            trees().put(id, object);
+                        }
+                    }
+                }
             } catch (ExecutionException | UncheckedExecutionException e) {
                 Throwable cause = e.getCause();
                 Throwables.propagateIfInstanceOf(cause, IllegalArgumentException.class);
@@ -234,7 +290,10 @@ class ObjectDatabaseCacheInterceptor {
             final int partitionSize = 10_000;
             Iterable<List<ObjectId>> partition = Iterables.partition(ids, partitionSize);
 
-            final Cache<ObjectId, RevObject> cache = cacheProvider.get().get();
+            final Cache<ObjectId, RevObject> cache = objects();
+            final Cache<ObjectId, RevObject> trees = trees();
+            final boolean treesOnly = RevTree.class.equals(type);
+            final boolean mayBeTree = type.isAssignableFrom(RevTree.class);
 
             List<Iterator<T>> iterators = new LinkedList<>();
 
@@ -242,9 +301,14 @@ class ObjectDatabaseCacheInterceptor {
 
             for (List<ObjectId> p : partition) {
                 final ImmutableSet<ObjectId> partitionIds = ImmutableSet.copyOf(p);
-                Map<ObjectId, RevObject> present = Maps.filterValues(
-                        cache.getAllPresent(partitionIds),
-                        (o) -> type.isAssignableFrom(o.getClass()));
+                Map<ObjectId, RevObject> present = new HashMap<>();
+                if (mayBeTree) {
+                    present.putAll(trees.getAllPresent(partitionIds));
+                }
+                if (!treesOnly) {
+                    present.putAll(Maps.filterValues(cache.getAllPresent(partitionIds),
+                            (o) -> type.isAssignableFrom(o.getClass())));
+                }
 
                 if (present.isEmpty()) {
                     missing.addAll(partitionIds);
@@ -268,9 +332,7 @@ class ObjectDatabaseCacheInterceptor {
                     protected T computeNext() {
                         if (delegate.hasNext()) {
                             T next = delegate.next();
-                            if (isCacheable(next, cacheFeatures)) {
-                                cache.put(next.getId(), next);
-                            }
+                            put(next);
                             return next;
                         }
                         return endOfData();
@@ -284,8 +346,8 @@ class ObjectDatabaseCacheInterceptor {
         public boolean delete(ObjectId objectId, ObjectStore db) {
             boolean deleted = db.delete(objectId);
             if (deleted) {
-                final Cache<ObjectId, RevObject> cache = cacheProvider.get().get();
-                cache.invalidate(objectId);
+                objects().invalidate(objectId);
+                trees().invalidate(objectId);
             }
             return deleted;
         }
@@ -294,11 +356,14 @@ class ObjectDatabaseCacheInterceptor {
 
             final BulkOpListener invalidatingListener = new BulkOpListener() {
 
-                final Cache<ObjectId, RevObject> cache = cacheProvider.get().get();
+                final Cache<ObjectId, RevObject> cache = objects();
+
+                final Cache<ObjectId, RevObject> trees = trees();
 
                 @Override
                 public void deleted(ObjectId id) {
                     cache.invalidate(id);
+                    trees.invalidate(id);
                 }
             };
 
@@ -309,10 +374,6 @@ class ObjectDatabaseCacheInterceptor {
             if (!cacheFeatures && object instanceof RevFeature) {
                 return false;
             }
-            // do not cache leaf trees. They tend to be quite large. TODO: make this configurable
-            if ((object instanceof RevTree) && ((RevTree) object).features().isPresent()) {
-                return false;
-            }
             return object != null;
         }
     }
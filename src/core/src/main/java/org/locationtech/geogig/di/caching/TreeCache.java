@@ -0,0 +1,169 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.di.caching;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevObject;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.storage.TreePathCache;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * A cache of decoded {@link RevTree}s, kept apart from the other objects so that reading
+ * features can't evict the trees every path lookup goes through.
+ * <p>
+ * Trees are held in two tiers:
+ * <ul>
+ * <li>Trees that contain no feature nodes (root and namespace trees, and the bucket trees at the
+ * top of large feature type trees) are small and hit on every lookup, they're kept in a tier
+ * bounded by number of trees.
+ * <li>Leaf trees are bounded by the total number of nodes they hold, so a scan over a large
+ * feature type tree only evicts other leaf trees.
+ * </ul>
+ * It also holds the {@link #resolvedPaths() paths resolved} within the trees of the same object
+ * database.
+ */
+class TreeCache extends AbstractCache<ObjectId, RevObject> {
+
+    private final Cache<ObjectId, RevObject> shallow;
+
+    private final Cache<ObjectId, RevObject> leaves;
+
+    private final Cache<List<Object>, Optional<NodeRef>> resolvedPaths;
+
+    private static final Weigher<ObjectId, RevObject> LEAF_WEIGHER = //
+            new Weigher<ObjectId, RevObject>() {
+                @Override
+                public int weigh(ObjectId key, RevObject value) {
+                    RevTree tree = (RevTree) value;
+                    int nodes = tree.features().isPresent() ? tree.features().get().size() : 0;
+                    nodes += tree.trees().isPresent() ? tree.trees().get().size() : 0;
+                    return 1 + nodes;
+                }
+            };
+
+    TreeCache(final int shallowSize, final int maxLeafNodes, final int maxResolvedPaths,
+            final int expireSeconds, final int concurrencyLevel) {
+
+        this.shallow = CacheBuilder.newBuilder()//
+                .maximumSize(shallowSize)//
+                .expireAfterAccess(expireSeconds, TimeUnit.SECONDS)//
+                .concurrencyLevel(concurrencyLevel)//
+                .build();
+
+        this.leaves = CacheBuilder.newBuilder()//
+                .maximumWeight(maxLeafNodes)//
+                .weigher(LEAF_WEIGHER)//
+                .expireAfterAccess(expireSeconds, TimeUnit.SECONDS)//
+                .concurrencyLevel(concurrencyLevel)//
+                .softValues()//
+                .build();
+
+        this.resolvedPaths = CacheBuilder.newBuilder()//
+                .maximumSize(maxResolvedPaths)//
+                .expireAfterAccess(expireSeconds, TimeUnit.SECONDS)//
+                .concurrencyLevel(concurrencyLevel)//
+                .build();
+    }
+
+    /**
+     * @see TreePathCache#resolvedPaths()
+     */
+    public Cache<List<Object>, Optional<NodeRef>> resolvedPaths() {
+        return resolvedPaths;
+    }
+
+    private static boolean isShallow(RevTree tree) {
+        return !tree.features().isPresent() || tree.features().get().isEmpty();
+    }
+
+    @Override
+    public @Nullable RevObject getIfPresent(Object key) {
+        RevObject tree = shallow.getIfPresent(key);
+        if (tree == null) {
+            tree = leaves.getIfPresent(key);
+        }
+        return tree;
+    }
+
+    /**
+     * Returns the cached tree, or loads it with {@code valueLoader} and caches it, as long as it's
+     * a tree. Concurrent calls for the same tree wait for a single load.
+     */
+    @Override
+    public RevObject get(ObjectId key, Callable<? extends RevObject> valueLoader)
+            throws ExecutionException {
+        RevObject tree = leaves.getIfPresent(key);
+        if (tree == null) {
+            // loaded through the shallow tier, whether it's shallow is only known once loaded
+            tree = shallow.get(key, valueLoader);
+            if (!(tree instanceof RevTree)) {
+                shallow.invalidate(key);
+            } else if (!isShallow((RevTree) tree)) {
+                shallow.invalidate(key);
+                leaves.put(key, tree);
+            }
+        }
+        return tree;
+    }
+
+    @Override
+    public void put(ObjectId key, RevObject value) {
+        Preconditions.checkArgument(value instanceof RevTree, "Not a tree: %s", value);
+        if (isShallow((RevTree) value)) {
+            shallow.put(key, value);
+        } else {
+            leaves.put(key, value);
+        }
+    }
+
+    /**
+     * Removes the given tree, and all the resolved paths since it could be in the way of any of
+     * them
+     */
+    @Override
+    public void invalidate(Object key) {
+        shallow.invalidate(key);
+        leaves.invalidate(key);
+        resolvedPaths.invalidateAll();
+    }
+
+    @Override
+    public void invalidateAll() {
+        shallow.invalidateAll();
+        leaves.invalidateAll();
+        resolvedPaths.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return shallow.size() + leaves.size();
+    }
+
+    @Override
+    public void cleanUp() {
+        shallow.cleanUp();
+        leaves.cleanUp();
+        resolvedPaths.cleanUp();
+    }
+}
@@ -0,0 +1,51 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.di.caching;
+
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevObject;
+import org.locationtech.geogig.storage.ConfigDatabase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+/**
+ * Creates the {@link TreeCache} for the repository's object database, configured through the
+ * {@code objectdb.treecache.*} config properties.
+ */
+class TreeCacheFactory extends CacheFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TreeCacheFactory.class);
+
+    @Inject
+    public TreeCacheFactory(Provider<ConfigDatabase> configDb) {
+        super("objectdb.treecache", configDb);
+    }
+
+    @Override
+    protected Cache<ObjectId, RevObject> newCache() {
+        final int shallowSize = getConfig("shallowSize", 10_000);
+        final int maxLeafNodes = getConfig("maxLeafNodes", 500_000);
+        final int maxResolvedPaths = getConfig("resolvedPaths", 10_000);
+        final int expireSeconds = getConfig("expireSeconds", 300);
+        final int concurrencyLevel = getConfig("concurrencyLevel", 4);
+
+        TreeCache cache = new TreeCache(shallowSize, maxLeafNodes, maxResolvedPaths,
+                expireSeconds, concurrencyLevel);
+
+        LOGGER.debug("Tree cache configured with shallowSize: {}, maxLeafNodes: {}, "
+                + "resolvedPaths: {}, expireSeconds: {}, concurrencyLevel: {}", shallowSize,
+                maxLeafNodes, maxResolvedPaths, expireSeconds, concurrencyLevel);
+        return cache;
+    }
+}
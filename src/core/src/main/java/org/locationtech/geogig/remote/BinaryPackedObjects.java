@@ -9,11 +9,18 @@
  */
 package org.locationtech.geogig.remote;
 
+import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -31,6 +38,7 @@ import org.locationtech.geogig.storage.BulkOpListener.CountingListener;
 import org.locationtech.geogig.storage.Deduplicator;
 import org.locationtech.geogig.storage.ObjectSerializingFactory;
 import org.locationtech.geogig.storage.ObjectStore;
+import org.locationtech.geogig.storage.datastream.BinaryDelta;
 import org.locationtech.geogig.storage.datastream.DataStreamSerializationFactoryV1;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +52,7 @@ import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
+import com.google.common.io.ByteStreams;
 
 public final class BinaryPackedObjects {
 
@@ -208,6 +217,9 @@ public final class BinaryPackedObjects {
     }
 
     /**
+     * Inserts the objects in the stream, which can be {@link ObjectFunnels#newDeltaFunnel delta
+     * compressed}.
+     *
      * @return the number of objects parsed from the input stream
      */
     public IngestResults ingest(final InputStream in, final Callback callback) {
@@ -233,12 +245,25 @@ public final class BinaryPackedObjects {
 
     private Iterator<RevObject> streamToObjects(final InputStream in) {
         return new AbstractIterator<RevObject>() {
+
+            private DeltaWindow window;
+
             @Override
             protected RevObject computeNext() {
                 try {
                     ObjectId id = readObjectId(in);
-                    RevObject revObj = marshaller.read(id, in);
-                    return revObj;
+                    if (id.isNull()) {
+                        String header = readHeader(in);
+                        checkState(DeltaWindow.STREAM_HEADER.equals(header),
+                                "Unrecognized stream header: %s", header);
+                        window = new DeltaWindow(new DataInputStream(in).readInt());
+                        id = readObjectId(in);
+                    }
+                    if (window == null) {
+                        RevObject revObj = marshaller.read(id, in);
+                        return revObj;
+                    }
+                    return readDeltaStreamEntry(id, in, window);
                 } catch (EOFException eof) {
                     return endOfData();
                 } catch (IOException e) {
@@ -249,6 +274,74 @@ public final class BinaryPackedObjects {
         };
     }
 
+    /**
+     * Reads an object out of a delta compressed stream, applying the delta if it's sent as one and
+     * adding it to the window if it's a feature.
+     */
+    private RevObject readDeltaStreamEntry(final ObjectId id, final InputStream in,
+            final DeltaWindow window) throws IOException {
+        final String header = readHeader(in);
+        if (DeltaWindow.DELTA_HEADER.equals(header)) {
+            final ObjectId baseId = readObjectId(in);
+            final DataInputStream data = new DataInputStream(in);
+            final byte[] delta = new byte[data.readInt()];
+            data.readFully(delta);
+            final byte[] base = window.get(baseId);
+            checkState(base != null, "Delta base %s of %s is not in the window", baseId, id);
+            final byte[] serialized = BinaryDelta.apply(base, delta);
+            window.add(id, serialized);
+            return marshaller.read(id, new ByteArrayInputStream(serialized));
+        }
+        final byte[] headerBytes = (header + '\0').getBytes(StandardCharsets.US_ASCII);
+        if (!"feature".equals(header)) {
+            return marshaller.read(id, new SequenceInputStream(new ByteArrayInputStream(
+                    headerBytes), in));
+        }
+        // keep the feature exactly as sent, for later deltas against it
+        final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        serialized.write(headerBytes);
+        final InputStream capturing = new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    serialized.write(b);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    serialized.write(b, off, read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                return ByteStreams.read(this, new byte[(int) n], 0, (int) n);
+            }
+        };
+        RevObject feature = marshaller.read(id, new SequenceInputStream(new ByteArrayInputStream(
+                headerBytes), capturing));
+        window.add(id, serialized.toByteArray());
+        return feature;
+    }
+
+    private String readHeader(final InputStream in) throws IOException {
+        StringBuilder header = new StringBuilder();
+        int b;
+        while ((b = in.read()) > 0) {
+            header.append((char) b);
+        }
+        if (b < 0) {
+            throw new EOFException("Came to end of input");
+        }
+        return header.toString();
+    }
+
     private ObjectId readObjectId(final InputStream in) throws IOException {
         final int len = ObjectId.NUM_BYTES;
         byte[] rawBytes = new byte[len];
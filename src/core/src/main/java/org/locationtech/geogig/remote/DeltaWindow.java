@@ -0,0 +1,74 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.remote;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.ObjectId;
+
+/**
+ * The serialized features recently sent or received in a delta compressed object stream, which
+ * later features can be encoded against.
+ * <p>
+ * A delta compressed stream starts with an entry with the {@link ObjectId#NULL null id}, the
+ * {@link #STREAM_HEADER} and the window size in bytes. Then, next to the regular entries, an entry
+ * can hold the {@link #DELTA_HEADER}, the id of a feature in the window, the length of the delta
+ * and the delta itself.
+ * <p>
+ * Both ends add every feature to the window in stream order and evict the oldest ones once they
+ * take more than the window size, so the sender knows exactly which features the receiver still
+ * has to apply a delta to.
+ *
+ * @see ObjectFunnels#newDeltaFunnel
+ * @see BinaryPackedObjects#ingest
+ */
+final class DeltaWindow {
+
+    static final String STREAM_HEADER = "deltas";
+
+    static final String DELTA_HEADER = "delta";
+
+    static final int DEFAULT_SIZE = 16 * 1024 * 1024;
+
+    private final int maxBytes;
+
+    private final Map<ObjectId, byte[]> features = new LinkedHashMap<>();
+
+    private long bytes;
+
+    DeltaWindow(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    int getSize() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the serialized feature, or {@code null} if it's not in the window
+     */
+    @Nullable
+    byte[] get(ObjectId id) {
+        return features.get(id);
+    }
+
+    void add(ObjectId id, byte[] serialized) {
+        byte[] previous = features.put(id, serialized);
+        bytes += serialized.length - (previous == null ? 0 : previous.length);
+        for (Iterator<byte[]> it = features.values().iterator(); bytes > maxBytes
+                && it.hasNext();) {
+            bytes -= it.next().length;
+            it.remove();
+        }
+    }
+}
@@ -303,6 +303,17 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
         }
     }
 
+    /**
+     * @return whether to ask the remote to send features as deltas against their previous
+     *         versions, as configured by {@code fetch.deltas}. Remotes that don't support it send
+     *         them whole.
+     */
+    private boolean fetchDeltas() {
+        Optional<String> configValue = localRepository.command(ConfigGet.class)
+                .setName("fetch.deltas").call();
+        return configValue.isPresent() && Boolean.parseBoolean(configValue.get());
+    }
+
     private int parsePushLimit() {
         final String confKey = "push.chunk.limit";
         Optional<String> configLimit = localRepository.command(ConfigGet.class).setName(confKey)
@@ -476,6 +487,9 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
         }
         message.add("want", wantArray);
         message.add("have", haveArray);
+        if (fetchDeltas()) {
+            message.addProperty("deltas", Boolean.TRUE);
+        }
         return message;
     }
 
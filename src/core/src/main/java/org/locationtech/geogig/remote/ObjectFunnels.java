@@ -9,11 +9,24 @@
  */
 package org.locationtech.geogig.remote;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevFeature;
 import org.locationtech.geogig.api.RevObject;
+import org.locationtech.geogig.api.RevTree;
 import org.locationtech.geogig.storage.ObjectSerializingFactory;
+import org.locationtech.geogig.storage.datastream.BinaryDelta;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +41,18 @@ public class ObjectFunnels {
         return new DirectFunnel(out, serializer);
     }
 
+    /**
+     * Creates a funnel that sends features as deltas against the previous version of the same
+     * feature when it was sent shortly before, in a stream only {@link BinaryPackedObjects#ingest}
+     * can read.
+     *
+     * @see DeltaWindow
+     */
+    public static ObjectFunnel newDeltaFunnel(OutputStream out,
+            ObjectSerializingFactory serializer) {
+        return new DeltaFunnel(out, serializer, DeltaWindow.DEFAULT_SIZE);
+    }
+
     public static ObjectFunnel newFunnel(final Supplier<OutputStream> outputFactory,
             final ObjectSerializingFactory serializer, final int byteSoftLimit) {
 
@@ -111,4 +136,124 @@ public class ObjectFunnels {
         }
 
     }
+
+    /**
+     * Holds back features until the tree pointing to them is funneled, which comes right after
+     * them when traversing in post order, to learn their names. A feature is then sent as a delta
+     * against the last feature sent with the same name, if it's still in the {@link DeltaWindow
+     * window} and the delta is at most half the size of the feature.
+     */
+    private static class DeltaFunnel implements ObjectFunnel {
+
+        private static final int MAX_PENDING_FEATURES = 1024;
+
+        private static final int MAX_TRACKED_NAMES = 64 * 1024;
+
+        private DataOutputStream out;
+
+        private final ObjectSerializingFactory serializer;
+
+        private final DeltaWindow window;
+
+        private final Map<String, ObjectId> lastSentByName = new LinkedHashMap<String, ObjectId>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ObjectId> eldest) {
+                return size() > MAX_TRACKED_NAMES;
+            }
+        };
+
+        private final List<RevFeature> pending = new ArrayList<>();
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private boolean started;
+
+        public DeltaFunnel(OutputStream out, ObjectSerializingFactory serializer, int windowSize) {
+            this.out = new DataOutputStream(out);
+            this.serializer = serializer;
+            this.window = new DeltaWindow(windowSize);
+        }
+
+        @Override
+        public void funnel(RevObject object) throws IOException {
+            if (!started) {
+                out.write(ObjectId.NULL.getRawValue());
+                writeHeader(DeltaWindow.STREAM_HEADER);
+                out.writeInt(window.getSize());
+                started = true;
+            }
+            if (object instanceof RevFeature) {
+                pending.add((RevFeature) object);
+                if (pending.size() >= MAX_PENDING_FEATURES) {
+                    flushPending(null);
+                }
+                return;
+            }
+            flushPending(object instanceof RevTree ? (RevTree) object : null);
+            out.write(object.getId().getRawValue());
+            serializer.write(object, out);
+        }
+
+        private void flushPending(RevTree tree) throws IOException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Map<ObjectId, String> names = new HashMap<>();
+            if (tree != null && tree.features().isPresent()) {
+                for (Node node : tree.features().get()) {
+                    names.put(node.getObjectId(), node.getName());
+                }
+            }
+            for (RevFeature feature : pending) {
+                final ObjectId id = feature.getId();
+                buffer.reset();
+                serializer.write(feature, buffer);
+                final byte[] serialized = buffer.toByteArray();
+
+                final String name = names.get(id);
+                final ObjectId baseId = name == null ? null : lastSentByName.get(name);
+                final byte[] base = baseId == null ? null : window.get(baseId);
+                byte[] delta = null;
+                if (base != null) {
+                    delta = BinaryDelta.encode(base, serialized);
+                    if (delta.length > serialized.length / 2) {
+                        delta = null;
+                    }
+                }
+                out.write(id.getRawValue());
+                if (delta == null) {
+                    out.write(serialized);
+                } else {
+                    writeHeader(DeltaWindow.DELTA_HEADER);
+                    out.write(baseId.getRawValue());
+                    out.writeInt(delta.length);
+                    out.write(delta);
+                }
+                window.add(id, serialized);
+                if (name != null) {
+                    lastSentByName.put(name, id);
+                }
+            }
+            pending.clear();
+        }
+
+        private void writeHeader(String header) throws IOException {
+            out.write(header.getBytes(StandardCharsets.US_ASCII));
+            out.writeByte(0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) {
+                try {
+                    flushPending(null);
+                } finally {
+                    out.close();
+                    out = null;
+                }
+            }
+        }
+    }
 }
@@ -14,6 +14,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static org.locationtech.geogig.api.NodeRef.PATH_SEPARATOR;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.locationtech.geogig.api.Bucket;
 import org.locationtech.geogig.api.Node;
@@ -23,15 +25,21 @@ import org.locationtech.geogig.api.RevTree;
 import org.locationtech.geogig.storage.NodePathStorageOrder;
 import org.locationtech.geogig.storage.ObjectDatabase;
 import org.locationtech.geogig.storage.ObjectStore;
+import org.locationtech.geogig.storage.TreePathCache;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 /**
  * Searches for a {@link Node} within a particular tree.
+ * <p>
+ * If the object store is a {@link TreePathCache}, the nodes found are memoized in it.
  * 
  * @see Node
  * @see RevTree
@@ -102,6 +110,28 @@ public class DepthSearch {
 
         checkArgument(parentPath.isEmpty() || childPath.startsWith(parentPath + PATH_SEPARATOR));
 
+        final ObjectId parentId = parent.getId();
+        final Cache<List<Object>, Optional<NodeRef>> resolved = objectDb instanceof TreePathCache
+                ? ((TreePathCache) objectDb).resolvedPaths() : null;
+        if (resolved == null || parentId == null || parentId.isNull()) {
+            return resolve(parent, parentPath, childPath);
+        }
+        final List<Object> key = ImmutableList.<Object> of(parentId, parentPath, childPath);
+        try {
+            return resolved.get(key, new Callable<Optional<NodeRef>>() {
+                @Override
+                public Optional<NodeRef> call() {
+                    return resolve(parent, parentPath, childPath);
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private Optional<NodeRef> resolve(final RevTree parent, final String parentPath,
+            final String childPath) {
+
         final List<String> parentSteps = Lists.newArrayList(Splitter.on(PATH_SEPARATOR)
                 .omitEmptyStrings().split(parentPath));
         List<String> childSteps = Lists.newArrayList(Splitter.on(PATH_SEPARATOR).split(childPath));
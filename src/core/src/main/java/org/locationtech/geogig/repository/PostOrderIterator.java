@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.jdt.annotation.Nullable;
 import org.locationtech.geogig.api.Bucket;
 import org.locationtech.geogig.api.Node;
 import org.locationtech.geogig.api.ObjectId;
@@ -23,6 +24,7 @@ import org.locationtech.geogig.api.RevCommit;
 import org.locationtech.geogig.api.RevObject;
 import org.locationtech.geogig.api.RevTag;
 import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.storage.BulkOpListener;
 import org.locationtech.geogig.storage.Deduplicator;
 import org.locationtech.geogig.storage.ObjectStore;
 
@@ -81,6 +83,29 @@ public class PostOrderIterator extends AbstractIterator<RevObject> {
         return new PostOrderIterator(new ArrayList<ObjectId>(needsPrevisit), database, uniqueWithDeduplicator(COMMIT_SUCCESSORS, deduplicator));
     }
 
+    /**
+     * A traversal of the contents of the given commits or trees, with deduplication, that rather
+     * than failing when an object is not found reports it to
+     * {@link BulkOpListener#notFound(ObjectId) listener.notFound} and skips it.
+     */
+    public static Iterator<RevObject> contentsOf(List<ObjectId> start, ObjectStore database,
+            Deduplicator deduplicator, BulkOpListener listener) {
+        return new PostOrderIterator(new ArrayList<ObjectId>(start), database,
+                uniqueWithDeduplicator(COMMIT_SUCCESSORS, deduplicator), listener);
+    }
+
+    /**
+     * A traversal of the commit history (no content) reachable from the given tags and commits,
+     * with deduplication, that rather than failing when an object is not found reports it to
+     * {@link BulkOpListener#notFound(ObjectId) listener.notFound} and skips it.
+     */
+    public static Iterator<RevObject> historyOf(List<ObjectId> start, ObjectStore database,
+            Deduplicator deduplicator, BulkOpListener listener) {
+        return new PostOrderIterator(new ArrayList<ObjectId>(start), database,
+                uniqueWithDeduplicator(combine(TAG_COMMIT, COMMIT_PARENTS), deduplicator),
+                listener);
+    }
+
     /**
      * A handle to the object database used for the traversal
      */
@@ -103,6 +128,11 @@ public class PostOrderIterator extends AbstractIterator<RevObject> {
      */
     private final Successors successors;
 
+    /**
+     * If not null, objects not found are reported to it and skipped instead of failing
+     */
+    private final BulkOpListener missingObjectsListener;
+
     /**
      * The single, private constructor for PostOrderIterator. Generally it will be more convenient
      * to use static factory methods which properly prepare a Successors capturing the traversal
@@ -114,10 +144,16 @@ public class PostOrderIterator extends AbstractIterator<RevObject> {
      * @param successors the traversal policy for this iteration.
      */
     private PostOrderIterator(List<ObjectId> start, ObjectStore database, Successors successors) {
+        this(start, database, successors, null);
+    }
+
+    private PostOrderIterator(List<ObjectId> start, ObjectStore database, Successors successors,
+            @Nullable BulkOpListener missingObjectsListener) {
         super();
         this.database = database;
         this.enqueue = true;
         this.successors = successors;
+        this.missingObjectsListener = missingObjectsListener;
         toVisit = new ArrayList<List<ObjectId>>();
         toVisit.add(new ArrayList<ObjectId>());
         toVisit.get(0).addAll(start);
@@ -137,7 +173,17 @@ public class PostOrderIterator extends AbstractIterator<RevObject> {
                     // We're building up a list of objects to visit, so add all the reachable
                     // objects from here to the front of the toVisit stack
                     final ObjectId id = currentList.get(0);
-                    final RevObject object = database.get(id);
+                    final RevObject object;
+                    if (missingObjectsListener == null) {
+                        object = database.get(id);
+                    } else {
+                        object = database.getIfPresent(id);
+                        if (object == null) {
+                            currentList.remove(0);
+                            missingObjectsListener.notFound(id);
+                            continue;
+                        }
+                    }
                     final List<ObjectId> next = new ArrayList<ObjectId>();
                     successors.findSuccessors(object, next);
                     toVisit.add(0, next);
@@ -0,0 +1,111 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.ObjectId;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+
+/**
+ * Per commit {@link BloomFilter bloom filters} of the paths that changed in each commit with
+ * respect to any of its parents, kept in the repository's {@link BlobStore}.
+ * <p>
+ * A filter tells for sure that a commit did <b>not</b> touch a path, which allows path filtered
+ * history queries to skip most commits without reading any tree. Since the filter holds the
+ * changed trees as well as the changed features, it can be queried for both.
+ * <p>
+ * Commits without a filter (e.g. created before filters were introduced, or by commands other than
+ * commit), and commits that changed more than {@link #MAX_PATHS} paths, have no filter and must be
+ * checked by comparing their trees.
+ */
+public class ChangedPathsFilters {
+
+    /**
+     * Maximum number of changed paths a commit can have for its filter to be stored
+     */
+    public static final int MAX_PATHS = 10_000;
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private static final String PREFIX = "changedpaths/";
+
+    private static final Funnel<CharSequence> FUNNEL = Funnels.stringFunnel(Charsets.UTF_8);
+
+    /**
+     * Stored for commits with too many changes, to tell them apart from commits not processed at
+     * all
+     */
+    private static final byte[] UNKNOWN = new byte[0];
+
+    private final BlobStore blobs;
+
+    public ChangedPathsFilters(BlobStore blobs) {
+        checkNotNull(blobs);
+        this.blobs = blobs;
+    }
+
+    /**
+     * Stores the filter for a commit
+     *
+     * @param changedPaths all the paths, features and trees, that changed at {@code commitId}, or
+     *        {@code null} if there were more than {@link #MAX_PATHS}
+     */
+    public void put(ObjectId commitId, @Nullable Collection<String> changedPaths) {
+        if (changedPaths == null || changedPaths.size() > MAX_PATHS) {
+            blobs.putBlob(key(commitId), UNKNOWN);
+            return;
+        }
+        BloomFilter<CharSequence> filter = BloomFilter.create(FUNNEL,
+                Math.max(1, changedPaths.size()), FALSE_POSITIVE_PROBABILITY);
+        for (String path : changedPaths) {
+            filter.put(path);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            filter.writeTo(out);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        blobs.putBlob(key(commitId), out.toByteArray());
+    }
+
+    /**
+     * @return the filter of changed paths for the given commit, or {@link Optional#absent()} if
+     *         there's none and the commit shall be checked by other means
+     */
+    public Optional<BloomFilter<CharSequence>> get(ObjectId commitId) {
+        Optional<byte[]> blob = blobs.getBlob(key(commitId));
+        if (!blob.isPresent() || blob.get().length == 0) {
+            return Optional.absent();
+        }
+        try {
+            return Optional.of(BloomFilter.readFrom(new ByteArrayInputStream(blob.get()), FUNNEL));
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static String key(ObjectId commitId) {
+        return PathHistoryIndex.commitKey(PREFIX, commitId);
+    }
+}
@@ -184,4 +184,8 @@ public class ForwardingObjectDatabase implements ObjectDatabase {
         return subject.get().getBlobStore();
     }
 
+    @Override
+    public Iterator<ObjectId> objectIds() {
+        return subject.get().objectIds();
+    }
 }
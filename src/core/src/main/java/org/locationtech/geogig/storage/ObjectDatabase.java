@@ -9,6 +9,9 @@
  */
 package org.locationtech.geogig.storage;
 
+import java.util.Iterator;
+
+import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.di.Singleton;
 import org.locationtech.geogig.repository.RepositoryConnectionException;
 
@@ -41,4 +44,16 @@ public interface ObjectDatabase extends ObjectStore {
     public ObjectInserter newObjectInserter();
 
     public BlobStore getBlobStore();
+
+    /**
+     * Iterates over the ids of all the objects in the database, in no particular order and without
+     * reading the objects themselves, as needed by maintenance tasks such as garbage collection.
+     * <p>
+     * Implementations fetch the ids in batches as the iterator is consumed, so it's safe to
+     * delete objects, including the ones already returned, while iterating. Objects added or
+     * removed concurrently may or may not be reported.
+     * 
+     * @return an iterator over the ids of the objects in the database
+     */
+    public Iterator<ObjectId> objectIds();
 }
@@ -0,0 +1,391 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Materialized index of the commits where each path changed, kept in the repository's
+ * {@link BlobStore}, so that path filtered history queries (log, blame) only need to look at the
+ * commits that actually touched a path instead of comparing the trees of every commit in the
+ * history.
+ * <p>
+ * The index is optional and enabled by setting the {@link #ENABLED_CONFIG_KEY} config option to
+ * {@code true}. It's maintained incrementally by
+ * {@link org.locationtech.geogig.api.plumbing.UpdatePathHistoryIndex UpdatePathHistoryIndex},
+ * which guarantees that when a commit is {@link #isIndexed(ObjectId) indexed}, so are all its
+ * ancestors.
+ * <p>
+ * There's a record per path and commit where the path's object id differs from any of the
+ * commit's parents (or where it's present, for root commits), holding the commit id, and the
+ * object and metadata ids of the node at that commit ({@link ObjectId#NULL} if it was removed).
+ * <p>
+ * Paths are spread over {@code 4096} shards by the first digits of their hash. The records of each
+ * commit are appended to the shards it touches as a new segment blob, and segments are merged as
+ * they pile up, keeping each one at least twice as large as the next newer one. Hence a shard has
+ * at most a logarithmic number of segments, and a record is rewritten a logarithmic number of
+ * times, instead of having a blob per path rewritten on every change to it.
+ * <p>
+ * Reads can run concurrently with a write, but writes ({@link #put}, {@link #setIndexed}) must not
+ * run concurrently with each other, as updating the segments of a shard is not atomic.
+ * {@link org.locationtech.geogig.api.plumbing.UpdatePathHistoryIndex UpdatePathHistoryIndex}
+ * serializes them.
+ */
+public class PathHistoryIndex {
+
+    /**
+     * Config key to enable the path history index, defaults to {@code false}
+     */
+    public static final String ENABLED_CONFIG_KEY = "pathhistory.enabled";
+
+    private static final String PATHS = "pathhistory/paths/";
+
+    private static final String COMMITS = "pathhistory/commits/";
+
+    private static final String SEGMENTS = "segments";
+
+    private static final int RECORD_SIZE = 3 * ObjectId.NUM_BYTES;
+
+    private static final byte[] MARKER = new byte[0];
+
+    /**
+     * A segment of a shard, named after its id, and the number of records it holds
+     */
+    private static final class Segment {
+
+        final long id;
+
+        final int size;
+
+        Segment(long id, int size) {
+            this.id = id;
+            this.size = size;
+        }
+    }
+
+    private final BlobStore blobs;
+
+    public PathHistoryIndex(BlobStore blobs) {
+        checkNotNull(blobs);
+        this.blobs = blobs;
+    }
+
+    /**
+     * A change to a path at a given commit
+     */
+    public static final class Change {
+
+        private final ObjectId commitId;
+
+        private final ObjectId objectId;
+
+        private final ObjectId metadataId;
+
+        Change(ObjectId commitId, ObjectId objectId, ObjectId metadataId) {
+            this.commitId = commitId;
+            this.objectId = objectId;
+            this.metadataId = metadataId;
+        }
+
+        /**
+         * @return the id of the commit where the path changed
+         */
+        public ObjectId commitId() {
+            return commitId;
+        }
+
+        /**
+         * @return the object id of the path at {@link #commitId()}, {@link ObjectId#NULL} if it was
+         *         removed
+         */
+        public ObjectId objectId() {
+            return objectId;
+        }
+
+        /**
+         * @return the metadata id of the path at {@link #commitId()}, {@link ObjectId#NULL} if it
+         *         was removed
+         */
+        public ObjectId metadataId() {
+            return metadataId;
+        }
+
+        public boolean isRemoval() {
+            return objectId.isNull();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Change[commit: %s, object: %s, metadata: %s]", commitId,
+                    objectId, metadataId);
+        }
+    }
+
+    /**
+     * @return whether the given commit, and hence all its ancestors, have been indexed
+     */
+    public boolean isIndexed(ObjectId commitId) {
+        return blobs.getBlob(commitKey(commitId)).isPresent();
+    }
+
+    /**
+     * Marks the given commit as indexed, to be called once all its changes have been
+     * {@link #put(ObjectId, Map) added} and all its ancestors are indexed
+     */
+    public void setIndexed(ObjectId commitId) {
+        blobs.putBlob(commitKey(commitId), MARKER);
+    }
+
+    /**
+     * Records all the paths that changed at {@code commitId}, replacing any previous record for
+     * the same path and commit, so that re-indexing a commit is harmless.
+     *
+     * @param changes the node of each changed path at the given commit, or {@code null} if it was
+     *        removed
+     */
+    public void put(ObjectId commitId, Map<String, NodeRef> changes) {
+        Map<String, Map<String, Map<ObjectId, Change>>> shards = Maps.newHashMap();
+        for (Map.Entry<String, NodeRef> entry : changes.entrySet()) {
+            final String path = entry.getKey();
+            final NodeRef ref = entry.getValue();
+            ObjectId objectId = ref == null ? ObjectId.NULL : ref.getObjectId();
+            ObjectId metadataId = ref == null ? ObjectId.NULL : ref.getMetadataId();
+
+            final String shard = shardKey(path);
+            Map<String, Map<ObjectId, Change>> records = shards.get(shard);
+            if (records == null) {
+                records = Maps.newHashMap();
+                shards.put(shard, records);
+            }
+            Map<ObjectId, Change> pathRecords = Maps.newLinkedHashMap();
+            pathRecords.put(commitId, new Change(commitId, objectId, metadataId));
+            records.put(path, pathRecords);
+        }
+        for (Map.Entry<String, Map<String, Map<ObjectId, Change>>> shard : shards.entrySet()) {
+            append(shard.getKey(), shard.getValue());
+        }
+    }
+
+    /**
+     * @return all the recorded changes to {@code path}, keyed by commit id, in no particular order
+     */
+    public ImmutableMap<ObjectId, Change> getChanges(String path) {
+        final String shard = shardKey(path);
+        // a concurrent update may have merged the segments listed, start over if so
+        for (int attempt = 0;; attempt++) {
+            Map<ObjectId, Change> changes = Maps.newLinkedHashMap();
+            boolean complete = true;
+            for (Segment segment : readSegments(shard)) {
+                Optional<Map<String, Map<ObjectId, Change>>> records = readSegment(shard,
+                        segment.id, path);
+                if (!records.isPresent()) {
+                    complete = false;
+                    break;
+                }
+                Map<ObjectId, Change> pathRecords = records.get().get(path);
+                if (pathRecords != null) {
+                    changes.putAll(pathRecords);
+                }
+            }
+            if (complete) {
+                return ImmutableMap.copyOf(changes);
+            }
+            if (attempt == 2) {
+                throw new IllegalStateException("Path history segments of " + path
+                        + " keep changing while being read");
+            }
+        }
+    }
+
+    /**
+     * @return the number of segments of the shard {@code path} belongs to
+     */
+    @VisibleForTesting
+    int segmentCount(String path) {
+        return readSegments(shardKey(path)).size();
+    }
+
+    /**
+     * Adds the records as a new segment of the shard, merging it with the newest segments for as
+     * long as they're not larger than twice its size
+     */
+    private void append(final String shard, Map<String, Map<ObjectId, Change>> records) {
+        final List<Segment> segments = readSegments(shard);
+        final long id = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).id + 1;
+        final List<Segment> merged = Lists.newArrayList();
+        int size = size(records);
+        while (!segments.isEmpty() && segments.get(segments.size() - 1).size <= 2 * size) {
+            Segment previous = segments.remove(segments.size() - 1);
+            Optional<Map<String, Map<ObjectId, Change>>> older = readSegment(shard, previous.id,
+                    null);
+            if (older.isPresent()) {
+                // newer records replace older ones for the same commit
+                Map<String, Map<ObjectId, Change>> all = older.get();
+                for (Map.Entry<String, Map<ObjectId, Change>> e : records.entrySet()) {
+                    Map<ObjectId, Change> pathRecords = all.get(e.getKey());
+                    if (pathRecords == null) {
+                        all.put(e.getKey(), e.getValue());
+                    } else {
+                        pathRecords.putAll(e.getValue());
+                    }
+                }
+                records = all;
+                size = size(records);
+            }
+            merged.add(previous);
+        }
+        // write the new segment before the list that references it, and only then remove the
+        // segments it replaces
+        writeSegment(shard, id, records);
+        segments.add(new Segment(id, size));
+        writeSegments(shard, segments);
+        for (Segment segment : merged) {
+            blobs.removeBlob(shard + segment.id);
+        }
+    }
+
+    private static int size(Map<String, Map<ObjectId, Change>> records) {
+        int size = 0;
+        for (Map<ObjectId, Change> pathRecords : records.values()) {
+            size += pathRecords.size();
+        }
+        return size;
+    }
+
+    private List<Segment> readSegments(final String shard) {
+        Optional<byte[]> blob = blobs.getBlob(shard + SEGMENTS);
+        List<Segment> segments = Lists.newArrayList();
+        if (blob.isPresent()) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(blob.get()))) {
+                final int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    segments.add(new Segment(in.readLong(), in.readInt()));
+                }
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+        return segments;
+    }
+
+    private void writeSegments(final String shard, List<Segment> segments) {
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buff)) {
+            out.writeInt(segments.size());
+            for (Segment segment : segments) {
+                out.writeLong(segment.id);
+                out.writeInt(segment.size);
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        blobs.putBlob(shard + SEGMENTS, buff.toByteArray());
+    }
+
+    /**
+     * @param path if given, only the records of this path are returned
+     * @return the records of the segment by path and commit, or {@link Optional#absent()} if it
+     *         doesn't exist
+     */
+    private Optional<Map<String, Map<ObjectId, Change>>> readSegment(final String shard,
+            final long id, @Nullable final String path) {
+        Optional<byte[]> blob = blobs.getBlob(shard + id);
+        if (!blob.isPresent()) {
+            return Optional.absent();
+        }
+        Map<String, Map<ObjectId, Change>> records = Maps.newHashMap();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(blob.get()))) {
+            final int paths = in.readInt();
+            for (int i = 0; i < paths; i++) {
+                final String recordsPath = in.readUTF();
+                final int count = in.readInt();
+                if (path != null && !path.equals(recordsPath)) {
+                    in.skipBytes(count * RECORD_SIZE);
+                    continue;
+                }
+                Map<ObjectId, Change> pathRecords = Maps.newLinkedHashMap();
+                for (int r = 0; r < count; r++) {
+                    ObjectId commitId = readId(in);
+                    ObjectId objectId = readId(in);
+                    ObjectId metadataId = readId(in);
+                    pathRecords.put(commitId, new Change(commitId, objectId, metadataId));
+                }
+                records.put(recordsPath, pathRecords);
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return Optional.of(records);
+    }
+
+    private void writeSegment(final String shard, final long id,
+            Map<String, Map<ObjectId, Change>> records) {
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buff)) {
+            out.writeInt(records.size());
+            for (Map.Entry<String, Map<ObjectId, Change>> e : records.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeInt(e.getValue().size());
+                for (Change c : e.getValue().values()) {
+                    out.write(c.commitId.getRawValue());
+                    out.write(c.objectId.getRawValue());
+                    out.write(c.metadataId.getRawValue());
+                }
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        blobs.putBlob(shard + id, buff.toByteArray());
+    }
+
+    private static ObjectId readId(DataInputStream in) throws IOException {
+        byte[] raw = new byte[ObjectId.NUM_BYTES];
+        in.readFully(raw);
+        return ObjectId.createNoClone(raw);
+    }
+
+    private static String shardKey(String path) {
+        String hex = ObjectId.forString(path).toString();
+        return new StringBuilder(PATHS).append(hex, 0, 2).append('/').append(hex, 2, 3)
+                .append('/').toString();
+    }
+
+    private static String commitKey(ObjectId commitId) {
+        return commitKey(COMMITS, commitId);
+    }
+
+    /**
+     * @return the key for a blob about the given commit, sharded by the first byte of its id
+     */
+    static String commitKey(String prefix, ObjectId commitId) {
+        String hex = commitId.toString();
+        return new StringBuilder(prefix).append(hex, 0, 2).append('/')
+                .append(hex, 2, hex.length()).toString();
+    }
+}
@@ -0,0 +1,32 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Implemented by {@link RefDatabase}s whose refs can be changed by other processes, so that a
+ * cache in front of them can tell whether the values it holds are still current.
+ */
+public interface RefChangeTracker {
+
+    /**
+     * Returns a token that changes, as per {@link Object#equals(Object)}, every time the given ref
+     * is created, modified, or removed by this or any other process. Obtaining it shall be much
+     * cheaper than reading the ref.
+     * <p>
+     * Implementations that can't tell at a given time shall return a new object on each call.
+     *
+     * @param refName the full name of the ref
+     * @return the current version of the ref, may be {@code null} if the ref doesn't exist
+     */
+    @Nullable
+    public Object version(String refName);
+}
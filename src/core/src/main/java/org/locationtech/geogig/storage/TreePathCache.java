@@ -0,0 +1,36 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage;
+
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.repository.DepthSearch;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+
+/**
+ * Implemented by {@link ObjectStore}s that can keep the nodes paths resolve to within their trees,
+ * so that {@link DepthSearch} doesn't walk the same chain of trees on every lookup.
+ */
+public interface TreePathCache {
+
+    /**
+     * Returns the cache of resolved paths, keyed by the list of the id of the tree the path is
+     * resolved against, the path of that tree, and the path to resolve. Trees are immutable, so a
+     * path always resolves to the same node within the same tree of the same store.
+     *
+     * @return the cache, or {@code null} if caching is disabled
+     */
+    @Nullable
+    public Cache<List<Object>, Optional<NodeRef>> resolvedPaths();
+}
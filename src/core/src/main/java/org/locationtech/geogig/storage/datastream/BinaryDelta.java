@@ -0,0 +1,198 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.datastream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.locationtech.geogig.storage.datastream.Varint.readUnsignedVarInt;
+import static org.locationtech.geogig.storage.datastream.Varint.writeUnsignedVarInt;
+
+import java.io.IOException;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Encodes a byte array as a delta against another one, for example a serialized feature against
+ * the serialized previous version of the same feature, and applies such deltas back.
+ * <p>
+ * A delta starts with the base and target lengths, followed by a sequence of instructions, each one
+ * either copying a range of the base or inserting literal bytes. Matching ranges are found by
+ * indexing the base in {@value #BLOCK_SIZE} bytes blocks and looking up a rolling hash of the
+ * target at every position, so any common range of at least twice the block size is copied.
+ */
+public final class BinaryDelta {
+
+    static final int BLOCK_SIZE = 16;
+
+    private static final int PRIME = 31;
+
+    // PRIME^(BLOCK_SIZE - 1), to roll the first byte out of the hash
+    private static final int PRIME_POW;
+    static {
+        int pow = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            pow *= PRIME;
+        }
+        PRIME_POW = pow;
+    }
+
+    private BinaryDelta() {
+        //
+    }
+
+    /**
+     * @return the instructions to create {@code target} out of {@code base}, which can be longer
+     *         than {@code target} itself if they have nothing in common
+     */
+    public static byte[] encode(final byte[] base, final byte[] target) {
+        final ByteArrayDataOutput out = ByteStreams.newDataOutput(64 + target.length / 8);
+        try {
+            writeUnsignedVarInt(base.length, out);
+            writeUnsignedVarInt(target.length, out);
+            if (base.length < BLOCK_SIZE || target.length < BLOCK_SIZE) {
+                insert(target, 0, target.length, out);
+                return out.toByteArray();
+            }
+            final int[] index = index(base);
+            final int mask = index.length - 1;
+
+            int pending = 0;
+            int pos = 0;
+            int hash = hash(target, 0);
+            while (pos + BLOCK_SIZE <= target.length) {
+                final int block = index[mix(hash) & mask] - 1;
+                final int start = block * BLOCK_SIZE;
+                if (block >= 0 && equal(base, start, target, pos, BLOCK_SIZE)) {
+                    int baseStart = start;
+                    int targetStart = pos;
+                    // extend the match backwards over the pending literal bytes
+                    while (targetStart > pending && baseStart > 0
+                            && base[baseStart - 1] == target[targetStart - 1]) {
+                        baseStart--;
+                        targetStart--;
+                    }
+                    int end = pos + BLOCK_SIZE;
+                    int baseEnd = start + BLOCK_SIZE;
+                    while (end < target.length && baseEnd < base.length
+                            && base[baseEnd] == target[end]) {
+                        end++;
+                        baseEnd++;
+                    }
+                    insert(target, pending, targetStart - pending, out);
+                    copy(baseStart, end - targetStart, out);
+                    pending = end;
+                    pos = end;
+                    if (pos + BLOCK_SIZE <= target.length) {
+                        hash = hash(target, pos);
+                    }
+                } else {
+                    if (pos + BLOCK_SIZE < target.length) {
+                        hash = (hash - target[pos] * PRIME_POW) * PRIME + target[pos + BLOCK_SIZE];
+                    }
+                    pos++;
+                }
+            }
+            insert(target, pending, target.length - pending, out);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the result of applying {@code delta} to {@code base}
+     * @throws IllegalArgumentException if {@code delta} was not created against {@code base}
+     */
+    public static byte[] apply(final byte[] base, final byte[] delta)
+            throws IllegalArgumentException {
+        final ByteArrayDataInput in = ByteStreams.newDataInput(delta);
+        final byte[] target;
+        try {
+            final int baseLength = readUnsignedVarInt(in);
+            checkArgument(baseLength == base.length,
+                    "Delta base length mismatch, expected %s, got %s", baseLength, base.length);
+            target = new byte[readUnsignedVarInt(in)];
+            int pos = 0;
+            while (pos < target.length) {
+                final int op = readUnsignedVarInt(in);
+                final int length = op >>> 1;
+                checkArgument(pos + length <= target.length, "Corrupt delta");
+                if ((op & 1) == 0) {
+                    in.readFully(target, pos, length);
+                } else {
+                    final int offset = readUnsignedVarInt(in);
+                    checkArgument(offset + length <= base.length, "Corrupt delta");
+                    System.arraycopy(base, offset, target, pos, length);
+                }
+                pos += length;
+            }
+        } catch (IOException | IllegalStateException e) {
+            // ByteArrayDataInput throws IllegalStateException on EOF
+            throw new IllegalArgumentException("Corrupt delta", e);
+        }
+        return target;
+    }
+
+    private static void insert(byte[] target, int offset, int length, ByteArrayDataOutput out)
+            throws IOException {
+        if (length > 0) {
+            writeUnsignedVarInt(length << 1, out);
+            out.write(target, offset, length);
+        }
+    }
+
+    private static void copy(int offset, int length, ByteArrayDataOutput out) throws IOException {
+        writeUnsignedVarInt((length << 1) | 1, out);
+        writeUnsignedVarInt(offset, out);
+    }
+
+    /**
+     * @return an open addressing table of the base's block indexes plus one, by block hash; the
+     *         first block with a given hash wins
+     */
+    private static int[] index(byte[] base) {
+        final int blocks = base.length / BLOCK_SIZE;
+        final int[] index = new int[Integer.highestOneBit(blocks) << 2];
+        final int mask = index.length - 1;
+        for (int block = 0; block < blocks; block++) {
+            int slot = mix(hash(base, block * BLOCK_SIZE)) & mask;
+            if (index[slot] == 0) {
+                index[slot] = block + 1;
+            }
+        }
+        return index;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int hash = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            hash = hash * PRIME + data[offset + i];
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    private static boolean equal(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -14,6 +14,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -36,11 +37,15 @@ import org.locationtech.geogig.storage.ConflictsDatabase;
 import org.locationtech.geogig.storage.ObjectDatabase;
 import org.locationtech.geogig.storage.datastream.DataStreamSerializationFactoryV1;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
 /**
@@ -286,12 +291,93 @@ public class FileObjectDatabase extends AbstractObjectDatabase implements Object
 
     @Override
     public Iterator<RevObject> getAll(Iterable<ObjectId> ids, BulkOpListener listener) {
-        throw new UnsupportedOperationException("This method is not yet implemented");
+        return getAll(ids, listener, RevObject.class);
+    }
+
+    @Override
+    public <T extends RevObject> Iterator<T> getAll(final Iterable<ObjectId> ids,
+            final BulkOpListener listener, final Class<T> type) {
+        checkNotNull(ids, "ids is null");
+        checkNotNull(listener, "listener is null");
+        checkNotNull(type, "type is null");
+        final Iterator<ObjectId> queryIds = ids.iterator();
+        return new AbstractIterator<T>() {
+            @Override
+            protected T computeNext() {
+                while (queryIds.hasNext()) {
+                    final ObjectId id = queryIds.next();
+                    final File f = filePath(id);
+                    final long size = f.length();
+                    T object = getIfPresent(id, type);
+                    if (object == null) {
+                        listener.notFound(id);
+                    } else {
+                        listener.found(id, Integer.valueOf((int) size));
+                        return object;
+                    }
+                }
+                return endOfData();
+            }
+        };
     }
 
     @Override
     public long deleteAll(Iterator<ObjectId> ids, final BulkOpListener listener) {
-        throw new UnsupportedOperationException("This method is not yet implemented");
+        checkNotNull(ids, "ids is null");
+        checkNotNull(listener, "listener is null");
+        long count = 0;
+        while (ids.hasNext()) {
+            final ObjectId id = ids.next();
+            if (delete(id)) {
+                count++;
+                listener.deleted(id);
+            } else {
+                listener.notFound(id);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Lists the object files one leaf directory ({@code <dataRoot>/xx/yy/}) at a time.
+     */
+    @Override
+    public Iterator<ObjectId> objectIds() {
+        checkState(isOpen(), "db is closed");
+        final Iterator<File> leafDirs = Iterators.concat(Iterators.transform(
+                Iterators.forArray(subdirs(dataRoot)), new Function<File, Iterator<File>>() {
+                    @Override
+                    public Iterator<File> apply(File dir) {
+                        return Iterators.forArray(subdirs(dir));
+                    }
+                }));
+        return Iterators.concat(Iterators.transform(leafDirs,
+                new Function<File, Iterator<ObjectId>>() {
+                    @Override
+                    public Iterator<ObjectId> apply(File dir) {
+                        String[] names = dir.list();
+                        List<ObjectId> ids = Lists.newArrayListWithCapacity(
+                                names == null ? 0 : names.length);
+                        if (names != null) {
+                            for (String name : names) {
+                                if (name.length() == 2 * ObjectId.NUM_BYTES) {
+                                    ids.add(ObjectId.valueOf(name));
+                                }
+                            }
+                        }
+                        return ids.iterator();
+                    }
+                }));
+    }
+
+    private static File[] subdirs(File dir) {
+        File[] subdirs = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isDirectory() && f.getName().length() == 2;
+            }
+        });
+        return subdirs == null ? new File[0] : subdirs;
     }
 
     @Override
@@ -319,10 +405,4 @@ public class FileObjectDatabase extends AbstractObjectDatabase implements Object
     public BlobStore getBlobStore() {
         return blobStore;
     }
-
-    @Override
-    public <T extends RevObject> Iterator<T> getAll(Iterable<ObjectId> ids, BulkOpListener listener,
-            Class<T> type) {
-        throw new UnsupportedOperationException();
-    }
 }
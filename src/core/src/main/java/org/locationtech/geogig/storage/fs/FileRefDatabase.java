@@ -20,6 +20,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.locationtech.geogig.api.ObjectId;
@@ -29,6 +33,7 @@ import org.locationtech.geogig.api.plumbing.ResolveGeogigURI;
 import org.locationtech.geogig.repository.RepositoryConnectionException;
 import org.locationtech.geogig.storage.AbstractRefDatabase;
 import org.locationtech.geogig.storage.ConfigDatabase;
+import org.locationtech.geogig.storage.RefChangeTracker;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
@@ -43,10 +48,22 @@ import com.google.inject.Inject;
  * Provides an implementation of a GeoGig ref database that utilizes the file system for the storage
  * of refs.
  */
-public class FileRefDatabase extends AbstractRefDatabase {
+public class FileRefDatabase extends AbstractRefDatabase implements RefChangeTracker {
 
     private static final Charset CHARSET = Charset.forName("UTF-8");
 
+    /**
+     * Files modified more recently than this may be modified again without their last modified
+     * time changing, on file systems that keep it with sub-second precision
+     */
+    private static final long FINE_TIMESTAMP_RESOLUTION_MILLIS = 100;
+
+    /**
+     * Same as {@link #FINE_TIMESTAMP_RESOLUTION_MILLIS} for file systems that round it to whole
+     * seconds, or to two seconds like FAT does
+     */
+    private static final long COARSE_TIMESTAMP_RESOLUTION_MILLIS = 2000;
+
     private final Platform platform;
 
     private final ConfigDatabase configDB;
@@ -130,6 +147,47 @@ public class FileRefDatabase extends AbstractRefDatabase {
         return value;
     }
 
+    /**
+     * Returns the file key, last modified time and size of the ref file if it was last modified
+     * long enough ago for any later write to change its modification time, or its contents
+     * otherwise.
+     * <p>
+     * All ref files have about the same size, so a write that happens within the timestamp
+     * resolution of the previous one can only be told apart by the contents. Since the resolution
+     * isn't known, last modified times with no sub-second part are assumed to be coarse.
+     */
+    @Override
+    public Object version(String refName) {
+        checkNotNull(refName);
+        final File refFile = toFile(refName);
+        BasicFileAttributes attributes;
+        try {
+            attributes = java.nio.file.Files.readAttributes(refFile.toPath(),
+                    BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            return new Object();
+        }
+        if (attributes.isDirectory()) {
+            return null;
+        }
+        final FileTime lastModified = attributes.lastModifiedTime();
+        final long millis = lastModified.toMillis();
+        final long resolution = millis % 1000 == 0 ? COARSE_TIMESTAMP_RESOLUTION_MILLIS
+                : FINE_TIMESTAMP_RESOLUTION_MILLIS;
+        if (System.currentTimeMillis() - millis < resolution) {
+            try {
+                return new String(java.nio.file.Files.readAllBytes(refFile.toPath()), CHARSET);
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                return new Object();
+            }
+        }
+        return Arrays.asList(attributes.fileKey(), lastModified, Long.valueOf(attributes.size()));
+    }
+
     private String getInternal(String name) {
         File refFile = toFile(name);
         if (!refFile.exists() || refFile.isDirectory()) {
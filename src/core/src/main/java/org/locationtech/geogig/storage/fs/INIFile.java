@@ -11,13 +11,16 @@ package org.locationtech.geogig.storage.fs;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -25,154 +28,444 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Simple implementation of an INI file parser and serializer
+ * <p>
+ * Reads are served from an immutable, indexed snapshot of the file's contents that is shared by
+ * all the instances reading the same file in the JVM, and replaced as a whole when the file
+ * changes, so they don't block each other. Writes are serialized: they re-read the file, modify
+ * it, and publish the new snapshot before returning.
+ * <p>
+ * Changes made to the files by other processes are detected by a background thread that checks
+ * the files every {@link #CHECK_INTERVAL_MILLIS} milliseconds, and are hence seen by readers with
+ * at most that delay. The snapshots of files not read for {@link #EVICT_AFTER_MILLIS}
+ * milliseconds are discarded.
+ * <p>
+ * A file is considered changed when its modification time or length differ from the snapshot's.
+ * As a file can be rewritten with the same length within the resolution of its modification time,
+ * the contents of snapshots taken within that resolution of the file's modification time are
+ * compared too, until the file is old enough for any later write to change its modification time.
  */
 public abstract class INIFile {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(INIFile.class);
+
+    static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    static final long EVICT_AFTER_MILLIS = 30_000;
+
+    /**
+     * Files modified more recently than this may be modified again without their last modified
+     * time changing, on file systems that keep it with sub-second precision
+     */
+    private static final long FINE_TIMESTAMP_RESOLUTION_MILLIS = 100;
+
     /**
-     * Timestamp the ini file at latest read
+     * Same as {@link #FINE_TIMESTAMP_RESOLUTION_MILLIS} for file systems that round it to whole
+     * seconds, or to two seconds like FAT does
      */
-    private long timestamp = 0;
+    private static final long COARSE_TIMESTAMP_RESOLUTION_MILLIS = 2000;
 
     /**
-     * Content of the ini file
+     * Number of times a file is read again if it changes while being read
      */
-    private List<Entry> data;
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    /**
+     * Snapshots of the files read, by absolute path
+     */
+    private static final ConcurrentMap<File, Snapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+
+    /**
+     * Serializes writes, reloads, and the creation of the snapshots
+     */
+    private static final Object WRITE_LOCK = new Object();
+
+    private static ScheduledExecutorService watcher;
 
     public abstract File iniFile();
 
-    public synchronized Optional<String> get(String section, String key) throws IOException {
+    public Optional<String> get(String section, String key) throws IOException {
         if (section == null || section.length() == 0) {
             throw new IllegalArgumentException("Section name required");
         }
         if (key == null || key.length() == 0) {
             throw new IllegalArgumentException("Key required");
         }
-        checkReload();
-        for (Entry e : data) {
-            Optional<String> result = e.get(section, key);
-            if (result.isPresent())
-                return result;
-        }
-        return Optional.absent();
+        Map<String, String> values = snapshot().values.get(section);
+        return Optional.fromNullable(values == null ? null : values.get(key));
     }
 
-    public synchronized Map<String, String> getAll() throws IOException {
-        checkReload();
-        Map<String, String> m = new HashMap<String, String>();
-        for (Entry e : data) {
-            if (e instanceof Section) {
-                Section s = (Section) e;
-                for (KeyAndValue kv : s.getValues()) {
-                    m.put(s.getHeader() + "." + kv.getKey(), kv.getValue());
-                }
-            }
-        }
-        return m;
+    public Map<String, String> getAll() throws IOException {
+        return new HashMap<String, String>(snapshot().all);
     }
 
-    public synchronized List<String> listSubsections(String section) throws IOException {
+    public List<String> listSubsections(String section) throws IOException {
         if (section == null || section.length() == 0) {
             throw new IllegalArgumentException("Section name required");
         }
-        checkReload();
         List<String> results = new ArrayList<String>();
-        for (Entry e : data) {
-            if (e instanceof Section) {
-                Section s = (Section) e;
-                if (s.getHeader().startsWith(section + ".")) {
-                    results.add(s.getHeader().substring(section.length() + 1));
-                }
+        for (String header : snapshot().headers) {
+            if (header.startsWith(section + ".")) {
+                results.add(header.substring(section.length() + 1));
             }
         }
         return results;
     }
 
-    public synchronized Map<String, String> getSection(String section) throws IOException {
+    public Map<String, String> getSection(String section) throws IOException {
         if (section == null || section.length() == 0) {
             throw new IllegalArgumentException("Section name required");
         }
-        checkReload();
-        for (Entry e : data) {
-            if (e instanceof Section) {
-                Section s = (Section) e;
-                if (s.getHeader().equals(section)) {
-                    Map<String, String> values = new HashMap<String, String>();
-                    for (KeyAndValue kv : s.getValues()) {
-                        values.put(kv.getKey(), kv.getValue());
-                    }
-                    return values;
-                }
-            }
-        }
-        return new HashMap<String, String>();
+        Map<String, String> values = snapshot().sections.get(section);
+        return values == null ? new HashMap<String, String>()
+                : new HashMap<String, String>(values);
     }
 
-    public synchronized void set(String section, String key, String value) throws IOException {
+    public void set(String section, String key, String value) throws IOException {
         if (section == null || section.length() == 0) {
             throw new IllegalArgumentException("Section name required");
         }
         if (key == null || key.length() == 0) {
             throw new IllegalArgumentException("Key required");
         }
-        checkReload();
-        boolean written = false;
-        for (Entry e : data) {
-            written = e.set(section, key, value);
-            if (written) {
-                break;
+        synchronized (WRITE_LOCK) {
+            final File ini = iniFile();
+            List<Entry> data = parse(ini);
+            boolean written = false;
+            for (Entry e : data) {
+                written = e.set(section, key, value);
+                if (written) {
+                    break;
+                }
             }
+            if (!written) { // didn't add to an existing section, time to add a new section.
+                List<KeyAndValue> kvs = new ArrayList<KeyAndValue>();
+                kvs.add(new KeyAndValue(key, value));
+                data.add(new Section(section, kvs));
+            }
+            write(ini, data);
         }
-        if (!written) { // didn't add to an existing section, time to add a new section.
-            List<KeyAndValue> kvs = new ArrayList<KeyAndValue>();
-            kvs.add(new KeyAndValue(key, value));
-            data.add(new Section(section, kvs));
-        }
-        write();
     }
 
-    public synchronized void removeSection(String section) throws IOException {
+    public void removeSection(String section) throws IOException {
         if (section == null || section.length() == 0) {
             throw new IllegalArgumentException("Section name required");
         }
-        checkReload();
-        boolean written = false;
-        Iterator<Entry> iter = data.iterator();
-        while (iter.hasNext()) {
-            Entry e = iter.next();
-            if (e instanceof Section && ((Section) e).getHeader().equals(section)) {
-                iter.remove();
-                written = true;
-                break;
+        synchronized (WRITE_LOCK) {
+            final File ini = iniFile();
+            List<Entry> data = parse(ini);
+            boolean written = false;
+            Iterator<Entry> iter = data.iterator();
+            while (iter.hasNext()) {
+                Entry e = iter.next();
+                if (e instanceof Section && ((Section) e).getHeader().equals(section)) {
+                    iter.remove();
+                    written = true;
+                    break;
+                }
+            }
+            if (written) {
+                write(ini, data);
+            } else {
+                throw new NoSuchElementException("No such section");
             }
-        }
-        if (written) {
-            write();
-        } else {
-            throw new NoSuchElementException("No such section");
         }
     }
 
-    public synchronized void remove(String section, String key) throws IOException {
+    public void remove(String section, String key) throws IOException {
         if (section == null || section.length() == 0) {
             throw new IllegalArgumentException("Section name required");
         }
         if (key == null || key.length() == 0) {
             throw new IllegalArgumentException("Section name required");
         }
-        checkReload();
-        boolean written = false;
-        for (Entry e : data) {
+        synchronized (WRITE_LOCK) {
+            final File ini = iniFile();
+            List<Entry> data = parse(ini);
+            boolean written = false;
+            for (Entry e : data) {
+
+                written |= e.unset(section, key);
+            }
+            if (written) {
+                write(ini, data);
+            }
+        }
+    }
+
+    /**
+     * Returns the current snapshot of the file, reading it if no instance has read it lately.
+     */
+    private Snapshot snapshot() throws IOException {
+        final File ini = iniFile().getAbsoluteFile();
+        Snapshot snapshot = SNAPSHOTS.get(ini);
+        if (snapshot == null) {
+            synchronized (WRITE_LOCK) {
+                snapshot = SNAPSHOTS.get(ini);
+                if (snapshot == null) {
+                    snapshot = Snapshot.load(ini);
+                    publish(snapshot);
+                }
+            }
+        }
+        snapshot.touch();
+        return snapshot;
+    }
 
-            written |= e.unset(section, key);
+    private static void publish(Snapshot snapshot) {
+        SNAPSHOTS.put(snapshot.file, snapshot);
+        if (watcher == null) {
+            watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("geogig-config-watcher").setDaemon(true).build());
+            watcher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        checkForChanges();
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Error checking for config file changes", e);
+                    }
+                }
+            }, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
         }
-        if (written) {
-            write();
+    }
+
+    /**
+     * Reloads the snapshots of the files modified since they were read, and discards the ones that
+     * haven't been read lately.
+     */
+    @VisibleForTesting
+    static void checkForChanges() {
+        final long now = System.currentTimeMillis();
+        for (Snapshot snapshot : SNAPSHOTS.values()) {
+            synchronized (WRITE_LOCK) {
+                if (now - snapshot.lastAccess > EVICT_AFTER_MILLIS) {
+                    SNAPSHOTS.remove(snapshot.file, snapshot);
+                } else if (snapshot.isStale() && SNAPSHOTS.get(snapshot.file) == snapshot) {
+                    Snapshot reloaded = Snapshot.load(snapshot.file);
+                    reloaded.lastAccess = snapshot.lastAccess;
+                    SNAPSHOTS.put(snapshot.file, reloaded);
+                }
+            }
+        }
+    }
+
+    /**
+     * Immutable contents of an INI file, indexed for the read operations
+     */
+    private static final class Snapshot {
+
+        final File file;
+
+        final long lastModified;
+
+        final long length;
+
+        /**
+         * Hash of the contents the snapshot was created from
+         */
+        final HashCode contents;
+
+        /**
+         * Whether the file was older than its timestamp resolution when this snapshot was taken,
+         * hence any later write changes its modification time
+         */
+        volatile boolean confirmed;
+
+        /**
+         * Value of each key by section, the first one if a key appears in more than one section
+         * with the same header
+         */
+        final Map<String, Map<String, String>> values;
+
+        /**
+         * Values of the first section with each header
+         */
+        final Map<String, Map<String, String>> sections;
+
+        /**
+         * All values by {@code section.key}, the last one if a key appears more than once
+         */
+        final Map<String, String> all;
+
+        /**
+         * Section headers in file order
+         */
+        final List<String> headers;
+
+        volatile long lastAccess = System.currentTimeMillis();
+
+        private Snapshot(File file, Stamp stamp, HashCode contents, List<Entry> data) {
+            this.file = file;
+            this.lastModified = stamp.lastModified;
+            this.length = stamp.length;
+            this.contents = contents;
+            this.confirmed = stamp.confirmed;
+
+            Map<String, Map<String, String>> values = new HashMap<>();
+            Map<String, Map<String, String>> sections = new HashMap<>();
+            Map<String, String> all = new HashMap<>();
+            List<String> headers = new ArrayList<>();
+            for (Entry e : data) {
+                if (!(e instanceof Section)) {
+                    continue;
+                }
+                Section s = (Section) e;
+                final String header = s.getHeader();
+                headers.add(header);
+                Map<String, String> sectionValues = new HashMap<>();
+                Map<String, String> headerValues = values.get(header);
+                if (headerValues == null) {
+                    headerValues = new HashMap<>();
+                    values.put(header, headerValues);
+                }
+                for (KeyAndValue kv : s.getValues()) {
+                    if (!sectionValues.containsKey(kv.getKey())) {
+                        sectionValues.put(kv.getKey(), kv.getValue());
+                    }
+                    if (!headerValues.containsKey(kv.getKey())) {
+                        headerValues.put(kv.getKey(), kv.getValue());
+                    }
+                    all.put(header + "." + kv.getKey(), kv.getValue());
+                }
+                if (!sections.containsKey(header)) {
+                    sections.put(header, sectionValues);
+                }
+            }
+            this.values = values;
+            this.sections = sections;
+            this.all = all;
+            this.headers = headers;
+        }
+
+        /**
+         * Reads the file, stamped with the state it had before being read, reading it again if it
+         * changes while being read.
+         */
+        static Snapshot load(File file) {
+            Stamp stamp = Stamp.of(file);
+            for (int attempt = 1;; attempt++) {
+                final byte[] bytes = readBytes(file);
+                final Stamp after = Stamp.of(file);
+                if (after.sameFile(stamp)) {
+                    return new Snapshot(file, stamp, hash(bytes), parse(bytes));
+                }
+                if (attempt == MAX_READ_ATTEMPTS) {
+                    // keeps changing, make it be read again on the next check
+                    return new Snapshot(file, Stamp.UNKNOWN, hash(bytes), parse(bytes));
+                }
+                stamp = after;
+            }
+        }
+
+        /**
+         * Creates the snapshot of the contents just written to the file.
+         */
+        static Snapshot written(File file, byte[] bytes, List<Entry> data) {
+            return new Snapshot(file, Stamp.of(file), hash(bytes), data);
+        }
+
+        boolean isStale() {
+            final Stamp stamp = Stamp.of(file);
+            if (stamp.lastModified != lastModified || stamp.length != length) {
+                return true;
+            }
+            if (confirmed) {
+                return false;
+            }
+            if (!hash(readBytes(file)).equals(contents)) {
+                return true;
+            }
+            // the contents read are the ones of a file old enough for any later write to change
+            // its modification time
+            confirmed = stamp.confirmed;
+            return false;
+        }
+
+        void touch() {
+            final long now = System.currentTimeMillis();
+            // avoid writing to the shared field on every read
+            if (now - lastAccess > CHECK_INTERVAL_MILLIS) {
+                lastAccess = now;
+            }
+        }
+    }
+
+    /**
+     * The modification time and length of a file at a given time
+     */
+    private static final class Stamp {
+
+        static final Stamp UNKNOWN = new Stamp(-1, -1, false);
+
+        final long lastModified;
+
+        final long length;
+
+        /**
+         * Whether the file was older than the resolution of its modification time
+         */
+        final boolean confirmed;
+
+        private Stamp(long lastModified, long length, boolean confirmed) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.confirmed = confirmed;
+        }
+
+        static Stamp of(File file) {
+            final long now = System.currentTimeMillis();
+            BasicFileAttributes attributes;
+            try {
+                attributes = java.nio.file.Files.readAttributes(file.toPath(),
+                        BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return new Stamp(0, 0, true);
+            } catch (IOException e) {
+                return UNKNOWN;
+            }
+            final long lastModified = attributes.lastModifiedTime().toMillis();
+            final long resolution = lastModified % 1000 == 0 ? COARSE_TIMESTAMP_RESOLUTION_MILLIS
+                    : FINE_TIMESTAMP_RESOLUTION_MILLIS;
+            return new Stamp(lastModified, attributes.size(), now - lastModified >= resolution);
+        }
+
+        boolean sameFile(Stamp stamp) {
+            return lastModified == stamp.lastModified && length == stamp.length;
+        }
+    }
+
+    private static HashCode hash(byte[] bytes) {
+        return Hashing.sha1().hashBytes(bytes);
+    }
+
+    /**
+     * @return the contents of the file, empty if it can't be read
+     */
+    private static byte[] readBytes(File file) {
+        try {
+            return java.nio.file.Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            return new byte[0];
         }
     }
 
@@ -326,15 +619,6 @@ public abstract class INIFile {
         }
     }
 
-    private void checkReload() throws IOException {
-        File ini = iniFile();
-        long currentTime = ini.lastModified();
-        if (data == null || currentTime > timestamp) {
-            reload(ini);
-            timestamp = currentTime;
-        }
-    }
-
     // Note. If you're tweaking these be careful, throwing an exception in a
     // static initializer prevents the class from being loaded entirely.
     private static Pattern SECTION_HEADER = Pattern
@@ -347,10 +631,15 @@ public abstract class INIFile {
 
     private static Pattern COMMENT = Pattern.compile("^\\p{Space}*#(.*)$");
 
-    private void reload(File ini) throws IOException {
+    private static List<Entry> parse(File ini) {
+        return parse(readBytes(ini));
+    }
+
+    private static List<Entry> parse(byte[] contents) {
+        List<Entry> data;
         BufferedReader reader = null;
         try {
-            reader = new BufferedReader(new InputStreamReader(new FileInputStream(ini)));
+            reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(contents)));
             String sectionName = null;
             List<Entry> results = new ArrayList<Entry>();
             List<KeyAndValue> kvs = new ArrayList<KeyAndValue>();
@@ -389,15 +678,14 @@ public abstract class INIFile {
         } catch (RuntimeException e) {
             data = new ArrayList<Entry>();
         } finally {
-            if (reader != null) {
-                reader.close();
-            }
+            Closeables.closeQuietly(reader);
         }
+        return data;
     }
 
-    private void write() throws IOException {
-        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
-                new FileOutputStream(iniFile()))));
+    private static void write(File ini, List<Entry> data) throws IOException {
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(buff)));
         try {
             for (Entry e : data) {
                 e.write(writer);
@@ -406,6 +694,14 @@ public abstract class INIFile {
             writer.flush();
             writer.close();
         }
+        final byte[] bytes = buff.toByteArray();
+        FileOutputStream out = new FileOutputStream(ini);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        publish(Snapshot.written(ini.getAbsoluteFile(), bytes, data));
     }
 
     public static INIFile forFile(final File iniFile) {
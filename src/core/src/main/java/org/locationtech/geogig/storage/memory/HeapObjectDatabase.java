@@ -10,7 +10,9 @@
 package org.locationtech.geogig.storage.memory;
 
 import java.nio.file.Path;
+import java.util.Iterator;
 
+import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.api.Platform;
 import org.locationtech.geogig.repository.Hints;
 import org.locationtech.geogig.storage.AbstractObjectDatabase;
@@ -99,6 +101,11 @@ public class HeapObjectDatabase extends ForwardingObjectStore implements ObjectD
         return new ObjectInserter(this);
     }
 
+    @Override
+    public Iterator<ObjectId> objectIds() {
+        return ((HeapObjectStore) subject.get()).objectIds();
+    }
+
     @Override
     public void configure() {
         // No-op
@@ -105,6 +105,15 @@ public class HeapObjectStore extends AbstractObjectStore {
         return objects.remove(objectId) != null;
     }
 
+    /**
+     * @return an iterator over the ids of all the objects in the database, which tolerates
+     *         concurrent modifications
+     */
+    public Iterator<ObjectId> objectIds() {
+        checkState(isOpen(), "db is closed");
+        return objects.keySet().iterator();
+    }
+
     @Override
     protected List<ObjectId> lookUpInternal(byte[] raw) {
         throw new UnsupportedOperationException("we override lookup directly");
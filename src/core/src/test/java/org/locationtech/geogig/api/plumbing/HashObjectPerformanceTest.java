@@ -0,0 +1,112 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.locationtech.geogig.api.Bucket;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevObject.TYPE;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.Hasher;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Compares the throughput of {@link HashObject#hashFeature} and {@link HashObject#hashTree}
+ * against funneling the same objects into a new {@link ObjectId#HASH_FUNCTION Guava hasher} each
+ * time, as they used to.
+ */
+public class HashObjectPerformanceTest {
+
+    private static final int RUNS = 5;
+
+    @Ignore
+    @Test
+    public void testHashFeature() throws Exception {
+        final WKTReader reader = new WKTReader();
+        final List<ImmutableList<Optional<Object>>> features = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            features.add(ImmutableList.of(Optional.<Object> of("feature." + i),
+                    Optional.<Object> of(Integer.valueOf(i)),
+                    Optional.<Object> of(Double.valueOf(i / 3d)), Optional.absent(),
+                    Optional.<Object> of(reader.read(String.format(
+                            "LINESTRING(%d %d, %d.5 %d.5, %d.25 %d.75)", i, i, i, i, i, i)))));
+        }
+        for (int run = 0; run < RUNS; run++) {
+            Stopwatch sw = Stopwatch.createStarted();
+            for (ImmutableList<Optional<Object>> feature : features) {
+                Hasher hasher = ObjectId.HASH_FUNCTION.newHasher();
+                HashObjectFunnels.featureFunnel().funnel(feature, hasher);
+                ObjectId.createNoClone(hasher.hash().asBytes());
+            }
+            sw.stop();
+            report("hashFeature, hasher", features.size(), sw);
+
+            sw.reset().start();
+            for (ImmutableList<Optional<Object>> feature : features) {
+                HashObject.hashFeature(feature);
+            }
+            sw.stop();
+            report("hashFeature, sink  ", features.size(), sw);
+        }
+    }
+
+    @Ignore
+    @Test
+    public void testHashTree() throws Exception {
+        final int numTrees = 10_000;
+        final List<ImmutableList<Node>> trees = new ArrayList<>();
+        for (int t = 0; t < numTrees; t++) {
+            ImmutableList.Builder<Node> nodes = ImmutableList.builder();
+            for (int i = 0; i < 100; i++) {
+                String name = "feature." + (t * 100 + i);
+                nodes.add(Node.create(name, ObjectId.forString(name), ObjectId.NULL,
+                        TYPE.FEATURE, new Envelope(i, i + 1, i, i + 1)));
+            }
+            trees.add(nodes.build());
+        }
+        final Optional<ImmutableList<Node>> noNodes = Optional.absent();
+        final Optional<ImmutableSortedMap<Integer, Bucket>> noBuckets = Optional.absent();
+        for (int run = 0; run < RUNS; run++) {
+            Stopwatch sw = Stopwatch.createStarted();
+            for (ImmutableList<Node> features : trees) {
+                Hasher hasher = ObjectId.HASH_FUNCTION.newHasher();
+                HashObjectFunnels.treeFunnel().funnel(hasher, noNodes, Optional.of(features),
+                        noBuckets);
+                ObjectId.createNoClone(hasher.hash().asBytes());
+            }
+            sw.stop();
+            report("hashTree, hasher", numTrees, sw);
+
+            sw.reset().start();
+            for (ImmutableList<Node> features : trees) {
+                HashObject.hashTree(noNodes, Optional.of(features), noBuckets);
+            }
+            sw.stop();
+            report("hashTree, sink  ", numTrees, sw);
+        }
+    }
+
+    private static void report(String name, int count, Stopwatch sw) {
+        long millis = Math.max(1, sw.elapsed(TimeUnit.MILLISECONDS));
+        System.err.printf("%s: %,d objects in %s, %,d objects/s\n", name, count, sw,
+                count * 1000L / millis);
+    }
+}
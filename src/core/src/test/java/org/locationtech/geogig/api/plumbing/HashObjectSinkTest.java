@@ -0,0 +1,295 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.locationtech.geogig.api.Bucket;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.api.RevCommitImpl;
+import org.locationtech.geogig.api.RevFeature;
+import org.locationtech.geogig.api.RevFeatureImpl;
+import org.locationtech.geogig.api.RevObject.TYPE;
+import org.locationtech.geogig.api.RevPerson;
+import org.locationtech.geogig.api.RevPersonImpl;
+import org.locationtech.geogig.api.RevTag;
+import org.locationtech.geogig.api.RevTagImpl;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.RevTreeImpl;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.Hasher;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateFilter;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Cross-checks the ids computed through {@link HashObjectSink} against the ones computed by
+ * funneling the same objects into a {@link ObjectId#HASH_FUNCTION Guava hasher}.
+ */
+public class HashObjectSinkTest {
+
+    private static final String[] WKT = { "POINT(1 1)", "POINT(0.1234567891234 -1E-10)",
+            "POINT EMPTY", "LINESTRING(1 1, 1.1 2.1, 100 1000)",
+            "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0), (1 1, 2 1, 2 2, 1 2, 1 1))",
+            "MULTIPOINT((1 1), (2 2))", "MULTILINESTRING((1 1, 2 2), (3 3, 4 4, 5 5))",
+            "MULTIPOLYGON(((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))",
+            "GEOMETRYCOLLECTION(POINT(1 1), LINESTRING(1 1, 2 2))", "GEOMETRYCOLLECTION EMPTY" };
+
+    private static class SomeRandomClass {
+        @Override
+        public String toString() {
+            return "neither serializable nor a known type";
+        }
+    }
+
+    @Test
+    public void testPrimitives() {
+        Random random = new Random(1);
+        byte[] small = new byte[100];
+        byte[] large = new byte[10000];
+        random.nextBytes(small);
+        random.nextBytes(large);
+
+        Hasher hasher = ObjectId.HASH_FUNCTION.newHasher();
+        HashObjectSink sink = HashObjectSink.get();
+        try {
+            // enough writes to cross the buffer boundary at every alignment
+            for (int i = 0; i < 1000; i++) {
+                long l = random.nextLong();
+                hasher.putByte((byte) l).putShort((short) l).putInt((int) l).putLong(l);
+                sink.putByte((byte) l).putShort((short) l).putInt((int) l).putLong(l);
+                float f = Float.intBitsToFloat((int) l);
+                double d = Double.longBitsToDouble(l);
+                hasher.putFloat(f).putDouble(d);
+                sink.putFloat(f).putDouble(d);
+                hasher.putBoolean(l > 0).putChar((char) l).putUnencodedChars("ñandú " + l);
+                sink.putBoolean(l > 0).putChar((char) l).putUnencodedChars("ñandú " + l);
+                hasher.putString("ñandú", Charset.forName("UTF-8")).putBytes(small, i % 10, 50);
+                sink.putString("ñandú", Charset.forName("UTF-8")).putBytes(small, i % 10, 50);
+            }
+            hasher.putBytes(large);
+            sink.putBytes(large);
+            assertEquals(ObjectId.createNoClone(hasher.hash().asBytes()), sink.hash());
+        } finally {
+            sink.release();
+        }
+    }
+
+    @Test
+    public void testFeatures() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("long", Long.valueOf(123));
+        map.put("string", "hello");
+        map.put("geom", geom("LINESTRING(1 1, 1.1 2.1, 100 1000)"));
+
+        List<Object> values = new ArrayList<>();
+        values.add(null);
+        values.add("StringProp1_1");
+        values.add(Boolean.TRUE);
+        values.add(Byte.valueOf((byte) 18));
+        values.add(Double.valueOf(100.01));
+        values.add(new BigDecimal("1.89e1021"));
+        values.add(Float.valueOf(12.5f));
+        values.add(Integer.valueOf(1000));
+        values.add(new BigInteger("90000000"));
+        values.add(Long.valueOf(800000));
+        values.add(new boolean[] { true, false, true });
+        values.add(new char[] { 'a', 'b', 'c' });
+        values.add(new double[] { 1.5, 1.6, 1.7, 1.8 });
+        values.add(new int[] { 5, 7, 9, 11, 32 });
+        values.add(UUID.fromString("bd882d24-0fe9-11e1-a736-03b3c0d0d06d"));
+        values.add(map);
+        TestSerializableObject serializableObject = new TestSerializableObject();
+        serializableObject.words = "words to serialize";
+        values.add(serializableObject);
+        values.add(new SomeRandomClass());
+        for (String wkt : WKT) {
+            values.add(geom(wkt));
+        }
+
+        ImmutableList.Builder<Optional<Object>> builder = ImmutableList.builder();
+        for (Object value : values) {
+            builder.add(Optional.fromNullable(value));
+            ImmutableList<Optional<Object>> feature = builder.build();
+            assertEquals(hasherId(feature), HashObject.hashFeature(feature));
+            assertEquals(hasherId(feature), new HashObject().setObject(feature(feature)).call());
+        }
+    }
+
+    @Test
+    public void testGeometryOrdinates() throws Exception {
+        GeometryFactory packed = new GeometryFactory(new PackedCoordinateSequenceFactory());
+        for (String wkt : WKT) {
+            for (Geometry geom : ImmutableList.of(geom(wkt), new WKTReader(packed).read(wkt))) {
+                final Hasher hasher = ObjectId.HASH_FUNCTION.newHasher();
+                hasher.putInt(TYPE.FEATURE.value());
+                geom.apply(new CoordinateFilter() {
+                    @Override
+                    public void filter(Coordinate coord) {
+                        hasher.putDouble(Math.round(coord.x * 1E9D) / 1E9D);
+                        hasher.putDouble(Math.round(coord.y * 1E9D) / 1E9D);
+                    }
+                });
+                ObjectId expected = ObjectId.createNoClone(hasher.hash().asBytes());
+                ImmutableList<Optional<Object>> feature = ImmutableList.of(Optional
+                        .<Object> of(geom));
+                assertEquals(wkt, expected, HashObject.hashFeature(feature));
+            }
+        }
+    }
+
+    @Test
+    public void testTrees() {
+        ImmutableList.Builder<Node> trees = ImmutableList.builder();
+        ImmutableList.Builder<Node> features = ImmutableList.builder();
+        for (int i = 0; i < 100; i++) {
+            trees.add(Node.tree("tree" + i, ObjectId.forString("tree" + i),
+                    i % 2 == 0 ? ObjectId.NULL : ObjectId.forString("metadata")));
+            features.add(Node.create("feature" + i, ObjectId.forString("feature" + i),
+                    ObjectId.NULL, TYPE.FEATURE, new Envelope(i, i + 1, i, i + 1)));
+        }
+        RevTree leaf = RevTreeImpl.createLeafTree(ObjectId.NULL, 200, features.build(),
+                trees.build());
+
+        ImmutableSortedMap.Builder<Integer, Bucket> buckets = ImmutableSortedMap.naturalOrder();
+        for (int i = 0; i < 32; i++) {
+            buckets.put(Integer.valueOf(i),
+                    Bucket.create(ObjectId.forString("bucket" + i), new Envelope(0, i, 0, i)));
+        }
+        RevTree node = RevTreeImpl.createNodeTree(ObjectId.NULL, 10000, 0, buckets.build());
+
+        for (RevTree tree : ImmutableList.of(leaf, node, RevTree.EMPTY)) {
+            Hasher hasher = ObjectId.HASH_FUNCTION.newHasher();
+            HashObjectFunnels.treeFunnel().funnel(tree, hasher);
+            ObjectId expected = ObjectId.createNoClone(hasher.hash().asBytes());
+
+            assertEquals(expected, new HashObject().setObject(tree).call());
+            assertEquals(expected,
+                    HashObject.hashTree(tree.trees(), tree.features(), tree.buckets()));
+        }
+    }
+
+    @Test
+    public void testCommitsAndTags() {
+        RevPerson author = new RevPersonImpl("groldan", "groldan@boundlessgeo.com", 1000, 5);
+        RevPerson committer = new RevPersonImpl(null, null, -1000, -5);
+        RevCommit commit = new RevCommitImpl(ObjectId.NULL, ObjectId.forString("tree"),
+                ImmutableList.of(ObjectId.forString("parent1"), ObjectId.NULL), author, committer,
+                "cool this works");
+        RevTag tag = new RevTagImpl(ObjectId.NULL, "tag1", ObjectId.forString("commit"),
+                "message", author);
+
+        Hasher hasher = ObjectId.HASH_FUNCTION.newHasher();
+        HashObjectFunnels.commitFunnel().funnel(commit, hasher);
+        assertEquals(ObjectId.createNoClone(hasher.hash().asBytes()),
+                new HashObject().setObject(commit).call());
+
+        hasher = ObjectId.HASH_FUNCTION.newHasher();
+        HashObjectFunnels.tagFunnel().funnel(tag, hasher);
+        assertEquals(ObjectId.createNoClone(hasher.hash().asBytes()),
+                new HashObject().setObject(tag).call());
+    }
+
+    @Test
+    public void testNestedUse() {
+        ImmutableList<Optional<Object>> feature = ImmutableList.of(Optional.<Object> of("a"));
+        HashObjectSink outer = HashObjectSink.get();
+        try {
+            outer.putInt(TYPE.FEATURE.value());
+            // hashing while the thread's sink is in use must not disturb it
+            assertEquals(hasherId(feature), HashObject.hashFeature(feature));
+            HashObjectSink inner = HashObjectSink.get();
+            try {
+                assertNotSame(outer, inner);
+            } finally {
+                inner.release();
+            }
+            HashObjectFunnels.featureFunnel().funnel(feature, outer);
+            Hasher hasher = ObjectId.HASH_FUNCTION.newHasher().putInt(TYPE.FEATURE.value());
+            HashObjectFunnels.featureFunnel().funnel(feature, hasher);
+            assertEquals(ObjectId.createNoClone(hasher.hash().asBytes()), outer.hash());
+        } finally {
+            outer.release();
+        }
+    }
+
+    @Test
+    public void testConcurrentHashing() throws Exception {
+        final List<ImmutableList<Optional<Object>>> features = new ArrayList<>();
+        final List<ObjectId> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ImmutableList<Optional<Object>> feature = ImmutableList.of(
+                    Optional.<Object> of("feature" + i), Optional.<Object> of(Integer.valueOf(i)),
+                    Optional.<Object> of(geom("LINESTRING(" + i + " 0, 0 " + i + ")")));
+            features.add(feature);
+            expected.add(hasherId(feature));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<ObjectId>>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(new Callable<List<ObjectId>>() {
+                    @Override
+                    public List<ObjectId> call() {
+                        List<ObjectId> ids = new ArrayList<>();
+                        for (ImmutableList<Optional<Object>> feature : features) {
+                            ids.add(HashObject.hashFeature(feature));
+                        }
+                        return ids;
+                    }
+                }));
+            }
+            for (Future<List<ObjectId>> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ObjectId hasherId(ImmutableList<Optional<Object>> values) {
+        Hasher hasher = ObjectId.HASH_FUNCTION.newHasher();
+        HashObjectFunnels.featureFunnel().funnel(values, hasher);
+        return ObjectId.createNoClone(hasher.hash().asBytes());
+    }
+
+    private static RevFeature feature(ImmutableList<Optional<Object>> values) {
+        return new RevFeatureImpl(ObjectId.NULL, values);
+    }
+
+    private static Geometry geom(String wkt) throws Exception {
+        return new WKTReader().read(wkt);
+    }
+}
@@ -22,6 +22,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.io.WKTReader;
 
 public class GeometryDiffTest {
@@ -113,6 +114,141 @@ public class GeometryDiffTest {
         assertFalse(diff.canBeAppliedOn(Optional.of(oldGeomModified2)));
     }
 
+    @Test
+    public void testDenseLineString() throws Exception {
+        final int numCoords = 100_000;
+        Coordinate[] oldCoords = new Coordinate[numCoords];
+        for (int i = 0; i < numCoords; i++) {
+            oldCoords[i] = new Coordinate(i / 1000d, Math.sin(i / 1000d));
+        }
+        Coordinate[] newCoords = oldCoords.clone();
+        newCoords[10] = new Coordinate(-1, -1);
+        newCoords[50_000] = new Coordinate(-2, -2);
+        GeometryFactory factory = new GeometryFactory();
+        Geometry oldGeom = factory.createLineString(oldCoords);
+        Geometry newGeom = factory.createLineString(newCoords);
+
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        assertEquals("0 point(s) deleted, 0 new point(s) added, 2 point(s) moved", diff.toString());
+        LCSGeometryDiffImpl deserializedDiff = new LCSGeometryDiffImpl(diff.asText(true));
+        assertEquals(diff, deserializedDiff);
+        assertTrue(deserializedDiff.applyOn(Optional.of(oldGeom)).get().equalsExact(newGeom));
+        assertTrue(deserializedDiff.reversed().applyOn(Optional.of(newGeom)).get()
+                .equalsExact(oldGeom));
+    }
+
+    @Test
+    public void testLegacyTextFormat() throws Exception {
+        String oldWkt = "MULTILINESTRING ((40 40, 20 45, 45 30, 40 40), (20 35, 45 10, 30 5, 10 30, 20 35))";
+        String newWkt = "MULTILINESTRING ((40 40, 20 35, 45 30, 40 40), (20 35, 45 10, 30 5, 10 30, 20 35))";
+        DiffMatchPatch dmp = new DiffMatchPatch();
+        String legacy = "0/0/1\t"
+                + dmp.patch_toText(dmp.patch_make(oldWkt, newWkt)).replace("\n", "\\n");
+
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(legacy);
+        assertEquals(legacy, diff.asText());
+        // there's no coordinate sequence diff to write
+        assertEquals(legacy, diff.asText(true));
+        assertEquals("0 point(s) deleted, 0 new point(s) added, 1 point(s) moved", diff.toString());
+        Geometry oldGeom = new WKTReader().read(oldWkt);
+        Geometry newGeom = new WKTReader().read(newWkt);
+        assertEquals(newGeom, diff.applyOn(Optional.of(oldGeom)).get());
+        assertEquals(oldGeom, diff.reversed().applyOn(Optional.of(newGeom)).get());
+    }
+
+    @Test
+    public void testEqualsAcrossFormats() throws Exception {
+        Geometry oldGeom = new WKTReader().read("LINESTRING (0 0, 1 1, 2 2, 3 3)");
+        Geometry newGeom = new WKTReader().read("LINESTRING (0 0, 1 5, 2 2, 3 3, 4 4)");
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        assertEquals(diff, new LCSGeometryDiffImpl(diff.asText(true)));
+        assertEquals(diff, new LCSGeometryDiffImpl(diff.asText()));
+        assertEquals(new LCSGeometryDiffImpl(diff.asText()), diff);
+        assertFalse(diff.equals(diff.reversed()));
+    }
+
+    @Test
+    public void testTextFormatIsDefault() throws Exception {
+        String oldWkt = "LINESTRING (0 0, 1 1, 2 2, 3 3)";
+        String newWkt = "LINESTRING (0 0, 1 5, 2 2, 3 3, 4 4)";
+        DiffMatchPatch dmp = new DiffMatchPatch();
+        String expected = "0/1/1\t"
+                + dmp.patch_toText(dmp.patch_make(dmp.diff_main(oldWkt, newWkt))).replace("\n",
+                        "\\n");
+        Geometry oldGeom = new WKTReader().read(oldWkt);
+        Geometry newGeom = new WKTReader().read(newWkt);
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        assertEquals(expected, diff.asText());
+        LCSGeometryDiffImpl deserializedDiff = new LCSGeometryDiffImpl(diff.asText());
+        assertEquals(diff, deserializedDiff);
+        assertEquals(newGeom, deserializedDiff.applyOn(Optional.of(oldGeom)).get());
+        assertEquals(oldGeom, deserializedDiff.reversed().applyOn(Optional.of(newGeom)).get());
+    }
+
+    @Test
+    public void testBinaryFormat() throws Exception {
+        Geometry oldGeom = new WKTReader().read("LINESTRING (0 0, 1 1, 2 2, 3 3)");
+        Geometry newGeom = new WKTReader().read("LINESTRING (0 0, 1 5, 2 2, 3 3, 4 4)");
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        String binary = diff.asText(true);
+        assertTrue(binary, binary.startsWith("0/1/1\tB:"));
+        LCSGeometryDiffImpl deserializedDiff = new LCSGeometryDiffImpl(binary);
+        assertEquals(diff, deserializedDiff);
+        // there are no geometries to create the text patch from
+        assertEquals(binary, deserializedDiff.asText());
+        assertEquals(newGeom, deserializedDiff.applyOn(Optional.of(oldGeom)).get());
+    }
+
+    @Test
+    public void testApplyOnShiftedGeometry() throws Exception {
+        final int numCoords = 1000;
+        Coordinate[] oldCoords = new Coordinate[numCoords];
+        for (int i = 0; i < numCoords; i++) {
+            oldCoords[i] = new Coordinate(i, i % 7);
+        }
+        Coordinate[] newCoords = oldCoords.clone();
+        newCoords[800] = new Coordinate(-1, -1);
+        GeometryFactory factory = new GeometryFactory();
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of((Geometry) factory
+                .createLineString(oldCoords)), Optional.of((Geometry) factory
+                .createLineString(newCoords)));
+
+        // the same line with points added at its start, so the change is not where expected
+        List<Coordinate> shifted = Lists.newArrayList(oldCoords);
+        for (int i = 0; i < 10; i++) {
+            shifted.add(0, new Coordinate(-100 - i, 0));
+        }
+        List<Coordinate> expected = Lists.newArrayList(shifted);
+        expected.set(810, new Coordinate(-1, -1));
+        Geometry target = factory.createLineString(shifted.toArray(new Coordinate[0]));
+
+        LCSGeometryDiffImpl deserializedDiff = new LCSGeometryDiffImpl(diff.asText(true));
+        assertTrue(deserializedDiff.canBeAppliedOn(Optional.of(target)));
+        assertTrue(deserializedDiff.applyOn(Optional.of(target)).get()
+                .equalsExact(factory.createLineString(expected.toArray(new Coordinate[0]))));
+    }
+
+    @Test
+    public void testGeometryCollection() throws Exception {
+        Geometry oldGeom = new WKTReader()
+                .read("GEOMETRYCOLLECTION (POINT (1 2), LINESTRING (0 0, 1 1, 2 2))");
+        Geometry newGeom = new WKTReader()
+                .read("GEOMETRYCOLLECTION (POINT (1 3), LINESTRING (0 0, 1 1, 2 2))");
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        assertEquals("0 point(s) deleted, 0 new point(s) added, 1 point(s) moved", diff.toString());
+        LCSGeometryDiffImpl deserializedDiff = new LCSGeometryDiffImpl(diff.asText());
+        assertEquals(diff, deserializedDiff);
+        assertEquals(newGeom, deserializedDiff.applyOn(Optional.of(oldGeom)).get());
+        Geometry modified = new WKTReader()
+                .read("GEOMETRYCOLLECTION (POINT (1 2), LINESTRING (0 0, 1 1, 2 3))");
+        assertFalse(diff.canBeAppliedOn(Optional.of(modified)));
+    }
+
     @Test
     public void testConflict() throws Exception {
         Geometry oldGeom = new WKTReader()
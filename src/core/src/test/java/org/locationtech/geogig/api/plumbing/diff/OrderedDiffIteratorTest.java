@@ -0,0 +1,173 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.locationtech.geogig.api.plumbing.diff.RevObjectTestSupport.createFeaturesTree;
+import static org.locationtech.geogig.api.plumbing.diff.RevObjectTestSupport.createFeaturesTreeBuilder;
+import static org.locationtech.geogig.api.plumbing.diff.RevObjectTestSupport.createTreesTreeBuilder;
+import static org.locationtech.geogig.api.plumbing.diff.RevObjectTestSupport.featureNode;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.geogig.api.Bucket;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.RevTreeBuilder;
+import org.locationtech.geogig.api.plumbing.diff.PreOrderDiffWalk.BucketIndex;
+import org.locationtech.geogig.api.plumbing.diff.PreOrderDiffWalk.Consumer;
+import org.locationtech.geogig.storage.ObjectDatabase;
+import org.locationtech.geogig.storage.memory.HeapObjectDatabase;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class OrderedDiffIteratorTest {
+
+    private ObjectDatabase source;
+
+    @Before
+    public void beforeTest() {
+        source = new HeapObjectDatabase();
+        source.open();
+    }
+
+    /**
+     * Runs the diff with both {@link OrderedDiffIterator} and {@link PreOrderDiffWalk}, checks they
+     * report the same entries, and that the iterator does it in {@link OrderedDiffIterator#PATH_ORDER}
+     */
+    private List<DiffEntry> verify(RevTree left, RevTree right) {
+        List<DiffEntry> ordered = ImmutableList.copyOf(new OrderedDiffIterator(left, right,
+                source));
+
+        final Set<DiffEntry> expected = Sets.newConcurrentHashSet();
+        new PreOrderDiffWalk(left, right, source, source).walk(new Consumer() {
+            @Override
+            public boolean feature(NodeRef left, NodeRef right) {
+                expected.add(new DiffEntry(left, right));
+                return true;
+            }
+
+            @Override
+            public boolean tree(NodeRef left, NodeRef right) {
+                NodeRef ref = left == null ? right : left;
+                if (!NodeRef.ROOT.equals(ref.name())) {
+                    expected.add(new DiffEntry(left, right));
+                }
+                return true;
+            }
+
+            @Override
+            public void endTree(NodeRef left, NodeRef right) {
+            }
+
+            @Override
+            public boolean bucket(NodeRef leftParent, NodeRef rightParent,
+                    BucketIndex bucketIndex, Bucket left, Bucket right) {
+                return true;
+            }
+
+            @Override
+            public void endBucket(NodeRef leftParent, NodeRef rightParent,
+                    BucketIndex bucketIndex, Bucket left, Bucket right) {
+            }
+        });
+
+        assertEquals(expected.size(), ordered.size());
+        assertEquals(expected, Sets.newHashSet(ordered));
+
+        List<String> paths = Lists.transform(ordered, new Function<DiffEntry, String>() {
+            @Override
+            public String apply(DiffEntry e) {
+                return e.oldPath() == null ? e.newPath() : e.oldPath();
+            }
+        });
+        assertTrue(OrderedDiffIterator.PATH_ORDER.isStrictlyOrdered(paths));
+        return ordered;
+    }
+
+    @Test
+    public void testSameTree() {
+        RevTree tree = createFeaturesTree(source, "f", 100);
+        assertFalse(new OrderedDiffIterator(tree, tree, source).hasNext());
+    }
+
+    @Test
+    public void testLeafLeaf() {
+        RevTree left = createFeaturesTree(source, "f", 100);
+        RevTreeBuilder builder = createFeaturesTreeBuilder(source, "f", 100);
+        builder.remove("f5");
+        builder.put(featureNode("f", 10, true));
+        builder.put(featureNode("n", 1));
+        RevTree right = builder.build();
+        source.put(right);
+
+        List<DiffEntry> diffs = verify(left, right);
+        assertEquals(3, diffs.size());
+    }
+
+    @Test
+    public void testBucketBucket() {
+        RevTree left = createFeaturesTree(source, "f", 5000);
+        RevTreeBuilder builder = createFeaturesTreeBuilder(source, "f", 5000);
+        for (int i = 0; i < 5000; i += 7) {
+            builder.put(featureNode("f", i, true));
+        }
+        for (int i = 1; i < 5000; i += 11) {
+            builder.remove("f" + i);
+        }
+        RevTree right = builder.build();
+        source.put(right);
+        assertTrue(left.buckets().isPresent());
+        assertTrue(right.buckets().isPresent());
+
+        verify(left, right);
+        verify(right, left);
+    }
+
+    @Test
+    public void testLeafBucket() {
+        RevTree left = createFeaturesTree(source, "f", 100);
+        RevTree right = createFeaturesTree(source, "f", 3000);
+        assertFalse(left.buckets().isPresent());
+        assertTrue(right.buckets().isPresent());
+
+        List<DiffEntry> diffs = verify(left, right);
+        assertEquals(2900, diffs.size());
+        verify(right, left);
+    }
+
+    @Test
+    public void testNestedTrees() {
+        RevTree left = createTreesTreeBuilder(source, 10, 600, ObjectId.NULL).build();
+        source.put(left);
+        RevTreeBuilder builder = createTreesTreeBuilder(source, 12, 600, ObjectId.NULL);
+        RevTree subtree = createFeaturesTree(source, "subtree3", 550);
+        builder.put(Node.tree("subtree3", subtree.getId(), ObjectId.NULL));
+        builder.remove("subtree7");
+        RevTree right = builder.build();
+        source.put(right);
+
+        List<DiffEntry> diffs = verify(left, right);
+        // 2 added trees and their features, 1 removed tree and its features, 1 changed tree and
+        // its 50 removed features
+        assertEquals(2 + 1200 + 1 + 600 + 1 + 50, diffs.size());
+        verify(right, left);
+    }
+}
@@ -19,6 +19,8 @@ import static org.locationtech.geogig.api.plumbing.diff.RevObjectTestSupport.cre
 import static org.locationtech.geogig.api.plumbing.diff.RevObjectTestSupport.createTreesTree;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -45,12 +47,15 @@ import org.locationtech.geogig.api.plumbing.diff.PreOrderDiffWalk.BucketIndex;
 import org.locationtech.geogig.api.plumbing.diff.PreOrderDiffWalk.Consumer;
 import org.locationtech.geogig.api.plumbing.diff.PreOrderDiffWalk.MaxFeatureDiffsLimiter;
 import org.locationtech.geogig.repository.SpatialOps;
+import org.locationtech.geogig.storage.BulkOpListener;
 import org.locationtech.geogig.storage.NodePathStorageOrder;
 import org.locationtech.geogig.storage.ObjectDatabase;
 import org.locationtech.geogig.storage.memory.HeapObjectDatabase;
 import org.mockito.ArgumentCaptor;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.vividsolutions.jts.geom.Envelope;
 
 public class PreOrderDiffWalkTest {
@@ -418,6 +423,44 @@ public class PreOrderDiffWalkTest {
         verifyNoMoreInteractions(consumer);
     }
 
+    @Test
+    public void testBucketBucketLoadsChangedBucketsOnly() {
+        final int size = NodePathStorageOrder.maxBucketsForLevel(0)
+                * NodePathStorageOrder.normalizedSizeLimit(0) / 2;
+        final ObjectDatabase source = spy(leftSource);
+        final RevTree left = createFeaturesTree(leftSource, "f", size);
+        final RevTree right;
+        {
+            RevTreeBuilder builder = createFeaturesTreeBuilder(leftSource, "f", size);
+            builder.put(Node.create("f1", ObjectId.forString("changed"), ObjectId.NULL,
+                    TYPE.FEATURE, null));
+            right = builder.build();
+            leftSource.put(right);
+        }
+        assertTrue(left.buckets().isPresent());
+        assertTrue(right.buckets().isPresent());
+
+        when(consumer.tree(any(NodeRef.class), any(NodeRef.class))).thenReturn(true);
+        when(consumer.bucket(any(NodeRef.class), any(NodeRef.class), any(BucketIndex.class),
+                any(Bucket.class), any(Bucket.class))).thenReturn(true);
+
+        new PreOrderDiffWalk(left, right, source, source).walk(consumer);
+
+        verify(consumer, times(1)).feature(any(NodeRef.class), any(NodeRef.class));
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        ArgumentCaptor<Iterable<ObjectId>> ids = (ArgumentCaptor) ArgumentCaptor
+                .forClass(Iterable.class);
+        verify(source, times(2)).getAll(ids.capture(), any(BulkOpListener.class),
+                eq(RevTree.class));
+        // the two root trees in a single call, then the single pair of buckets that changed
+        List<Iterable<ObjectId>> calls = ids.getAllValues();
+        assertEquals(ImmutableSet.of(left.getId(), right.getId()),
+                ImmutableSet.copyOf(calls.get(0)));
+        assertEquals(2, Iterables.size(calls.get(1)));
+        verify(source, never()).getTree(any(ObjectId.class));
+    }
+
     @Test
     public void testBucketBucketFlatMoreDepth() {
         RevTree left = createFeaturesTree(
@@ -0,0 +1,397 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.api.plumbing.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.locationtech.geogig.api.plumbing.diff.RevObjectTestSupport.createFeaturesTree;
+import static org.locationtech.geogig.api.plumbing.diff.RevObjectTestSupport.createFeaturesTreeBuilder;
+import static org.locationtech.geogig.api.plumbing.diff.RevObjectTestSupport.createTreesTreeBuilder;
+import static org.locationtech.geogig.api.plumbing.diff.RevObjectTestSupport.featureNode;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.RevTreeBuilder;
+import org.locationtech.geogig.api.plumbing.diff.ThreeWayDiffWalk.Consumer;
+import org.locationtech.geogig.storage.ForwardingObjectStore;
+import org.locationtech.geogig.storage.ObjectDatabase;
+import org.locationtech.geogig.storage.ObjectStore;
+import org.locationtech.geogig.storage.memory.HeapObjectDatabase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+public class ThreeWayDiffWalkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThreeWayDiffWalkTest.class);
+
+    private ObjectDatabase source;
+
+    @Before
+    public void beforeTest() {
+        source = new HeapObjectDatabase();
+        source.open();
+    }
+
+    /**
+     * Records the walk events as strings
+     */
+    private static class RecordingConsumer implements Consumer {
+
+        final List<String> events = Lists.newArrayList();
+
+        final Map<String, NodeRef[]> theirs = Maps.newTreeMap();
+
+        final Map<String, NodeRef[]> features = Maps.newTreeMap();
+
+        /**
+         * Paths of the trees whose contents shall not be traversed
+         */
+        final Set<String> skipTrees = Sets.newHashSet();
+
+        private final int maxFeatures;
+
+        RecordingConsumer() {
+            this(Integer.MAX_VALUE);
+        }
+
+        RecordingConsumer(int maxFeatures) {
+            this.maxFeatures = maxFeatures;
+        }
+
+        @Override
+        public boolean theirs(NodeRef ancestor, NodeRef theirs) {
+            String path = path(ancestor, null, theirs);
+            events.add("theirs:" + path);
+            this.theirs.put(path, new NodeRef[] { ancestor, theirs });
+            return true;
+        }
+
+        @Override
+        public boolean feature(NodeRef ancestor, NodeRef ours, NodeRef theirs) {
+            String path = path(ancestor, ours, theirs);
+            events.add("feature:" + path);
+            features.put(path, new NodeRef[] { ancestor, ours, theirs });
+            return features.size() < maxFeatures;
+        }
+
+        @Override
+        public boolean tree(NodeRef ancestor, NodeRef ours, NodeRef theirs) {
+            String path = path(ancestor, ours, theirs);
+            events.add("tree:" + path);
+            return !skipTrees.contains(path);
+        }
+
+        @Override
+        public void endTree(NodeRef ancestor, NodeRef ours, NodeRef theirs) {
+            events.add("endTree:" + path(ancestor, ours, theirs));
+        }
+
+        private static String path(NodeRef... refs) {
+            for (NodeRef ref : refs) {
+                if (ref != null) {
+                    return ref.path();
+                }
+            }
+            throw new IllegalStateException();
+        }
+    }
+
+    private RecordingConsumer walk(RevTree ancestor, RevTree ours, RevTree theirs) {
+        RecordingConsumer consumer = new RecordingConsumer();
+        new ThreeWayDiffWalk(ancestor, ours, theirs, source).walk(consumer);
+        return consumer;
+    }
+
+    private RevTree build(RevTreeBuilder builder) {
+        RevTree tree = builder.build();
+        source.put(tree);
+        return tree;
+    }
+
+    @Test
+    public void testNoChanges() {
+        RevTree tree = createFeaturesTree(source, "f", 100);
+        assertTrue(walk(tree, tree, tree).events.isEmpty());
+    }
+
+    @Test
+    public void testOnlyOursChanged() {
+        RevTree ancestor = createFeaturesTree(source, "f", 1000);
+        RevTreeBuilder builder = createFeaturesTreeBuilder(source, "f", 1000);
+        builder.remove("f1");
+        builder.put(featureNode("f", 2, true));
+        RevTree ours = build(builder);
+
+        assertTrue(walk(ancestor, ours, ancestor).events.isEmpty());
+    }
+
+    @Test
+    public void testSameChangesOnBothSides() {
+        RevTree ancestor = createFeaturesTree(source, "f", 1000);
+        RevTree changed = createFeaturesTree(source, "f", 1100);
+
+        assertTrue(walk(ancestor, changed, changed).events.isEmpty());
+    }
+
+    @Test
+    public void testOnlyTheirsChangedReportsRoot() {
+        RevTree ancestor = createFeaturesTree(source, "f", 1000);
+        RevTree theirs = createFeaturesTree(source, "f", 1100);
+
+        RecordingConsumer consumer = walk(ancestor, ancestor, theirs);
+        assertEquals(ImmutableList.of("theirs:"), consumer.events);
+        NodeRef[] refs = consumer.theirs.get("");
+        assertEquals(ancestor.getId(), refs[0].getObjectId());
+        assertEquals(theirs.getId(), refs[1].getObjectId());
+    }
+
+    @Test
+    public void testTreeChangedOnlyByTheirsIsNotTraversed() {
+        RevTree ancestor = build(createTreesTreeBuilder(source, 10, 100, ObjectId.NULL));
+
+        RevTreeBuilder builder = createTreesTreeBuilder(source, 10, 100, ObjectId.NULL);
+        builder.put(Node.tree("subtree1", createFeaturesTree(source, "subtree1", 50).getId(),
+                ObjectId.NULL));
+        RevTree ours = build(builder);
+
+        builder = createTreesTreeBuilder(source, 10, 100, ObjectId.NULL);
+        builder.put(Node.tree("subtree2", createFeaturesTree(source, "subtree2", 50).getId(),
+                ObjectId.NULL));
+        builder.remove("subtree3");
+        RevTree theirs = build(builder);
+
+        RecordingConsumer consumer = walk(ancestor, ours, theirs);
+        assertEquals(4, consumer.events.size());
+        assertEquals("tree:", consumer.events.get(0));
+        assertEquals(Sets.newHashSet("theirs:subtree2", "theirs:subtree3"),
+                Sets.newHashSet(consumer.events.subList(1, 3)));
+        assertEquals("endTree:", consumer.events.get(3));
+        assertEquals(null, consumer.theirs.get("subtree3")[1]);
+    }
+
+    @Test
+    public void testTreeChangedOnBothSides() {
+        RevTree ancestor = build(createTreesTreeBuilder(source, 3, 100, ObjectId.NULL));
+
+        RevTreeBuilder builder = createTreesTreeBuilder(source, 3, 100, ObjectId.NULL);
+        RevTreeBuilder subtree = createFeaturesTreeBuilder(source, "subtree1", 100);
+        subtree.put(featureNode("subtree1", 5, true));
+        subtree.remove("subtree16");
+        builder.put(Node.tree("subtree1", build(subtree).getId(), ObjectId.NULL));
+        RevTree ours = build(builder);
+
+        builder = createTreesTreeBuilder(source, 3, 100, ObjectId.NULL);
+        subtree = createFeaturesTreeBuilder(source, "subtree1", 100);
+        subtree.put(featureNode("subtree1", 5, true));
+        subtree.put(featureNode("subtree1", 7, true));
+        subtree.remove("subtree16");
+        builder.put(Node.tree("subtree1", build(subtree).getId(), ObjectId.NULL));
+        RevTree theirs = build(builder);
+
+        RecordingConsumer consumer = walk(ancestor, ours, theirs);
+        assertEquals(ImmutableList.of("tree:", "tree:subtree1", "feature:subtree1/subtree15",
+                "theirs:subtree1/subtree17", "endTree:subtree1", "endTree:"),
+                orderIndependent(consumer.events));
+    }
+
+    /**
+     * Sorts the events within each tree so the expectations don't depend on storage order
+     */
+    private static List<String> orderIndependent(List<String> events) {
+        List<String> result = Lists.newArrayList(events);
+        int from = result.indexOf("tree:subtree1") + 1;
+        int to = result.indexOf("endTree:subtree1");
+        Collections.sort(result.subList(from, to));
+        return result;
+    }
+
+    @Test
+    public void testAbort() {
+        RevTree ancestor = createFeaturesTree(source, "f", 1000);
+        RevTree ours = createFeaturesTree(source, "f", 1000, 0, true);
+        RevTree theirs = createFeaturesTree(source, "f", 1000, 0, true);
+
+        RecordingConsumer consumer = new RecordingConsumer(10);
+        new ThreeWayDiffWalk(ancestor, ours, theirs, source).walk(consumer);
+        assertEquals(10, consumer.features.size());
+        assertEquals("endTree:", consumer.events.get(consumer.events.size() - 1));
+    }
+
+    @Test
+    public void testSkipTreeVisitsSiblings() {
+        RevTree ancestor = build(createTreesTreeBuilder(source, 3, 100, ObjectId.NULL));
+        RevTree ours = build(modifySubtrees(5));
+        RevTree theirs = build(modifySubtrees(7));
+
+        RecordingConsumer consumer = new RecordingConsumer();
+        consumer.skipTrees.add("subtree1");
+        new ThreeWayDiffWalk(ancestor, ours, theirs, source).walk(consumer);
+
+        List<String> events = consumer.events;
+        int skipped = events.indexOf("tree:subtree1");
+        assertTrue(skipped > 0);
+        assertEquals("endTree:subtree1", events.get(skipped + 1));
+        assertTrue(events.contains("theirs:subtree2/subtree27"));
+        assertTrue(events.contains("endTree:subtree2"));
+        assertEquals("endTree:", events.get(events.size() - 1));
+    }
+
+    /**
+     * Adds the given feature to subtrees 1 and 2, so they change on both sides when called with
+     * different features for ours and theirs
+     */
+    private RevTreeBuilder modifySubtrees(int feature) {
+        RevTreeBuilder builder = createTreesTreeBuilder(source, 3, 100, ObjectId.NULL);
+        for (String name : new String[] { "subtree1", "subtree2" }) {
+            RevTreeBuilder subtree = createFeaturesTreeBuilder(source, name, 100);
+            subtree.remove(name + "16");
+            subtree.put(featureNode(name, feature, true));
+            builder.put(Node.tree(name, build(subtree).getId(), ObjectId.NULL));
+        }
+        return builder;
+    }
+
+    /**
+     * Checks the walk against two two-way diffs correlated by path, on bucket trees
+     */
+    @Test
+    public void testMatchesTwoWayDiffs() {
+        final int size = 5000;
+        RevTree ancestor = createFeaturesTree(source, "f", size);
+        Random random = new Random(1);
+        RevTree ours = build(randomChanges(size, random, 0.05));
+        RevTree theirs = build(randomChanges(size, random, 0.05));
+        assertTrue(ancestor.buckets().isPresent());
+
+        Map<String, DiffEntry> oursDiff = diffByPath(ancestor, ours);
+        Map<String, DiffEntry> theirsDiff = diffByPath(ancestor, theirs);
+
+        Set<String> expectedTheirs = Sets.newTreeSet();
+        Set<String> expectedFeatures = Sets.newTreeSet();
+        for (Map.Entry<String, DiffEntry> e : theirsDiff.entrySet()) {
+            DiffEntry oursEntry = oursDiff.get(e.getKey());
+            if (oursEntry == null) {
+                expectedTheirs.add(e.getKey());
+            } else if (!oursEntry.newObjectId().equals(e.getValue().newObjectId())) {
+                expectedFeatures.add(e.getKey());
+            }
+        }
+        assertTrue(expectedTheirs.size() > 0);
+        assertTrue(expectedFeatures.size() > 0);
+
+        RecordingConsumer consumer = walk(ancestor, ours, theirs);
+        assertEquals(expectedTheirs, consumer.theirs.keySet());
+        assertEquals(expectedFeatures, consumer.features.keySet());
+        for (String path : expectedFeatures) {
+            NodeRef[] refs = consumer.features.get(path);
+            assertEquals(oursDiff.get(path).getOldObject(), refs[0]);
+            assertEquals(oursDiff.get(path).getNewObject(), refs[1]);
+            assertEquals(theirsDiff.get(path).getNewObject(), refs[2]);
+        }
+    }
+
+    private RevTreeBuilder randomChanges(int size, Random random, double ratio) {
+        RevTreeBuilder builder = createFeaturesTreeBuilder(source, "f", size);
+        final int changes = (int) (size * ratio);
+        for (int i = 0; i < changes; i++) {
+            int index = random.nextInt(size + changes);
+            if (index < size && random.nextBoolean()) {
+                builder.remove("f" + index);
+            } else {
+                builder.put(featureNode("f", index, true));
+            }
+        }
+        return builder;
+    }
+
+    private Map<String, DiffEntry> diffByPath(RevTree left, RevTree right) {
+        Map<String, DiffEntry> diffs = Maps.newHashMap();
+        Iterator<DiffEntry> it = new OrderedDiffIterator(left, right, source);
+        while (it.hasNext()) {
+            DiffEntry e = it.next();
+            diffs.put(e.oldPath() == null ? e.newPath() : e.oldPath(), e);
+        }
+        return diffs;
+    }
+
+    /**
+     * Compares the three-way walk against the current approach of running two two-way diffs from
+     * the ancestor and correlating them by path, counting how many trees each one reads.
+     */
+    @Ignore
+    @Test
+    public void benchmarkAgainstTwoWayDiffs() {
+        final int size = 200 * 1000;
+        final int changes = 1000;
+        LOG.info("Creating trees of {} features...", size);
+        RevTree ancestor = createFeaturesTree(source, "f", size);
+        Random random = new Random(1);
+        RevTree ours = build(randomChanges(size, random, (double) changes / size));
+        RevTree theirs = build(randomChanges(size, random, (double) changes / size));
+
+        final AtomicLong treeReads = new AtomicLong();
+        final ObjectStore counting = new ForwardingObjectStore(source) {
+            @Override
+            public RevTree getTree(ObjectId id) {
+                treeReads.incrementAndGet();
+                return super.getTree(id);
+            }
+        };
+
+        for (int run = 0; run < 5; run++) {
+            treeReads.set(0);
+            Stopwatch sw = Stopwatch.createStarted();
+            Map<String, DiffEntry> oursDiff = Maps.newHashMap();
+            Iterator<DiffEntry> it = new OrderedDiffIterator(ancestor, ours, counting);
+            while (it.hasNext()) {
+                DiffEntry e = it.next();
+                oursDiff.put(e.oldPath() == null ? e.newPath() : e.oldPath(), e);
+            }
+            int both = 0;
+            it = new OrderedDiffIterator(ancestor, theirs, counting);
+            while (it.hasNext()) {
+                DiffEntry e = it.next();
+                if (oursDiff.containsKey(e.oldPath() == null ? e.newPath() : e.oldPath())) {
+                    both++;
+                }
+            }
+            sw.stop();
+            LOG.info("two-way diffs: {} changed on both sides, {} trees read, {}", both,
+                    treeReads.get(), sw);
+
+            treeReads.set(0);
+            sw = Stopwatch.createStarted();
+            RecordingConsumer consumer = new RecordingConsumer();
+            new ThreeWayDiffWalk(ancestor, ours, theirs, counting).walk(consumer);
+            sw.stop();
+            LOG.info("three-way walk: {} changed on both sides, {} trees read, {}",
+                    consumer.features.size(), treeReads.get(), sw);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.di.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.Platform;
+import org.locationtech.geogig.api.Ref;
+import org.locationtech.geogig.storage.ConfigDatabase;
+import org.locationtech.geogig.storage.RefDatabase;
+import org.locationtech.geogig.storage.fs.FileRefDatabase;
+import org.locationtech.geogig.storage.fs.IniFileConfigDatabase;
+import org.locationtech.geogig.test.integration.repository.RefDatabaseTest;
+
+public class CachingRefDatabaseTest extends RefDatabaseTest {
+
+    private Platform platform;
+
+    private CachingRefDatabase cache;
+
+    private static final String id1 = ObjectId.forString("1").toString();
+
+    private static final String id2 = ObjectId.forString("2").toString();
+
+    @Override
+    protected RefDatabase createDatabase(Platform platform) throws Exception {
+        this.platform = platform;
+        cache = new CachingRefDatabase(newFileRefDatabase());
+        return cache;
+    }
+
+    private FileRefDatabase newFileRefDatabase() {
+        ConfigDatabase configDB = new IniFileConfigDatabase(platform);
+        return new FileRefDatabase(platform, configDB);
+    }
+
+    /**
+     * Sets the ref file's modification time in the past, as if it had been written a while ago
+     */
+    private void age(String refName) {
+        File file = new File(new File(platform.pwd(), ".geogig"), refName);
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 10_000));
+    }
+
+    @Test
+    public void testCachesRefs() {
+        cache.putRef(Ref.MASTER, id1);
+        cache.putSymRef(Ref.HEAD, Ref.MASTER);
+        age(Ref.MASTER);
+        age(Ref.HEAD);
+
+        assertEquals(id1, cache.getRef(Ref.MASTER));
+        assertEquals(id1, cache.getRef(Ref.MASTER));
+        assertEquals(Ref.MASTER, cache.getSymRef(Ref.HEAD));
+        assertEquals(Ref.MASTER, cache.getSymRef(Ref.HEAD));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0.5, cache.getHitRatio(), 0d);
+    }
+
+    @Test
+    public void testCachesMissingRefs() {
+        assertNull(cache.getRef("refs/heads/nonexistent"));
+        assertNull(cache.getRef("refs/heads/nonexistent"));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testLocalWritesInvalidate() {
+        cache.putRef(Ref.MASTER, id1);
+        age(Ref.MASTER);
+        assertEquals(id1, cache.getRef(Ref.MASTER));
+
+        cache.putRef(Ref.MASTER, id2);
+        age(Ref.MASTER);
+        assertEquals(id2, cache.getRef(Ref.MASTER));
+
+        cache.remove(Ref.MASTER);
+        assertNull(cache.getRef(Ref.MASTER));
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getStaleReadsPrevented());
+    }
+
+    @Test
+    public void testStaleReadPrevented() {
+        cache.putRef(Ref.MASTER, id1);
+        age(Ref.MASTER);
+        assertEquals(id1, cache.getRef(Ref.MASTER));
+
+        // another process updates the ref
+        FileRefDatabase other = newFileRefDatabase();
+        other.putRef(Ref.MASTER, id2);
+
+        assertEquals(id2, cache.getRef(Ref.MASTER));
+        assertEquals(1, cache.getStaleReadsPrevented());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testStaleReadPreventedWithCoarseTimestamps() {
+        cache.putRef(Ref.MASTER, id1);
+        // as if the file system kept modification times in whole seconds
+        final long second = System.currentTimeMillis() / 1000 * 1000;
+        File file = new File(new File(platform.pwd(), ".geogig"), Ref.MASTER);
+        assertTrue(file.setLastModified(second));
+        assertEquals(id1, cache.getRef(Ref.MASTER));
+
+        // another process updates the ref within the same second, with the same file size
+        FileRefDatabase other = newFileRefDatabase();
+        other.putRef(Ref.MASTER, id2);
+        assertTrue(file.setLastModified(second));
+
+        assertEquals(id2, cache.getRef(Ref.MASTER));
+        assertEquals(1, cache.getStaleReadsPrevented());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testReadsUnderLockBypassCache() throws Exception {
+        cache.putRef(Ref.MASTER, id1);
+        age(Ref.MASTER);
+        assertEquals(id1, cache.getRef(Ref.MASTER));
+
+        cache.lock();
+        try {
+            assertEquals(id1, cache.getRef(Ref.MASTER));
+            assertEquals(0, cache.getHits());
+        } finally {
+            cache.unlock();
+        }
+        assertEquals(id1, cache.getRef(Ref.MASTER));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+}
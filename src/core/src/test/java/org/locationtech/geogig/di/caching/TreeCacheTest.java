@@ -0,0 +1,175 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.di.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.geogig.api.CommitBuilder;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.api.RevObject;
+import org.locationtech.geogig.api.RevObject.TYPE;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.RevTreeImpl;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+public class TreeCacheTest {
+
+    private TreeCache cache;
+
+    @Before
+    public void before() {
+        // up to 10 shallow trees, 100 leaf nodes and 10 resolved paths
+        cache = new TreeCache(10, 100, 10, 300, 1);
+    }
+
+    private RevTree rootTree(String name) {
+        List<Node> trees = ImmutableList.of(Node.create(name, ObjectId.forString(name),
+                ObjectId.NULL, TYPE.TREE, null));
+        return RevTreeImpl.createLeafTree(ObjectId.forString("root " + name), 0,
+                ImmutableList.<Node> of(), trees);
+    }
+
+    private RevTree leafTree(String name, int size) {
+        List<Node> features = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            features.add(Node.create(name + i, ObjectId.forString(name + i), ObjectId.NULL,
+                    TYPE.FEATURE, null));
+        }
+        return RevTreeImpl.createLeafTree(ObjectId.forString("leaf " + name), size, features,
+                ImmutableList.<Node> of());
+    }
+
+    @Test
+    public void testLeafTreesDontEvictShallowTrees() {
+        RevTree root = rootTree("layer");
+        cache.put(root.getId(), root);
+
+        List<RevTree> leaves = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            RevTree leaf = leafTree("leaf" + i, 10);
+            leaves.add(leaf);
+            cache.put(leaf.getId(), leaf);
+        }
+        cache.cleanUp();
+        assertSame(root, cache.getIfPresent(root.getId()));
+        // at most 100 leaf nodes
+        assertTrue(cache.size() <= 1 + 100 / 11);
+        assertSame(leaves.get(49), cache.getIfPresent(leaves.get(49).getId()));
+        assertNull(cache.getIfPresent(leaves.get(0).getId()));
+    }
+
+    @Test
+    public void testGetLoadsTree() throws ExecutionException {
+        final RevTree root = rootTree("layer");
+        assertSame(root, cache.get(root.getId(), () -> root));
+        assertSame(root, cache.get(root.getId(), () -> {
+            throw new AssertionError("should have been cached");
+        }));
+        cache.invalidate(root.getId());
+        assertNull(cache.getIfPresent(root.getId()));
+    }
+
+    @Test
+    public void testGetLoadsOnce() throws Exception {
+        final RevTree leaf = leafTree("leaf", 10);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<RevObject>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> cache.get(leaf.getId(), () -> {
+                    loads.incrementAndGet();
+                    loading.countDown();
+                    release.await();
+                    return leaf;
+                })));
+            }
+            loading.await();
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<RevObject> result : results) {
+                assertSame(leaf, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertSame(leaf, cache.getIfPresent(leaf.getId()));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidateClearsResolvedPaths() {
+        RevTree root = rootTree("layer");
+        cache.put(root.getId(), root);
+        List<Object> key = ImmutableList.<Object> of(root.getId(), "", "layer");
+        cache.resolvedPaths().put(key, Optional.<NodeRef> absent());
+        assertEquals(1, cache.resolvedPaths().size());
+
+        cache.invalidate(root.getId());
+        assertNull(cache.resolvedPaths().getIfPresent(key));
+
+        cache.resolvedPaths().put(key, Optional.<NodeRef> absent());
+        cache.invalidateAll();
+        assertEquals(0, cache.resolvedPaths().size());
+    }
+
+    @Test
+    public void testGetDoesNotCacheOtherObjects() throws ExecutionException {
+        final RevCommit commit = new CommitBuilder().setTreeId(ObjectId.NULL).setMessage("c")
+                .build();
+        assertSame(commit, cache.get(commit.getId(), () -> commit));
+        assertEquals(0, cache.size());
+        try {
+            cache.put(commit.getId(), commit);
+            fail("Expected IAE");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Not a tree"));
+        }
+    }
+
+    @Test
+    public void testGetLoaderException() {
+        final ObjectId id = ObjectId.forString("missing");
+        try {
+            cache.get(id, () -> {
+                throw new IllegalArgumentException("not found");
+            });
+            fail("Expected UncheckedExecutionException");
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        RevObject cached = cache.getIfPresent(id);
+        assertNull(cached);
+    }
+}
@@ -0,0 +1,140 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevFeature;
+import org.locationtech.geogig.api.RevFeatureImpl;
+import org.locationtech.geogig.api.RevObject;
+import org.locationtech.geogig.api.RevObject.TYPE;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.RevTreeImpl;
+import org.locationtech.geogig.remote.BinaryPackedObjects.IngestResults;
+import org.locationtech.geogig.storage.ObjectDatabase;
+import org.locationtech.geogig.storage.datastream.DataStreamSerializationFactoryV1;
+import org.locationtech.geogig.storage.memory.HeapObjectDatabase;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+public class DeltaFunnelTest {
+
+    private ObjectDatabase target;
+
+    @Before
+    public void before() {
+        target = new HeapObjectDatabase();
+        target.open();
+    }
+
+    @After
+    public void after() {
+        target.close();
+    }
+
+    /**
+     * @return the objects of {@code versions} versions of {@code count} features with a large
+     *         attribute, only a few characters of which change between versions, each version
+     *         followed by the tree pointing to it, as traversed in post order
+     */
+    private List<RevObject> versions(int versions, int count) {
+        List<RevObject> objects = new ArrayList<>();
+        for (int version = 0; version < versions; version++) {
+            List<Node> nodes = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                StringBuilder text = new StringBuilder();
+                Random random = new Random(i);
+                for (int c = 0; c < 4000; c++) {
+                    text.append((char) ('a' + random.nextInt(26)));
+                }
+                text.replace(1000, 1010, String.format("v%09d", version));
+                ObjectId id = ObjectId.forString("feature-" + i + "-" + version);
+                RevFeature feature = new RevFeatureImpl(id, ImmutableList.of(
+                        Optional.<Object> of(Integer.valueOf(i)),
+                        Optional.<Object> of(text.toString())));
+                objects.add(feature);
+                nodes.add(Node.create("feature." + i, id, ObjectId.NULL, TYPE.FEATURE, null));
+            }
+            objects.add(RevTreeImpl.createLeafTree(ObjectId.forString("tree-" + version), count,
+                    ImmutableList.copyOf(nodes), ImmutableList.<Node> of()));
+        }
+        return objects;
+    }
+
+    private byte[] send(List<RevObject> objects, boolean deltas) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectFunnel funnel;
+        if (deltas) {
+            funnel = ObjectFunnels.newDeltaFunnel(out, DataStreamSerializationFactoryV1.INSTANCE);
+        } else {
+            funnel = ObjectFunnels.newFunnel(out, DataStreamSerializationFactoryV1.INSTANCE);
+        }
+        for (RevObject object : objects) {
+            funnel.funnel(object);
+        }
+        funnel.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testDeltaStream() throws IOException {
+        final List<RevObject> objects = versions(5, 20);
+        final byte[] full = send(objects, false);
+        final byte[] deltas = send(objects, true);
+        assertTrue(full.length + " -> " + deltas.length, deltas.length < full.length / 3);
+
+        IngestResults results = new BinaryPackedObjects(target).ingest(new ByteArrayInputStream(
+                deltas));
+        assertEquals(objects.size(), results.getInserted());
+        for (RevObject object : objects) {
+            assertEquals(object, target.get(object.getId()));
+        }
+    }
+
+    @Test
+    public void testFeaturesWithoutTree() throws IOException {
+        List<RevObject> objects = new ArrayList<>();
+        for (RevObject object : versions(3, 5)) {
+            if (!(object instanceof RevTree)) {
+                objects.add(object);
+            }
+        }
+        final byte[] deltas = send(objects, true);
+        IngestResults results = new BinaryPackedObjects(target).ingest(new ByteArrayInputStream(
+                deltas));
+        assertEquals(objects.size(), results.getInserted());
+        for (RevObject object : objects) {
+            assertEquals(object, target.get(object.getId()));
+        }
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        final byte[] deltas = send(ImmutableList.<RevObject> of(), true);
+        assertEquals(0, deltas.length);
+        IngestResults results = new BinaryPackedObjects(target).ingest(new ByteArrayInputStream(
+                deltas));
+        assertEquals(0, results.total());
+    }
+}
@@ -16,11 +16,18 @@ import static org.junit.Assert.fail;
 import static org.locationtech.geogig.api.ObjectId.NULL;
 import static org.locationtech.geogig.api.RevObject.TYPE.FEATURE;
 import static org.locationtech.geogig.api.RevObject.TYPE.TREE;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -41,8 +48,12 @@ import org.locationtech.geogig.api.plumbing.RevObjectParse;
 import org.locationtech.geogig.api.plumbing.WriteBack;
 import org.locationtech.geogig.di.GeogigModule;
 import org.locationtech.geogig.storage.ObjectDatabase;
+import org.locationtech.geogig.storage.ObjectStore;
+import org.locationtech.geogig.storage.TreePathCache;
 
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Guice;
 import com.google.inject.util.Modules;
 
@@ -156,6 +167,50 @@ public class DepthSearchTest {
         }
     }
 
+    @Test
+    public void testResolvedPathsAreMemoized() {
+        final RevTree rootTree = odb.getTree(rootTreeId);
+        final Optional<NodeRef> ref = search.find(rootTree, "path/to/tree1/node12");
+        assertNode(ref, FEATURE, fakeTreeMetadataId, "path/to/tree1/node12");
+        assertFalse(search.find(rootTree, "path/to/tree1/node14").isPresent());
+
+        // a store that doesn't cache resolved paths is looked up on every search
+        ObjectStore store = delegatingStore(mock(ObjectStore.class));
+        DepthSearch notMemoized = new DepthSearch(store);
+        assertEquals(ref, notMemoized.find(rootTree, "path/to/tree1/node12"));
+        assertEquals(ref, notMemoized.find(rootTree, "path/to/tree1/node12"));
+        // path, to and tree1 each time
+        verify(store, times(6)).get(any(ObjectId.class), eq(RevTree.class));
+
+        // trees are immutable, a search on the same tree of a caching store needs no lookups
+        final Cache<List<Object>, Optional<NodeRef>> resolved = CacheBuilder.newBuilder()
+                .build();
+        DepthSearch memoizing = new DepthSearch(delegatingStore(cachingStore(resolved)));
+        assertEquals(ref, memoizing.find(rootTree, "path/to/tree1/node12"));
+        assertFalse(memoizing.find(rootTree, "path/to/tree1/node14").isPresent());
+        assertEquals(2, resolved.size());
+
+        ObjectStore cached = cachingStore(resolved);
+        DepthSearch memoized = new DepthSearch(cached);
+        assertEquals(ref, memoized.find(rootTree, "path/to/tree1/node12"));
+        assertFalse(memoized.find(rootTree, "path/to/tree1/node14").isPresent());
+        verify((TreePathCache) cached, times(2)).resolvedPaths();
+        verifyNoMoreInteractions(cached);
+    }
+
+    private ObjectStore cachingStore(Cache<List<Object>, Optional<NodeRef>> resolved) {
+        ObjectStore store = mock(ObjectStore.class,
+                withSettings().extraInterfaces(TreePathCache.class));
+        when(((TreePathCache) store).resolvedPaths()).thenReturn(resolved);
+        return store;
+    }
+
+    private ObjectStore delegatingStore(ObjectStore store) {
+        when(store.get(any(ObjectId.class), eq(RevTree.class))).thenAnswer(
+                (invocation) -> odb.get((ObjectId) invocation.getArguments()[0], RevTree.class));
+        return store;
+    }
+
     private Optional<NodeRef> find(ObjectId rootTreeId, String rootChildPath) {
         return search.find(rootTreeId, rootChildPath);
     }
@@ -0,0 +1,84 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.storage.memory.HeapBlobStore;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.hash.BloomFilter;
+
+public class ChangedPathsFiltersTest {
+
+    private ChangedPathsFilters filters;
+
+    @Before
+    public void before() {
+        filters = new ChangedPathsFilters(new HeapBlobStore());
+    }
+
+    @Test
+    public void testNoFilter() {
+        assertFalse(filters.get(ObjectId.forString("commit")).isPresent());
+    }
+
+    @Test
+    public void testPutGet() {
+        ObjectId commit = ObjectId.forString("commit");
+        List<String> paths = Lists.newArrayList("roads");
+        for (int i = 0; i < 1000; i++) {
+            paths.add("roads/" + i);
+        }
+        filters.put(commit, paths);
+
+        Optional<BloomFilter<CharSequence>> filter = filters.get(commit);
+        assertTrue(filter.isPresent());
+        for (String path : paths) {
+            assertTrue(filter.get().mightContain(path));
+        }
+        int falsePositives = 0;
+        for (int i = 1000; i < 2000; i++) {
+            if (filter.get().mightContain("roads/" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 50);
+    }
+
+    @Test
+    public void testEmptyCommit() {
+        ObjectId commit = ObjectId.forString("commit");
+        filters.put(commit, ImmutableList.<String> of());
+        assertTrue(filters.get(commit).isPresent());
+    }
+
+    @Test
+    public void testTooManyPaths() {
+        ObjectId commit = ObjectId.forString("commit");
+        List<String> paths = Lists.newArrayList();
+        for (int i = 0; i <= ChangedPathsFilters.MAX_PATHS; i++) {
+            paths.add("roads/" + i);
+        }
+        filters.put(commit, paths);
+        assertFalse(filters.get(commit).isPresent());
+
+        filters.put(commit, null);
+        assertFalse(filters.get(commit).isPresent());
+    }
+}
@@ -0,0 +1,115 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevObject.TYPE;
+import org.locationtech.geogig.storage.PathHistoryIndex.Change;
+import org.locationtech.geogig.storage.memory.HeapBlobStore;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class PathHistoryIndexTest {
+
+    private PathHistoryIndex index;
+
+    @Before
+    public void before() {
+        index = new PathHistoryIndex(new HeapBlobStore());
+    }
+
+    @Test
+    public void testEmpty() {
+        assertTrue(index.getChanges("roads/1").isEmpty());
+        assertFalse(index.isIndexed(ObjectId.forString("commit")));
+    }
+
+    @Test
+    public void testSetIndexed() {
+        ObjectId commit = ObjectId.forString("commit");
+        index.setIndexed(commit);
+        assertTrue(index.isIndexed(commit));
+        assertFalse(index.isIndexed(ObjectId.forString("other")));
+    }
+
+    @Test
+    public void testPutGetChanges() {
+        ObjectId c1 = ObjectId.forString("c1");
+        ObjectId c2 = ObjectId.forString("c2");
+        ObjectId c3 = ObjectId.forString("c3");
+        ObjectId md = ObjectId.forString("featureType");
+
+        index.put(c1, ImmutableMap.of("roads/1", ref("roads/1", ObjectId.forString("v1"), md)));
+        index.put(c2, Collections.<String, NodeRef> singletonMap("roads/1", null));
+        index.put(c3, ImmutableMap.of("roads/2", ref("roads/2", ObjectId.forString("v2"), md)));
+        // re-indexing replaces the existing record
+        index.put(c1, ImmutableMap.of("roads/1", ref("roads/1", ObjectId.forString("v1"), md)));
+
+        Map<ObjectId, Change> changes = index.getChanges("roads/1");
+        assertEquals(2, changes.size());
+        Change change = changes.get(c1);
+        assertEquals(c1, change.commitId());
+        assertEquals(ObjectId.forString("v1"), change.objectId());
+        assertEquals(md, change.metadataId());
+        assertFalse(change.isRemoval());
+        assertTrue(changes.get(c2).isRemoval());
+
+        assertEquals(1, index.getChanges("roads/2").size());
+        assertTrue(index.getChanges("roads").isEmpty());
+    }
+
+    @Test
+    public void testSegmentsAreMerged() {
+        final ObjectId md = ObjectId.forString("featureType");
+        final int commits = 1000;
+        for (int i = 0; i < commits; i++) {
+            ObjectId commit = ObjectId.forString("commit" + i);
+            Map<String, NodeRef> changes = new HashMap<>();
+            changes.put("roads/1", ref("roads/1", ObjectId.forString("v" + i), md));
+            String path = "roads/" + (i + 2);
+            changes.put(path, ref(path, ObjectId.forString("n" + i), md));
+            index.put(commit, changes);
+        }
+        // at most one segment per power of two
+        assertTrue(index.segmentCount("roads/1") <= 32);
+
+        Map<ObjectId, Change> changes = index.getChanges("roads/1");
+        assertEquals(commits, changes.size());
+        for (int i = 0; i < commits; i++) {
+            Change change = changes.get(ObjectId.forString("commit" + i));
+            assertEquals(ObjectId.forString("v" + i), change.objectId());
+            assertEquals(md, change.metadataId());
+        }
+        for (int i = 0; i < commits; i++) {
+            String path = "roads/" + (i + 2);
+            assertEquals(ImmutableSet.of(ObjectId.forString("commit" + i)),
+                    index.getChanges(path).keySet());
+        }
+    }
+
+    private NodeRef ref(String path, ObjectId objectId, ObjectId metadataId) {
+        Node node = Node.create(NodeRef.nodeFromPath(path), objectId, metadataId, TYPE.FEATURE,
+                null);
+        return new NodeRef(node, NodeRef.parentPath(path), metadataId);
+    }
+}
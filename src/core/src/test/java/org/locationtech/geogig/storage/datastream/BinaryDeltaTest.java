@@ -0,0 +1,106 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.datastream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.primitives.Bytes;
+
+public class BinaryDeltaTest {
+
+    private final Random random = new Random(42);
+
+    private byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private byte[] roundTrip(byte[] base, byte[] target) {
+        byte[] delta = BinaryDelta.encode(base, target);
+        assertArrayEquals(target, BinaryDelta.apply(base, delta));
+        return delta;
+    }
+
+    @Test
+    public void testIdentical() {
+        byte[] base = random(10_000);
+        byte[] delta = roundTrip(base, base.clone());
+        assertTrue(delta.length < 10);
+    }
+
+    @Test
+    public void testEmptyAndShort() {
+        roundTrip(new byte[0], new byte[0]);
+        roundTrip(new byte[0], random(100));
+        roundTrip(random(100), new byte[0]);
+        roundTrip(random(5), random(7));
+        roundTrip(random(BinaryDelta.BLOCK_SIZE), random(BinaryDelta.BLOCK_SIZE));
+    }
+
+    @Test
+    public void testUnrelated() {
+        roundTrip(random(1000), random(1000));
+    }
+
+    @Test
+    public void testChangedInTheMiddle() {
+        byte[] base = random(10_000);
+        byte[] target = base.clone();
+        for (int i = 5000; i < 5010; i++) {
+            target[i] = (byte) ~target[i];
+        }
+        byte[] delta = roundTrip(base, target);
+        assertTrue(delta.length < 50);
+    }
+
+    @Test
+    public void testInsertedAndRemoved() {
+        byte[] base = random(10_000);
+        byte[] target = Bytes.concat(Arrays.copyOfRange(base, 0, 3000), random(33),
+                Arrays.copyOfRange(base, 3100, 7000), Arrays.copyOfRange(base, 8000, 10_000));
+        byte[] delta = roundTrip(base, target);
+        assertTrue(delta.length < 100);
+    }
+
+    @Test
+    public void testMovedBlocks() {
+        byte[] base = random(4096);
+        byte[] target = Bytes.concat(Arrays.copyOfRange(base, 2048, 4096),
+                Arrays.copyOfRange(base, 0, 2048), Arrays.copyOfRange(base, 1000, 1100));
+        byte[] delta = roundTrip(base, target);
+        assertTrue(delta.length < 50);
+    }
+
+    @Test
+    public void testWrongBase() {
+        byte[] base = random(1000);
+        byte[] delta = BinaryDelta.encode(base, random(1000));
+        try {
+            BinaryDelta.apply(random(999), delta);
+            fail("Expected IAE");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("base length"));
+        }
+        try {
+            BinaryDelta.apply(base, Arrays.copyOf(delta, delta.length / 2));
+            fail("Expected IAE");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Corrupt delta"));
+        }
+    }
+}
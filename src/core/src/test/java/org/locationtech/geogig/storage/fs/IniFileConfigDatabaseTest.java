@@ -9,15 +9,81 @@
  */
 package org.locationtech.geogig.storage.fs;
 
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Test;
 import org.locationtech.geogig.api.Platform;
 import org.locationtech.geogig.storage.ConfigDatabaseTest;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.io.Files;
+
 public class IniFileConfigDatabaseTest extends ConfigDatabaseTest<IniFileConfigDatabase> {
 
+    private Platform platform;
+
     protected IniFileConfigDatabase createDatabase(final Platform platform) {
+        this.platform = platform;
         return new IniFileConfigDatabase(platform);
     }
 
+    @Test
+    public void testWritesVisibleToOtherInstances() {
+        IniFileConfigDatabase other = new IniFileConfigDatabase(platform);
+        config.putGlobal("section.key", "value1");
+        assertEquals(Optional.of("value1"), other.getGlobal("section.key"));
+
+        config.putGlobal("section.key", "value2");
+        assertEquals(Optional.of("value2"), other.getGlobal("section.key"));
+
+        other.removeGlobal("section.key");
+        assertEquals(Optional.absent(), config.getGlobal("section.key"));
+    }
+
+    @Test
+    public void testExternalChangesDetected() throws Exception {
+        config.putGlobal("section.key", "value1");
+        assertEquals(Optional.of("value1"), config.getGlobal("section.key"));
+
+        // modified by another process
+        File file = new File(platform.getUserHome(), ".geogigconfig");
+        Files.write("[section]\nkey = changed value\n", file, Charsets.UTF_8);
+        INIFile.checkForChanges();
+
+        assertEquals(Optional.of("changed value"), config.getGlobal("section.key"));
+    }
+
+    @Test
+    public void testSameLengthRewriteWithinSecondDetected() throws Exception {
+        // whole second modification times, as kept by file systems with coarse timestamps
+        final long lastModified = (System.currentTimeMillis() / 1000) * 1000;
+        assertRewriteDetected(lastModified);
+    }
+
+    @Test
+    public void testSameLengthRewriteWhileReadingDetected() throws Exception {
+        // a write landing between the file being read and stat'ed leaves the same stamp
+        final long lastModified = System.currentTimeMillis() - 10;
+        assertRewriteDetected(lastModified + (lastModified % 1000 == 0 ? 1 : 0));
+    }
+
+    private void assertRewriteDetected(final long lastModified) throws Exception {
+        File file = new File(platform.getUserHome(), ".geogigconfig");
+        Files.write("[section]\nkey = value1\n", file, Charsets.UTF_8);
+        java.nio.file.Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(lastModified));
+        assertEquals(Optional.of("value1"), config.getGlobal("section.key"));
+
+        Files.write("[section]\nkey = value2\n", file, Charsets.UTF_8);
+        java.nio.file.Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(lastModified));
+        INIFile.checkForChanges();
+
+        assertEquals(Optional.of("value2"), config.getGlobal("section.key"));
+    }
+
     @Override
     protected void destroy(IniFileConfigDatabase config) {
         //
@@ -0,0 +1,50 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.test.integration;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.api.porcelain.CommitOp;
+import org.locationtech.geogig.storage.PathHistoryIndex;
+import org.locationtech.geogig.storage.PathHistoryIndex.Change;
+
+/**
+ * Runs all the {@link BlameOpTest} tests with the {@link PathHistoryIndex} enabled
+ */
+public class BlameOpPathHistoryIndexTest extends BlameOpTest {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        super.setUpInternal();
+        injector.configDatabase().put(PathHistoryIndex.ENABLED_CONFIG_KEY, "true");
+    }
+
+    @Test
+    public void testIndexUpdatedOnCommit() throws Exception {
+        insertAndAdd(points1);
+        RevCommit firstCommit = geogig.command(CommitOp.class).call();
+        deleteAndAdd(points1);
+        RevCommit secondCommit = geogig.command(CommitOp.class).call();
+        insertAndAdd(points2);
+        geogig.command(CommitOp.class).call();
+
+        PathHistoryIndex index = new PathHistoryIndex(injector.blobStore());
+        String path = NodeRef.appendChild(pointsName, idP1);
+        Map<ObjectId, Change> changes = index.getChanges(path);
+        assertEquals(2, changes.size());
+        assertFalse(changes.get(firstCommit.getId()).isRemoval());
+        assertTrue(changes.get(secondCommit.getId()).isRemoval());
+        assertEquals(3, index.getChanges(pointsName).size());
+    }
+}
@@ -0,0 +1,110 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.test.integration;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.locationtech.geogig.api.GeogigTransaction;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.api.RevFeature;
+import org.locationtech.geogig.api.RevFeatureImpl;
+import org.locationtech.geogig.api.plumbing.TransactionBegin;
+import org.locationtech.geogig.api.porcelain.BranchCreateOp;
+import org.locationtech.geogig.api.porcelain.CommitOp;
+import org.locationtech.geogig.api.porcelain.FsckOp;
+import org.locationtech.geogig.api.porcelain.FsckReport;
+import org.locationtech.geogig.storage.ObjectDatabase;
+
+import com.google.common.collect.ImmutableSet;
+
+public class FsckOpTest extends RepositoryTestCase {
+
+    private List<RevCommit> commits;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        commits = populate(true, points1, points2, lines1);
+        geogig.command(BranchCreateOp.class).setName("branch1").call();
+        insertAndAdd(points3);
+        geogig.command(CommitOp.class).call();
+    }
+
+    @Test
+    public void testHealthyRepository() {
+        FsckReport report = geogig.command(FsckOp.class).call();
+        assertTrue(report.toString(), report.isOk());
+        // 4 commits, 4 features, 2 feature types, and at least one root and one subtree per commit
+        assertTrue(report.toString(), report.getObjectCount() >= 4 + 4 + 2 + 2 * 4);
+    }
+
+    @Test
+    public void testSingleThreaded() {
+        FsckReport parallel = geogig.command(FsckOp.class).call();
+        FsckReport single = geogig.command(FsckOp.class).setThreads(1).call();
+        assertTrue(single.isOk());
+        assertEquals(parallel.getObjectCount(), single.getObjectCount());
+    }
+
+    @Test
+    public void testMissingObject() throws Exception {
+        ObjectId featureId = insertAndAdd(points1_modified);
+        geogig.command(CommitOp.class).call();
+
+        assertTrue(repo.objectDatabase().delete(featureId));
+
+        FsckReport report = geogig.command(FsckOp.class).call();
+        assertFalse(report.isOk());
+        assertEquals(ImmutableSet.of(featureId), report.getMissing());
+        assertTrue(report.getCorrupt().isEmpty());
+    }
+
+    @Test
+    public void testMissingCommit() throws Exception {
+        final ObjectId commitId = commits.get(1).getId();
+        assertTrue(repo.objectDatabase().delete(commitId));
+
+        FsckReport report = geogig.command(FsckOp.class).call();
+        assertEquals(ImmutableSet.of(commitId), report.getMissing());
+    }
+
+    @Test
+    public void testCorruptObject() throws Exception {
+        final ObjectDatabase db = repo.objectDatabase();
+        final ObjectId featureId = insertAndAdd(points1_modified);
+        geogig.command(CommitOp.class).call();
+
+        RevFeature other = db.getFeature(insertAndAdd(points1B));
+        assertTrue(db.delete(featureId));
+        db.put(new RevFeatureImpl(featureId, other.getValues()));
+
+        FsckReport report = geogig.command(FsckOp.class).call();
+        assertFalse(report.isOk());
+        assertEquals(ImmutableSet.of(featureId), report.getCorrupt());
+        assertTrue(report.getMissing().isEmpty());
+
+        report = geogig.command(FsckOp.class).setVerifyHashes(false).call();
+        assertTrue(report.isOk());
+    }
+
+    @Test
+    public void testChecksOpenTransactions() throws Exception {
+        GeogigTransaction transaction = geogig.command(TransactionBegin.class).call();
+        ObjectId featureId = insertAndAdd(transaction, points1_modified);
+        transaction.command(CommitOp.class).call();
+
+        assertTrue(repo.objectDatabase().delete(featureId));
+
+        FsckReport report = geogig.command(FsckOp.class).call();
+        assertEquals(ImmutableSet.of(featureId), report.getMissing());
+        transaction.abort();
+    }
+}
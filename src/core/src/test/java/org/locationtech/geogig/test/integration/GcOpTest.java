@@ -0,0 +1,161 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.test.integration;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.locationtech.geogig.api.GeogigTransaction;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.api.RevFeature;
+import org.locationtech.geogig.api.RevFeatureBuilder;
+import org.locationtech.geogig.api.plumbing.TransactionBegin;
+import org.locationtech.geogig.api.plumbing.TransactionEnd;
+import org.locationtech.geogig.api.porcelain.CommitOp;
+import org.locationtech.geogig.api.porcelain.FsckOp;
+import org.locationtech.geogig.api.porcelain.FsckReport;
+import org.locationtech.geogig.api.porcelain.GcOp;
+import org.locationtech.geogig.api.porcelain.GcReport;
+import org.locationtech.geogig.api.porcelain.ResetOp;
+import org.locationtech.geogig.api.porcelain.ResetOp.ResetMode;
+import org.locationtech.geogig.storage.ObjectDatabase;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class GcOpTest extends RepositoryTestCase {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private List<RevCommit> commits;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        commits = populate(true, points1, points2, lines1);
+        // get rid of any intermediate object created while populating the repository
+        geogig.command(GcOp.class).call();
+    }
+
+    @Test
+    public void testNothingToCollect() {
+        final int objectCount = objectIds().size();
+
+        GcReport report = geogig.command(GcOp.class).call();
+        assertEquals(objectCount, report.getReachable());
+        assertEquals(0, report.getUnreachable());
+        assertEquals(0, report.getRemoved());
+        assertEquals(objectCount, objectIds().size());
+        assertTrue(geogig.command(FsckOp.class).call().isOk());
+    }
+
+    @Test
+    public void testRemovesUnreachableObjects() {
+        final ObjectDatabase db = repo.objectDatabase();
+        RevFeature orphan = RevFeatureBuilder.build(points3);
+        assertTrue(db.put(orphan));
+
+        GcReport report = geogig.command(GcOp.class).call();
+        assertEquals(1, report.getUnreachable());
+        assertEquals(1, report.getRemoved());
+        assertFalse(db.exists(orphan.getId()));
+        assertTrue(geogig.command(FsckOp.class).call().isOk());
+    }
+
+    @Test
+    public void testDryRun() {
+        final ObjectDatabase db = repo.objectDatabase();
+        RevFeature orphan = RevFeatureBuilder.build(points3);
+        assertTrue(db.put(orphan));
+
+        GcReport report = geogig.command(GcOp.class).setDryRun(true).call();
+        assertEquals(1, report.getUnreachable());
+        assertEquals(0, report.getRemoved());
+        assertTrue(db.exists(orphan.getId()));
+    }
+
+    @Test
+    public void testRemovesDiscardedCommits() {
+        geogig.command(ResetOp.class).setCommit(Suppliers.ofInstance(commits.get(0).getId()))
+                .setMode(ResetMode.HARD).call();
+
+        GcReport report = geogig.command(GcOp.class).call();
+        assertTrue(report.toString(), report.getRemoved() >= 2);
+        for (RevCommit discarded : commits.subList(1, commits.size())) {
+            assertFalse(repo.objectDatabase().exists(discarded.getId()));
+        }
+        assertTrue(repo.objectDatabase().exists(commits.get(0).getId()));
+        FsckReport fsck = geogig.command(FsckOp.class).call();
+        assertTrue(fsck.toString(), fsck.isOk());
+        assertEquals(report.getReachable(), fsck.getObjectCount());
+    }
+
+    @Test
+    public void testKeepsObjectsOfOpenTransactions() throws Exception {
+        GeogigTransaction transaction = geogig.command(TransactionBegin.class).call();
+        ObjectId featureId = insertAndAdd(transaction, points3);
+        RevCommit commit = transaction.command(CommitOp.class).call();
+
+        GcReport report = geogig.command(GcOp.class).call();
+        assertEquals(0, report.getRemoved());
+        assertTrue(repo.objectDatabase().exists(featureId));
+
+        geogig.command(TransactionEnd.class).setTransaction(transaction).call();
+        assertTrue(repo.objectDatabase().exists(commit.getId()));
+        assertTrue(geogig.command(FsckOp.class).call().isOk());
+    }
+
+    @Test
+    public void testRemovesObjectsOfAbortedTransactions() throws Exception {
+        final int objectCount = objectIds().size();
+
+        GeogigTransaction transaction = geogig.command(TransactionBegin.class).call();
+        ObjectId featureId = insertAndAdd(transaction, points3);
+        transaction.command(CommitOp.class).call();
+        transaction.abort();
+
+        GcReport report = geogig.command(GcOp.class).call();
+        assertTrue(report.getRemoved() > 0);
+        assertFalse(repo.objectDatabase().exists(featureId));
+        assertEquals(objectCount, objectIds().size());
+    }
+
+    @Test
+    public void testRefusesWithMissingObjects() {
+        assertTrue(repo.objectDatabase().delete(commits.get(1).getId()));
+
+        exception.expect(IllegalStateException.class);
+        exception.expectMessage("1 objects reachable from the repository refs are missing");
+        geogig.command(GcOp.class).call();
+    }
+
+    @Test
+    public void testRefusesInsideTransaction() {
+        GeogigTransaction transaction = geogig.command(TransactionBegin.class).call();
+        try {
+            exception.expect(IllegalStateException.class);
+            transaction.command(GcOp.class).call();
+        } finally {
+            transaction.abort();
+        }
+    }
+
+    private List<ObjectId> objectIds() {
+        Iterator<ObjectId> ids = repo.objectDatabase().objectIds();
+        List<ObjectId> list = Lists.newArrayList(ids);
+        assertEquals(list.size(), Sets.newHashSet(list).size());
+        return list;
+    }
+}
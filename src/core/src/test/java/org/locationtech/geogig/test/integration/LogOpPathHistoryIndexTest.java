@@ -0,0 +1,143 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.test.integration;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.Ref;
+import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.api.plumbing.RevParse;
+import org.locationtech.geogig.api.plumbing.UpdatePathHistoryIndex;
+import org.locationtech.geogig.api.porcelain.CommitOp;
+import org.locationtech.geogig.api.porcelain.LogOp;
+import org.locationtech.geogig.storage.PathHistoryIndex;
+import org.opengis.feature.Feature;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Runs all the {@link LogOpTest} tests with the {@link PathHistoryIndex} enabled
+ */
+public class LogOpPathHistoryIndexTest extends LogOpTest {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        super.setUpInternal();
+        injector.configDatabase().put(PathHistoryIndex.ENABLED_CONFIG_KEY, "true");
+    }
+
+    @Test
+    public void testIndexEnabledOnExistingHistory() throws Exception {
+        final String[] paths = createHistoryWithoutIndex();
+        final ObjectId head = geogig.command(RevParse.class).setRefSpec(Ref.HEAD).call().get();
+
+        PathHistoryIndex index = new PathHistoryIndex(injector.blobStore());
+        for (String path : paths) {
+            List<RevCommit> expected = log(path, false);
+            assertFalse(expected.isEmpty());
+
+            // log only reads the index, and compares trees for the commits that aren't indexed
+            assertEquals(expected, log(path, true));
+            assertTrue(index.getChanges(path).isEmpty());
+            assertFalse(index.isIndexed(head));
+        }
+
+        injector.configDatabase().put(PathHistoryIndex.ENABLED_CONFIG_KEY, "true");
+        geogig.command(UpdatePathHistoryIndex.class).addCommit(head).call();
+        assertTrue(index.isIndexed(head));
+        for (String path : paths) {
+            List<RevCommit> expected = log(path, false);
+            assertEquals(expected, log(path, true));
+            assertEquals(expected.size(), index.getChanges(path).size());
+        }
+    }
+
+    @Test
+    public void testUnindexedCommitsOnTopOfIndexedHistory() throws Exception {
+        final String[] paths = createHistoryWithoutIndex();
+        injector.configDatabase().put(PathHistoryIndex.ENABLED_CONFIG_KEY, "true");
+        geogig.command(UpdatePathHistoryIndex.class)
+                .addCommit(geogig.command(RevParse.class).setRefSpec(Ref.HEAD).call().get())
+                .call();
+
+        injector.configDatabase().put(PathHistoryIndex.ENABLED_CONFIG_KEY, "false");
+        insertAndAdd(points2);
+        geogig.command(CommitOp.class).call();
+        insertAndAdd(points1);
+        geogig.command(CommitOp.class).call();
+
+        for (String path : paths) {
+            assertEquals(log(path, false), log(path, true));
+        }
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final String[] paths = createHistoryWithoutIndex();
+        injector.configDatabase().put(PathHistoryIndex.ENABLED_CONFIG_KEY, "true");
+        final ObjectId head = geogig.command(RevParse.class).setRefSpec(Ref.HEAD).call().get();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> updates = Lists.newArrayList();
+            for (int i = 0; i < 4; i++) {
+                updates.add(executor.submit(() -> geogig.command(UpdatePathHistoryIndex.class)
+                        .addCommit(head).call()));
+            }
+            for (Future<?> update : updates) {
+                update.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        PathHistoryIndex index = new PathHistoryIndex(injector.blobStore());
+        for (String path : paths) {
+            assertEquals(log(path, false).size(), index.getChanges(path).size());
+        }
+    }
+
+    /**
+     * Creates some history with the index disabled, leaving it disabled
+     * 
+     * @return paths changed by the history
+     */
+    private String[] createHistoryWithoutIndex() throws Exception {
+        injector.configDatabase().put(PathHistoryIndex.ENABLED_CONFIG_KEY, "false");
+        List<Feature> features = Arrays.asList(points1, lines1, points2, points1_modified,
+                lines2, points3);
+        for (Feature f : features) {
+            insertAndAdd(f);
+            geogig.command(CommitOp.class).call();
+        }
+        deleteAndAdd(points2);
+        geogig.command(CommitOp.class).call();
+
+        return new String[] { pointsName, NodeRef.appendChild(pointsName, idP1),
+                NodeRef.appendChild(pointsName, idP2), NodeRef.appendChild(linesName, idL2) };
+    }
+
+    private List<RevCommit> log(String path, boolean indexEnabled) {
+        injector.configDatabase().put(PathHistoryIndex.ENABLED_CONFIG_KEY,
+                String.valueOf(indexEnabled));
+        try {
+            return ImmutableList.copyOf(geogig.command(LogOp.class).addPath(path).call());
+        } finally {
+            injector.configDatabase().put(PathHistoryIndex.ENABLED_CONFIG_KEY, "false");
+        }
+    }
+}
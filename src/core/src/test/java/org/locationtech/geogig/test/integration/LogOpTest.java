@@ -32,11 +32,14 @@ import org.locationtech.geogig.api.porcelain.CommitOp;
 import org.locationtech.geogig.api.porcelain.LogOp;
 import org.locationtech.geogig.api.porcelain.MergeOp;
 import org.locationtech.geogig.api.porcelain.MergeOp.MergeReport;
+import org.locationtech.geogig.storage.ChangedPathsFilters;
 import org.opengis.feature.Feature;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.hash.BloomFilter;
 
 public class LogOpTest extends RepositoryTestCase {
 
@@ -172,6 +175,56 @@ public class LogOpTest extends RepositoryTestCase {
                         && featureCommits.contains(expectedLineCommit));
     }
 
+    @Test
+    public void testChangedPathsFilterWrittenOnCommit() throws Exception {
+        insertAndAdd(points1);
+        insertAndAdd(lines1);
+        RevCommit commit = geogig.command(CommitOp.class).call();
+
+        ChangedPathsFilters filters = new ChangedPathsFilters(injector.blobStore());
+        Optional<BloomFilter<CharSequence>> filter = filters.get(commit.getId());
+        assertTrue(filter.isPresent());
+        assertTrue(filter.get().mightContain(pointsName));
+        assertTrue(filter.get().mightContain(NodeRef.appendChild(pointsName, idP1)));
+        assertTrue(filter.get().mightContain(linesName));
+        assertTrue(filter.get().mightContain(NodeRef.appendChild(linesName, idL1)));
+    }
+
+    @Test
+    public void testPathFilterWithoutChangedPathsFilters() throws Exception {
+        List<Feature> features = Arrays.asList(points1, lines1, points2, points1_modified,
+                lines2, points3);
+        List<RevCommit> allCommits = Lists.newArrayList();
+        for (Feature f : features) {
+            insertAndAdd(f);
+            allCommits.add(geogig.command(CommitOp.class).call());
+        }
+        deleteAndAdd(points2);
+        allCommits.add(geogig.command(CommitOp.class).call());
+
+        final String[] paths = { pointsName, linesName, NodeRef.appendChild(pointsName, idP1),
+                NodeRef.appendChild(pointsName, idP2), NodeRef.appendChild(linesName, idL2),
+                NodeRef.appendChild(pointsName, "nonexistent") };
+        List<List<RevCommit>> expected = Lists.newArrayList();
+        for (String path : paths) {
+            expected.add(toList(geogig.command(LogOp.class).addPath(path).call()));
+        }
+        assertEquals(5, expected.get(0).size());
+        assertEquals(2, expected.get(3).size());
+        assertTrue(expected.get(5).isEmpty());
+
+        // mark all commits as having too many changes, forcing the comparison of their trees
+        ChangedPathsFilters filters = new ChangedPathsFilters(injector.blobStore());
+        for (RevCommit commit : allCommits) {
+            filters.put(commit.getId(), null);
+            assertFalse(filters.get(commit.getId()).isPresent());
+        }
+        for (int i = 0; i < paths.length; i++) {
+            assertEquals(expected.get(i),
+                    toList(geogig.command(LogOp.class).addPath(paths[i]).call()));
+        }
+    }
+
     @Test
     public void testPathFilterByTypeName() throws Exception {
 
@@ -385,6 +385,115 @@ public class RebaseOpTest extends RepositoryTestCase {
 
     }
 
+    @Test
+    public void testRebaseInMemory() throws Exception {
+        insertAndAdd(points1);
+        geogig.command(CommitOp.class).setMessage("commit for " + idP1).call();
+
+        geogig.command(BranchCreateOp.class).setAutoCheckout(true).setName("branch1").call();
+        insertAndAdd(points2);
+        final RevCommit c2 = geogig.command(CommitOp.class).setMessage("commit for " + idP2).call();
+
+        geogig.command(CheckoutOp.class).setSource("master").call();
+        geogig.command(BranchCreateOp.class).setAutoCheckout(true).setName("branch2").call();
+        insertAndAdd(points3);
+        final RevCommit c3 = geogig.command(CommitOp.class).setMessage("commit for " + idP3).call();
+        insertAndAdd(lines1);
+        final RevCommit c4 = geogig.command(CommitOp.class).setMessage("commit for " + idL1).call();
+        insertAndAdd(points1_modified);
+        deleteAndAdd(points3);
+        final RevCommit c5 = geogig.command(CommitOp.class).setMessage("modify and delete")
+                .call();
+
+        Ref branch1 = geogig.command(RefParse.class).setName("branch1").call().get();
+        geogig.command(RebaseOp.class).setUpstream(Suppliers.ofInstance(branch1.getObjectId()))
+                .setInMemory(true).call();
+
+        Iterator<RevCommit> log = geogig.command(LogOp.class).call();
+        RevCommit logC5 = log.next();
+        assertEquals(c5.getMessage(), logC5.getMessage());
+        assertEquals(c5.getAuthor(), logC5.getAuthor());
+        assertEquals(c4.getMessage(), log.next().getMessage());
+        assertEquals(c3.getMessage(), log.next().getMessage());
+        assertEquals(c2, log.next());
+
+        Ref head = geogig.command(RefParse.class).setName(Ref.HEAD).call().get();
+        assertTrue(head instanceof SymRef);
+        assertEquals("refs/heads/branch2", ((SymRef) head).getTarget());
+        assertEquals(logC5.getId(), head.getObjectId());
+        assertEquals(logC5.getTreeId(), repo.workingTree().getTree().getId());
+        assertEquals(logC5.getTreeId(), repo.index().getTree().getId());
+
+        assertEquals(RevFeatureBuilder.build(points1_modified), headFeature(idP1).get());
+        assertEquals(RevFeatureBuilder.build(points2), headFeature(idP2).get());
+        assertFalse(headFeature(idP3).isPresent());
+        assertTrue(geogig.command(RevObjectParse.class)
+                .setRefSpec(Ref.HEAD + ":" + NodeRef.appendChild(linesName, idL1)).call()
+                .isPresent());
+
+        assertFalse(geogig.command(RefParse.class).setName(Ref.ORIG_HEAD).call().isPresent());
+    }
+
+    @Test
+    public void testRebaseInMemoryStopsAtConflict() throws Exception {
+        insertAndAdd(points1, points2);
+        geogig.command(CommitOp.class).call();
+        geogig.command(BranchCreateOp.class).setName("branch1").call();
+        insertAndAdd(lines1);
+        final RevCommit masterCommit1 = geogig.command(CommitOp.class)
+                .setMessage("adding lines.1").call();
+        Feature points1Modified = feature(pointsType, idP1, "StringProp1_2", new Integer(1000),
+                "POINT(1 1)");
+        insertAndAdd(points1Modified);
+        final RevCommit masterCommit2 = geogig.command(CommitOp.class)
+                .setMessage("modifying points.1").call();
+
+        geogig.command(CheckoutOp.class).setSource("branch1").call();
+        Feature points1ModifiedB = feature(pointsType, idP1, "StringProp1_3", new Integer(2000),
+                "POINT(1 1)");
+        insertAndAdd(points1ModifiedB);
+        final RevCommit branchCommit = geogig.command(CommitOp.class).setMessage("branch commit")
+                .call();
+        geogig.command(CheckoutOp.class).setSource("master").call();
+
+        try {
+            geogig.command(RebaseOp.class)
+                    .setUpstream(Suppliers.ofInstance(branchCommit.getId())).setInMemory(true)
+                    .call();
+            fail();
+        } catch (RebaseConflictsException e) {
+            assertTrue(e.getMessage().contains("conflict"));
+        }
+
+        // the first commit was applied in memory before stopping at the conflicting one
+        Iterator<RevCommit> log = geogig.command(LogOp.class).call();
+        RevCommit logCommit1 = log.next();
+        assertEquals(masterCommit1.getMessage(), logCommit1.getMessage());
+        assertEquals(branchCommit, log.next());
+
+        List<Conflict> conflicts = geogig.command(ConflictsReadOp.class).call();
+        assertEquals(1, conflicts.size());
+        assertEquals(NodeRef.appendChild(pointsName, idP1), conflicts.get(0).getPath());
+
+        Feature points1Merged = feature(pointsType, idP1, "StringProp1_2", new Integer(2000),
+                "POINT(1 1)");
+        insert(points1Merged);
+        geogig.command(AddOp.class).call();
+        geogig.command(RebaseOp.class).setContinue(true).call();
+
+        log = geogig.command(LogOp.class).call();
+        assertEquals(masterCommit2.getMessage(), log.next().getMessage());
+        assertEquals(logCommit1, log.next());
+        assertEquals(RevFeatureBuilder.build(points1Merged), headFeature(idP1).get());
+        assertFalse(geogig.command(RefParse.class).setName(Ref.ORIG_HEAD).call().isPresent());
+    }
+
+    private Optional<RevFeature> headFeature(String pointId) {
+        return geogig.command(RevObjectParse.class)
+                .setRefSpec(Ref.HEAD + ":" + NodeRef.appendChild(pointsName, pointId))
+                .call(RevFeature.class);
+    }
+
     @Test
     public void testRebaseNoUpstream() throws Exception {
         exception.expect(IllegalStateException.class);
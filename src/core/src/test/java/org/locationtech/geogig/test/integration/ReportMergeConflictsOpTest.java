@@ -9,10 +9,19 @@
  */
 package org.locationtech.geogig.test.integration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.geotools.data.DataUtilities;
 import org.junit.Test;
+import org.locationtech.geogig.api.FeatureInfo;
+import org.locationtech.geogig.api.NodeRef;
 import org.locationtech.geogig.api.RevCommit;
+import org.locationtech.geogig.api.plumbing.diff.DiffEntry;
+import org.locationtech.geogig.api.plumbing.diff.OrderedDiffIterator;
 import org.locationtech.geogig.api.plumbing.merge.CheckMergeScenarioOp;
+import org.locationtech.geogig.api.plumbing.merge.Conflict;
+import org.locationtech.geogig.api.plumbing.merge.MergeScenarioConsumer;
 import org.locationtech.geogig.api.plumbing.merge.MergeScenarioReport;
 import org.locationtech.geogig.api.plumbing.merge.ReportMergeScenarioOp;
 import org.locationtech.geogig.api.porcelain.AddOp;
@@ -322,4 +331,158 @@ public class ReportMergeConflictsOpTest extends RepositoryTestCase {
         assertFalse(hasConflicts.booleanValue());
     }
 
+    @Test
+    public void testBatchSizeSmallerThanChanges() throws Exception {
+        RevCommit[] commits = createManyChanges();
+        MergeScenarioReport expected = geogig.command(ReportMergeScenarioOp.class)
+                .setMergeIntoCommit(commits[0]).setToMergeCommit(commits[1]).call();
+        assertEquals(5, expected.getConflicts().size());
+        assertEquals(5, expected.getUnconflicted().size());
+        assertEquals(5, expected.getMerged().size());
+
+        for (int batchSize : new int[] { 1, 2, 7 }) {
+            MergeScenarioReport report = geogig.command(ReportMergeScenarioOp.class)
+                    .setMergeIntoCommit(commits[0]).setToMergeCommit(commits[1])
+                    .setBatchSize(batchSize).call();
+            assertEquals(expected.getConflicts(), report.getConflicts());
+            assertEquals(expected.getUnconflicted(), report.getUnconflicted());
+            assertEquals(expected.getMerged().size(), report.getMerged().size());
+            for (int i = 0; i < expected.getMerged().size(); i++) {
+                FeatureInfo merged = report.getMerged().get(i);
+                assertEquals(expected.getMerged().get(i).getPath(), merged.getPath());
+                assertEquals(expected.getMerged().get(i).getFeature(), merged.getFeature());
+            }
+        }
+    }
+
+    @Test
+    public void testConsumerReceivesChangesInPathOrderAcrossBatches() throws Exception {
+        RevCommit[] commits = createManyChanges();
+        final List<String> paths = new ArrayList<>();
+        final int[] finished = { 0 };
+        MergeScenarioConsumer consumer = new MergeScenarioConsumer() {
+            @Override
+            public void conflicted(Conflict conflict) {
+                paths.add(conflict.getPath());
+            }
+
+            @Override
+            public void unconflicted(DiffEntry diff) {
+                paths.add(path(diff));
+            }
+
+            @Override
+            public void merged(FeatureInfo featureInfo) {
+                paths.add(featureInfo.getPath());
+            }
+
+            @Override
+            public void finished() {
+                finished[0]++;
+            }
+        };
+        MergeScenarioReport report = geogig.command(ReportMergeScenarioOp.class)
+                .setMergeIntoCommit(commits[0]).setToMergeCommit(commits[1]).setBatchSize(3)
+                .setConsumer(consumer).call();
+
+        assertEquals(15, paths.size());
+        assertTrue(OrderedDiffIterator.PATH_ORDER.isStrictlyOrdered(paths));
+        assertEquals(1, finished[0]);
+        assertEquals(0, report.getConflicts().size());
+        assertEquals(0, report.getUnconflicted().size());
+        assertEquals(0, report.getMerged().size());
+    }
+
+    @Test
+    public void testRemovedTreeAndChangedTreeWithSamePrefix() throws Exception {
+        SimpleFeatureType points2Type = DataUtilities.createType(pointsNs, pointsName + "2",
+                pointsTypeSpec);
+        insertAndAdd(points1);
+        geogig.command(CommitOp.class).call();
+        geogig.command(BranchCreateOp.class).setName("TestBranch").call();
+        insertAndAdd(feature(points2Type, idP2, "StringProp1_2", new Integer(2000), "POINT(2 2)"));
+        RevCommit masterCommit = geogig.command(CommitOp.class).call();
+        geogig.command(CheckoutOp.class).setSource("TestBranch").call();
+        geogig.command(RemoveOp.class).addPathToRemove(pointsName).setRecursive(true).call();
+        geogig.command(AddOp.class).call();
+        RevCommit branchCommit = geogig.command(CommitOp.class).call();
+
+        // the removed tree is not a prefix match for the tree changed on the other side
+        MergeScenarioReport conflicts = geogig.command(ReportMergeScenarioOp.class)
+                .setMergeIntoCommit(masterCommit).setToMergeCommit(branchCommit).call();
+        assertEquals(0, conflicts.getConflicts().size());
+        assertFalse(conflicts.getUnconflicted().isEmpty());
+        for (DiffEntry diff : conflicts.getUnconflicted()) {
+            String path = path(diff);
+            assertTrue(path, path.equals(pointsName) || path.startsWith(pointsName + "/"));
+        }
+    }
+
+    @Test
+    public void testModifiedFeatureAndSameFeatureTypeInBothBranches() throws Exception {
+        insertAndAdd(points1);
+        geogig.command(CommitOp.class).call();
+        geogig.command(BranchCreateOp.class).setName("TestBranch").call();
+        geogig.getRepository().workingTree().updateTypeTree(pointsName, modifiedPointsType);
+        insert(feature(modifiedPointsType, idP1, "StringProp1_2", new Integer(1000),
+                "POINT(1 1)", "ExtraString"));
+        geogig.command(AddOp.class).call();
+        RevCommit masterCommit = geogig.command(CommitOp.class).call();
+        geogig.command(CheckoutOp.class).setSource("TestBranch").call();
+        geogig.getRepository().workingTree().updateTypeTree(pointsName, modifiedPointsType);
+        insert(feature(modifiedPointsType, idP1, "StringProp1_1", new Integer(2000),
+                "POINT(1 1)", "ExtraString"));
+        geogig.command(AddOp.class).call();
+        RevCommit branchCommit = geogig.command(CommitOp.class).call();
+
+        // the features can't be merged automatically as the ancestor has another feature type
+        MergeScenarioReport conflicts = geogig.command(ReportMergeScenarioOp.class)
+                .setMergeIntoCommit(masterCommit).setToMergeCommit(branchCommit).call();
+        assertEquals(1, conflicts.getConflicts().size());
+        assertEquals(NodeRef.appendChild(pointsName, idP1), conflicts.getConflicts().get(0)
+                .getPath());
+        assertEquals(0, conflicts.getUnconflicted().size());
+        assertEquals(0, conflicts.getMerged().size());
+    }
+
+    private static String path(DiffEntry diff) {
+        return diff.oldPath() == null ? diff.newPath() : diff.oldPath();
+    }
+
+    /**
+     * Creates a master and a branch commit with 15 changes to merge: 5 features modified on both
+     * sides in ways that can be merged, 5 modified on both sides in conflicting ways, and 5 only
+     * added in the branch.
+     * 
+     * @return the master and the branch commits
+     */
+    private RevCommit[] createManyChanges() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            insertAndAdd(feature(pointsType, "p" + i, "StringProp" + i, new Integer(i),
+                    "POINT(1 1)"));
+        }
+        geogig.command(CommitOp.class).call();
+        geogig.command(BranchCreateOp.class).setName("TestBranch").call();
+        for (int i = 0; i < 10; i++) {
+            insertAndAdd(feature(pointsType, "p" + i, "StringPropMaster" + i, new Integer(i),
+                    "POINT(1 1)"));
+        }
+        RevCommit masterCommit = geogig.command(CommitOp.class).call();
+        geogig.command(CheckoutOp.class).setSource("TestBranch").call();
+        for (int i = 0; i < 10; i++) {
+            if (i % 2 == 0) {
+                insertAndAdd(feature(pointsType, "p" + i, "StringProp" + i,
+                        new Integer(1000 + i), "POINT(1 1)"));
+            } else {
+                insertAndAdd(feature(pointsType, "p" + i, "StringPropBranch" + i, new Integer(i),
+                        "POINT(1 1)"));
+            }
+        }
+        for (int i = 0; i < 5; i++) {
+            insertAndAdd(feature(pointsType, "n" + i, "StringProp" + i, new Integer(i),
+                    "POINT(2 2)"));
+        }
+        RevCommit branchCommit = geogig.command(CommitOp.class).call();
+        return new RevCommit[] { masterCommit, branchCommit };
+    }
 }
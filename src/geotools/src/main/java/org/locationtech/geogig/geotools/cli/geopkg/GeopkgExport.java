@@ -16,10 +16,12 @@ import org.geotools.data.DataStore;
 import org.locationtech.geogig.cli.CLICommand;
 import org.locationtech.geogig.cli.CommandFailedException;
 import org.locationtech.geogig.cli.GeogigCLI;
+import org.locationtech.geogig.cli.InvalidParameterException;
 import org.locationtech.geogig.cli.annotation.ReadOnly;
 import org.locationtech.geogig.cli.annotation.RequiresRepository;
 import org.locationtech.geogig.geotools.cli.DataStoreExport;
 import org.locationtech.geogig.geotools.geopkg.GeopkgAuditExport;
+import org.locationtech.geogig.geotools.geopkg.GeopkgNativeExportOp;
 import org.locationtech.geogig.geotools.plumbing.ExportOp;
 import org.locationtech.geogig.repository.Repository;
 
@@ -52,8 +54,15 @@ public class GeopkgExport extends DataStoreExport implements CLICommand {
         return support.getDataStore(commonArgs);
     }
 
+    @Parameter(names = { "--native" }, description = "Write directly to the geopackage database instead of through the GeoTools datastore. Much faster for large layers, but the table must not exist and only features of the default feature type can be exported")
+    private boolean nativeWriter;
+
     @Override
     protected void runInternal(GeogigCLI cli) throws IOException {
+        if (nativeWriter) {
+            exportNative(cli);
+            return;
+        }
         super.runInternal(cli);
 
         if (interchangeFormat) {
@@ -75,4 +84,29 @@ public class GeopkgExport extends DataStoreExport implements CLICommand {
             }
         }
     }
+
+    private void exportNative(GeogigCLI cli) {
+        checkParameter(args.size() == 2, "Expected <path> and <table> arguments");
+        checkParameter(!overwrite && !alter && !defaultType && sFeatureTypeId == null,
+                "--overwrite, --alter, --defaulttype and --featuretype are not supported by --native");
+
+        final String sourceTreeIsh = args.get(0);
+        final String targetTableName = args.get(1);
+        File file = new File(commonArgs.database);
+
+        Repository repo = cli.getGeogig().getRepository();
+        try {
+            Long count = repo.command(GeopkgNativeExportOp.class).setDatabase(file)
+                    .setSourceTreeish(sourceTreeIsh).setTargetTableName(targetTableName)
+                    .setInterchangeFormat(interchangeFormat)
+                    .setProgressListener(cli.getProgressListener()).call();
+            cli.getConsole().println(count + " features exported to " + targetTableName);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParameterException(e.getMessage(), e);
+        } catch (Exception e) {
+            throw new CommandFailedException("Unable to export: " + e.getMessage(), e);
+        } finally {
+            cli.close();
+        }
+    }
 }
@@ -21,6 +21,7 @@ import org.geotools.geopkg.GeoPkgDataStoreFactory;
 import org.geotools.jdbc.JDBCDataStore;
 import org.locationtech.geogig.cli.CLICommand;
 import org.locationtech.geogig.cli.CommandFailedException;
+import org.locationtech.geogig.geotools.geopkg.GeopkgFunctions;
 
 import com.beust.jcommander.internal.Maps;
 
@@ -58,6 +59,7 @@ class GeopkgSupport {
                 throw new CommandFailedException(
                         "Unable to connect using the specified database parameters.");
             }
+            GeopkgFunctions.register(dataStore);
 
             if (dataStore instanceof JDBCDataStore) {
                 Connection con = null;
@@ -22,6 +22,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.eclipse.jdt.annotation.Nullable;
 import org.locationtech.geogig.api.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +46,14 @@ import org.slf4j.LoggerFactory;
  * <li>{@code mapped_path VARCHAR}
  * <li>{@code audit_table VARCHAR}
  * </ul>
+ * <p>
+ * TABLE: <b>{@code geogig_fids_<table_name>}</b>, optional per table mappings from geopackage
+ * feature ids to geogig feature ids, created by {@link GeopkgNativeExportOp} and registered in
+ * {@code gpkg_contents} as an {@code attributes} table
+ * <ul>
+ * <li>{@code gpkg_fid INTEGER PRIMARY KEY}
+ * <li>{@code geogig_fid TEXT}
+ * </ul>
  */
 class GeogigMetadata {
 
@@ -54,6 +63,8 @@ class GeogigMetadata {
 
     private static final String AUDIT_METADATA_TABLE = "geogig_audited_tables";
 
+    private static final String FID_MAPPING_TABLE_PREFIX = "geogig_fids_";
+
     static final int AUDIT_OP_INSERT = 1;
 
     static final int AUDIT_OP_UPDATE = 2;
@@ -151,6 +162,76 @@ class GeogigMetadata {
         }
     }
 
+    /**
+     * Creates the table that maps the geopackage feature ids of {@code tableName} to geogig feature
+     * ids.
+     * <p>
+     * Unlike the other methods in this class, this one does not commit, so that the mappings can be
+     * populated in the same transaction the features are inserted.
+     * 
+     * @return the name of the mapping table
+     */
+    public String createFidMappingTable(final String tableName) throws SQLException {
+        final String mappingTable = FID_MAPPING_TABLE_PREFIX + tableName;
+        String sql = format(
+                "CREATE TABLE \"%s\" (gpkg_fid INTEGER PRIMARY KEY, geogig_fid TEXT NOT NULL)",
+                mappingTable);
+        try (Statement st = cx.createStatement()) {
+            st.execute(log(sql));
+        }
+        sql = "INSERT INTO gpkg_contents (table_name, data_type, identifier, description, last_change) "
+                + "VALUES (?, 'attributes', ?, ?, strftime('%Y-%m-%dT%H:%M:%fZ','now'))";
+        try (PreparedStatement st = cx.prepareStatement(log(sql))) {
+            st.setString(1, mappingTable);
+            st.setString(2, mappingTable);
+            st.setString(3, format("GeoGig feature ids of %s", tableName));
+            st.executeUpdate();
+        }
+        return mappingTable;
+    }
+
+    /**
+     * @return the name of the table that maps the geopackage feature ids of {@code tableName} to
+     *         geogig feature ids, or {@code null} if the table was not exported with fid mappings
+     */
+    @Nullable
+    public String getFidMappingTable(final String tableName) throws SQLException {
+        final String mappingTable = FID_MAPPING_TABLE_PREFIX + tableName;
+        final String sql = "SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?";
+        try (PreparedStatement st = cx.prepareStatement(log(sql))) {
+            st.setString(1, mappingTable);
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() ? mappingTable : null;
+            }
+        }
+    }
+
+    /**
+     * Adds mappings from geopackage feature ids to geogig feature ids to a fid mapping table
+     * 
+     * @param mappingTable the table, as returned by {@link #getFidMappingTable(String)}
+     */
+    public void addFidMappings(final String mappingTable, final Map<Long, String> mappings)
+            throws SQLException {
+        cx.setAutoCommit(false);
+        try {
+            final String sql = format("INSERT OR REPLACE INTO \"%s\" (gpkg_fid, geogig_fid) "
+                    + "VALUES (?, ?)", mappingTable);
+            try (PreparedStatement st = cx.prepareStatement(log(sql))) {
+                for (Map.Entry<Long, String> mapping : mappings.entrySet()) {
+                    st.setLong(1, mapping.getKey().longValue());
+                    st.setString(2, mapping.getValue());
+                    st.addBatch();
+                }
+                st.executeBatch();
+            }
+            cx.commit();
+        } catch (SQLException e) {
+            cx.rollback();
+            throw e;
+        }
+    }
+
     private String createAuditTable(final String tableName) throws SQLException {
         final String auditTable = tableName + "_audit";
 
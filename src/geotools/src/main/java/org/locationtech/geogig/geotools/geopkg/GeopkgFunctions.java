@@ -0,0 +1,138 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.geotools.geopkg;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.geotools.data.DataStore;
+import org.geotools.jdbc.ConnectionLifecycleListener;
+import org.geotools.jdbc.JDBCDataStore;
+import org.sqlite.Function;
+import org.sqlite.SQLiteConnection;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * The SQL functions the GeoPackage spec requires for the {@code gpkg_rtree_index} extension
+ * triggers ({@code ST_MinX}, {@code ST_MaxX}, {@code ST_MinY}, {@code ST_MaxY} and
+ * {@code ST_IsEmpty}).
+ * <p>
+ * SQLite doesn't provide them, so they must be registered on every connection that may modify a
+ * table with a spatial index, or the triggers fail with {@code no such function}. GeoGig registers
+ * them on all the connections it opens to a geopackage.
+ */
+public class GeopkgFunctions {
+
+    private GeopkgFunctions() {
+        // utility class
+    }
+
+    /**
+     * Registers the functions on a SQLite connection, or on the SQLite connection it wraps
+     */
+    public static void register(Connection cx) throws SQLException {
+        Connection target = cx;
+        if (!(target instanceof SQLiteConnection)) {
+            // isWrapperFor() can't be used, the xerial driver's always returns false and pooled
+            // connections ask it, but they do unwrap down to the driver's connection
+            target = cx.unwrap(SQLiteConnection.class);
+        }
+        if (!(target instanceof SQLiteConnection)) {
+            throw new SQLException("Not a SQLite connection: " + cx);
+        }
+        Function.create(target, "ST_MinX", new EnvelopeFunction() {
+            @Override
+            double value(Envelope env) {
+                return env.getMinX();
+            }
+        });
+        Function.create(target, "ST_MaxX", new EnvelopeFunction() {
+            @Override
+            double value(Envelope env) {
+                return env.getMaxX();
+            }
+        });
+        Function.create(target, "ST_MinY", new EnvelopeFunction() {
+            @Override
+            double value(Envelope env) {
+                return env.getMinY();
+            }
+        });
+        Function.create(target, "ST_MaxY", new EnvelopeFunction() {
+            @Override
+            double value(Envelope env) {
+                return env.getMaxY();
+            }
+        });
+        Function.create(target, "ST_IsEmpty", new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                byte[] blob = value_blob(0);
+                if (blob == null) {
+                    result();
+                } else {
+                    result(GeopkgGeometryEncoder.isEmpty(blob) ? 1 : 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Registers the functions on every connection the geopackage data store hands out
+     */
+    public static void register(DataStore dataStore) {
+        if (!(dataStore instanceof JDBCDataStore)) {
+            return;
+        }
+        ((JDBCDataStore) dataStore).getConnectionLifecycleListeners().add(
+                new ConnectionLifecycleListener() {
+                    @Override
+                    public void onBorrow(JDBCDataStore store, Connection cx)
+                            throws SQLException {
+                        register(cx);
+                    }
+
+                    @Override
+                    public void onRelease(JDBCDataStore store, Connection cx)
+                            throws SQLException {
+                        // nothing to do
+                    }
+
+                    @Override
+                    public void onCommit(JDBCDataStore store, Connection cx)
+                            throws SQLException {
+                        // nothing to do
+                    }
+
+                    @Override
+                    public void onRollback(JDBCDataStore store, Connection cx)
+                            throws SQLException {
+                        // nothing to do
+                    }
+                });
+    }
+
+    private static abstract class EnvelopeFunction extends Function {
+
+        abstract double value(Envelope env);
+
+        @Override
+        protected void xFunc() throws SQLException {
+            byte[] blob = value_blob(0);
+            Envelope env = blob == null ? null : GeopkgGeometryEncoder.envelope(blob);
+            if (env == null || env.isNull()) {
+                result();
+            } else {
+                result(value(env));
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.geotools.geopkg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.google.common.base.Throwables;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.ByteOrderValues;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Encodes JTS geometries to <a href="http://www.geopackage.org/spec/#gpb_format">GeoPackage
+ * geometry blobs</a>, and extracts the bounds of already encoded blobs.
+ * <p>
+ * Blobs are written in little endian byte order, with an {@code [minx, maxx, miny, maxy]}
+ * envelope in the header, followed by the 2D WKB representation of the geometry.
+ * <p>
+ * Instances are not thread safe.
+ */
+final class GeopkgGeometryEncoder {
+
+    private static final byte[] MAGIC = { 'G', 'P' };
+
+    private static final byte VERSION = 0;
+
+    private static final int FLAG_LITTLE_ENDIAN = 0x01;
+
+    private static final int FLAG_ENVELOPE_XY = 0x01 << 1;
+
+    private static final int FLAG_EMPTY = 0x01 << 4;
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int ENVELOPE_XY_SIZE = 4 * 8;
+
+    private final WKBWriter wkbWriter = new WKBWriter(2, ByteOrderValues.LITTLE_ENDIAN);
+
+    /**
+     * @return the GeoPackage binary representation of {@code geom}, or {@code null} if the geometry
+     *         is {@code null} or an empty point, which can't be represented as WKB
+     */
+    @Nullable
+    public byte[] encode(@Nullable Geometry geom, final int srsId) {
+        if (geom == null || (geom instanceof Point && geom.isEmpty())) {
+            return null;
+        }
+        final byte[] wkb = wkbWriter.write(geom);
+        final boolean empty = geom.isEmpty();
+
+        final int headerSize = HEADER_SIZE + (empty ? 0 : ENVELOPE_XY_SIZE);
+        ByteBuffer buff = ByteBuffer.allocate(headerSize + wkb.length);
+        buff.order(ByteOrder.LITTLE_ENDIAN);
+        buff.put(MAGIC);
+        buff.put(VERSION);
+        buff.put((byte) (FLAG_LITTLE_ENDIAN | (empty ? FLAG_EMPTY : FLAG_ENVELOPE_XY)));
+        buff.putInt(srsId);
+        if (!empty) {
+            Envelope env = geom.getEnvelopeInternal();
+            buff.putDouble(env.getMinX());
+            buff.putDouble(env.getMaxX());
+            buff.putDouble(env.getMinY());
+            buff.putDouble(env.getMaxY());
+        }
+        buff.put(wkb);
+        return buff.array();
+    }
+
+    /**
+     * @return whether the blob has the empty geometry flag set
+     */
+    public static boolean isEmpty(byte[] blob) {
+        return (blob[3] & FLAG_EMPTY) != 0;
+    }
+
+    /**
+     * Extracts the bounds of a GeoPackage geometry blob, reading them from the header if present,
+     * or parsing the WKB otherwise.
+     *
+     * @return the blob's geometry bounds, a {@link Envelope#isNull() null envelope} if the
+     *         geometry is empty
+     */
+    public static Envelope envelope(byte[] blob) {
+        if (isEmpty(blob)) {
+            return new Envelope();
+        }
+        final int flags = blob[3];
+        final int envelopeIndicator = (flags >> 1) & 0x07;
+        ByteBuffer buff = ByteBuffer.wrap(blob);
+        buff.order((flags & FLAG_LITTLE_ENDIAN) != 0 ? ByteOrder.LITTLE_ENDIAN
+                : ByteOrder.BIG_ENDIAN);
+
+        if (envelopeIndicator > 0) {
+            double minx = buff.getDouble(HEADER_SIZE);
+            double maxx = buff.getDouble(HEADER_SIZE + 8);
+            double miny = buff.getDouble(HEADER_SIZE + 16);
+            double maxy = buff.getDouble(HEADER_SIZE + 24);
+            return new Envelope(minx, maxx, miny, maxy);
+        }
+
+        byte[] wkb = new byte[blob.length - HEADER_SIZE];
+        System.arraycopy(blob, HEADER_SIZE, wkb, 0, wkb.length);
+        try {
+            return new WKBReader().read(wkb).getEnvelopeInternal();
+        } catch (ParseException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+}
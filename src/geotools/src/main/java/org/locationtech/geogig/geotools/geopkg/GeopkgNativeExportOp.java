@@ -0,0 +1,149 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.geotools.geopkg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.ProgressListener;
+import org.locationtech.geogig.api.RevFeatureType;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.plumbing.FindTreeChild;
+import org.locationtech.geogig.api.plumbing.ResolveTreeish;
+import org.locationtech.geogig.api.plumbing.diff.DepthTreeIterator;
+import org.locationtech.geogig.api.plumbing.diff.DepthTreeIterator.Strategy;
+import org.locationtech.geogig.storage.ObjectDatabase;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+
+/**
+ * Exports a feature tree to a GeoPackage file writing directly to its SQLite database, which is
+ * considerably faster than going through the GeoTools datastore for large layers.
+ * <p>
+ * The target table must not exist, and will be created out of the tree's default feature type. All
+ * the features in the tree must be of that type.
+ * <p>
+ * The table is always exported along with the mappings from geopackage feature ids to geogig
+ * feature ids, and if the {@link #setInterchangeFormat(boolean) interchange format} is enabled the
+ * audit table used by {@link GeopkgAuditImport} is created right after the data has been written.
+ *
+ * @see GeopkgNativeWriter
+ */
+public class GeopkgNativeExportOp extends AbstractGeoGigOp<Long> {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private File databaseFile;
+
+    private String sourceTreeIsh;
+
+    private String targetTableName;
+
+    private boolean enableInterchangeFormat;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public GeopkgNativeExportOp setDatabase(File file) {
+        this.databaseFile = file;
+        return this;
+    }
+
+    /**
+     * @param sourceTreeIsh tree-ish to export features from, in the format
+     *        {@code <[<tree-ish>:]<treePath>>}; {@code buildings} resolves to
+     *        {@code WORK_HEAD:buildings}
+     */
+    public GeopkgNativeExportOp setSourceTreeish(String sourceTreeIsh) {
+        this.sourceTreeIsh = sourceTreeIsh;
+        return this;
+    }
+
+    public GeopkgNativeExportOp setTargetTableName(String targetTableName) {
+        this.targetTableName = targetTableName;
+        return this;
+    }
+
+    public GeopkgNativeExportOp setInterchangeFormat(boolean enable) {
+        this.enableInterchangeFormat = enable;
+        return this;
+    }
+
+    /**
+     * @param batchSize how many features to fetch from the repository and insert into the
+     *        geopackage at once, defaults to {@link #DEFAULT_BATCH_SIZE}
+     */
+    public GeopkgNativeExportOp setBatchSize(int batchSize) {
+        checkArgument(batchSize > 0, "batchSize must be > 0");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    @Override
+    protected Long _call() {
+        checkNotNull(databaseFile, "GeoPackage file not provided");
+        checkNotNull(sourceTreeIsh, "source tree-ish not provided");
+        checkNotNull(targetTableName, "target table name not provided");
+
+        final String refspec = sourceTreeIsh.contains(":") ? sourceTreeIsh : "WORK_HEAD:"
+                + sourceTreeIsh;
+        checkArgument(!refspec.endsWith(":"), "No path specified.");
+
+        final String[] split = refspec.split(":");
+        final String headTreeish = split[0];
+        final String featureTreePath = split[1];
+
+        final Optional<ObjectId> rootTreeId = command(ResolveTreeish.class)
+                .setTreeish(headTreeish).call();
+        checkArgument(rootTreeId.isPresent(), "Couldn't resolve '%s' to a treeish object",
+                refspec);
+
+        final ObjectDatabase database = objectDatabase();
+        final RevTree rootTree = database.getTree(rootTreeId.get());
+        final Optional<NodeRef> treeRef = command(FindTreeChild.class).setParent(rootTree)
+                .setChildPath(featureTreePath).call();
+        checkArgument(treeRef.isPresent(), "Tree '%s' does not exist", refspec);
+
+        final ObjectId metadataId = treeRef.get().getMetadataId();
+        final RevFeatureType featureType = database.getFeatureType(metadataId);
+        final RevTree featureTree = database.getTree(treeRef.get().getObjectId());
+
+        final ProgressListener progress = getProgressListener();
+        progress.started();
+        progress.setDescription(String.format("Exporting %s to table %s...", refspec,
+                targetTableName));
+
+        final long count;
+        try (GeopkgNativeWriter writer = new GeopkgNativeWriter(databaseFile, batchSize)) {
+            DepthTreeIterator refs = new DepthTreeIterator("", metadataId, featureTree, database,
+                    Strategy.FEATURES_ONLY);
+            count = writer.write(targetTableName, featureType, refs, featureTree.size(),
+                    database, progress);
+
+            if (enableInterchangeFormat && !progress.isCanceled()) {
+                progress.setDescription(String.format("Creating audit metadata for table '%s'",
+                        targetTableName));
+                writer.createAudit(repository().getLocation(), targetTableName, featureTreePath,
+                        rootTreeId.get());
+            }
+        } catch (IOException | SQLException e) {
+            throw Throwables.propagate(e);
+        }
+        progress.complete();
+        return Long.valueOf(count);
+    }
+}
@@ -0,0 +1,530 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.geotools.geopkg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.String.format;
+import static org.locationtech.geogig.storage.BulkOpListener.NOOP_LISTENER;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.geotools.geopkg.GeoPackage;
+import org.geotools.referencing.CRS;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.ProgressListener;
+import org.locationtech.geogig.api.RevFeature;
+import org.locationtech.geogig.api.RevFeatureType;
+import org.locationtech.geogig.storage.ObjectStore;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.feature.type.PropertyDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteDataSource;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Writes feature trees straight to the SQLite database of a GeoPackage file, bypassing the GeoTools
+ * JDBC datastore.
+ * <p>
+ * Features are fetched from the object store in batches and inserted with prepared statement
+ * batches inside a single transaction per table. Geometries are encoded to GeoPackage geometry
+ * blobs directly from the {@link RevFeature} values, and the connection is opened with
+ * {@code PRAGMA}s tuned for bulk loading (in-memory rollback journal, no fsync, exclusive locking,
+ * large page cache).
+ * <p>
+ * The {@code gpkg_rtree_index} spatial index is populated once after all the rows have been
+ * inserted instead of through per row triggers, and the mapping from the sequential geopackage
+ * feature ids to the geogig feature ids is written to the {@link GeogigMetadata fid mapping table}
+ * in the same pass.
+ * <p>
+ * The writer holds an exclusive lock on the database until {@link #close() closed}.
+ */
+class GeopkgNativeWriter implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GeopkgNativeWriter.class);
+
+    /**
+     * Page cache size in KiB ({@code PRAGMA cache_size} takes negative values as KiB instead of
+     * pages)
+     */
+    private static final int CACHE_SIZE_KB = 64 * 1024;
+
+    /**
+     * {@code srs_id} used when the geometry CRS can't be resolved to an EPSG code, as defined by
+     * the spec for undefined cartesian coordinate reference systems
+     */
+    private static final int UNDEFINED_SRS_ID = -1;
+
+    private static final Set<Class<?>> GEOMETRY_TYPES = ImmutableSet.<Class<?>> of(Point.class,
+            LineString.class, Polygon.class, MultiPoint.class, MultiLineString.class,
+            MultiPolygon.class, GeometryCollection.class);
+
+    private static final String RTREE_TRIGGERS = ""//
+            + "CREATE TRIGGER \"${r}_insert\" AFTER INSERT ON \"${t}\"\n"
+            + "  WHEN (new.\"${c}\" NOT NULL AND NOT ST_IsEmpty(NEW.\"${c}\"))\n"
+            + "BEGIN\n"
+            + "  INSERT OR REPLACE INTO \"${r}\" VALUES (NEW.fid, ST_MinX(NEW.\"${c}\"), ST_MaxX(NEW.\"${c}\"), ST_MinY(NEW.\"${c}\"), ST_MaxY(NEW.\"${c}\"));\n"
+            + "END;\n"
+            + "CREATE TRIGGER \"${r}_update1\" AFTER UPDATE OF \"${c}\" ON \"${t}\"\n"
+            + "  WHEN OLD.fid = NEW.fid AND (NEW.\"${c}\" NOTNULL AND NOT ST_IsEmpty(NEW.\"${c}\"))\n"
+            + "BEGIN\n"
+            + "  INSERT OR REPLACE INTO \"${r}\" VALUES (NEW.fid, ST_MinX(NEW.\"${c}\"), ST_MaxX(NEW.\"${c}\"), ST_MinY(NEW.\"${c}\"), ST_MaxY(NEW.\"${c}\"));\n"
+            + "END;\n"
+            + "CREATE TRIGGER \"${r}_update2\" AFTER UPDATE OF \"${c}\" ON \"${t}\"\n"
+            + "  WHEN OLD.fid = NEW.fid AND (NEW.\"${c}\" ISNULL OR ST_IsEmpty(NEW.\"${c}\"))\n"
+            + "BEGIN\n"
+            + "  DELETE FROM \"${r}\" WHERE id = OLD.fid;\n"
+            + "END;\n"
+            + "CREATE TRIGGER \"${r}_update3\" AFTER UPDATE OF \"${c}\" ON \"${t}\"\n"
+            + "  WHEN OLD.fid != NEW.fid AND (NEW.\"${c}\" NOTNULL AND NOT ST_IsEmpty(NEW.\"${c}\"))\n"
+            + "BEGIN\n"
+            + "  DELETE FROM \"${r}\" WHERE id = OLD.fid;\n"
+            + "  INSERT OR REPLACE INTO \"${r}\" VALUES (NEW.fid, ST_MinX(NEW.\"${c}\"), ST_MaxX(NEW.\"${c}\"), ST_MinY(NEW.\"${c}\"), ST_MaxY(NEW.\"${c}\"));\n"
+            + "END;\n"
+            + "CREATE TRIGGER \"${r}_update4\" AFTER UPDATE ON \"${t}\"\n"
+            + "  WHEN OLD.fid != NEW.fid AND (NEW.\"${c}\" ISNULL OR ST_IsEmpty(NEW.\"${c}\"))\n"
+            + "BEGIN\n"
+            + "  DELETE FROM \"${r}\" WHERE id IN (OLD.fid, NEW.fid);\n"
+            + "END;\n"
+            + "CREATE TRIGGER \"${r}_delete\" AFTER DELETE ON \"${t}\"\n"
+            + "  WHEN old.\"${c}\" NOT NULL\n"
+            + "BEGIN\n"
+            + "  DELETE FROM \"${r}\" WHERE id = OLD.fid;\n"
+            + "END;\n";
+
+    private final Connection cx;
+
+    private final int batchSize;
+
+    /**
+     * Opens the geopackage database, creating it if it doesn't exist.
+     *
+     * @param geopackageFile the geopackage file to write to
+     * @param batchSize number of rows to send to the database on each batch execution
+     */
+    public GeopkgNativeWriter(final File geopackageFile, final int batchSize) throws IOException,
+            SQLException {
+        checkArgument(batchSize > 0, "batchSize must be > 0");
+        this.batchSize = batchSize;
+
+        // let GeoTools create the core gpkg tables if they don't already exist
+        GeoPackage geopackage = new GeoPackage(geopackageFile);
+        try {
+            geopackage.init();
+        } finally {
+            geopackage.close();
+        }
+
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + geopackageFile.getAbsolutePath());
+        dataSource.setJournalMode("MEMORY");
+        dataSource.setSynchronous("OFF");
+        dataSource.setTempStore("MEMORY");
+        dataSource.setLockingMode("EXCLUSIVE");
+        dataSource.setCacheSize(-CACHE_SIZE_KB);
+        this.cx = dataSource.getConnection();
+        try {
+            GeopkgFunctions.register(cx);
+        } catch (SQLException e) {
+            cx.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        cx.close();
+    }
+
+    /**
+     * Creates the {@code tableName} feature table and inserts the features pointed out by
+     * {@code refs}, all of which must be of type {@code featureType}.
+     *
+     * @param size the number of features in {@code refs}, used for progress reporting
+     * @return the number of features written
+     */
+    public long write(final String tableName, final RevFeatureType featureType,
+            final Iterator<NodeRef> refs, final long size, final ObjectStore store,
+            final ProgressListener progress) throws SQLException {
+
+        checkArgument(!tableExists(tableName), "Table '%s' already exists in the geopackage",
+                tableName);
+
+        final ImmutableList<PropertyDescriptor> descriptors = featureType.sortedDescriptors();
+        final GeometryDescriptor geometryDescriptor = featureType.type().getGeometryDescriptor();
+        final int geometryIndex = geometryDescriptor == null ? -1 : descriptors
+                .indexOf(geometryDescriptor);
+        final int srsId = geometryDescriptor == null ? UNDEFINED_SRS_ID
+                : srsId(geometryDescriptor.getCoordinateReferenceSystem());
+
+        final GeopkgGeometryEncoder encoder = new GeopkgGeometryEncoder();
+        final Envelope bounds = new Envelope();
+        long count = 0;
+
+        cx.setAutoCommit(false);
+        try {
+            if (srsId != UNDEFINED_SRS_ID) {
+                addSpatialRefSys(srsId, geometryDescriptor.getCoordinateReferenceSystem());
+            }
+            createTable(tableName, descriptors);
+            registerContents(tableName, geometryDescriptor, srsId);
+            final String mappingTable = new GeogigMetadata(cx).createFidMappingTable(tableName);
+
+            try (PreparedStatement insert = cx.prepareStatement(log(insertSql(tableName,
+                    descriptors)));
+                    PreparedStatement insertMapping = cx.prepareStatement(log(format(
+                            "INSERT INTO \"%s\" (gpkg_fid, geogig_fid) VALUES (?, ?)",
+                            mappingTable)))) {
+
+                final Iterator<List<NodeRef>> batches = Iterators.partition(refs, batchSize);
+                while (batches.hasNext() && !progress.isCanceled()) {
+                    final List<NodeRef> batch = batches.next();
+                    final Map<ObjectId, RevFeature> features = fetch(batch, store);
+                    for (NodeRef ref : batch) {
+                        checkState(featureType.getId().equals(ref.getMetadataId()),
+                                "Feature %s is not of the default feature type of its tree",
+                                ref.name());
+                        RevFeature feature = features.get(ref.getObjectId());
+                        checkState(feature != null, "Feature %s not found", ref.getObjectId());
+
+                        final long fid = ++count;
+                        final ImmutableList<Optional<Object>> values = feature.getValues();
+                        insert.setLong(1, fid);
+                        for (int i = 0; i < values.size(); i++) {
+                            Object value = values.get(i).orNull();
+                            if (i == geometryIndex) {
+                                Geometry geom = (Geometry) value;
+                                value = encoder.encode(geom, srsId);
+                                if (value != null) {
+                                    bounds.expandToInclude(geom.getEnvelopeInternal());
+                                }
+                            }
+                            setValue(insert, i + 2, value);
+                        }
+                        insert.addBatch();
+
+                        insertMapping.setLong(1, fid);
+                        insertMapping.setString(2, ref.name());
+                        insertMapping.addBatch();
+                    }
+                    insert.executeBatch();
+                    insertMapping.executeBatch();
+                    if (size > 0) {
+                        progress.setProgress((count * 100.f) / size);
+                    }
+                }
+            }
+            updateContentsBounds(tableName, bounds);
+            if (geometryDescriptor != null) {
+                createSpatialIndex(tableName, geometryDescriptor.getLocalName());
+            }
+            cx.commit();
+        } catch (SQLException | RuntimeException e) {
+            cx.rollback();
+            throw e;
+        } finally {
+            cx.setAutoCommit(true);
+        }
+        return count;
+    }
+
+    /**
+     * Creates the geogig audit table and triggers for {@code tableName}, as done by
+     * {@link GeopkgAuditExport}.
+     */
+    public void createAudit(final URI repositoryURI, final String tableName,
+            final String mappedPath, final ObjectId rootTreeId) throws SQLException {
+        GeogigMetadata metadata = new GeogigMetadata(cx);
+        try {
+            metadata.init(repositoryURI);
+            metadata.createAudit(tableName, mappedPath, rootTreeId);
+        } finally {
+            cx.setAutoCommit(true);
+        }
+    }
+
+    private Map<ObjectId, RevFeature> fetch(List<NodeRef> batch, ObjectStore store) {
+        // more than one feature may have the same hash
+        Set<ObjectId> ids = new HashSet<>();
+        for (NodeRef ref : batch) {
+            ids.add(ref.getObjectId());
+        }
+        Map<ObjectId, RevFeature> features = new HashMap<>();
+        Iterator<RevFeature> all = store.getAll(ids, NOOP_LISTENER, RevFeature.class);
+        while (all.hasNext()) {
+            RevFeature feature = all.next();
+            features.put(feature.getId(), feature);
+        }
+        return features;
+    }
+
+    private boolean tableExists(final String tableName) throws SQLException {
+        final String sql = "SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?";
+        try (PreparedStatement st = cx.prepareStatement(log(sql))) {
+            st.setString(1, tableName);
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private void createTable(final String tableName, final List<PropertyDescriptor> descriptors)
+            throws SQLException {
+
+        StringBuilder sql = new StringBuilder(format("CREATE TABLE \"%s\" (", tableName));
+        sql.append("fid INTEGER PRIMARY KEY AUTOINCREMENT");
+        for (PropertyDescriptor descriptor : descriptors) {
+            String name = descriptor.getName().getLocalPart();
+            String type = sqlType(descriptor.getType().getBinding());
+            sql.append(format(", \"%s\" %s", name, type));
+        }
+        sql.append(")");
+
+        try (Statement st = cx.createStatement()) {
+            st.execute(log(sql.toString()));
+        }
+    }
+
+    private String insertSql(final String tableName, final List<PropertyDescriptor> descriptors) {
+        StringBuilder sql = new StringBuilder(format("INSERT INTO \"%s\" (fid", tableName));
+        for (PropertyDescriptor descriptor : descriptors) {
+            sql.append(format(", \"%s\"", descriptor.getName().getLocalPart()));
+        }
+        sql.append(") VALUES (?");
+        for (int i = 0; i < descriptors.size(); i++) {
+            sql.append(", ?");
+        }
+        sql.append(")");
+        return sql.toString();
+    }
+
+    private void registerContents(final String tableName,
+            final @Nullable GeometryDescriptor geometryDescriptor, final int srsId)
+            throws SQLException {
+
+        final String dataType = geometryDescriptor == null ? "attributes" : "features";
+        String sql = "INSERT INTO gpkg_contents (table_name, data_type, identifier, last_change, srs_id) "
+                + "VALUES (?, ?, ?, strftime('%Y-%m-%dT%H:%M:%fZ','now'), ?)";
+        try (PreparedStatement st = cx.prepareStatement(log(sql))) {
+            st.setString(1, tableName);
+            st.setString(2, dataType);
+            st.setString(3, tableName);
+            st.setInt(4, srsId);
+            st.executeUpdate();
+        }
+        if (geometryDescriptor == null) {
+            return;
+        }
+        sql = "INSERT INTO gpkg_geometry_columns (table_name, column_name, geometry_type_name, srs_id, z, m) "
+                + "VALUES (?, ?, ?, ?, 0, 0)";
+        try (PreparedStatement st = cx.prepareStatement(log(sql))) {
+            st.setString(1, tableName);
+            st.setString(2, geometryDescriptor.getLocalName());
+            st.setString(3, geometryTypeName(geometryDescriptor.getType().getBinding()));
+            st.setInt(4, srsId);
+            st.executeUpdate();
+        }
+    }
+
+    private void updateContentsBounds(final String tableName, final Envelope bounds)
+            throws SQLException {
+        if (bounds.isNull()) {
+            return;
+        }
+        String sql = "UPDATE gpkg_contents SET min_x = ?, min_y = ?, max_x = ?, max_y = ? WHERE table_name = ?";
+        try (PreparedStatement st = cx.prepareStatement(log(sql))) {
+            st.setDouble(1, bounds.getMinX());
+            st.setDouble(2, bounds.getMinY());
+            st.setDouble(3, bounds.getMaxX());
+            st.setDouble(4, bounds.getMaxY());
+            st.setString(5, tableName);
+            st.executeUpdate();
+        }
+    }
+
+    private void addSpatialRefSys(final int srsId, final CoordinateReferenceSystem crs)
+            throws SQLException {
+        String definition;
+        try {
+            definition = crs.toWKT();
+        } catch (UnsupportedOperationException e) {
+            definition = "undefined";
+        }
+        String sql = "INSERT OR IGNORE INTO gpkg_spatial_ref_sys (srs_name, srs_id, organization, organization_coordsys_id, definition) "
+                + "VALUES (?, ?, 'EPSG', ?, ?)";
+        try (PreparedStatement st = cx.prepareStatement(log(sql))) {
+            st.setString(1, crs.getName().getCode());
+            st.setInt(2, srsId);
+            st.setInt(3, srsId);
+            st.setString(4, definition);
+            st.executeUpdate();
+        }
+    }
+
+    /**
+     * Creates the {@code gpkg_rtree_index} extension virtual table and fills it with a single
+     * statement out of the already inserted rows, then creates the triggers that keep it up to date
+     * on further edits. The triggers call the spec's {@link GeopkgFunctions SQL functions}, which
+     * whoever edits the table must provide.
+     */
+    private void createSpatialIndex(final String tableName, final String geometryColumn)
+            throws SQLException {
+
+        final String rtree = format("rtree_%s_%s", tableName, geometryColumn);
+        try (Statement st = cx.createStatement()) {
+            st.execute(log(format(
+                    "CREATE VIRTUAL TABLE \"%s\" USING rtree(id, minx, maxx, miny, maxy)", rtree)));
+
+            st.execute(log(format(
+                    "INSERT INTO \"%1$s\" SELECT fid, ST_MinX(\"%3$s\"), ST_MaxX(\"%3$s\"), ST_MinY(\"%3$s\"), ST_MaxY(\"%3$s\") "
+                            + "FROM \"%2$s\" WHERE \"%3$s\" NOT NULL AND NOT ST_IsEmpty(\"%3$s\")",
+                    rtree, tableName, geometryColumn)));
+
+            String triggers = RTREE_TRIGGERS.replace("${r}", rtree).replace("${t}", tableName)
+                    .replace("${c}", geometryColumn);
+            for (String trigger : triggers.split("END;\n")) {
+                st.execute(log(trigger + "END;"));
+            }
+
+            st.execute(log("CREATE TABLE IF NOT EXISTS gpkg_extensions (table_name TEXT, "
+                    + "column_name TEXT, extension_name TEXT NOT NULL, definition TEXT NOT NULL, "
+                    + "scope TEXT NOT NULL, "
+                    + "CONSTRAINT ge_tce UNIQUE (table_name, column_name, extension_name))"));
+        }
+        String sql = "INSERT INTO gpkg_extensions (table_name, column_name, extension_name, definition, scope) "
+                + "VALUES (?, ?, 'gpkg_rtree_index', 'GeoPackage 1.0 Specification Annex L', 'write-only')";
+        try (PreparedStatement st = cx.prepareStatement(log(sql))) {
+            st.setString(1, tableName);
+            st.setString(2, geometryColumn);
+            st.executeUpdate();
+        }
+    }
+
+    private static int srsId(@Nullable CoordinateReferenceSystem crs) {
+        if (crs == null) {
+            return UNDEFINED_SRS_ID;
+        }
+        try {
+            Integer code = CRS.lookupEpsgCode(crs, true);
+            return code == null ? UNDEFINED_SRS_ID : code.intValue();
+        } catch (Exception e) {
+            LOG.info("Unable to determine EPSG code for " + crs.getName(), e);
+            return UNDEFINED_SRS_ID;
+        }
+    }
+
+    private static String geometryTypeName(Class<?> binding) {
+        if (GEOMETRY_TYPES.contains(binding)) {
+            return binding.getSimpleName().toUpperCase();
+        }
+        return "GEOMETRY";
+    }
+
+    private static String sqlType(Class<?> binding) {
+        if (Geometry.class.isAssignableFrom(binding)) {
+            return geometryTypeName(binding);
+        }
+        if (Boolean.class.equals(binding)) {
+            return "BOOLEAN";
+        }
+        if (Byte.class.equals(binding)) {
+            return "TINYINT";
+        }
+        if (Short.class.equals(binding)) {
+            return "SMALLINT";
+        }
+        if (Integer.class.equals(binding)) {
+            return "MEDIUMINT";
+        }
+        if (Long.class.equals(binding)) {
+            return "INTEGER";
+        }
+        if (Float.class.equals(binding)) {
+            return "FLOAT";
+        }
+        if (Double.class.equals(binding)) {
+            return "DOUBLE";
+        }
+        if (java.sql.Date.class.equals(binding)) {
+            return "DATE";
+        }
+        if (Date.class.isAssignableFrom(binding) && !java.sql.Time.class.equals(binding)) {
+            return "DATETIME";
+        }
+        if (byte[].class.equals(binding)) {
+            return "BLOB";
+        }
+        return "TEXT";
+    }
+
+    private static void setValue(PreparedStatement st, int index, @Nullable Object value)
+            throws SQLException {
+        if (value == null) {
+            st.setObject(index, null);
+        } else if (value instanceof byte[]) {
+            st.setBytes(index, (byte[]) value);
+        } else if (value instanceof Boolean) {
+            st.setInt(index, ((Boolean) value).booleanValue() ? 1 : 0);
+        } else if (value instanceof Float || value instanceof Double) {
+            st.setDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number
+                && !(value instanceof BigDecimal || value instanceof BigInteger)) {
+            st.setLong(index, ((Number) value).longValue());
+        } else if (value instanceof java.sql.Date || value instanceof java.sql.Time) {
+            st.setString(index, value.toString());
+        } else if (value instanceof Date) {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            st.setString(index, format.format((Date) value));
+        } else {
+            st.setString(index, value.toString());
+        }
+    }
+
+    private static String log(String sql) {
+        LOG.debug(sql);
+        return sql;
+    }
+}
@@ -51,6 +51,7 @@ import org.locationtech.geogig.api.RevTreeBuilder;
 import org.locationtech.geogig.api.plumbing.FindTreeChild;
 import org.locationtech.geogig.api.plumbing.ResolveTreeish;
 import org.locationtech.geogig.api.plumbing.diff.DiffEntry.ChangeType;
+import org.locationtech.geogig.repository.DepthSearch;
 import org.locationtech.geogig.repository.Repository;
 import org.locationtech.geogig.repository.SpatialOps;
 import org.locationtech.geogig.storage.ObjectStore;
@@ -157,6 +158,7 @@ class InterchangeFormat {
         final DataSource dataSource = geopackage.getDataSource();
 
         try (Connection connection = dataSource.getConnection()) {
+            GeopkgFunctions.register(connection);
             GeogigMetadata metadata = new GeogigMetadata(connection);
             URI repoURI = repository.getLocation();
             metadata.init(repoURI);
@@ -182,6 +184,7 @@ class InterchangeFormat {
         final DataSource dataSource = geopackage.getDataSource();
 
         try (Connection connection = dataSource.getConnection()) {
+            GeopkgFunctions.register(connection);
             GeogigMetadata metadata = new GeogigMetadata(connection);
 
             final Map<String, AuditTable> tables = Maps.filterKeys(
@@ -209,7 +212,23 @@ class InterchangeFormat {
         AuditReport tableReport = new AuditReport(auditTable);
 
         try (Connection cx = geopackage.getDataSource().getConnection()) {
-            final String sql = format("SELECT * FROM %s", auditTable.getAuditTable());
+            GeopkgFunctions.register(cx);
+            final String mappingTable = new GeogigMetadata(cx).getFidMappingTable(auditTable
+                    .getTableName());
+            // only the last audit record of each feature matters, earlier ones are overridden
+            final String lastRecords = format(
+                    "a.rowid IN (SELECT max(rowid) FROM \"%s\" GROUP BY fid)",
+                    auditTable.getAuditTable());
+            final String sql;
+            if (mappingTable == null) {
+                sql = format("SELECT * FROM \"%s\" a WHERE %s", auditTable.getAuditTable(),
+                        lastRecords);
+            } else {
+                // resolve the original geogig feature ids of rows exported with fid mappings
+                sql = format(
+                        "SELECT a.*, m.geogig_fid AS geogig_fid FROM \"%s\" a LEFT JOIN \"%s\" m ON a.fid = m.gpkg_fid WHERE %s",
+                        auditTable.getAuditTable(), mappingTable, lastRecords);
+            }
             try (Statement st = cx.createStatement()) {
                 try (ResultSet rs = st.executeQuery(sql)) {
 
@@ -228,10 +247,19 @@ class InterchangeFormat {
                     final RevFeatureType featureType = store.getFeatureType(featureTreeRef
                             .getMetadataId());
 
-                    final Iterator<Change> changes = asChanges(rs, featureType, tableReport);
+                    final Map<Long, String> newMappings = Maps.newHashMap();
+                    final Iterator<Change> changes = asChanges(rs, featureType,
+                            mappingTable != null, newMappings);
                     final RevTree newFeatureTree = importAuditLog(store, currentFeatureTree,
-                            changes);
+                            changes, tableReport);
+                    if (!newMappings.isEmpty()) {
+                        // so that importing the audit log again resolves the same feature ids
+                        new GeogigMetadata(cx).addFidMappings(mappingTable, newMappings);
+                    }
 
+                    if (newFeatureTree.getId().equals(currentFeatureTree.getId())) {
+                        return tableReport;
+                    }
                     RevTreeBuilder workTreeBuilder = new RevTreeBuilder(store, worktree);
 
                     Node featureTreeNode = Node.create(featureTreeRef.name(),
@@ -248,10 +276,22 @@ class InterchangeFormat {
         return tableReport;
     }
 
+    /**
+     * Applies the changes to {@code currentFeatureTree}.
+     * <p>
+     * Each change is checked against the current state of its feature, looked up directly by name
+     * in the tree, so that changes that are no-ops (e.g. a feature updated back to its original
+     * state, or a deleted feature that was added and removed in the geopackage) are discarded. Only
+     * the remaining features are saved, and the tree is only rebuilt if there's any of them, in
+     * which case only the buckets containing the changed features are modified.
+     * 
+     * @return the new feature tree, or {@code currentFeatureTree} itself if nothing changed
+     */
     private RevTree importAuditLog(ObjectStore store, RevTree currentFeatureTree,
-            Iterator<Change> changes) throws SQLException {
+            Iterator<Change> changes, AuditReport report) throws SQLException {
 
-        RevTreeBuilder builder = new RevTreeBuilder(store, currentFeatureTree);
+        final RevTreeBuilder builder = new RevTreeBuilder(store, currentFeatureTree);
+        final DepthSearch search = new DepthSearch(store);
 
         progressListener.setProgress(0);
 
@@ -268,21 +308,35 @@ class InterchangeFormat {
 
                 String feautreId = change.getFeautreId();
 
+                Optional<Node> currentNode = search.getDirectChild(currentFeatureTree,
+                        feautreId, 0);
+
                 ChangeType type = change.getType();
                 switch (type) {
                 case REMOVED:
-                    builder.remove(feautreId);
-                    break;
+                    if (currentNode.isPresent()) {
+                        builder.remove(feautreId);
+                        report.removed.incrementAndGet();
+                    }
+                    return null;
                 case ADDED:
                 case MODIFIED:
+                    if (currentNode.isPresent()
+                            && currentNode.get().getObjectId().equals(feature.getId())) {
+                        return null;
+                    }
                     Node node = Node.create(feautreId, feature.getId(), ObjectId.NULL,
                             TYPE.FEATURE, SpatialOps.boundsOf(feature));
                     builder.put(node);
+                    if (currentNode.isPresent()) {
+                        report.changed.incrementAndGet();
+                    } else {
+                        report.added.incrementAndGet();
+                    }
                     return feature;
                 default:
                     throw new IllegalStateException();
                 }
-                return feature;
             }
         };
 
@@ -291,13 +345,22 @@ class InterchangeFormat {
 
         store.putAll(feautres);
 
+        if (report.added.get() + report.changed.get() + report.removed.get() == 0) {
+            return currentFeatureTree;
+        }
         RevTree newTree = builder.build();
         store.put(newTree);
         return newTree;
     }
 
+    /**
+     * @param hasFidMappings whether the records have a {@code geogig_fid} column with the geogig
+     *        feature ids of the exported rows. If so, the rows inserted in the geopackage, which
+     *        don't have one, are given new feature ids, as their geopackage feature ids could match
+     *        the ids of existing features, and the new mappings are added to {@code newMappings}
+     */
     private Iterator<Change> asChanges(final ResultSet rs, RevFeatureType featureType,
-            AuditReport report) {
+            final boolean hasFidMappings, final Map<Long, String> newMappings) {
 
         return new AbstractIterator<InterchangeFormat.Change>() {
 
@@ -307,23 +370,30 @@ class InterchangeFormat {
             @Override
             protected Change computeNext() {
                 try {
-                    if (rs.next()) {
-                        final String featureId = rs.getString("fid");
+                    while (rs.next()) {
+                        String featureId = rs.getString("fid");
                         // final long auditTimestamp = rs.getLong("audit_timestamp");
                         // System.err.println(new Timestamp(auditTimestamp));
                         final int auditOp = rs.getInt("audit_op");
-                        final ChangeType changeType = toChangeType(auditOp);
+                        ChangeType changeType = toChangeType(auditOp);
+                        if (hasFidMappings) {
+                            String mappedId = rs.getString("geogig_fid");
+                            if (mappedId != null) {
+                                featureId = mappedId;
+                            } else if (ChangeType.REMOVED.equals(changeType)) {
+                                // inserted and deleted in the geopackage
+                                continue;
+                            } else {
+                                // inserted in the geopackage, maybe updated afterwards
+                                changeType = ChangeType.ADDED;
+                                featureId = SimpleFeatureBuilder.createDefaultFeatureId();
+                                newMappings.put(Long.valueOf(rs.getLong("fid")), featureId);
+                            }
+                        }
 
                         RevFeature revFeature = null;
-                        if (ChangeType.REMOVED.equals(changeType)) {
-                            report.removed.incrementAndGet();
-                        } else {
+                        if (!ChangeType.REMOVED.equals(changeType)) {
                             revFeature = recordToFeature.apply(rs);
-                            if (ChangeType.ADDED.equals(changeType)) {
-                                report.added.incrementAndGet();
-                            } else {
-                                report.changed.incrementAndGet();
-                            }
                         }
 
                         Change change = new Change(featureId, changeType, revFeature);
@@ -0,0 +1,210 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.geotools.plumbing;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static org.locationtech.geogig.storage.BulkOpListener.NOOP_LISTENER;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.geotools.factory.Hints;
+import org.locationtech.geogig.api.FeatureBuilder;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevFeature;
+import org.locationtech.geogig.api.RevFeatureType;
+import org.locationtech.geogig.storage.ObjectStore;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Iterator used by {@link ExportOp} to turn a stream of feature {@link NodeRef}s into
+ * {@link SimpleFeature}s.
+ * <p>
+ * The refs are split in batches of {@code fetchSize}, and each batch is handed over to a task on
+ * the provided executor service that fetches its {@link RevFeature}s with a single
+ * {@link ObjectStore#getAll} call, builds the {@code SimpleFeature}s and applies the
+ * {@code adapter} function to them. At most two batches per worker thread are fetched ahead of the
+ * consumer, in order to bound memory usage.
+ * <p>
+ * If {@code preserveOrder} is {@code true}, features are returned in the same order as the refs,
+ * otherwise batches are returned as soon as they're ready.
+ */
+class ExportFeatureIterator extends AbstractIterator<SimpleFeature> {
+
+    private final Iterator<List<NodeRef>> batches;
+
+    private final ObjectStore database;
+
+    private final Function<Iterator<SimpleFeature>, Iterator<SimpleFeature>> adapter;
+
+    private final boolean preserveOrder;
+
+    private final int maxPending;
+
+    private final ExecutorService executor;
+
+    private final CompletionService<List<SimpleFeature>> completionService;
+
+    private final Deque<Future<List<SimpleFeature>>> pending = new ArrayDeque<>();
+
+    private int pendingCount;
+
+    private Iterator<SimpleFeature> current = Collections.emptyIterator();
+
+    private final ConcurrentMap<ObjectId, FeatureBuilder> builders = new ConcurrentHashMap<>();
+
+    /**
+     * @param refs the feature refs to build features for
+     * @param database the object store to fetch the {@link RevFeature}s from
+     * @param fetchSize how many features to fetch at once
+     * @param executor the executor service to run the fetch tasks on
+     * @param nThreads the number of threads of {@code executor}, used to limit the number of
+     *        batches fetched ahead of the consumer
+     * @param preserveOrder whether to return the features in the same order as {@code refs}
+     * @param adapter a function applied to each batch of features on the worker threads
+     */
+    public ExportFeatureIterator(Iterator<NodeRef> refs, ObjectStore database, int fetchSize,
+            ExecutorService executor, int nThreads, boolean preserveOrder,
+            Function<Iterator<SimpleFeature>, Iterator<SimpleFeature>> adapter) {
+        checkArgument(fetchSize > 0, "fetchSize must be > 0");
+        checkArgument(nThreads > 0, "nThreads must be > 0");
+        this.batches = Iterators.partition(refs, fetchSize);
+        this.database = database;
+        this.executor = executor;
+        this.preserveOrder = preserveOrder;
+        this.adapter = adapter;
+        this.maxPending = 2 * nThreads;
+        this.completionService = preserveOrder ? null
+                : new ExecutorCompletionService<List<SimpleFeature>>(executor);
+    }
+
+    @Override
+    protected SimpleFeature computeNext() {
+        while (!current.hasNext()) {
+            fill();
+            if (pendingCount == 0) {
+                return endOfData();
+            }
+            current = next(preserveOrder ? pending.removeFirst() : take()).iterator();
+            pendingCount--;
+        }
+        return current.next();
+    }
+
+    private void fill() {
+        while (pendingCount < maxPending && batches.hasNext()) {
+            FetchTask task = new FetchTask(batches.next());
+            if (preserveOrder) {
+                pending.addLast(executor.submit(task));
+            } else {
+                completionService.submit(task);
+            }
+            pendingCount++;
+        }
+    }
+
+    private Future<List<SimpleFeature>> take() {
+        try {
+            return completionService.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private List<SimpleFeature> next(Future<List<SimpleFeature>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private FeatureBuilder getBuilderFor(final ObjectId metadataId) {
+        FeatureBuilder featureBuilder = builders.get(metadataId);
+        if (featureBuilder == null) {
+            RevFeatureType revFtype = database.getFeatureType(metadataId);
+            featureBuilder = new FeatureBuilder(revFtype);
+            builders.putIfAbsent(metadataId, featureBuilder);
+        }
+        return featureBuilder;
+    }
+
+    private class FetchTask implements Callable<List<SimpleFeature>> {
+
+        private final List<NodeRef> refs;
+
+        FetchTask(List<NodeRef> refs) {
+            this.refs = refs;
+        }
+
+        @Override
+        public List<SimpleFeature> call() {
+            // more than one feature may have the same hash
+            Set<ObjectId> ids = new HashSet<>();
+            for (NodeRef ref : refs) {
+                ids.add(ref.getObjectId());
+            }
+            Map<ObjectId, RevFeature> fetched = Maps.newHashMapWithExpectedSize(ids.size());
+            Iterator<RevFeature> all = database.getAll(ids, NOOP_LISTENER, RevFeature.class);
+            while (all.hasNext()) {
+                RevFeature revFeature = all.next();
+                fetched.put(revFeature.getId(), revFeature);
+            }
+
+            List<SimpleFeature> features = new ArrayList<>(refs.size());
+            for (NodeRef ref : refs) {
+                final RevFeature revFeature = fetched.get(ref.getObjectId());
+                checkState(revFeature != null, "Feature %s not found", ref.getObjectId());
+
+                FeatureBuilder featureBuilder = getBuilderFor(ref.getMetadataId());
+                final String fid = ref.name();
+                Feature feature = featureBuilder.build(fid, revFeature);
+                feature.getUserData().put(Hints.USE_PROVIDED_FID, Boolean.TRUE);
+                feature.getUserData().put(Hints.PROVIDED_FID, fid);
+                feature.getUserData().put(RevFeature.class, revFeature);
+                feature.getUserData().put(RevFeatureType.class, featureBuilder.getType());
+
+                if (feature instanceof SimpleFeature) {
+                    features.add((SimpleFeature) feature);
+                }
+            }
+            return Lists.newArrayList(adapter.apply(features.iterator()));
+        }
+    }
+}
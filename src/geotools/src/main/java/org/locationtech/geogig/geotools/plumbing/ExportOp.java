@@ -15,17 +15,17 @@ import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.geotools.data.DefaultTransaction;
 import org.geotools.data.Transaction;
 import org.geotools.data.simple.SimpleFeatureStore;
-import org.geotools.factory.Hints;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.collection.BaseFeatureCollection;
@@ -73,10 +73,9 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Sets;
-import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.vividsolutions.jts.geom.Envelope;
 
 /**
@@ -112,6 +111,19 @@ public class ExportOp extends AbstractGeoGigOp<SimpleFeatureStore> {
 
     private ReferencedEnvelope bboxFilter;
 
+    /**
+     * Default number of features fetched from the object database at once
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    private int decoderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    private boolean preserveOrder = true;
+
+    private int transactionSize;
+
     /**
      * Constructs a new export operation.
      */
@@ -151,68 +163,93 @@ public class ExportOp extends AbstractGeoGigOp<SimpleFeatureStore> {
                 + targetStore.getName().getLocalPart() + "... ");
 
         final ReferencedEnvelope bboxFilter = this.bboxFilter;
-        final Iterator<SimpleFeature> filtered;
-        {
-            final Iterator<SimpleFeature> plainFeatures = getFeatures(typeTree, database,
-                    defaultMetadataId, bboxFilter, progressListener);
-
-            Iterator<SimpleFeature> adaptedFeatures = adaptToArguments(plainFeatures,
-                    defaultMetadataId);
-
-            Iterator<Optional<Feature>> transformed = Iterators.transform(adaptedFeatures,
-                    ExportOp.this.function);
-
-            Iterator<SimpleFeature> result = Iterators.filter(Iterators.transform(transformed,
-                    new Function<Optional<Feature>, SimpleFeature>() {
+        final int nThreads = this.decoderThreads;
+        final ExecutorService executor = Executors.newFixedThreadPool(nThreads,
+                new ThreadFactoryBuilder().setNameFormat("geogig-export-%d").setDaemon(true)
+                        .build());
+        try {
+            final Iterator<SimpleFeature> filtered;
+            {
+                final Iterator<SimpleFeature> adaptedFeatures = getFeatures(typeTree, database,
+                        defaultMetadataId, bboxFilter, progressListener, executor, nThreads);
+
+                Iterator<Optional<Feature>> transformed = Iterators.transform(adaptedFeatures,
+                        ExportOp.this.function);
+
+                Iterator<SimpleFeature> result = Iterators.filter(Iterators.transform(
+                        transformed, new Function<Optional<Feature>, SimpleFeature>() {
+                            @Override
+                            public SimpleFeature apply(Optional<Feature> input) {
+                                return (SimpleFeature) input.orNull();
+                            }
+                        }), Predicates.notNull());
+
+                // check the resulting schema has something to contribute
+                PeekingIterator<SimpleFeature> peekingIt = Iterators.peekingIterator(result);
+                if (peekingIt.hasNext()) {
+                    Function<AttributeDescriptor, String> toString = new Function<AttributeDescriptor, String>() {
                         @Override
-                        public SimpleFeature apply(Optional<Feature> input) {
-                            return (SimpleFeature) input.orNull();
+                        public String apply(AttributeDescriptor input) {
+                            return input.getLocalName();
                         }
-                    }), Predicates.notNull());
-
-            // check the resulting schema has something to contribute
-            PeekingIterator<SimpleFeature> peekingIt = Iterators.peekingIterator(result);
-            if (peekingIt.hasNext()) {
-                Function<AttributeDescriptor, String> toString = new Function<AttributeDescriptor, String>() {
-                    @Override
-                    public String apply(AttributeDescriptor input) {
-                        return input.getLocalName();
+                    };
+                    SimpleFeature peek = peekingIt.peek();
+                    Set<String> sourceAtts = new HashSet<String>(Lists.transform(peek
+                            .getFeatureType().getAttributeDescriptors(), toString));
+                    Set<String> targetAtts = new HashSet<String>(Lists.transform(targetStore
+                            .getSchema().getAttributeDescriptors(), toString));
+                    if (Sets.intersection(sourceAtts, targetAtts).isEmpty()) {
+                        throw new GeoToolsOpException(StatusCode.UNABLE_TO_ADD,
+                                "No common attributes between source and target feature types");
                     }
-                };
-                SimpleFeature peek = peekingIt.peek();
-                Set<String> sourceAtts = new HashSet<String>(Lists.transform(peek.getFeatureType()
-                        .getAttributeDescriptors(), toString));
-                Set<String> targetAtts = new HashSet<String>(Lists.transform(targetStore
-                        .getSchema().getAttributeDescriptors(), toString));
-                if (Sets.intersection(sourceAtts, targetAtts).isEmpty()) {
-                    throw new GeoToolsOpException(StatusCode.UNABLE_TO_ADD,
-                            "No common attributes between source and target feature types");
                 }
-            }
 
-            filtered = peekingIt;
+                filtered = peekingIt;
+            }
+            write(targetStore, filtered);
+        } finally {
+            executor.shutdownNow();
         }
-        FeatureCollection<SimpleFeatureType, SimpleFeature> asFeatureCollection = new BaseFeatureCollection<SimpleFeatureType, SimpleFeature>() {
 
-            @Override
-            public FeatureIterator<SimpleFeature> features() {
+        progressListener.complete();
 
-                return new DelegateFeatureIterator<SimpleFeature>(filtered);
-            }
-        };
+        return targetStore;
+
+    }
 
-        // add the feature collection to the feature store
+    /**
+     * Adds the features to the target store. If the operation is {@link #setTransactional
+     * transactional} and a {@link #setTransactionSize transaction size} was given, the transaction
+     * is committed every {@code transactionSize} features, otherwise all features are added in a
+     * single transaction.
+     */
+    private void write(final SimpleFeatureStore targetStore, final Iterator<SimpleFeature> features) {
         final Transaction transaction;
         if (transactional) {
             transaction = new DefaultTransaction("create");
         } else {
             transaction = Transaction.AUTO_COMMIT;
         }
+        final Iterator<Iterator<SimpleFeature>> batches;
+        if (transactional && transactionSize > 0) {
+            batches = Iterators.transform(Iterators.partition(features, transactionSize),
+                    new Function<List<SimpleFeature>, Iterator<SimpleFeature>>() {
+                        @Override
+                        public Iterator<SimpleFeature> apply(List<SimpleFeature> batch) {
+                            return batch.iterator();
+                        }
+                    });
+        } else {
+            // a single batch streaming all the features
+            batches = Iterators.singletonIterator(features);
+        }
         try {
             targetStore.setTransaction(transaction);
             try {
-                targetStore.addFeatures(asFeatureCollection);
-                transaction.commit();
+                while (batches.hasNext()) {
+                    targetStore.addFeatures(asFeatureCollection(batches.next()));
+                    transaction.commit();
+                }
             } catch (final Exception e) {
                 if (transactional) {
                     transaction.rollback();
@@ -225,16 +262,24 @@ public class ExportOp extends AbstractGeoGigOp<SimpleFeatureStore> {
         } catch (IOException e) {
             throw new GeoToolsOpException(e, StatusCode.UNABLE_TO_ADD);
         }
+    }
 
-        progressListener.complete();
+    private static FeatureCollection<SimpleFeatureType, SimpleFeature> asFeatureCollection(
+            final Iterator<SimpleFeature> features) {
+        return new BaseFeatureCollection<SimpleFeatureType, SimpleFeature>() {
 
-        return targetStore;
+            @Override
+            public FeatureIterator<SimpleFeature> features() {
 
+                return new DelegateFeatureIterator<SimpleFeature>(features);
+            }
+        };
     }
 
-    private static Iterator<SimpleFeature> getFeatures(final RevTree typeTree,
+    private Iterator<SimpleFeature> getFeatures(final RevTree typeTree,
             final ObjectDatabase database, final ObjectId defaultMetadataId,
-            final @Nullable ReferencedEnvelope bboxFilter, final ProgressListener progressListener) {
+            final @Nullable ReferencedEnvelope bboxFilter, final ProgressListener progressListener,
+            final ExecutorService executor, final int nThreads) {
 
         Iterator<NodeRef> nodes;
         {
@@ -260,47 +305,16 @@ public class ExportOp extends AbstractGeoGigOp<SimpleFeatureStore> {
             }
         });
 
-        Function<NodeRef, SimpleFeature> asFeature = new Function<NodeRef, SimpleFeature>() {
-
-            private Map<ObjectId, FeatureBuilder> ftCache = Maps.newHashMap();
-
+        // adapt the features to the op arguments on the worker threads
+        Function<Iterator<SimpleFeature>, Iterator<SimpleFeature>> adapter = new Function<Iterator<SimpleFeature>, Iterator<SimpleFeature>>() {
             @Override
-            @Nullable
-            public SimpleFeature apply(final NodeRef input) {
-                final ObjectId metadataId = input.getMetadataId();
-                final RevFeature revFeature = database.getFeature(input.getObjectId());
-
-                FeatureBuilder featureBuilder = getBuilderFor(metadataId);
-                final String fid = input.name();
-                Feature feature = featureBuilder.build(fid, revFeature);
-                feature.getUserData().put(Hints.USE_PROVIDED_FID, Boolean.TRUE);
-                feature.getUserData().put(Hints.PROVIDED_FID, fid);
-                feature.getUserData().put(RevFeature.class, revFeature);
-                feature.getUserData().put(RevFeatureType.class, featureBuilder.getType());
-
-                if (feature instanceof SimpleFeature) {
-                    return (SimpleFeature) feature;
-                }
-                return null;
-            }
-
-            private FeatureBuilder getBuilderFor(final ObjectId metadataId) {
-                FeatureBuilder featureBuilder = ftCache.get(metadataId);
-                if (featureBuilder == null) {
-                    RevFeatureType revFtype = database.getFeatureType(metadataId);
-                    featureBuilder = new FeatureBuilder(revFtype);
-                    ftCache.put(metadataId, featureBuilder);
-                }
-                return featureBuilder;
+            public Iterator<SimpleFeature> apply(Iterator<SimpleFeature> plainFeatures) {
+                return adaptToArguments(plainFeatures, defaultMetadataId);
             }
         };
 
-        Iterator<SimpleFeature> asFeatures = Iterators.transform(nodes, asFeature);
-
-        UnmodifiableIterator<SimpleFeature> filterNulls = Iterators.filter(asFeatures,
-                Predicates.notNull());
-
-        return filterNulls;
+        return new ExportFeatureIterator(nodes, database, fetchSize, executor, nThreads,
+                preserveOrder, adapter);
     }
 
     private Iterator<SimpleFeature> adaptToArguments(final Iterator<SimpleFeature> plainFeatures,
@@ -559,6 +573,52 @@ public class ExportOp extends AbstractGeoGigOp<SimpleFeatureStore> {
         return this;
     }
 
+    /**
+     * @param fetchSize the number of features to fetch from the object database at once, defaults
+     *        to {@link #DEFAULT_FETCH_SIZE}
+     * @return {@code this}
+     */
+    public ExportOp setFetchSize(int fetchSize) {
+        checkArgument(fetchSize > 0, "fetchSize must be > 0");
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /**
+     * @param decoderThreads the number of threads used to fetch, decode and adapt features in
+     *        parallel, defaults to half the available processors
+     * @return {@code this}
+     */
+    public ExportOp setDecoderThreads(int decoderThreads) {
+        checkArgument(decoderThreads > 0, "decoderThreads must be > 0");
+        this.decoderThreads = decoderThreads;
+        return this;
+    }
+
+    /**
+     * @param preserveOrder whether features shall be written to the target store in the same order
+     *        they are stored in the exported tree, defaults to {@code true}. If {@code false},
+     *        batches of features are written as soon as they're decoded
+     * @return {@code this}
+     */
+    public ExportOp setPreserveOrder(boolean preserveOrder) {
+        this.preserveOrder = preserveOrder;
+        return this;
+    }
+
+    /**
+     * @param transactionSize if greater than zero and the operation is
+     *        {@link #setTransactional(boolean) transactional}, the transaction is committed every
+     *        {@code transactionSize} features instead of once at the end of the export. Defaults to
+     *        {@code 0}. Note that if the export fails only the current batch is rolled back.
+     * @return {@code this}
+     */
+    public ExportOp setTransactionSize(int transactionSize) {
+        checkArgument(transactionSize >= 0, "transactionSize must be >= 0");
+        this.transactionSize = transactionSize;
+        return this;
+    }
+
     private static class BBoxPredicate implements Predicate<Bounded> {
 
         private final ObjectStore store;
@@ -0,0 +1,152 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.geotools.geopkg;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.Test;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevFeature;
+import org.locationtech.geogig.api.plumbing.RevObjectParse;
+import org.locationtech.geogig.api.plumbing.RevParse;
+import org.locationtech.geogig.api.porcelain.AddOp;
+import org.locationtech.geogig.api.porcelain.CommitOp;
+import org.locationtech.geogig.test.integration.RepositoryTestCase;
+
+import com.google.common.base.Optional;
+
+public class GeopkgAuditImportTest extends RepositoryTestCase {
+
+    private File geopackageFile;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        geopackageFile = new File(repositoryTempFolder.getRoot(), "test.gpkg");
+        insert(points1, points2, points3);
+        geogig.command(AddOp.class).call();
+        geogig.command(CommitOp.class).setMessage("initial").call();
+
+        geogig.command(GeopkgNativeExportOp.class).setDatabase(geopackageFile)
+                .setSourceTreeish("HEAD:" + pointsName).setTargetTableName("points")
+                .setInterchangeFormat(true).call();
+    }
+
+    private void execute(String... statements) throws SQLException {
+        try (Connection cx = DriverManager.getConnection("jdbc:sqlite:"
+                + geopackageFile.getAbsolutePath())) {
+            GeopkgFunctions.register(cx);
+            try (Statement st = cx.createStatement()) {
+                for (String sql : statements) {
+                    st.executeUpdate(sql);
+                }
+            }
+        }
+    }
+
+    private String gpkgFid(String geogigFid) {
+        return "(SELECT gpkg_fid FROM geogig_fids_points WHERE geogig_fid = '" + geogigFid + "')";
+    }
+
+    private ObjectId head() {
+        return geogig.command(RevParse.class).setRefSpec("HEAD").call().get();
+    }
+
+    @Test
+    public void testOnlyLastChangePerFeatureIsApplied() throws Exception {
+        execute("UPDATE points SET sp = 'first' WHERE fid = " + gpkgFid(idP1),
+                "UPDATE points SET sp = 'second' WHERE fid = " + gpkgFid(idP1),
+                "DELETE FROM points WHERE fid = " + gpkgFid(idP3));
+
+        List<AuditReport> reports = geogig.command(GeopkgAuditImport.class)
+                .setDatabase(geopackageFile).setCommitMessage("mobile edits").call();
+        AuditReport report = reports.get(0);
+        assertEquals(0, report.added.get());
+        assertEquals(1, report.changed.get());
+        assertEquals(1, report.removed.get());
+
+        Optional<RevFeature> feature = geogig.command(RevObjectParse.class)
+                .setRefSpec("HEAD:" + pointsName + "/" + idP1).call(RevFeature.class);
+        assertEquals("second", feature.get().getValues().get(0).get());
+
+        assertFalse(geogig.command(RevObjectParse.class)
+                .setRefSpec("HEAD:" + pointsName + "/" + idP3).call().isPresent());
+        assertTrue(geogig.command(RevObjectParse.class)
+                .setRefSpec("HEAD:" + pointsName + "/" + idP2).call().isPresent());
+    }
+
+    @Test
+    public void testNoOpChangesAreIgnored() throws Exception {
+        final ObjectId head = head();
+        execute("UPDATE points SET sp = 'changed' WHERE fid = " + gpkgFid(idP1),
+                "UPDATE points SET sp = '" + points1.getProperty("sp").getValue()
+                        + "' WHERE fid = " + gpkgFid(idP1),
+                "INSERT INTO points (sp, ip) VALUES ('new', 1)",
+                "DELETE FROM points WHERE sp = 'new'");
+
+        List<AuditReport> reports = geogig.command(GeopkgAuditImport.class)
+                .setDatabase(geopackageFile).setCommitMessage("mobile edits").call();
+        AuditReport report = reports.get(0);
+        assertEquals(0, report.added.get());
+        assertEquals(0, report.changed.get());
+        assertEquals(0, report.removed.get());
+        assertEquals(head, head());
+    }
+
+    @Test
+    public void testInsertedFeaturesGetNewIds() throws Exception {
+        // a feature whose id matches the geopackage fid the next inserted row gets
+        insertAndAdd(feature(pointsType, "5", "StringProp1_5", new Integer(5000), "POINT(5 5)"));
+        geogig.command(CommitOp.class).setMessage("numeric id").call();
+        geopackageFile.delete();
+        geogig.command(GeopkgNativeExportOp.class).setDatabase(geopackageFile)
+                .setSourceTreeish("HEAD:" + pointsName).setTargetTableName("points")
+                .setInterchangeFormat(true).call();
+        final Optional<RevFeature> existing = geogig.command(RevObjectParse.class)
+                .setRefSpec("HEAD:" + pointsName + "/5").call(RevFeature.class);
+        assertTrue(existing.isPresent());
+
+        execute("INSERT INTO points (fid, sp, ip) VALUES (5, 'new', 1)",
+                "UPDATE points SET ip = 2 WHERE fid = 5");
+
+        List<AuditReport> reports = geogig.command(GeopkgAuditImport.class)
+                .setDatabase(geopackageFile).setCommitMessage("mobile edits").call();
+        assertEquals(1, reports.get(0).added.get());
+        assertEquals(0, reports.get(0).changed.get());
+        assertEquals(existing, geogig.command(RevObjectParse.class)
+                .setRefSpec("HEAD:" + pointsName + "/5").call(RevFeature.class));
+        final ObjectId head = head();
+
+        // the new id was mapped to the geopackage fid
+        reports = geogig.command(GeopkgAuditImport.class).setDatabase(geopackageFile)
+                .setCommitMessage("mobile edits again").call();
+        assertEquals(0, reports.get(0).added.get());
+        assertEquals(head, head());
+    }
+
+    @Test
+    public void testReimportIsIdempotent() throws Exception {
+        execute("UPDATE points SET sp = 'modified' WHERE fid = " + gpkgFid(idP2));
+
+        List<AuditReport> reports = geogig.command(GeopkgAuditImport.class)
+                .setDatabase(geopackageFile).setCommitMessage("mobile edits").call();
+        assertEquals(1, reports.get(0).changed.get());
+        final ObjectId head = head();
+
+        reports = geogig.command(GeopkgAuditImport.class).setDatabase(geopackageFile)
+                .setCommitMessage("mobile edits again").call();
+        assertEquals(0, reports.get(0).changed.get());
+        assertEquals(head, head());
+    }
+}
@@ -0,0 +1,168 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.geotools.geopkg;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.geotools.geopkg.FeatureEntry;
+import org.geotools.geopkg.GeoPackage;
+import org.geotools.geopkg.geom.GeoPkgGeomReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.locationtech.geogig.api.RevFeature;
+import org.locationtech.geogig.api.plumbing.RevObjectParse;
+import org.locationtech.geogig.api.porcelain.AddOp;
+import org.locationtech.geogig.api.porcelain.CommitOp;
+import org.locationtech.geogig.test.integration.RepositoryTestCase;
+
+import com.google.common.base.Optional;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class GeopkgNativeExportOpTest extends RepositoryTestCase {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private File geopackageFile;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        geopackageFile = new File(repositoryTempFolder.getRoot(), "test.gpkg");
+        insert(points1, points2, points3);
+        geogig.command(AddOp.class).call();
+        geogig.command(CommitOp.class).setMessage("initial").call();
+    }
+
+    private Connection connect() throws SQLException {
+        Connection cx = DriverManager.getConnection("jdbc:sqlite:"
+                + geopackageFile.getAbsolutePath());
+        // needed by the spatial index triggers
+        GeopkgFunctions.register(cx);
+        return cx;
+    }
+
+    private int count(Connection cx, String sql) throws SQLException {
+        try (Statement st = cx.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        Long count = geogig.command(GeopkgNativeExportOp.class).setDatabase(geopackageFile)
+                .setSourceTreeish("HEAD:" + pointsName).setTargetTableName("points")
+                .setBatchSize(2).call();
+        assertEquals(3L, count.longValue());
+
+        try (Connection cx = connect()) {
+            assertEquals(3, count(cx, "SELECT count(*) FROM points"));
+            assertEquals(3, count(cx, "SELECT count(*) FROM geogig_fids_points"));
+            assertEquals(1, count(cx, "SELECT count(*) FROM gpkg_contents "
+                    + "WHERE table_name = 'geogig_fids_points' AND data_type = 'attributes'"));
+            assertEquals(3, count(cx, "SELECT count(*) FROM rtree_points_pp"));
+            assertEquals(1, count(cx,
+                    "SELECT count(*) FROM gpkg_geometry_columns WHERE table_name = 'points'"));
+
+            try (Statement st = cx.createStatement();
+                    ResultSet rs = st.executeQuery("SELECT m.geogig_fid, p.sp, p.ip, p.pp "
+                            + "FROM points p JOIN geogig_fids_points m ON p.fid = m.gpkg_fid "
+                            + "WHERE m.geogig_fid = '" + idP1 + "'")) {
+                assertTrue(rs.next());
+                assertEquals(points1.getProperty("sp").getValue(), rs.getString(2));
+                assertEquals(points1.getProperty("ip").getValue(), rs.getInt(3));
+                Geometry geom = new GeoPkgGeomReader(rs.getBytes(4)).get();
+                assertEquals(points1.getProperty("pp").getValue(), geom);
+            }
+        }
+
+        GeoPackage geopackage = new GeoPackage(geopackageFile);
+        try {
+            FeatureEntry entry = geopackage.feature("points");
+            assertNotNull(entry);
+            assertEquals(1, entry.getBounds().getMinX(), 0d);
+            assertEquals(3, entry.getBounds().getMaxX(), 0d);
+        } finally {
+            geopackage.close();
+        }
+    }
+
+    @Test
+    public void testExistingTable() throws Exception {
+        geogig.command(GeopkgNativeExportOp.class).setDatabase(geopackageFile)
+                .setSourceTreeish("HEAD:" + pointsName).setTargetTableName("points").call();
+
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("already exists");
+        geogig.command(GeopkgNativeExportOp.class).setDatabase(geopackageFile)
+                .setSourceTreeish("HEAD:" + pointsName).setTargetTableName("points").call();
+    }
+
+    @Test
+    public void testSpatialIndexTriggersOnPooledConnection() throws Exception {
+        geogig.command(GeopkgNativeExportOp.class).setDatabase(geopackageFile)
+                .setSourceTreeish("HEAD:" + pointsName).setTargetTableName("points").call();
+
+        final String fid = "(SELECT gpkg_fid FROM geogig_fids_points WHERE geogig_fid = '" + idP1
+                + "')";
+        GeoPackage geopackage = new GeoPackage(geopackageFile);
+        // the data source hands out pooled connections wrapping the driver's ones
+        try (Connection cx = geopackage.getDataSource().getConnection()) {
+            GeopkgFunctions.register(cx);
+            Geometry moved = new WKTReader().read("POINT(10 20)");
+            try (PreparedStatement st = cx.prepareStatement("UPDATE points SET pp = ? WHERE fid = "
+                    + fid)) {
+                st.setBytes(1, new GeopkgGeometryEncoder().encode(moved, 4326));
+                assertEquals(1, st.executeUpdate());
+            }
+            assertEquals(1, count(cx, "SELECT count(*) FROM rtree_points_pp "
+                    + "WHERE minx = 10 AND maxx = 10 AND miny = 20 AND maxy = 20"));
+
+            try (Statement st = cx.createStatement()) {
+                assertEquals(1, st.executeUpdate("DELETE FROM points WHERE fid = " + fid));
+            }
+            assertEquals(2, count(cx, "SELECT count(*) FROM rtree_points_pp"));
+        } finally {
+            geopackage.close();
+        }
+    }
+
+    @Test
+    public void testInterchangeRoundTrip() throws Exception {
+        geogig.command(GeopkgNativeExportOp.class).setDatabase(geopackageFile)
+                .setSourceTreeish("HEAD:" + pointsName).setTargetTableName("points")
+                .setInterchangeFormat(true).call();
+
+        try (Connection cx = connect(); Statement st = cx.createStatement()) {
+            st.executeUpdate("UPDATE points SET sp = 'modified' WHERE fid = "
+                    + "(SELECT gpkg_fid FROM geogig_fids_points WHERE geogig_fid = '" + idP1
+                    + "')");
+        }
+
+        List<AuditReport> reports = geogig.command(GeopkgAuditImport.class)
+                .setDatabase(geopackageFile).setCommitMessage("mobile edits").call();
+        assertEquals(1, reports.size());
+        assertEquals(1, reports.get(0).changed.get());
+
+        Optional<RevFeature> feature = geogig.command(RevObjectParse.class)
+                .setRefSpec("HEAD:" + pointsName + "/" + idP1).call(RevFeature.class);
+        assertTrue(feature.isPresent());
+        assertEquals("modified", feature.get().getValues().get(0).get());
+    }
+}
@@ -209,6 +209,27 @@ public class ExportOpTest extends RepositoryTestCase {
         return true;
     }
 
+    @Test
+    public void testExportInParallelBatches() throws Exception {
+        Feature[] points = new Feature[] { points1, points2, points3 };
+        for (Feature feature : points) {
+            insert(feature);
+        }
+        MemoryDataStore dataStore = new MemoryDataStore(pointsType);
+        final String typeName = dataStore.getTypeNames()[0];
+        SimpleFeatureSource featureSource = dataStore.getFeatureSource(typeName);
+        SimpleFeatureStore featureStore = (SimpleFeatureStore) featureSource;
+        geogig.command(ExportOp.class).setFeatureStore(featureStore).setPath(pointsName)
+                .setFetchSize(1).setDecoderThreads(2).setPreserveOrder(false)
+                .setTransactionSize(2).call();
+        featureSource = dataStore.getFeatureSource(typeName);
+        featureStore = (SimpleFeatureStore) featureSource;
+        SimpleFeatureCollection featureCollection = featureStore.getFeatures();
+        assertEquals(points.length, featureCollection.size());
+        SimpleFeatureIterator features = featureCollection.features();
+        assertTrue(collectionsAreEqual(features, points));
+    }
+
     @Test
     public void testExportFromWrongFeatureType() throws Exception {
         MemoryDataStore dataStore = new MemoryDataStore(pointsType);
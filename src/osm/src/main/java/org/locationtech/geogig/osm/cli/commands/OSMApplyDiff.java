@@ -18,6 +18,7 @@ import org.locationtech.geogig.cli.CLICommand;
 import org.locationtech.geogig.cli.CommandFailedException;
 import org.locationtech.geogig.cli.GeogigCLI;
 import org.locationtech.geogig.osm.internal.OSMApplyDiffOp;
+import org.locationtech.geogig.osm.internal.OSMApplyDiffReport;
 import org.locationtech.geogig.osm.internal.OSMReport;
 
 import com.beust.jcommander.Parameter;
@@ -58,6 +59,12 @@ public class OSMApplyDiff extends AbstractCommand implements CLICommand {
                             rep.getCount(), rep.getNodeCount(), rep.getWayCount());
                 }
                 cli.getConsole().println(msg);
+                if (rep instanceof OSMApplyDiffReport) {
+                    OSMApplyDiffReport diffReport = (OSMApplyDiffReport) rep;
+                    cli.getConsole().println(
+                            String.format("Applied in %,dms (%,.1f entities/s).",
+                                    diffReport.getElapsedMillis(), diffReport.getThroughput()));
+                }
             }
 
         } catch (RuntimeException e) {
@@ -11,26 +11,41 @@ package org.locationtech.geogig.osm.internal;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.Bucket;
 import org.locationtech.geogig.api.Context;
 import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.api.Platform;
 import org.locationtech.geogig.api.ProgressListener;
+import org.locationtech.geogig.api.RevFeature;
+import org.locationtech.geogig.api.RevFeatureType;
+import org.locationtech.geogig.api.RevFeatureTypeImpl;
+import org.locationtech.geogig.api.RevTree;
 import org.locationtech.geogig.api.SubProgressListener;
 import org.locationtech.geogig.api.plumbing.FindTreeChild;
 import org.locationtech.geogig.osm.internal.coordcache.MapdbPointCache;
 import org.locationtech.geogig.osm.internal.coordcache.PointCache;
+import org.locationtech.geogig.repository.DepthSearch;
 import org.locationtech.geogig.repository.FeatureToDelete;
 import org.locationtech.geogig.repository.WorkingTree;
+import org.locationtech.geogig.storage.BulkOpListener;
+import org.locationtech.geogig.storage.NodePathStorageOrder;
+import org.locationtech.geogig.storage.ObjectDatabase;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.PropertyDescriptor;
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
 import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
@@ -43,11 +58,20 @@ import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
 import org.openstreetmap.osmosis.core.util.FixedPrecisionCoordinateConvertor;
 import org.openstreetmap.osmosis.xml.common.CompressionMethod;
 import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
@@ -75,17 +99,40 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
 
     private static final GeometryFactory GEOMF = new GeometryFactory(PRECISION_MODEL, 4326, CSFAC);
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(OSMApplyDiffOp.class);
+
+    /**
+     * Default number of changes the diff file is processed in batches of
+     */
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+
     // new PackedCoordinateSequenceFactory());
     /**
      * The file to import
      */
     private File file;
 
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
     public OSMApplyDiffOp setDiffFile(File file) {
         this.file = file;
         return this;
     }
 
+    /**
+     * Sets the number of changes to process at once. The node coordinates needed to build the ways
+     * in each batch that are not part of the diff file are fetched from the repository in a single
+     * bulk query per batch.
+     * 
+     * @param batchSize the number of changes per batch, defaults to {@link #DEFAULT_BATCH_SIZE}
+     * @return {@code this}
+     */
+    public OSMApplyDiffOp setBatchSize(int batchSize) {
+        checkArgument(batchSize > 0, "batchSize must be > 0");
+        this.batchSize = batchSize;
+        return this;
+    }
+
     @Override
     protected Optional<OSMReport> _call() {
         checkNotNull(file);
@@ -116,7 +163,7 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
 
         ProgressListener progressListener = getProgressListener();
         ConvertAndImportSink sink = new ConvertAndImportSink(target, context, workingTree(),
-                platform(), new SubProgressListener(progressListener, 100));
+                platform(), new SubProgressListener(progressListener, 100), batchSize);
         reader.setChangeSink(sink);
 
         Thread readerThread = new Thread(reader, "osm-diff-reader-thread");
@@ -139,10 +186,16 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
             }
         };
 
+        // all the changes are inserted at once, so that each feature tree is rewritten only once
+        Stopwatch sw = Stopwatch.createStarted();
         workTree.insert(parentTreePathResolver, target, noProgressReportingListener, null, null);
+        sw.stop();
 
-        OSMReport report = new OSMReport(sink.getCount(), sink.getNodeCount(), sink.getWayCount(),
-                sink.getUnprocessedCount(), sink.getLatestChangeset(), sink.getLatestTimestamp());
+        OSMApplyDiffReport report = new OSMApplyDiffReport(sink.getCount(), sink.getNodeCount(),
+                sink.getWayCount(), sink.getUnprocessedCount(), sink.getLatestChangeset(),
+                sink.getLatestTimestamp(), sink.getPrefetchedCount(), sink.getBatchCount(),
+                sw.elapsed(TimeUnit.MILLISECONDS));
+        LOGGER.info("Applied {}: {}", file.getName(), report);
         return report;
     }
 
@@ -157,8 +210,14 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
     }
 
     /**
-     * A sink that processes OSM changes and translates the to the repository working tree
-     * 
+     * A sink that processes OSM changes and translates the to the repository working tree.
+     * <p>
+     * Changes are processed in batches of {@link OSMApplyDiffOp#setBatchSize(int) batchSize}. For
+     * each batch, the coordinates of all the nodes it contains are cached first, and then the
+     * coordinates of the nodes referenced by the batch ways that are neither in the batch nor in a
+     * previous one are resolved from the current {@code node} tree and fetched from the object
+     * database in a single bulk query. This way ways can be built regardless of whether their
+     * nodes were modified by the diff file or not, with no per node round trip to the database.
      */
     static class ConvertAndImportSink implements ChangeSink {
 
@@ -169,6 +228,21 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
             }
         };
 
+        private static final int NODE_LOCATION_FIELD_INDEX;
+        static {
+            RevFeatureType nodeType = RevFeatureTypeImpl.build(OSMUtils.nodeType());
+            ImmutableList<PropertyDescriptor> descriptors = nodeType.sortedDescriptors();
+            int index = -1;
+            for (int i = 0; i < descriptors.size(); i++) {
+                if ("location".equals(descriptors.get(i).getName().getLocalPart())) {
+                    index = i;
+                    break;
+                }
+            }
+            checkState(index > -1, "location attribute not found in node type");
+            NODE_LOCATION_FIELD_INDEX = index;
+        }
+
         private int count = 0;
 
         private int nodeCount;
@@ -189,23 +263,73 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
 
         private ProgressListener progressListener;
 
-        private WorkingTree workTree;
-
         private Geometry bbox;
 
+        private final ObjectDatabase objectDatabase;
+
+        private final DepthSearch depthSearch;
+
+        private final RevTree nodeTree;
+
+        private final RevTree wayTree;
+
+        private final int batchSize;
+
+        private List<ChangeContainer> batch;
+
+        /**
+         * Ids of the nodes whose coordinates are already in {@link #pointCache}, be it because they
+         * came in the diff file or because they were fetched from the repository. Ways are only
+         * built out of these, as the nodes deleted by the diff file are evicted from this set but
+         * can't be removed from the point cache.
+         */
+        private final Set<Long> cachedNodeIds = Sets.newHashSet();
+
+        /**
+         * Ids of the nodes deleted by the diff file so far, which are still in {@link #nodeTree}
+         * but must not be fetched from it
+         */
+        private final Set<Long> deletedNodeIds = Sets.newHashSet();
+
+        /**
+         * Ids of the nodes and ways created by the diff file so far, which are not in
+         * {@link #nodeTree} and {@link #wayTree} but can be modified later in the same diff
+         */
+        private final Set<Long> createdNodeIds = Sets.newHashSet();
+
+        private final Set<Long> createdWayIds = Sets.newHashSet();
+
+        private long prefetchedCount;
+
+        private int batchCount;
+
+        private final Stopwatch sw;
+
         public ConvertAndImportSink(QueueIterator<Feature> target, Context cmdLocator,
                 WorkingTree workTree, Platform platform, ProgressListener progressListener) {
+            this(target, cmdLocator, workTree, platform, progressListener, DEFAULT_BATCH_SIZE);
+        }
+
+        public ConvertAndImportSink(QueueIterator<Feature> target, Context cmdLocator,
+                WorkingTree workTree, Platform platform, ProgressListener progressListener,
+                int batchSize) {
             super();
+            checkArgument(batchSize > 0, "batchSize must be > 0");
             this.target = target;
-            this.workTree = workTree;
             this.progressListener = progressListener;
             this.latestChangeset = 0;
             this.latestTimestamp = 0;
+            this.batchSize = batchSize;
+            this.batch = new ArrayList<>(batchSize);
             this.pointCache = new MapdbPointCache(platform);
+            this.objectDatabase = cmdLocator.objectDatabase();
+            this.depthSearch = new DepthSearch(objectDatabase);
+
+            final RevTree workHead = workTree.getTree();
             Optional<NodeRef> waysNodeRef = cmdLocator.command(FindTreeChild.class)
-                    .setChildPath(OSMUtils.WAY_TYPE_NAME).setParent(workTree.getTree()).call();
+                    .setChildPath(OSMUtils.WAY_TYPE_NAME).setParent(workHead).call();
             Optional<NodeRef> nodesNodeRef = cmdLocator.command(FindTreeChild.class)
-                    .setChildPath(OSMUtils.NODE_TYPE_NAME).setParent(workTree.getTree()).call();
+                    .setChildPath(OSMUtils.NODE_TYPE_NAME).setParent(workHead).call();
             checkArgument(waysNodeRef.isPresent() || nodesNodeRef.isPresent(),
                     "There is no OSM data currently in the repository");
             Envelope envelope = new Envelope();
@@ -216,6 +340,11 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
                 nodesNodeRef.get().expand(envelope);
             }
             bbox = GEOMF.toGeometry(envelope);
+            this.wayTree = waysNodeRef.isPresent() ? objectDatabase.getTree(waysNodeRef.get()
+                    .getObjectId()) : RevTree.EMPTY;
+            this.nodeTree = nodesNodeRef.isPresent() ? objectDatabase.getTree(nodesNodeRef.get()
+                    .getObjectId()) : RevTree.EMPTY;
+            this.sw = Stopwatch.createStarted();
         }
 
         public long getUnprocessedCount() {
@@ -234,9 +363,32 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
             return wayCount;
         }
 
+        /**
+         * @return the number of node features fetched from the repository to build the diff ways
+         */
+        public long getPrefetchedCount() {
+            return prefetchedCount;
+        }
+
+        /**
+         * @return the number of batches the diff file changes were processed in
+         */
+        public int getBatchCount() {
+            return batchCount;
+        }
+
+        /**
+         * @return the time elapsed processing the diff file changes, in milliseconds
+         */
+        public long getElapsedMillis() {
+            return sw.elapsed(TimeUnit.MILLISECONDS);
+        }
+
         @Override
         public void complete() {
             try {
+                flush();
+                sw.stop();
                 progressListener.setProgress(count);
                 progressListener.complete();
             } finally {
@@ -259,6 +411,141 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
                 target.cancel();
                 throw new OsmosisRuntimeException("Cancelled by user");
             }
+            batch.add(container);
+            if (batch.size() == batchSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            final List<ChangeContainer> changes = this.batch;
+            this.batch = new ArrayList<>(batchSize);
+            batchCount++;
+
+            // cache the batch nodes first, so the batch ways can be built out of them
+            Set<Long> missingNodeIds = Sets.newHashSet();
+            for (ChangeContainer container : changes) {
+                Entity entity = container.getEntityContainer().getEntity();
+                if (entity instanceof Node && !ChangeAction.Delete.equals(container.getAction())) {
+                    cacheCoordinate((Node) entity);
+                }
+            }
+            for (ChangeContainer container : changes) {
+                Entity entity = container.getEntityContainer().getEntity();
+                if (entity instanceof Way && !ChangeAction.Delete.equals(container.getAction())) {
+                    for (WayNode wayNode : ((Way) entity).getWayNodes()) {
+                        Long nodeId = Long.valueOf(wayNode.getNodeId());
+                        if (!cachedNodeIds.contains(nodeId) && !deletedNodeIds.contains(nodeId)) {
+                            missingNodeIds.add(nodeId);
+                        }
+                    }
+                }
+            }
+            prefetchNodes(missingNodeIds);
+
+            for (ChangeContainer container : changes) {
+                apply(container);
+            }
+        }
+
+        private void cacheCoordinate(Node node) {
+            OSMCoordinateSequence cs = CSFAC.create(1, 2);
+            cs.setOrdinate(0, 0, node.getLongitude());
+            cs.setOrdinate(0, 1, node.getLatitude());
+            cacheCoordinate(node.getId(), cs);
+        }
+
+        private void cacheCoordinate(long nodeId, OSMCoordinateSequence coord) {
+            Long id = Long.valueOf(nodeId);
+            pointCache.put(id, coord);
+            cachedNodeIds.add(id);
+            deletedNodeIds.remove(id);
+        }
+
+        /**
+         * Resolves the given node ids against the {@code node} tree in a single walk, and fetches
+         * their coordinates from the object database with a single {@link ObjectDatabase#getAll}
+         * call.
+         */
+        private void prefetchNodes(Set<Long> nodeIds) {
+            if (nodeIds.isEmpty() || nodeTree.isEmpty()) {
+                return;
+            }
+            Map<String, Long> names = Maps.newHashMap();
+            for (Long nodeId : nodeIds) {
+                names.put(nodeId.toString(), nodeId);
+            }
+            // in storage order the ids that fall in the same bucket are contiguous at every depth
+            List<String> sortedNames = NodePathStorageOrder.INSTANCE.sortedCopy(names.keySet());
+            Map<ObjectId, Long> featureIds = Maps.newHashMap();
+            findNodes(nodeTree, sortedNames, 0, names, featureIds);
+            if (featureIds.isEmpty()) {
+                return;
+            }
+            Iterator<RevFeature> features = objectDatabase.getAll(featureIds.keySet(),
+                    BulkOpListener.NOOP_LISTENER, RevFeature.class);
+            while (features.hasNext()) {
+                RevFeature feature = features.next();
+                Optional<Object> location = feature.getValues().get(NODE_LOCATION_FIELD_INDEX);
+                if (location.isPresent()) {
+                    Long nodeId = featureIds.get(feature.getId());
+                    Point point = (Point) location.get();
+                    cacheCoordinate(nodeId.longValue(),
+                            new OSMCoordinateSequence(point.getCoordinates()));
+                    prefetchedCount++;
+                }
+            }
+        }
+
+        /**
+         * Finds the nodes named {@code sortedNames} in {@code tree}, fetching the bucket trees of
+         * each level they fall in with a single {@link ObjectDatabase#getAll} call.
+         * 
+         * @param sortedNames the node names to find, in {@link NodePathStorageOrder storage order}
+         * @param nodeIds the node ids by node name
+         * @param target where to add the object ids of the nodes found, mapped to the node ids
+         */
+        private void findNodes(RevTree tree, List<String> sortedNames, final int depth,
+                Map<String, Long> nodeIds, Map<ObjectId, Long> target) {
+
+            if (tree.isEmpty()) {
+                return;
+            }
+            if (!tree.buckets().isPresent()) {
+                if (tree.features().isPresent()) {
+                    for (org.locationtech.geogig.api.Node node : tree.features().get()) {
+                        Long nodeId = nodeIds.get(node.getName());
+                        if (nodeId != null) {
+                            target.put(node.getObjectId(), nodeId);
+                        }
+                    }
+                }
+                return;
+            }
+            final ImmutableSortedMap<Integer, Bucket> buckets = tree.buckets().get();
+            final ListMultimap<ObjectId, String> namesByBucket = LinkedListMultimap.create();
+            for (String name : sortedNames) {
+                Integer bucketIndex = NodePathStorageOrder.INSTANCE.bucket(name, depth);
+                Bucket bucket = buckets.get(bucketIndex);
+                if (bucket != null) {
+                    namesByBucket.put(bucket.getObjectId(), name);
+                }
+            }
+            if (namesByBucket.isEmpty()) {
+                return;
+            }
+            List<RevTree> bucketTrees = ImmutableList.copyOf(objectDatabase.getAll(
+                    namesByBucket.keySet(), BulkOpListener.NOOP_LISTENER, RevTree.class));
+            for (RevTree bucketTree : bucketTrees) {
+                findNodes(bucketTree, namesByBucket.get(bucketTree.getId()), depth + 1, nodeIds,
+                        target);
+            }
+        }
+
+        private void apply(ChangeContainer container) {
             final EntityContainer entityContainer = container.getEntityContainer();
             final Entity entity = entityContainer.getEntity();
             final ChangeAction changeAction = container.getAction();
@@ -267,16 +554,25 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
                         .wayType();
                 String id = Long.toString(entity.getId());
                 target.put(new FeatureToDelete(ft, id));
+                createdIds(entity).remove(Long.valueOf(entity.getId()));
+                if (entity instanceof Node) {
+                    cachedNodeIds.remove(Long.valueOf(entity.getId()));
+                    deletedNodeIds.add(Long.valueOf(entity.getId()));
+                }
                 return;
             }
+            if (entity instanceof Node && !cachedNodeIds.contains(Long.valueOf(entity.getId()))) {
+                // deleted earlier in the same batch, so evicted after the batch nodes were cached
+                cacheCoordinate((Node) entity);
+            }
             if (changeAction.equals(ChangeAction.Modify)) {
-                // Check that the feature to modify exist. If so, we will just treat it as an
-                // addition, overwriting the previous feature
-                SimpleFeatureType ft = entity instanceof Node ? OSMUtils.nodeType() : OSMUtils
-                        .wayType();
-                String path = ft.getName().getLocalPart();
-                Optional<org.locationtech.geogig.api.Node> opt = workTree.findUnstaged(path);
-                if (!opt.isPresent()) {
+                // Check that the feature to modify exist, either in the repository or created
+                // earlier in the diff. If so, we will just treat it as an addition, overwriting
+                // the previous feature
+                RevTree typeTree = entity instanceof Node ? nodeTree : wayTree;
+                String name = Long.toString(entity.getId());
+                if (!createdIds(entity).contains(Long.valueOf(entity.getId()))
+                        && !depthSearch.getDirectChild(typeTree, name, 0).isPresent()) {
                     return;
                 }
             }
@@ -300,15 +596,21 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
                 return;
             }
             if (geom != null) {
-                System.err.printf("%s within %s? %s\n", geom, bbox, geom.within(bbox));
                 if (changeAction.equals(ChangeAction.Create) && geom.within(bbox)
                         || changeAction.equals(ChangeAction.Modify)) {
                     Feature feature = converter.toFeature(entity, geom);
                     target.put(feature);
+                    if (changeAction.equals(ChangeAction.Create)) {
+                        createdIds(entity).add(Long.valueOf(entity.getId()));
+                    }
                 }
             }
         }
 
+        private Set<Long> createdIds(Entity entity) {
+            return entity instanceof Node ? createdNodeIds : createdWayIds;
+        }
+
         /**
          * returns the latest timestamp of all the entities processed so far
          * 
@@ -343,7 +645,6 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
             cs.setOrdinate(0, 0, longitude);
             cs.setOrdinate(0, 1, latitude);
             Point pt = GEOMF.createPoint(cs);
-            pointCache.put(Long.valueOf(node.getId()), cs);
             return pt;
         }
 
@@ -361,6 +662,11 @@ public class OSMApplyDiffOp extends AbstractGeoGigOp<Optional<OSMReport>> {
             }
 
             final List<Long> ids = Lists.transform(nodes, NODELIST_TO_ID_LIST);
+            if (!cachedNodeIds.containsAll(ids)) {
+                // missing or deleted nodes, whose coordinates may still be in the point cache
+                unableToProcessCount++;
+                return null;
+            }
 
             try {
                 CoordinateSequence coordinates = pointCache.get(ids);
@@ -0,0 +1,70 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.osm.internal;
+
+/**
+ * An {@link OSMReport} for {@link OSMApplyDiffOp} that in addition to the entity counts keeps the
+ * throughput figures of applying a single diff file.
+ */
+public class OSMApplyDiffReport extends OSMReport {
+
+    private long prefetchedNodeCount;
+
+    private int batchCount;
+
+    private long elapsedMillis;
+
+    public OSMApplyDiffReport(long count, long nodeCount, long wayCount, long unprocessedCount,
+            long latestChangeset, long latestTimestamp, long prefetchedNodeCount, int batchCount,
+            long elapsedMillis) {
+        super(count, nodeCount, wayCount, unprocessedCount, latestChangeset, latestTimestamp);
+        this.prefetchedNodeCount = prefetchedNodeCount;
+        this.batchCount = batchCount;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * The number of nodes not present in the diff file whose coordinates were fetched from the
+     * repository in order to build the diff ways
+     */
+    public long getPrefetchedNodeCount() {
+        return prefetchedNodeCount;
+    }
+
+    /**
+     * The number of batches the diff file changes were processed in
+     */
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * The time it took to apply the diff file to the working tree, in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * The number of entities applied per second
+     */
+    public double getThroughput() {
+        return elapsedMillis == 0 ? getCount() : 1000D * getCount() / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%,d entities (%,d nodes, %,d ways, %,d not applied) in %,dms (%,.1f entities/s), "
+                        + "%,d nodes prefetched in %,d batches", getCount(), getNodeCount(),
+                getWayCount(), getUnpprocessedCount(), elapsedMillis, getThroughput(),
+                prefetchedNodeCount, batchCount);
+    }
+}
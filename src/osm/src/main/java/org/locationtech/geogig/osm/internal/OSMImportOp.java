@@ -24,12 +24,13 @@ import java.util.concurrent.TimeUnit;
 import org.eclipse.jdt.annotation.Nullable;
 import org.locationtech.geogig.api.AbstractGeoGigOp;
 import org.locationtech.geogig.api.ObjectId;
-import org.locationtech.geogig.api.Platform;
 import org.locationtech.geogig.api.ProgressListener;
 import org.locationtech.geogig.api.SubProgressListener;
 import org.locationtech.geogig.api.hooks.Hookable;
 import org.locationtech.geogig.api.porcelain.AddOp;
+import org.locationtech.geogig.api.porcelain.ConfigGet;
 import org.locationtech.geogig.api.porcelain.CommitOp;
+import org.locationtech.geogig.osm.internal.coordcache.FlatNodesPointCache;
 import org.locationtech.geogig.osm.internal.coordcache.MapdbPointCache;
 import org.locationtech.geogig.osm.internal.coordcache.PointCache;
 import org.locationtech.geogig.osm.internal.log.AddOSMLogEntry;
@@ -82,6 +83,12 @@ public class OSMImportOp extends AbstractGeoGigOp<Optional<OSMReport>> {
 
     private static final GeometryFactory GEOMF = new GeometryFactory(PRECISION_MODEL, 4326, CSFAC);
 
+    /**
+     * Config key for the node coordinates cache used while importing, {@code mapdb} (the default)
+     * or {@code flatnodes}, see {@link FlatNodesPointCache}
+     */
+    public static final String POINT_CACHE_CONFIG_KEY = "osm.pointcache";
+
     /**
      * The filter to use if calling the overpass API
      */
@@ -319,7 +326,8 @@ public class OSMImportOp extends AbstractGeoGigOp<Optional<OSMReport>> {
                 timeoutUnit);
 
         ProgressListener progressListener = getProgressListener();
-        ConvertAndImportSink sink = new ConvertAndImportSink(converter, iterator, platform(),
+        PointCache pointCache = createPointCache();
+        ConvertAndImportSink sink = new ConvertAndImportSink(converter, iterator, pointCache,
                 mapping, noRaw, new SubProgressListener(progressListener, 100));
         reader.setSink(sink);
 
@@ -367,6 +375,18 @@ public class OSMImportOp extends AbstractGeoGigOp<Optional<OSMReport>> {
         return CompressionMethod.None;
     }
 
+    private PointCache createPointCache() {
+        final String type = command(ConfigGet.class).setName(POINT_CACHE_CONFIG_KEY).call()
+                .or("mapdb");
+        if ("flatnodes".equals(type)) {
+            return new FlatNodesPointCache(platform());
+        }
+        Preconditions.checkArgument("mapdb".equals(type),
+                "Invalid value for %s: '%s', expected 'mapdb' or 'flatnodes'",
+                POINT_CACHE_CONFIG_KEY, type);
+        return new MapdbPointCache(platform());
+    }
+
     /**
      * A sink that processes OSM entities by converting them to GeoGig features and inserting them
      * into the repository working tree
@@ -408,7 +428,8 @@ public class OSMImportOp extends AbstractGeoGigOp<Optional<OSMReport>> {
         private Stopwatch sw;
 
         public ConvertAndImportSink(EntityConverter converter, QueueIterator<Feature> target,
-                Platform platform, Mapping mapping, boolean noRaw, ProgressListener progressListener) {
+                PointCache pointCache, Mapping mapping, boolean noRaw,
+                ProgressListener progressListener) {
             super();
             this.converter = converter;
             this.target = target;
@@ -417,8 +438,7 @@ public class OSMImportOp extends AbstractGeoGigOp<Optional<OSMReport>> {
             this.progressListener = progressListener;
             this.latestChangeset = 0;
             this.latestTimestamp = 0;
-            // this.pointCache = new MappedPointCache(platform);
-            this.pointCache = new MapdbPointCache(platform);
+            this.pointCache = pointCache;
             this.sw = Stopwatch.createStarted();
         }
 
@@ -11,6 +11,7 @@ package org.locationtech.geogig.osm.internal;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +35,8 @@ import org.locationtech.geogig.osm.internal.MappingRule.DefaultField;
 import org.locationtech.geogig.osm.internal.log.OSMMappingLogEntry;
 import org.locationtech.geogig.osm.internal.log.ReadOSMMapping;
 import org.locationtech.geogig.osm.internal.log.ReadOSMMappingLogEntry;
+import org.locationtech.geogig.storage.BulkOpListener;
+import org.locationtech.geogig.storage.ObjectDatabase;
 import org.opengis.feature.Property;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -44,6 +47,7 @@ import com.beust.jcommander.internal.Maps;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
@@ -103,6 +107,11 @@ public class OSMUnmapOp extends AbstractGeoGigOp<RevTree> {
         throw new RuntimeException("wrong field name");
     }
 
+    /**
+     * Number of mapped features fetched from the object database at once
+     */
+    private static final int BATCH_SIZE = 1000;
+
     private String path;
 
     private Mapping mapping;
@@ -136,29 +145,20 @@ public class OSMUnmapOp extends AbstractGeoGigOp<RevTree> {
                 .setStrategy(Strategy.FEATURES_ONLY).call();
 
         FeatureMapFlusher flusher = new FeatureMapFlusher(workingTree());
-        while (iter.hasNext()) {
-            NodeRef node = iter.next();
-            RevFeature revFeature = command(RevObjectParse.class).setObjectId(node.getObjectId())
-                    .call(RevFeature.class).get();
-            RevFeatureType revFeatureType = command(RevObjectParse.class)
-                    .setObjectId(node.getMetadataId()).call(RevFeatureType.class).get();
-            List<PropertyDescriptor> descriptors = revFeatureType.sortedDescriptors();
-            ImmutableList<Optional<Object>> values = revFeature.getValues();
-            SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(
-                    (SimpleFeatureType) revFeatureType.type());
-            String id = null;
-            for (int i = 0; i < descriptors.size(); i++) {
-                PropertyDescriptor descriptor = descriptors.get(i);
-                if (descriptor.getName().getLocalPart().equals("id")) {
-                    id = values.get(i).get().toString();
-                }
-                Optional<Object> value = values.get(i);
-                featureBuilder.set(descriptor.getName(), value.orNull());
+        Map<ObjectId, RevFeatureType> featureTypes = new HashMap<>();
+        Iterator<List<NodeRef>> batches = Iterators.partition(iter, BATCH_SIZE);
+        while (batches.hasNext()) {
+            List<NodeRef> batch = batches.next();
+            Map<ObjectId, RevFeature> revFeatures = getFeatures(batch);
+            for (NodeRef node : batch) {
+                RevFeature revFeature = revFeatures.get(node.getObjectId());
+                Preconditions.checkState(revFeature != null, "Feature %s not found",
+                        node.getObjectId());
+                RevFeatureType revFeatureType = getFeatureType(node.getMetadataId(),
+                        featureTypes);
+                SimpleFeature feature = toFeature(revFeature, revFeatureType);
+                unmapFeature(feature, flusher);
             }
-            Preconditions.checkNotNull(id, "No 'id' attribute found");
-            SimpleFeature feature = featureBuilder.buildFeature(id);
-            unmapFeature(feature, flusher);
-
         }
 
         flusher.flushAll();
@@ -179,24 +179,10 @@ public class OSMUnmapOp extends AbstractGeoGigOp<RevTree> {
                     ObjectId featureId = diff.getOldObject().getNode().getObjectId();
                     RevFeature revFeature = command(RevObjectParse.class).setObjectId(featureId)
                             .call(RevFeature.class).get();
-                    RevFeatureType revFeatureType = command(RevObjectParse.class)
-                            .setObjectId(diff.getOldObject().getMetadataId())
-                            .call(RevFeatureType.class).get();
-                    List<PropertyDescriptor> descriptors = revFeatureType.sortedDescriptors();
-                    ImmutableList<Optional<Object>> values = revFeature.getValues();
-                    SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(
-                            (SimpleFeatureType) revFeatureType.type());
-                    String id = null;
-                    for (int i = 0; i < descriptors.size(); i++) {
-                        PropertyDescriptor descriptor = descriptors.get(i);
-                        if (descriptor.getName().getLocalPart().equals("id")) {
-                            id = values.get(i).get().toString();
-                        }
-                        Optional<Object> value = values.get(i);
-                        featureBuilder.set(descriptor.getName(), value.orNull());
-                    }
-                    Preconditions.checkNotNull(id, "No 'id' attribute found");
-                    SimpleFeature feature = featureBuilder.buildFeature(id);
+                    RevFeatureType revFeatureType = getFeatureType(diff.getOldObject()
+                            .getMetadataId(), featureTypes);
+                    SimpleFeature feature = toFeature(revFeature, revFeatureType);
+                    String id = feature.getID();
                     Class<?> clazz = feature.getDefaultGeometryProperty().getType().getBinding();
                     String deletePath = clazz.equals(Point.class) ? OSMUtils.NODE_TYPE_NAME
                             : OSMUtils.WAY_TYPE_NAME;
@@ -209,6 +195,52 @@ public class OSMUnmapOp extends AbstractGeoGigOp<RevTree> {
 
     }
 
+    /**
+     * Fetches all the features in the batch with a single {@link ObjectDatabase#getAll} call
+     */
+    private Map<ObjectId, RevFeature> getFeatures(List<NodeRef> batch) {
+        Set<ObjectId> ids = new HashSet<>();
+        for (NodeRef ref : batch) {
+            ids.add(ref.getObjectId());
+        }
+        Iterator<RevFeature> features = objectDatabase().getAll(ids,
+                BulkOpListener.NOOP_LISTENER, RevFeature.class);
+        Map<ObjectId, RevFeature> result = new HashMap<>();
+        while (features.hasNext()) {
+            RevFeature feature = features.next();
+            result.put(feature.getId(), feature);
+        }
+        return result;
+    }
+
+    private RevFeatureType getFeatureType(ObjectId metadataId, Map<ObjectId, RevFeatureType> cache) {
+        RevFeatureType type = cache.get(metadataId);
+        if (type == null) {
+            type = command(RevObjectParse.class).setObjectId(metadataId)
+                    .call(RevFeatureType.class).get();
+            cache.put(metadataId, type);
+        }
+        return type;
+    }
+
+    private SimpleFeature toFeature(RevFeature revFeature, RevFeatureType revFeatureType) {
+        List<PropertyDescriptor> descriptors = revFeatureType.sortedDescriptors();
+        ImmutableList<Optional<Object>> values = revFeature.getValues();
+        SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(
+                (SimpleFeatureType) revFeatureType.type());
+        String id = null;
+        for (int i = 0; i < descriptors.size(); i++) {
+            PropertyDescriptor descriptor = descriptors.get(i);
+            if (descriptor.getName().getLocalPart().equals("id")) {
+                id = values.get(i).get().toString();
+            }
+            Optional<Object> value = values.get(i);
+            featureBuilder.set(descriptor.getName(), value.orNull());
+        }
+        Preconditions.checkNotNull(id, "No 'id' attribute found");
+        return featureBuilder.buildFeature(id);
+    }
+
     private void unmapFeature(SimpleFeature feature, FeatureMapFlusher mapFlusher) {
         Class<?> clazz = feature.getDefaultGeometryProperty().getType().getBinding();
         if (clazz.equals(Point.class)) {
@@ -0,0 +1,218 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.osm.internal.coordcache;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.locationtech.geogig.api.Platform;
+import org.locationtech.geogig.osm.internal.OSMCoordinateSequence;
+import org.locationtech.geogig.osm.internal.OSMCoordinateSequenceFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+
+/**
+ * A {@link PointCache} that stores node coordinates in a sparse, memory mapped "flat nodes" file
+ * directly indexed by node id, as done by other OSM tools for planet-sized imports.
+ * <p>
+ * Each node takes {@link #RECSIZE 8 bytes} (the two fixed precision ordinates) at offset
+ * {@code nodeId * 8}, so both {@link #put} and {@link #get} are constant time lookups with no
+ * per-coordinate object allocation. The file is mapped in segments of {@link #SEGMENT_SIZE} bytes
+ * that are only created when a node id falling on them is first added, and relies on the
+ * filesystem supporting sparse files so that unused id ranges take no disk space.
+ * <p>
+ * The x ordinate is stored with its sign bit flipped, so that the zero filled regions of the file
+ * decode to {@link Integer#MIN_VALUE}, which is out of the range of any valid fixed precision
+ * longitude, and hence can be told apart from a node at {@code 0, 0}.
+ * <p>
+ * Negative node ids (as assigned by editors to newly created entities) can't be indexed this way
+ * and are kept in a small heap based map instead.
+ */
+public class FlatNodesPointCache implements PointCache {
+
+    private static final Random RANDOM = new Random();
+
+    private static final OSMCoordinateSequenceFactory CSFAC = new OSMCoordinateSequenceFactory();
+
+    static final int RECSIZE = 8;// 2 * sizeOf(int)
+
+    private static final int SEGMENT_BITS = 24;
+
+    private static final long NODES_PER_SEGMENT = 1L << SEGMENT_BITS;
+
+    private static final long NODE_INDEX_MASK = NODES_PER_SEGMENT - 1;
+
+    /**
+     * Size in bytes of each mapped segment of the flat nodes file (128MB)
+     */
+    static final long SEGMENT_SIZE = NODES_PER_SEGMENT * RECSIZE;
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private File parentDir;
+
+    private File nodesFile;
+
+    private RandomAccessFile randomAccessFile;
+
+    private FileChannel channel;
+
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    private final Map<Long, int[]> negativeIds = Maps.newHashMap();
+
+    public FlatNodesPointCache(Platform platform) {
+        final File tmpDir = platform.getTempDir();
+        checkState(tmpDir != null && tmpDir.isDirectory());
+        synchronized (RANDOM) {
+            this.parentDir = new File(tmpDir, "osmFlatNodes_" + Math.abs(RANDOM.nextInt()));
+        }
+        checkState(parentDir.exists() || parentDir.mkdirs());
+        this.parentDir.deleteOnExit();
+
+        this.nodesFile = new File(parentDir, "nodes.flat");
+        this.nodesFile.deleteOnExit();
+        try {
+            checkState(nodesFile.createNewFile(), "unable to create flat nodes file");
+            this.randomAccessFile = new RandomAccessFile(nodesFile, "rw");
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        this.channel = randomAccessFile.getChannel();
+    }
+
+    @Override
+    public void put(Long nodeId, OSMCoordinateSequence coord) {
+        Preconditions.checkNotNull(nodeId, "id is null");
+        Preconditions.checkNotNull(coord, "coord is null");
+        Preconditions.checkArgument(1 == coord.size(), "coord list size is not 1");
+        checkState(channel != null, "cache is disposed");
+
+        final long id = nodeId.longValue();
+        final int[] ordinates = coord.ordinates();
+        if (id < 0) {
+            synchronized (negativeIds) {
+                negativeIds.put(nodeId, new int[] { ordinates[0], ordinates[1] });
+            }
+            return;
+        }
+        final MappedByteBuffer segment = segmentForWrite(id);
+        final int offset = offset(id);
+        segment.putInt(offset, ordinates[0] ^ Integer.MIN_VALUE);
+        segment.putInt(offset + 4, ordinates[1]);
+    }
+
+    @Override
+    public OSMCoordinateSequence get(List<Long> ids) {
+        Preconditions.checkNotNull(ids, "ids is null");
+
+        final int size = ids.size();
+        final OSMCoordinateSequence sequence = CSFAC.create(size);
+        final int[] ordinates = sequence.ordinates();
+        final MappedByteBuffer[] segments = this.segments;
+
+        for (int index = 0; index < size; index++) {
+            final long id = ids.get(index).longValue();
+            final int x, y;
+            if (id < 0) {
+                int[] coord;
+                synchronized (negativeIds) {
+                    coord = negativeIds.get(Long.valueOf(id));
+                }
+                x = coord == null ? EMPTY : coord[0];
+                y = coord == null ? EMPTY : coord[1];
+            } else {
+                final int segmentIndex = (int) (id >>> SEGMENT_BITS);
+                if (segmentIndex < segments.length && segments[segmentIndex] != null) {
+                    final MappedByteBuffer segment = segments[segmentIndex];
+                    final int offset = offset(id);
+                    x = segment.getInt(offset) ^ Integer.MIN_VALUE;
+                    y = segment.getInt(offset + 4);
+                } else {
+                    x = EMPTY;
+                    y = EMPTY;
+                }
+            }
+            if (x == EMPTY) {
+                throw new IllegalArgumentException("Node #" + id + " not found");
+            }
+            ordinates[2 * index] = x;
+            ordinates[2 * index + 1] = y;
+        }
+        return sequence;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            Closeables.close(channel, true);
+            Closeables.close(randomAccessFile, true);
+        } catch (IOException e) {
+            //
+        }
+        channel = null;
+        segments = new MappedByteBuffer[0];
+        synchronized (negativeIds) {
+            negativeIds.clear();
+        }
+        nodesFile.delete();
+        parentDir.delete();
+    }
+
+    private static int offset(final long nodeId) {
+        return (int) ((nodeId & NODE_INDEX_MASK) * RECSIZE);
+    }
+
+    private MappedByteBuffer segmentForWrite(final long nodeId) {
+        final int segmentIndex = (int) (nodeId >>> SEGMENT_BITS);
+        MappedByteBuffer[] segments = this.segments;
+        if (segmentIndex < segments.length && segments[segmentIndex] != null) {
+            return segments[segmentIndex];
+        }
+        return mapSegment(segmentIndex);
+    }
+
+    private synchronized MappedByteBuffer mapSegment(final int segmentIndex) {
+        MappedByteBuffer[] segments = this.segments;
+        if (segmentIndex >= segments.length) {
+            segments = Arrays.copyOf(segments, segmentIndex + 1);
+        } else if (segments[segmentIndex] != null) {
+            return segments[segmentIndex];
+        } else {
+            segments = segments.clone();
+        }
+        final long position = SEGMENT_SIZE * segmentIndex;
+        MappedByteBuffer segment;
+        try {
+            segment = channel.map(MapMode.READ_WRITE, position, SEGMENT_SIZE);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        segments[segmentIndex] = segment;
+        this.segments = segments;
+        return segment;
+    }
+}
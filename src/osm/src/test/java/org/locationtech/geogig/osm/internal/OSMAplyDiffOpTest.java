@@ -10,6 +10,7 @@
 package org.locationtech.geogig.osm.internal;
 
 import java.io.File;
+import java.io.PrintWriter;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -82,4 +83,111 @@ public class OSMAplyDiffOpTest extends RepositoryTestCase {
         assertFalse(revFeature.isPresent());
 
     }
+
+    @Test
+    public void testApplyChangesetWithWayOnRepositoryNodes() throws Exception {
+        String filename = getClass().getResource("nodes_for_changeset2.xml").getFile();
+        File file = new File(filename);
+        geogig.command(OSMImportOp.class).setDataSource(file.getAbsolutePath()).call();
+
+        String changesetFilename = getClass().getResource("changeset_way_existing_nodes.xml")
+                .getFile();
+        OSMReport report = geogig.command(OSMApplyDiffOp.class)
+                .setDiffFile(new File(changesetFilename)).setBatchSize(1).call().get();
+        assertEquals(0, report.getUnpprocessedCount());
+        assertEquals(2, report.getCount());
+        assertTrue(report instanceof OSMApplyDiffReport);
+        OSMApplyDiffReport diffReport = (OSMApplyDiffReport) report;
+        // the way nodes not in the diff file are fetched from the repository
+        assertEquals(3, diffReport.getPrefetchedNodeCount());
+        assertEquals(2, diffReport.getBatchCount());
+
+        Optional<RevFeature> revFeature = geogig.command(RevObjectParse.class)
+                .setRefSpec("WORK_HEAD:way/51502278").call(RevFeature.class);
+        assertTrue(revFeature.isPresent());
+    }
+
+    @Test
+    public void testApplyChangesetWithWayOnManyRepositoryNodes() throws Exception {
+        // enough nodes for the node tree to be split in buckets
+        File nodesFile = repositoryTempFolder.newFile("many_nodes.xml");
+        PrintWriter writer = new PrintWriter(nodesFile, "UTF-8");
+        try {
+            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            writer.println("<osm version=\"0.6\">");
+            for (int i = 1; i <= 2000; i++) {
+                writer.printf("  <node id=\"%d\" lat=\"%d.%04d\" lon=\"7.%04d\" version=\"1\" "
+                        + "timestamp=\"2012-12-09T23:55:20Z\" changeset=\"1\" uid=\"1\" "
+                        + "user=\"u\"/>%n", i, 50 + i / 1000, i % 1000, i);
+            }
+            writer.println("</osm>");
+        } finally {
+            writer.close();
+        }
+        geogig.command(OSMImportOp.class).setDataSource(nodesFile.getAbsolutePath()).call();
+
+        File changesetFile = repositoryTempFolder.newFile("many_nodes_changeset.xml");
+        writer = new PrintWriter(changesetFile, "UTF-8");
+        try {
+            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            writer.println("<osmChange version=\"0.6\"><create>");
+            writer.println("<way id=\"1\" version=\"1\" timestamp=\"2012-12-10T10:12:01Z\" "
+                    + "changeset=\"2\" uid=\"1\" user=\"u\">");
+            for (int id : new int[] { 1999, 3, 1500, 27, 998 }) {
+                writer.printf("<nd ref=\"%d\"/>%n", id);
+            }
+            writer.println("<tag k=\"highway\" v=\"residential\"/></way>");
+            writer.println("</create></osmChange>");
+        } finally {
+            writer.close();
+        }
+        OSMReport report = geogig.command(OSMApplyDiffOp.class).setDiffFile(changesetFile)
+                .call().get();
+        assertEquals(0, report.getUnpprocessedCount());
+        assertEquals(5, ((OSMApplyDiffReport) report).getPrefetchedNodeCount());
+
+        Optional<RevFeature> revFeature = geogig.command(RevObjectParse.class)
+                .setRefSpec("WORK_HEAD:way/1").call(RevFeature.class);
+        assertTrue(revFeature.isPresent());
+    }
+
+    @Test
+    public void testApplyChangesetWithWayOnDeletedNode() throws Exception {
+        String filename = getClass().getResource("nodes_for_changeset2.xml").getFile();
+        File file = new File(filename);
+        geogig.command(OSMImportOp.class).setDataSource(file.getAbsolutePath()).call();
+
+        // the node is deleted in an earlier batch than the way, it must not be fetched from the
+        // repository nor taken from the point cache
+        String changesetFilename = getClass().getResource("changeset_delete_way_node.xml")
+                .getFile();
+        OSMReport report = geogig.command(OSMApplyDiffOp.class)
+                .setDiffFile(new File(changesetFilename)).setBatchSize(1).call().get();
+        assertEquals(1, report.getUnpprocessedCount());
+
+        Optional<RevFeature> revFeature = geogig.command(RevObjectParse.class)
+                .setRefSpec("WORK_HEAD:node/2059114068").call(RevFeature.class);
+        assertFalse(revFeature.isPresent());
+        revFeature = geogig.command(RevObjectParse.class).setRefSpec("WORK_HEAD:way/51502279")
+                .call(RevFeature.class);
+        assertFalse(revFeature.isPresent());
+    }
+
+    @Test
+    public void testApplyChangesetModifyingCreatedNode() throws Exception {
+        String filename = getClass().getResource("nodes_for_changeset2.xml").getFile();
+        File file = new File(filename);
+        geogig.command(OSMImportOp.class).setDataSource(file.getAbsolutePath()).call();
+
+        String changesetFilename = getClass().getResource("changeset_create_then_modify.xml")
+                .getFile();
+        OSMReport report = geogig.command(OSMApplyDiffOp.class)
+                .setDiffFile(new File(changesetFilename)).call().get();
+        assertEquals(2, report.getCount());
+
+        Optional<RevFeature> revFeature = geogig.command(RevObjectParse.class)
+                .setRefSpec("WORK_HEAD:node/345117527").call(RevFeature.class);
+        assertTrue(revFeature.isPresent());
+        assertTrue(revFeature.get().getValues().contains(Optional.of(Integer.valueOf(7))));
+    }
 }
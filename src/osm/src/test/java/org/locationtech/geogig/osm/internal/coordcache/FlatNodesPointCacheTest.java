@@ -0,0 +1,75 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.osm.internal.coordcache;
+
+import org.junit.Test;
+import org.locationtech.geogig.api.Platform;
+import org.locationtech.geogig.osm.internal.OSMCoordinateSequence;
+
+import com.google.common.collect.ImmutableList;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+
+public class FlatNodesPointCacheTest extends PointCacheTest {
+
+    private FlatNodesPointCache cache;
+
+    @Override
+    protected FlatNodesPointCache createCache(Platform platform) {
+        cache = new FlatNodesPointCache(platform);
+        return cache;
+    }
+
+    @Test
+    public void testOrigin() {
+        cache.put(1L, coord(0, 0));
+        CoordinateSequence sequence = cache.get(ImmutableList.of(1L));
+        assertEquals(0D, sequence.getOrdinate(0, 0), 1E-9);
+        assertEquals(0D, sequence.getOrdinate(0, 1), 1E-9);
+    }
+
+    @Test
+    public void testSparseIds() {
+        final long farId = 4L * 1000 * 1000 * 1000;
+        cache.put(farId, coord(-180, -90));
+        cache.put(1L, coord(180, 90));
+        cache.put(-1L, coord(10, 20));
+
+        CoordinateSequence sequence = cache.get(ImmutableList.of(farId, 1L, -1L));
+        assertEquals(3, sequence.size());
+        assertEquals(-180D, sequence.getOrdinate(0, 0), 1E-9);
+        assertEquals(-90D, sequence.getOrdinate(0, 1), 1E-9);
+        assertEquals(180D, sequence.getOrdinate(1, 0), 1E-9);
+        assertEquals(90D, sequence.getOrdinate(1, 1), 1E-9);
+        assertEquals(10D, sequence.getOrdinate(2, 0), 1E-9);
+        assertEquals(20D, sequence.getOrdinate(2, 1), 1E-9);
+    }
+
+    @Test
+    public void testGetNonExistentInMappedSegment() {
+        cache.put(1L, coord(1, 1));
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Node #2 not found");
+        cache.get(ImmutableList.of(1L, 2L));
+    }
+
+    @Test
+    public void testOverwrite() {
+        cache.put(1L, coord(1, 1));
+        cache.put(1L, coord(2, 3));
+        CoordinateSequence sequence = cache.get(ImmutableList.of(1L));
+        assertEquals(2D, sequence.getOrdinate(0, 0), 1E-9);
+        assertEquals(3D, sequence.getOrdinate(0, 1), 1E-9);
+    }
+
+    private OSMCoordinateSequence coord(double x, double y) {
+        return new OSMCoordinateSequence(new Coordinate[] { new Coordinate(x, y) });
+    }
+}
@@ -0,0 +1,112 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.osm.internal.coordcache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.geogig.api.TestPlatform;
+import org.locationtech.geogig.osm.internal.OSMCoordinateSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+
+/**
+ * Compares the put and way assembly throughput of the {@link PointCache} implementations.
+ * <p>
+ * Nodes are added in id order, as they come in an OSM dump, and then queried in random "ways" of
+ * ten consecutive-ish node ids each.
+ */
+@Ignore
+public class PointCacheBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PointCacheBenchmark.class);
+
+    private static final int WAY_SIZE = 10;
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private TestPlatform platform;
+
+    @Before
+    public void before() throws IOException {
+        tmpFolder.newFolder(".geogig");
+        platform = new TestPlatform(tmpFolder.getRoot());
+        platform.setUserHome(tmpFolder.newFolder("fakeHome"));
+    }
+
+    @Test
+    public void benchmark1M() {
+        benchmark(1000 * 1000);
+    }
+
+    @Test
+    public void benchmark10M() {
+        benchmark(10 * 1000 * 1000);
+    }
+
+    @Test
+    public void benchmark50M() {
+        benchmark(50 * 1000 * 1000);
+    }
+
+    private void benchmark(final int numNodes) {
+        LOG.info("----- {} nodes -----", numNodes);
+        run("FlatNodesPointCache", new FlatNodesPointCache(platform), numNodes);
+        run("MappedPointCache", new MappedPointCache(platform), numNodes);
+        run("MapdbPointCache", new MapdbPointCache(platform), numNodes);
+    }
+
+    private void run(final String name, final PointCache cache, final int numNodes) {
+        try {
+            // simulate a planet extract with sparse, increasing node ids
+            final long idStep = 7;
+            Stopwatch sw = Stopwatch.createStarted();
+            for (int n = 0; n < numNodes; n++) {
+                long nodeId = 1 + n * idStep;
+                cache.put(nodeId, coord(n % 360 - 180, n % 180 - 90));
+            }
+            sw.stop();
+            LOG.info("{}: {} nodes added in {}", name, numNodes, sw);
+
+            final Random random = new Random(1);
+            final int numWays = numNodes / WAY_SIZE;
+            List<Long> ids = new ArrayList<>(WAY_SIZE);
+            sw.reset().start();
+            for (int w = 0; w < numWays; w++) {
+                ids.clear();
+                int first = random.nextInt(numNodes - WAY_SIZE);
+                for (int i = 0; i < WAY_SIZE; i++) {
+                    ids.add(Long.valueOf(1 + (first + i) * idStep));
+                }
+                Collections.shuffle(ids, random);
+                cache.get(ids);
+            }
+            sw.stop();
+            LOG.info("{}: {} ways of {} nodes built in {}", name, numWays, WAY_SIZE, sw);
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    private OSMCoordinateSequence coord(int x, int y) {
+        return new OSMCoordinateSequence(new int[] { x * 10_000_000, y * 10_000_000 });
+    }
+}
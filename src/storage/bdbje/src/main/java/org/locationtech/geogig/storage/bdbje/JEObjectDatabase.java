@@ -90,6 +90,8 @@ abstract class JEObjectDatabase extends AbstractObjectDatabase implements Object
 
     private ExecutorService writerService;
 
+    private ExecutorService readerService;
+
     /**
      * The default number of objects bulk operations are partitioned into
      * 
@@ -164,6 +166,10 @@ abstract class JEObjectDatabase extends AbstractObjectDatabase implements Object
                 writerService.shutdown();
                 waitForServiceShutDown(writerService);
             }
+            if (readerService != null) {
+                readerService.shutdownNow();
+                waitForServiceShutDown(readerService);
+            }
             if (objectDb != null) {
                 objectDb.close();
                 objectDb = null;
@@ -212,6 +218,10 @@ abstract class JEObjectDatabase extends AbstractObjectDatabase implements Object
         int nWriterThreads = 1;
         writerService = Executors.newFixedThreadPool(nWriterThreads, new ThreadFactoryBuilder()
                 .setNameFormat("BDBJE-" + env.getHome().getName() + "-WRITE-THREAD-%d").build());
+        int nReaderThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        readerService = Executors.newFixedThreadPool(nReaderThreads, new ThreadFactoryBuilder()
+                .setNameFormat("BDBJE-" + env.getHome().getName() + "-READ-THREAD-%d")
+                .setDaemon(true).build());
         if (!objectDb.getConfig().getTransactional()) {
             dbSyncService = Executors.newFixedThreadPool(nWriterThreads, new ThreadFactoryBuilder()
                     .setNameFormat("BDBJE-" + env.getHome().getName() + "-SYNC-THREAD-%d").build());
@@ -337,6 +347,62 @@ abstract class JEObjectDatabase extends AbstractObjectDatabase implements Object
         }
     }
 
+    /**
+     * Scans the keys in batches of {@link #getBulkPartitionSize()}, each one with a short lived
+     * cursor positioned right after the last key of the previous batch, so no cursor is kept open
+     * while the caller consumes the ids.
+     */
+    @Override
+    public Iterator<ObjectId> objectIds() {
+        checkOpen();
+        final int batchSize = getBulkPartitionSize();
+        return Iterators.concat(new AbstractIterator<Iterator<ObjectId>>() {
+
+            private byte[] lastKey;
+
+            @Override
+            protected Iterator<ObjectId> computeNext() {
+                List<ObjectId> batch = nextBatch();
+                if (batch.isEmpty()) {
+                    return endOfData();
+                }
+                lastKey = batch.get(batch.size() - 1).getRawValue();
+                return batch.iterator();
+            }
+
+            private List<ObjectId> nextBatch() {
+                checkOpen();
+                DatabaseEntry key = new DatabaseEntry(lastKey == null ? new byte[0] : lastKey);
+                DatabaseEntry data = new DatabaseEntry();
+                data.setPartial(0, 0, true);// do not retrieve data
+
+                CursorConfig cursorConfig = new CursorConfig();
+                cursorConfig.setReadUncommitted(true);
+
+                List<ObjectId> batch = new ArrayList<ObjectId>(batchSize);
+                Cursor cursor = objectDb.openCursor(null, cursorConfig);
+                try {
+                    OperationStatus status;
+                    if (lastKey == null) {
+                        status = cursor.getFirst(key, data, LockMode.READ_UNCOMMITTED);
+                    } else {
+                        status = cursor.getSearchKeyRange(key, data, LockMode.READ_UNCOMMITTED);
+                        if (SUCCESS.equals(status) && Arrays.equals(lastKey, key.getData())) {
+                            status = cursor.getNext(key, data, LockMode.READ_UNCOMMITTED);
+                        }
+                    }
+                    while (SUCCESS.equals(status) && batch.size() < batchSize) {
+                        batch.add(new ObjectId(key.getData()));
+                        status = cursor.getNext(key, data, LockMode.READ_UNCOMMITTED);
+                    }
+                } finally {
+                    cursor.close();
+                }
+                return batch;
+            }
+        });
+    }
+
     /**
      * @see org.locationtech.geogig.storage.ObjectDatabase#exists(org.locationtech.geogig.api.ObjectId)
      */
@@ -751,8 +817,19 @@ abstract class JEObjectDatabase extends AbstractObjectDatabase implements Object
         return getAll(ids, listener, RevObject.class);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Ids are looked up in {@link #getBulkPartitionSize() bulk partition} sized batches. Each
+     * batch is sorted and walked with a single cursor, positioning it with
+     * {@link Cursor#getSearchKeyRange} and reading ahead with {@link Cursor#getNext} when the next
+     * requested id is also the next key in the database, so dense id ranges are served by scanning
+     * the b-tree leaf nodes sequentially. Decompressing and parsing the objects happens on a pool
+     * of reader threads while the cursor goes on reading the rest of the batch.
+     * <p>
+     * Objects are returned in key order within each batch. An id requested more than once in a
+     * batch is returned, or reported as not found, once per request.
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public <T extends RevObject> Iterator<T> getAll(final Iterable<ObjectId> ids,
             final BulkOpListener listener, final Class<T> type) {
 
@@ -762,12 +839,14 @@ abstract class JEObjectDatabase extends AbstractObjectDatabase implements Object
         checkOpen();
 
         return (Iterator<T>) new CursorRevObjectIterator(ids.iterator(), listener, type);
-
     }
 
-    private class CursorRevObjectIterator extends AbstractIterator<RevObject> implements Closeable {
+    /**
+     * Number of objects each reader thread decodes at a time
+     */
+    private static final int DECODE_BATCH_SIZE = 256;
 
-        private final ObjectSerializingFactory reader = JEObjectDatabase.this.serializer;
+    private class CursorRevObjectIterator extends AbstractIterator<RevObject> implements Closeable {
 
         @Nullable
         private Transaction transaction;
@@ -778,10 +857,10 @@ abstract class JEObjectDatabase extends AbstractObjectDatabase implements Object
 
         private UnmodifiableIterator<List<ObjectId>> unsortedIds;
 
-        private Iterator<ObjectId> sortedIds;
-
         private final Class<?> filter;
 
+        private Iterator<RevObject> batch;
+
         /**
          * Uses a transaction to open a read only cursor for it to work when called from a different
          * threads than the one it was created at. The transaction is aborted at {@link #close()}
@@ -791,7 +870,7 @@ abstract class JEObjectDatabase extends AbstractObjectDatabase implements Object
 
             this.filter = filter;
             this.unsortedIds = Iterators.partition(objectIds, getBulkPartitionSize());
-            this.sortedIds = Collections.emptyIterator();
+            this.batch = Collections.emptyIterator();
 
             this.listener = listener;
             CursorConfig cursorConfig = new CursorConfig();
@@ -813,61 +892,118 @@ abstract class JEObjectDatabase extends AbstractObjectDatabase implements Object
 
         @Override
         protected RevObject computeNext() {
-            if (!sortedIds.hasNext()) {
-                if (unsortedIds.hasNext()) {
-                    List<ObjectId> unsorted = unsortedIds.next();
-                    List<ObjectId> sorted = ObjectId.NATURAL_ORDER.sortedCopy(unsorted);
-                    this.sortedIds = sorted.iterator();
-                } else {
+            try {
+                while (!batch.hasNext()) {
+                    if (!unsortedIds.hasNext()) {
+                        close();
+                        return endOfData();
+                    }
+                    batch = nextBatch(unsortedIds.next());
+                }
+                return batch.next();
+            } catch (Exception e) {
+                try {
+                    throw Throwables.propagate(e);
+                } finally {
                     close();
-                    return endOfData();
                 }
             }
-            try {
+        }
 
-                byte[] keyBuff = new byte[ObjectId.NUM_BYTES];
-                DatabaseEntry key = new DatabaseEntry(keyBuff);
+        private Iterator<RevObject> nextBatch(final List<ObjectId> unsorted)
+                throws InterruptedException, ExecutionException {
 
-                RevObject found = null;
-                while (sortedIds.hasNext() && found == null) {
-                    ObjectId id = sortedIds.next();
-                    id.getRawValue(keyBuff);
-                    key.setData(keyBuff);
+            final List<ObjectId> sorted = ObjectId.NATURAL_ORDER.sortedCopy(unsorted);
+            final List<DecodeTask> tasks = new ArrayList<>();
+            final List<Future<List<RevObject>>> decoded = new ArrayList<>();
 
-                    DatabaseEntry data = new DatabaseEntry();
-                    // lookup data for the next key
-                    OperationStatus status;
-                    status = cursor.getSearchKey(key, data, LockMode.READ_UNCOMMITTED);
-                    if (SUCCESS.equals(status)) {
-                        InputStream rawData;
-                        rawData = new LZFInputStream(new ByteArrayInputStream(data.getData()));
-                        found = reader.read(id, rawData);
-                        if (filter.isAssignableFrom(found.getClass())) {
-                            listener.found(found.getId(), data.getSize());
-                        } else {
-                            found = null;
-                            listener.notFound(id);
+            List<ObjectId> foundIds = new ArrayList<>(DECODE_BATCH_SIZE);
+            List<byte[]> foundData = new ArrayList<>(DECODE_BATCH_SIZE);
+
+            // only read the keys while positioning the cursor
+            final DatabaseEntry noData = new DatabaseEntry();
+            noData.setPartial(0, 0, true);
+
+            // the key the cursor is at, null if not positioned yet or past the last key
+            byte[] current = null;
+            boolean exhausted = false;
+            ObjectId previous = null;
+            byte[] previousData = null;
+
+            for (ObjectId id : sorted) {
+                byte[] found = null;
+                if (id.equals(previous)) {
+                    // requested more than once, return it as many times
+                    found = previousData;
+                } else {
+                    previous = id;
+                    final byte[] target = id.getRawValue();
+                    if (!exhausted && (current == null || ObjectId.compare(current, target) < 0)) {
+                        DatabaseEntry key = new DatabaseEntry(target);
+                        OperationStatus status = cursor.getSearchKeyRange(key, noData,
+                                LockMode.READ_UNCOMMITTED);
+                        current = SUCCESS.equals(status) ? key.getData() : null;
+                        exhausted = current == null;
+                    }
+                    if (!exhausted && Arrays.equals(current, target)) {
+                        DatabaseEntry key = new DatabaseEntry();
+                        DatabaseEntry data = new DatabaseEntry();
+                        if (SUCCESS.equals(cursor.getCurrent(key, data,
+                                LockMode.READ_UNCOMMITTED))) {
+                            found = data.getData();
                         }
-                    } else {
-                        listener.notFound(id);
+                        // peek at the next key, if it's the next requested id there's no need
+                        // to search
+                        key = new DatabaseEntry();
+                        OperationStatus status = cursor.getNext(key, noData,
+                                LockMode.READ_UNCOMMITTED);
+                        current = SUCCESS.equals(status) ? key.getData() : null;
+                        exhausted = current == null;
                     }
+                    previousData = found;
                 }
                 if (found == null) {
-                    return computeNext();
+                    listener.notFound(id);
+                    continue;
                 }
-                return found;
-            } catch (Exception e) {
-                try {
-                    throw Throwables.propagate(e);
-                } finally {
-                    close();
+                foundIds.add(id);
+                foundData.add(found);
+                if (foundIds.size() == DECODE_BATCH_SIZE) {
+                    submit(new DecodeTask(foundIds, foundData), tasks, decoded);
+                    foundIds = new ArrayList<>(DECODE_BATCH_SIZE);
+                    foundData = new ArrayList<>(DECODE_BATCH_SIZE);
+                }
+            }
+            if (!foundIds.isEmpty()) {
+                submit(new DecodeTask(foundIds, foundData), tasks, decoded);
+            }
+
+            List<RevObject> objects = new ArrayList<>(sorted.size());
+            for (int t = 0; t < tasks.size(); t++) {
+                final List<byte[]> data = tasks.get(t).data;
+                final List<RevObject> objs = decoded.get(t).get();
+                for (int i = 0; i < objs.size(); i++) {
+                    RevObject o = objs.get(i);
+                    if (filter.isInstance(o)) {
+                        listener.found(o.getId(), data.get(i).length);
+                        objects.add(o);
+                    } else {
+                        listener.notFound(o.getId());
+                    }
                 }
             }
+            return objects.iterator();
+        }
+
+        private void submit(DecodeTask task, List<DecodeTask> tasks,
+                List<Future<List<RevObject>>> decoded) {
+            tasks.add(task);
+            decoded.add(readerService.submit(task));
         }
 
         @Override
         public void close() {
-            sortedIds = null;
+            batch = Collections.emptyIterator();
             Cursor cursor = this.cursor;
             this.cursor = null;
             if (cursor != null) {
@@ -880,6 +1016,29 @@ abstract class JEObjectDatabase extends AbstractObjectDatabase implements Object
         }
     }
 
+    private class DecodeTask implements Callable<List<RevObject>> {
+
+        private final List<ObjectId> ids;
+
+        private final List<byte[]> data;
+
+        DecodeTask(List<ObjectId> ids, List<byte[]> data) {
+            this.ids = ids;
+            this.data = data;
+        }
+
+        @Override
+        public List<RevObject> call() throws Exception {
+            final ObjectSerializingFactory reader = JEObjectDatabase.this.serializer;
+            List<RevObject> objects = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                InputStream rawData = new LZFInputStream(new ByteArrayInputStream(data.get(i)));
+                objects.add(reader.read(ids.get(i), rawData));
+            }
+            return objects;
+        }
+    }
+
     private int getBulkPartitionSize() {
         Optional<Integer> configuredSize = configDB.get(BULK_PARTITIONING_CONFIG_KEY,
                 Integer.class);
@@ -0,0 +1,144 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.bdbje;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevFeature;
+import org.locationtech.geogig.api.RevObject;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.TestPlatform;
+import org.locationtech.geogig.api.plumbing.diff.RevObjectTestSupport;
+import org.locationtech.geogig.repository.Hints;
+import org.locationtech.geogig.storage.BulkOpListener;
+import org.locationtech.geogig.storage.BulkOpListener.CountingListener;
+import org.locationtech.geogig.storage.ConfigDatabase;
+import org.locationtech.geogig.storage.fs.IniFileConfigDatabase;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class JEObjectDatabaseGetAllTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JEObjectDatabase db;
+
+    private List<RevFeature> features;
+
+    @Before
+    public void setUp() throws Exception {
+        File root = folder.getRoot();
+        folder.newFolder(".geogig");
+        TestPlatform platform = new TestPlatform(root);
+        platform.setUserHome(folder.newFolder("home"));
+
+        ConfigDatabase configDB = new IniFileConfigDatabase(platform);
+        // several batches, each one decoded by several tasks
+        configDB.put("bdbje.bulkpartition", 700);
+
+        db = new JEObjectDatabase_v0_2(configDB, new EnvironmentBuilder(platform, null),
+                new Hints());
+        db.open();
+
+        RevObjectTestSupport objects = new RevObjectTestSupport();
+        features = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            features.add(objects.feature(i, "feature " + i, Integer.valueOf(i)));
+        }
+        db.putAll(features.iterator());
+    }
+
+    @After
+    public void after() {
+        db.close();
+    }
+
+    @Test
+    public void testDenseAndSparseRanges() {
+        List<RevFeature> sorted = Lists.newArrayList(features);
+        Collections.sort(sorted, (f1, f2) -> f1.getId().compareTo(f2.getId()));
+
+        List<ObjectId> query = new ArrayList<>();
+        List<ObjectId> expected = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            // a dense range, then every third one
+            if (i < 1000 || i % 3 == 0) {
+                expected.add(sorted.get(i).getId());
+            }
+        }
+        query.addAll(expected);
+        for (int i = 0; i < 100; i++) {
+            query.add(ObjectId.forString("not found " + i));
+        }
+        Collections.shuffle(query, new Random(1));
+
+        CountingListener listener = BulkOpListener.newCountingListener();
+        List<RevObject> result = ImmutableList.copyOf(db.getAll(query, listener));
+
+        assertEquals(expected.size(), result.size());
+        assertEquals(Sets.newHashSet(expected), Sets.newHashSet(ids(result)));
+        assertEquals(expected.size(), listener.found());
+        assertEquals(100, listener.notFound());
+    }
+
+    @Test
+    public void testDuplicateIds() {
+        List<ObjectId> query = new ArrayList<>();
+        for (int i = 0; i < features.size(); i += 2) {
+            ObjectId id = features.get(i).getId();
+            query.add(id);
+            query.add(id);
+            query.add(ObjectId.forString("not found " + i));
+            query.add(ObjectId.forString("not found " + i));
+        }
+        Collections.shuffle(query, new Random(1));
+
+        CountingListener listener = BulkOpListener.newCountingListener();
+        List<RevObject> result = ImmutableList.copyOf(db.getAll(query, listener));
+
+        // duplicates are returned, and reported, once per request
+        assertEquals(features.size(), result.size());
+        assertEquals(features.size() / 2, Sets.newHashSet(ids(result)).size());
+        assertEquals(features.size(), listener.found());
+        assertEquals(features.size(), listener.notFound());
+    }
+
+    @Test
+    public void testWrongTypeIsNotFound() {
+        List<ObjectId> query = Lists.newArrayList(ids(features.subList(0, 10)));
+        CountingListener listener = BulkOpListener.newCountingListener();
+        List<RevTree> result = ImmutableList.copyOf(db.getAll(query, listener, RevTree.class));
+        assertEquals(0, result.size());
+        assertEquals(10, listener.notFound());
+    }
+
+    private static List<ObjectId> ids(List<? extends RevObject> objects) {
+        List<ObjectId> ids = new ArrayList<>();
+        for (RevObject o : objects) {
+            ids.add(o.getId());
+        }
+        return ids;
+    }
+}
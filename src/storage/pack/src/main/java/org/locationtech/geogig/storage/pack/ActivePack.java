@@ -0,0 +1,272 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.pack;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.locationtech.geogig.api.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.io.ByteStreams;
+
+/**
+ * The pack objects are being appended to, with its index kept in memory until it's
+ * {@link #seal(File) sealed}.
+ * <p>
+ * Records are written with a {@link RandomAccessFile} rather than a {@code FileChannel}, as an
+ * interrupted thread would close a channel shared by all the readers. Reads and writes are
+ * synchronized, and reads are delegated to the sealed pack once it's been sealed, so that
+ * readers holding on to this pack keep working.
+ */
+final class ActivePack extends Pack {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActivePack.class);
+
+    private final ConcurrentMap<ObjectId, Long> offsets = new ConcurrentHashMap<>();
+
+    private File file;
+
+    private RandomAccessFile raf;
+
+    private volatile long size;
+
+    private SealedPack sealed;
+
+    private ActivePack(long seq, File file, File indexFile, Tombstones tombstones,
+            RandomAccessFile raf) {
+        super(seq, indexFile, tombstones);
+        this.file = file;
+        this.raf = raf;
+    }
+
+    /**
+     * Creates an empty pack at {@code file}
+     */
+    static ActivePack create(long seq, File file, File indexFile, Tombstones tombstones)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        raf.writeInt(MAGIC);
+        raf.writeInt(VERSION);
+        ActivePack pack = new ActivePack(seq, file, indexFile, tombstones, raf);
+        pack.size = HEADER_SIZE;
+        return pack;
+    }
+
+    /**
+     * Reopens a pack that was left without index, for example by a crash, rebuilding the index
+     * from its records and truncating an incomplete last record.
+     */
+    static ActivePack recover(long seq, File file, File indexFile, Tombstones tombstones)
+            throws IOException {
+        final long length = file.length();
+        if (length < HEADER_SIZE) {
+            return create(seq, file, indexFile, tombstones);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        ActivePack pack = new ActivePack(seq, file, indexFile, tombstones, raf);
+        long offset = HEADER_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), 64 * 1024))) {
+            checkState(in.readInt() == MAGIC, "%s is not a pack file", file);
+            checkState(in.readInt() == VERSION, "unsupported pack version in %s", file);
+            final byte[] raw = new byte[ObjectId.NUM_BYTES];
+            while (offset + RECORD_HEADER_SIZE <= length) {
+                in.readFully(raw);
+                final int recordLength = in.readInt() & LENGTH_MASK;
+                final ObjectId id = new ObjectId(raw);
+                if (id.isNull() || offset + RECORD_HEADER_SIZE + recordLength > length) {
+                    // a partially written record, or zeroed out pages after a system crash
+                    break;
+                }
+                ByteStreams.skipFully(in, recordLength);
+                pack.offsets.put(id, Long.valueOf(offset));
+                offset += RECORD_HEADER_SIZE + recordLength;
+            }
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+        if (offset < length) {
+            LOGGER.warn("Truncating incomplete pack {} from {} to {} bytes", file, length, offset);
+            raf.setLength(offset);
+        }
+        pack.size = offset;
+        return pack;
+    }
+
+    @Override
+    public synchronized File getFile() {
+        return file;
+    }
+
+    @Override
+    public long sizeBytes() {
+        return size;
+    }
+
+    @Override
+    public int count() {
+        return offsets.size();
+    }
+
+    public boolean isEmpty() {
+        return offsets.isEmpty();
+    }
+
+    @Override
+    public long offset(ObjectId id) {
+        Long offset = offsets.get(id);
+        return offset == null ? -1L : offset.longValue();
+    }
+
+    @Override
+    protected synchronized int header(final long offset) throws IOException {
+        if (sealed != null) {
+            return sealed.header(offset);
+        }
+        raf.seek(offset + ObjectId.NUM_BYTES);
+        return raf.readInt();
+    }
+
+    @Override
+    protected synchronized byte[] data(final long offset, final int length) throws IOException {
+        if (sealed != null) {
+            return sealed.data(offset, length);
+        }
+        raf.seek(offset + RECORD_HEADER_SIZE);
+        byte[] data = new byte[length];
+        raf.readFully(data);
+        return data;
+    }
+
+    /**
+     * Appends the records of the given objects with a single write, they're made visible to
+     * readers once written.
+     */
+    public void append(List<ObjectId> ids, List<byte[]> data) throws IOException {
+        append(ids, data, new BitSet());
+    }
+
+    /**
+     * Appends the records of the given objects with a single write, the ones at the indexes set
+     * in {@code deltas} being {@link Pack#deltaRecord delta records}.
+     */
+    public synchronized void append(List<ObjectId> ids, List<byte[]> data, BitSet deltas)
+            throws IOException {
+        checkState(sealed == null, "pack is sealed");
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        for (int i = 0; i < ids.size(); i++) {
+            byte[] record = data.get(i);
+            out.write(ids.get(i).getRawValue());
+            out.writeInt(deltas.get(i) ? record.length | DELTA_FLAG : record.length);
+            out.write(record);
+        }
+        raf.seek(size);
+        raf.write(buffer.toByteArray());
+
+        long offset = size;
+        for (int i = 0; i < ids.size(); i++) {
+            offsets.put(ids.get(i), Long.valueOf(offset));
+            offset += RECORD_HEADER_SIZE + data.get(i).length;
+        }
+        size = offset;
+    }
+
+    public void append(ObjectId id, byte[] data) throws IOException {
+        append(Collections.singletonList(id), Collections.singletonList(data));
+    }
+
+    /**
+     * @return a snapshot of the ids in the pack
+     */
+    @Override
+    public Iterator<ObjectId> ids() {
+        return ImmutableList.copyOf(offsets.keySet()).iterator();
+    }
+
+    @Override
+    public List<ObjectId> lookUp(final byte[] prefix) {
+        List<ObjectId> matches = new ArrayList<>(2);
+        for (ObjectId id : offsets.keySet()) {
+            if (startsWith(id, prefix)) {
+                matches.add(id);
+            }
+        }
+        return matches;
+    }
+
+    private static boolean startsWith(ObjectId id, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (id.byteN(i) != (prefix[i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes the records durable, writes the pack index and moves the pack file to {@code target}
+     * if it's not already there.
+     *
+     * @return the sealed pack to read from from now on
+     */
+    public synchronized SealedPack seal(File target) throws IOException {
+        checkState(sealed == null, "pack is already sealed");
+        raf.getFD().sync();
+        tombstones.flush();
+        PackIndex.write(indexFile, ImmutableSortedMap.copyOf(offsets, ObjectId.NATURAL_ORDER));
+        raf.close();
+        if (!file.equals(target)) {
+            Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            file = target;
+        }
+        sealed = SealedPack.open(seq, file, indexFile, tombstones);
+        return sealed;
+    }
+
+    /**
+     * Closes and deletes the pack, which must not be in use anymore
+     */
+    public synchronized void discard() throws IOException {
+        try {
+            close();
+            if (sealed == null) {
+                raf.close();
+            }
+        } finally {
+            file.delete();
+            indexFile.delete();
+            tombstones.getFile().delete();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.pack;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevObject.TYPE;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.storage.datastream.BinaryDelta;
+import org.locationtech.geogig.storage.datastream.DataStreamSerializationFactoryV2;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.ning.compress.lzf.LZFDecoder;
+
+/**
+ * Decides which features a compaction stores as deltas against the previous version of the same
+ * feature.
+ * <p>
+ * Features don't know their path, so versions of the same feature are matched by the name of the
+ * tree node pointing to them, as found in the trees being compacted. Each version is encoded
+ * against the last one copied with the same name, as long as the delta is at most half the size
+ * of the compressed feature and the chain of deltas to read it is no longer than the configured
+ * maximum, which bounds how much slower reading a delta compressed feature can be.
+ * <p>
+ * The last version of each name is kept uncompressed, up to {@link #MAX_CACHED_BYTES}, after
+ * which the least recently used ones are dropped and their next version is stored whole.
+ */
+final class DeltaCompressor {
+
+    private static final int MAX_CACHED_BYTES = 32 * 1024 * 1024;
+
+    private static final class Base {
+
+        final long offset;
+
+        final int depth;
+
+        final byte[] contents;
+
+        Base(long offset, int depth, byte[] contents) {
+            this.offset = offset;
+            this.depth = depth;
+            this.contents = contents;
+        }
+    }
+
+    private final int maxChainLength;
+
+    private final Map<ObjectId, String> names;
+
+    private final LinkedHashMap<String, Base> bases = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private long cachedBytes;
+
+    private DeltaCompressor(int maxChainLength, Map<ObjectId, String> names) {
+        this.maxChainLength = maxChainLength;
+        this.names = names;
+    }
+
+    /**
+     * Creates a compressor for the features pointed to by the live trees in {@code packs}
+     */
+    static DeltaCompressor create(List<SealedPack> packs, int maxChainLength) throws IOException {
+        Map<ObjectId, String> names = new HashMap<>();
+        for (SealedPack pack : packs) {
+            for (Iterator<Long> offsets = pack.recordOffsets(); offsets.hasNext();) {
+                final long offset = offsets.next().longValue();
+                // trees are never stored as deltas
+                if (pack.isDelta(offset)) {
+                    continue;
+                }
+                final ObjectId id = pack.idAt(offset);
+                if (pack.liveOffset(id) != offset) {
+                    continue;
+                }
+                final byte[] contents = LZFDecoder.decode(pack.readRecord(offset));
+                if (contents.length == 0 || contents[0] != TYPE.TREE.value()) {
+                    continue;
+                }
+                RevTree tree = (RevTree) DataStreamSerializationFactoryV2.INSTANCE.read(id,
+                        new ByteArrayInputStream(contents));
+                Optional<ImmutableList<Node>> features = tree.features();
+                if (features.isPresent()) {
+                    for (Node node : features.get()) {
+                        names.put(node.getObjectId(), node.getName());
+                    }
+                }
+            }
+        }
+        return new DeltaCompressor(maxChainLength, names);
+    }
+
+    /**
+     * @return the name of the tree node pointing to {@code id} if it's a feature that can be
+     *         delta compressed, {@code null} otherwise
+     */
+    @Nullable
+    String name(ObjectId id) {
+        return names.get(id);
+    }
+
+    /**
+     * Registers the feature {@code name} is being copied to {@code offset}, and returns its
+     * {@link Pack#deltaRecord delta record} against the previous version if it's worth it.
+     *
+     * @param contents the uncompressed feature
+     * @param compressedSize the size of the feature stored whole
+     * @return the delta record, or {@code null} if the feature shall be stored whole
+     */
+    @Nullable
+    byte[] encode(String name, byte[] contents, int compressedSize, long offset) {
+        final Base base = bases.get(name);
+        byte[] record = null;
+        int depth = 0;
+        if (base != null && base.depth < maxChainLength) {
+            byte[] delta = BinaryDelta.encode(base.contents, contents);
+            if (8 + delta.length <= compressedSize / 2) {
+                record = Pack.deltaRecord(base.offset, delta);
+                depth = base.depth + 1;
+            }
+        }
+        Base previous = bases.put(name, new Base(offset, depth, contents));
+        cachedBytes += contents.length - (previous == null ? 0 : previous.contents.length);
+        for (Iterator<Base> it = bases.values().iterator(); cachedBytes > MAX_CACHED_BYTES
+                && it.hasNext();) {
+            cachedBytes -= it.next().contents.length;
+            it.remove();
+        }
+        return record;
+    }
+}
@@ -0,0 +1,235 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.pack;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.storage.datastream.BinaryDelta;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import com.google.common.primitives.Longs;
+import com.ning.compress.lzf.LZFDecoder;
+import com.ning.compress.lzf.LZFEncoder;
+
+/**
+ * A pack file: a header ({@link #MAGIC} and version) followed by the objects' records, each one
+ * made of the object id, the length of its data and the data itself, in the order they were
+ * added.
+ * <p>
+ * A record's data is either the object as stored by the database, or, if the length has the
+ * {@link #DELTA_FLAG} set, the offset of an earlier record in the same pack followed by a
+ * {@link BinaryDelta delta} against that record's uncompressed contents.
+ * <p>
+ * Packs are append only while {@link ActivePack active} and immutable once {@link SealedPack
+ * sealed}, so deleted records are tracked by the pack's {@link Tombstones} until compaction.
+ */
+abstract class Pack {
+
+    static final int MAGIC = 0x4747504B;// GGPK
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 8;
+
+    static final int RECORD_HEADER_SIZE = ObjectId.NUM_BYTES + 4;
+
+    static final int DELTA_FLAG = 0x80000000;
+
+    static final int LENGTH_MASK = ~DELTA_FLAG;
+
+    protected final long seq;
+
+    protected final File indexFile;
+
+    protected final Tombstones tombstones;
+
+    protected Pack(long seq, File indexFile, Tombstones tombstones) {
+        this.seq = seq;
+        this.indexFile = indexFile;
+        this.tombstones = tombstones;
+    }
+
+    /**
+     * @return the pack's sequence number, higher for newer packs
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    public abstract File getFile();
+
+    /**
+     * @return the size of the pack file in bytes
+     */
+    public abstract long sizeBytes();
+
+    /**
+     * @return the number of objects in the pack, deleted ones included
+     */
+    public abstract int count();
+
+    /**
+     * @return the offset of the record for {@code id}, deleted or not, or {@code -1} if there's
+     *         none
+     */
+    public abstract long offset(ObjectId id);
+
+    /**
+     * @return the length of the data of the record at {@code offset}, possibly with the
+     *         {@link #DELTA_FLAG} set
+     */
+    protected abstract int header(long offset) throws IOException;
+
+    /**
+     * @return the {@code length} bytes of data of the record at {@code offset}
+     */
+    protected abstract byte[] data(long offset, int length) throws IOException;
+
+    public boolean isDelta(long offset) throws IOException {
+        return (header(offset) & DELTA_FLAG) != 0;
+    }
+
+    /**
+     * @return the data of the record at {@code offset} as stored, a delta included
+     */
+    public byte[] readRecord(long offset) throws IOException {
+        return data(offset, header(offset) & LENGTH_MASK);
+    }
+
+    /**
+     * @return the object at {@code offset} as the database stored it, compressing it again if
+     *         it's stored as a delta
+     */
+    public byte[] read(final long offset) throws IOException {
+        final int header = header(offset);
+        if ((header & DELTA_FLAG) == 0) {
+            return data(offset, header);
+        }
+        return LZFEncoder.encode(readUncompressed(offset));
+    }
+
+    /**
+     * @return the uncompressed object at {@code offset}, applying the chain of deltas leading to
+     *         it if it's stored as a delta
+     */
+    public byte[] readUncompressed(final long offset) throws IOException {
+        Deque<byte[]> deltas = new ArrayDeque<>(2);
+        long next = offset;
+        int header = header(next);
+        while ((header & DELTA_FLAG) != 0) {
+            byte[] delta = data(next, header & LENGTH_MASK);
+            deltas.push(delta);
+            final long base = Longs.fromByteArray(delta);
+            checkState(base >= HEADER_SIZE && base < next, "Invalid delta base %s at %s in %s",
+                    base, next, getFile());
+            next = base;
+            header = header(next);
+        }
+        byte[] contents = LZFDecoder.decode(data(next, header));
+        while (!deltas.isEmpty()) {
+            byte[] delta = deltas.pop();
+            contents = BinaryDelta.apply(contents, Arrays.copyOfRange(delta, 8, delta.length));
+        }
+        return contents;
+    }
+
+    /**
+     * @return the data of a delta record against the record at {@code baseOffset}
+     */
+    static byte[] deltaRecord(long baseOffset, byte[] delta) {
+        byte[] data = new byte[8 + delta.length];
+        System.arraycopy(Longs.toByteArray(baseOffset), 0, data, 0, 8);
+        System.arraycopy(delta, 0, data, 8, delta.length);
+        return data;
+    }
+
+    /**
+     * @return the ids of the objects in the pack, deleted ones included
+     */
+    public abstract Iterator<ObjectId> ids();
+
+    /**
+     * @return the ids starting with the given raw prefix, deleted ones included
+     */
+    public abstract List<ObjectId> lookUp(byte[] prefix);
+
+    /**
+     * @return the offset of the record for {@code id} unless it was deleted, {@code -1} otherwise
+     */
+    public long liveOffset(ObjectId id) {
+        final long offset = offset(id);
+        if (offset < 0 || tombstones.isDeleted(id, offset)) {
+            return -1L;
+        }
+        return offset;
+    }
+
+    public boolean contains(ObjectId id) {
+        return liveOffset(id) >= 0;
+    }
+
+    /**
+     * @return the ids of the objects in the pack that were not deleted
+     */
+    public Iterator<ObjectId> liveIds() {
+        return Iterators.filter(ids(), new Predicate<ObjectId>() {
+            @Override
+            public boolean apply(ObjectId id) {
+                return contains(id);
+            }
+        });
+    }
+
+    /**
+     * @return the number of deleted objects
+     */
+    public int deadCount() {
+        return tombstones.size();
+    }
+
+    /**
+     * Marks the record of {@code id} as deleted, callers shall {@link #flushTombstones() flush}
+     * once done deleting.
+     *
+     * @return whether the pack contained the object
+     */
+    public boolean delete(ObjectId id) throws IOException {
+        final long offset = liveOffset(id);
+        if (offset < 0) {
+            return false;
+        }
+        tombstones.add(id, offset);
+        return true;
+    }
+
+    public void flushTombstones() throws IOException {
+        tombstones.flush();
+    }
+
+    public void close() throws IOException {
+        tombstones.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s, objects: %,d, deleted: %,d, bytes: %,d]", getClass()
+                .getSimpleName(), getFile().getName(), count(), deadCount(), sizeBytes());
+    }
+}
@@ -0,0 +1,222 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.pack;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.locationtech.geogig.api.ObjectId;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * The index of a sealed pack, stored in a {@code .idx} file next to it and read through a memory
+ * mapped buffer.
+ * <p>
+ * The file starts with a header ({@link #MAGIC}, version and number of objects), followed by a
+ * 256 entries fan-out table where entry {@code i} is the number of ids whose first byte is lower
+ * than or equal to {@code i}, the sorted object ids, and the offset of each object's record in
+ * the pack file, in the same order as the ids. The fan-out table narrows the binary search for an
+ * id down to the ids sharing its first byte.
+ */
+final class PackIndex {
+
+    static final int MAGIC = 0x47475049;// GGPI
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+
+    private static final int IDS_START = HEADER_SIZE + 256 * 4;
+
+    private final ByteBuffer buffer;
+
+    private final int count;
+
+    private final int offsetsStart;
+
+    private PackIndex(ByteBuffer buffer) {
+        checkState(buffer.getInt(0) == MAGIC, "not a pack index");
+        checkState(buffer.getInt(4) == VERSION, "unsupported pack index version %s",
+                buffer.getInt(4));
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.offsetsStart = IDS_START + count * ObjectId.NUM_BYTES;
+        checkState(buffer.capacity() == offsetsStart + count * 8, "truncated pack index");
+    }
+
+    /**
+     * Maps an existing index file
+     */
+    static PackIndex open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            return new PackIndex(buffer);
+        }
+    }
+
+    /**
+     * Writes the index for the given record offsets, first to a temporary file that's then
+     * renamed, so that an index file is either complete or missing.
+     */
+    static void write(File file, SortedMap<ObjectId, Long> offsets) throws IOException {
+        final int[] fanout = new int[256];
+        for (ObjectId id : offsets.keySet()) {
+            fanout[id.byteN(0)]++;
+        }
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut,
+                    64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(offsets.size());
+            int total = 0;
+            for (int i = 0; i < 256; i++) {
+                total += fanout[i];
+                out.writeInt(total);
+            }
+            final byte[] raw = new byte[ObjectId.NUM_BYTES];
+            for (ObjectId id : offsets.keySet()) {
+                id.getRawValue(raw);
+                out.write(raw);
+            }
+            for (Map.Entry<ObjectId, Long> e : offsets.entrySet()) {
+                out.writeLong(e.getValue().longValue());
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the offset of the record for the given id in the pack file, or {@code -1} if it's
+     *         not in the pack
+     */
+    public long offset(ObjectId id) {
+        final int first = id.byteN(0);
+        int low = first == 0 ? 0 : fanout(first - 1);
+        int high = fanout(first) - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int c = compare(mid, id);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return offsetAt(mid);
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * @return the ids starting with the given raw prefix
+     */
+    public List<ObjectId> lookUp(final byte[] prefix) {
+        final int first = prefix[0] & 0xFF;
+        int low = first == 0 ? 0 : fanout(first - 1);
+        final int end = fanout(first);
+        int high = end - 1;
+        // find the first id not lower than the prefix
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (comparePrefix(mid, prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        List<ObjectId> matches = new ArrayList<>(2);
+        for (int i = low; i < end && comparePrefix(i, prefix) == 0; i++) {
+            matches.add(idAt(i));
+        }
+        return matches;
+    }
+
+    /**
+     * @return the ids in the index, in {@link ObjectId#NATURAL_ORDER natural order}
+     */
+    public Iterator<ObjectId> ids() {
+        return new AbstractIterator<ObjectId>() {
+            private int next;
+
+            @Override
+            protected ObjectId computeNext() {
+                if (next == count) {
+                    return endOfData();
+                }
+                return idAt(next++);
+            }
+        };
+    }
+
+    private int fanout(int firstByte) {
+        return buffer.getInt(HEADER_SIZE + 4 * firstByte);
+    }
+
+    private ObjectId idAt(int index) {
+        byte[] raw = new byte[ObjectId.NUM_BYTES];
+        ByteBuffer ids = buffer.duplicate();
+        ids.position(IDS_START + index * ObjectId.NUM_BYTES);
+        ids.get(raw);
+        return ObjectId.createNoClone(raw);
+    }
+
+    private long offsetAt(int index) {
+        return buffer.getLong(offsetsStart + 8 * index);
+    }
+
+    private int compare(int index, ObjectId id) {
+        final int base = IDS_START + index * ObjectId.NUM_BYTES;
+        for (int i = 0; i < ObjectId.NUM_BYTES; i++) {
+            int c = (buffer.get(base + i) & 0xFF) - id.byteN(i);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private int comparePrefix(int index, byte[] prefix) {
+        final int base = IDS_START + index * ObjectId.NUM_BYTES;
+        for (int i = 0; i < prefix.length; i++) {
+            int c = (buffer.get(base + i) & 0xFF) - (prefix[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+}
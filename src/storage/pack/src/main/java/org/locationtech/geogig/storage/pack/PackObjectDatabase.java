@@ -0,0 +1,359 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.pack;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.Platform;
+import org.locationtech.geogig.api.RevObject;
+import org.locationtech.geogig.api.plumbing.ResolveGeogigURI;
+import org.locationtech.geogig.repository.Hints;
+import org.locationtech.geogig.repository.RepositoryConnectionException;
+import org.locationtech.geogig.storage.AbstractObjectDatabase;
+import org.locationtech.geogig.storage.BlobStore;
+import org.locationtech.geogig.storage.BulkOpListener;
+import org.locationtech.geogig.storage.ConfigDatabase;
+import org.locationtech.geogig.storage.ConflictsDatabase;
+import org.locationtech.geogig.storage.ObjectDatabase;
+import org.locationtech.geogig.storage.datastream.DataStreamSerializationFactoryV2;
+import org.locationtech.geogig.storage.fs.FileBlobStore;
+import org.locationtech.geogig.storage.fs.FileConflictsDatabase;
+import org.locationtech.geogig.storage.pack.PackStore.Location;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.inject.Inject;
+import com.ning.compress.lzf.LZFInputStream;
+
+/**
+ * An object database that stores objects in append only pack files under the repository's
+ * {@code packs} directory, instead of one record per object.
+ * <p>
+ * Objects are appended in the order they're written, which for imports, clones and fetches is
+ * the order they're traversed, and compaction preserves that order, so related objects end up
+ * close to each other. Packs are read through memory mapped buffers, and objects are found through
+ * a sorted index per pack. {@link #getAll} reads each batch of objects in storage order.
+ * <p>
+ * Configuration options:
+ * <ul>
+ * <li>{@code pack.maxsize}: the size in megabytes at which the pack being written to is sealed
+ * and a new one started, and up to which small packs are merged. Defaults to
+ * {@value #DEFAULT_MAX_PACK_SIZE_MB}.
+ * <li>{@code pack.compaction_threshold}: the number of packs smaller than half the maximum size
+ * that triggers a background compaction. Defaults to {@value #DEFAULT_COMPACTION_THRESHOLD}.
+ * <li>{@code pack.delta.max_chain}: when greater than zero, compaction stores features as deltas
+ * against their previous versions, with at most this many deltas to apply to read one, which
+ * bounds how much slower reading them is. Defaults to {@value #DEFAULT_MAX_DELTA_CHAIN}, no delta
+ * compression.
+ * </ul>
+ *
+ * @see PackStore
+ */
+public class PackObjectDatabase extends AbstractObjectDatabase implements ObjectDatabase {
+
+    static final String FORMAT_NAME = "pack";
+
+    static final String VERSION = "1.0";
+
+    private static final String MAX_PACK_SIZE_CONFIG_KEY = "pack.maxsize";
+
+    private static final String COMPACTION_THRESHOLD_CONFIG_KEY = "pack.compaction_threshold";
+
+    private static final String MAX_DELTA_CHAIN_CONFIG_KEY = "pack.delta.max_chain";
+
+    private static final int DEFAULT_MAX_PACK_SIZE_MB = 64;
+
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 8;
+
+    private static final int DEFAULT_MAX_DELTA_CHAIN = 0;
+
+    private static final int GET_ALL_BATCH_SIZE = 1000;
+
+    private static final int PUT_ALL_BATCH_BYTES = 1024 * 1024;
+
+    private final Platform platform;
+
+    private final Hints hints;
+
+    private final ConfigDatabase configDB;
+
+    private final boolean readOnly;
+
+    private final FileConflictsDatabase conflicts;
+
+    private final FileBlobStore blobStore;
+
+    private volatile PackStore store;
+
+    @Inject
+    public PackObjectDatabase(final Platform platform, final ConfigDatabase configDB,
+            final Hints hints) {
+        super(DataStreamSerializationFactoryV2.INSTANCE);
+        this.platform = platform;
+        this.hints = hints;
+        this.configDB = configDB;
+        this.readOnly = hints.getBoolean(Hints.OBJECTS_READ_ONLY);
+        this.conflicts = new FileConflictsDatabase(platform);
+        this.blobStore = new FileBlobStore(platform);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return store != null;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    @Override
+    public synchronized void open() {
+        if (isOpen()) {
+            return;
+        }
+        final Optional<URI> repoUrl = new ResolveGeogigURI(platform, hints).call();
+        checkState(repoUrl.isPresent(), "Can't find geogig repository home");
+        final File dir = new File(new File(repoUrl.get()), "packs");
+
+        final long maxPackSize = configDB.get(MAX_PACK_SIZE_CONFIG_KEY, Integer.class)
+                .or(DEFAULT_MAX_PACK_SIZE_MB).longValue() * 1024 * 1024;
+        final int compactionThreshold = configDB.get(COMPACTION_THRESHOLD_CONFIG_KEY,
+                Integer.class).or(DEFAULT_COMPACTION_THRESHOLD).intValue();
+        final int maxDeltaChain = configDB.get(MAX_DELTA_CHAIN_CONFIG_KEY, Integer.class)
+                .or(DEFAULT_MAX_DELTA_CHAIN).intValue();
+
+        PackStore store = PackStore.acquire(dir, maxPackSize, compactionThreshold, maxDeltaChain);
+        try {
+            conflicts.open();
+            blobStore.open();
+        } catch (RuntimeException e) {
+            store.release();
+            throw e;
+        }
+        this.store = store;
+    }
+
+    @Override
+    public synchronized void close() {
+        final PackStore store = this.store;
+        if (store == null) {
+            return;
+        }
+        this.store = null;
+        try {
+            store.release();
+        } finally {
+            try {
+                conflicts.close();
+            } finally {
+                blobStore.close();
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(final ObjectId id) {
+        checkNotNull(id, "argument id is null");
+        return store().exists(id);
+    }
+
+    @Override
+    protected List<ObjectId> lookUpInternal(final byte[] raw) {
+        return store().lookUp(raw);
+    }
+
+    @Override
+    protected InputStream getRawInternal(final ObjectId id, final boolean failIfNotFound) {
+        final PackStore store = store();
+        final byte[] data = store.get(id);
+        if (data == null) {
+            if (failIfNotFound) {
+                throw new IllegalArgumentException("Object does not exist: " + id + " at "
+                        + store.getDirectory());
+            }
+            return null;
+        }
+        return new ByteArrayInputStream(data);
+    }
+
+    @Override
+    protected boolean putInternal(final ObjectId id, final byte[] rawData) {
+        return writableStore().put(id, rawData);
+    }
+
+    /**
+     * Appends the objects in batches of about a megabyte, each one with a single write.
+     */
+    @Override
+    public void putAll(final Iterator<? extends RevObject> objects, final BulkOpListener listener) {
+        checkNotNull(objects, "objects is null");
+        checkNotNull(listener, "listener is null");
+        final PackStore store = writableStore();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<ObjectId> ids = new ArrayList<>();
+        List<byte[]> data = new ArrayList<>();
+        int bytes = 0;
+        while (objects.hasNext()) {
+            RevObject object = objects.next();
+            out.reset();
+            writeObject(object, out);
+            byte[] rawData = out.toByteArray();
+            ids.add(object.getId());
+            data.add(rawData);
+            bytes += rawData.length;
+            if (bytes >= PUT_ALL_BATCH_BYTES) {
+                store.putAll(ids, data, listener);
+                ids.clear();
+                data.clear();
+                bytes = 0;
+            }
+        }
+        if (!ids.isEmpty()) {
+            store.putAll(ids, data, listener);
+        }
+    }
+
+    @Override
+    public boolean delete(final ObjectId id) {
+        checkNotNull(id, "argument id is null");
+        return writableStore().delete(id);
+    }
+
+    @Override
+    public long deleteAll(final Iterator<ObjectId> ids, final BulkOpListener listener) {
+        checkNotNull(ids, "argument ids is null");
+        checkNotNull(listener, "argument listener is null");
+        return writableStore().deleteAll(ids, listener);
+    }
+
+    @Override
+    public Iterator<RevObject> getAll(final Iterable<ObjectId> ids, final BulkOpListener listener) {
+        return getAll(ids, listener, RevObject.class);
+    }
+
+    /**
+     * Locates the objects in batches of {@value #GET_ALL_BATCH_SIZE} and reads each batch in the
+     * order the objects are stored, so that objects written together are read together.
+     */
+    @Override
+    public <T extends RevObject> Iterator<T> getAll(final Iterable<ObjectId> ids,
+            final BulkOpListener listener, final Class<T> type) {
+        checkNotNull(ids, "ids is null");
+        checkNotNull(listener, "listener is null");
+        checkNotNull(type, "type is null");
+        final PackStore store = store();
+
+        Iterator<List<ObjectId>> batches = Iterators.partition(ids.iterator(), GET_ALL_BATCH_SIZE);
+        return Iterators.concat(Iterators.transform(batches,
+                new Function<List<ObjectId>, Iterator<T>>() {
+                    @Override
+                    public Iterator<T> apply(List<ObjectId> batch) {
+                        List<Location> locations = new ArrayList<>(batch.size());
+                        for (ObjectId id : batch) {
+                            Location location = store.locate(id);
+                            if (location == null) {
+                                listener.notFound(id);
+                            } else {
+                                locations.add(location);
+                            }
+                        }
+                        return read(Location.STORAGE_ORDER.sortedCopy(locations).iterator(),
+                                listener, type);
+                    }
+                }));
+    }
+
+    private <T extends RevObject> Iterator<T> read(final Iterator<Location> locations,
+            final BulkOpListener listener, final Class<T> type) {
+        return new AbstractIterator<T>() {
+            @Override
+            protected T computeNext() {
+                while (locations.hasNext()) {
+                    final Location location = locations.next();
+                    final byte[] data = location.read();
+                    RevObject object;
+                    try {
+                        object = serializer.read(location.id, new LZFInputStream(
+                                new ByteArrayInputStream(data)));
+                    } catch (IOException e) {
+                        throw Throwables.propagate(e);
+                    }
+                    if (type.isInstance(object)) {
+                        listener.found(location.id, data.length);
+                        return type.cast(object);
+                    }
+                    listener.notFound(location.id);
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    @Override
+    public Iterator<ObjectId> objectIds() {
+        return store().objectIds();
+    }
+
+    @Override
+    public void configure() throws RepositoryConnectionException {
+        RepositoryConnectionException.StorageType.OBJECT.configure(configDB, FORMAT_NAME, VERSION);
+    }
+
+    @Override
+    public void checkConfig() throws RepositoryConnectionException {
+        RepositoryConnectionException.StorageType.OBJECT.verify(configDB, FORMAT_NAME, VERSION);
+    }
+
+    @Override
+    public ConflictsDatabase getConflictsDatabase() {
+        return conflicts;
+    }
+
+    @Override
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    private PackStore store() {
+        final PackStore store = this.store;
+        checkState(store != null, "Database is closed");
+        return store;
+    }
+
+    private PackStore writableStore() {
+        final PackStore store = store();
+        checkState(!readOnly, "%s is read only.", store.getDirectory());
+        return store;
+    }
+
+    @Override
+    public String toString() {
+        final PackStore store = this.store;
+        return String.format("%s[dir: %s]", getClass().getSimpleName(),
+                store == null ? "<unset>" : store.getDirectory());
+    }
+}
@@ -0,0 +1,62 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.pack;
+
+import org.locationtech.geogig.di.StorageProvider;
+import org.locationtech.geogig.di.VersionedFormat;
+import org.locationtech.geogig.storage.bdbje.JEGraphDatabase_v0_2;
+import org.locationtech.geogig.storage.fs.FileRefDatabase;
+
+public class PackStorageProvider extends StorageProvider {
+
+    private static final String NAME = PackObjectDatabase.FORMAT_NAME;
+
+    private static final String VERSION = PackObjectDatabase.VERSION;
+
+    private static final VersionedFormat REFS = new VersionedFormat("file", "1.0",
+            FileRefDatabase.class);
+
+    private static final VersionedFormat GRAPH = new VersionedFormat("bdbje", "0.2",
+            JEGraphDatabase_v0_2.class);
+
+    private static final VersionedFormat OBJECT = new VersionedFormat(NAME, VERSION,
+            PackObjectDatabase.class);
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Stores revision objects in memory mapped, append only pack files, graph objects in BerkeleyDB JE, refs in regular files.";
+    }
+
+    @Override
+    public VersionedFormat getObjectDatabaseFormat() {
+        return OBJECT;
+    }
+
+    @Override
+    public VersionedFormat getGraphDatabaseFormat() {
+        return GRAPH;
+    }
+
+    @Override
+    public VersionedFormat getRefsDatabaseFormat() {
+        return REFS;
+    }
+
+}
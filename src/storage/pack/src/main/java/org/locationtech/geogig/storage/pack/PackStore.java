@@ -0,0 +1,770 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.pack;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.storage.BulkOpListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ning.compress.lzf.LZFEncoder;
+
+/**
+ * The packs in a directory: the {@link ActivePack active} one new objects are appended to, and
+ * the {@link SealedPack sealed} ones, which are read through memory mapped buffers.
+ * <p>
+ * The active pack is sealed once it reaches the maximum pack size and when the store is closed,
+ * so a background compaction merges small packs, in the order their records were written, into
+ * packs of up to the maximum size. It also rewrites packs where most objects are deleted, to
+ * reclaim their space. If enabled, merging packs also stores features as deltas against their
+ * previous versions, see {@link DeltaCompressor}.
+ * <p>
+ * There's a single store per directory in the JVM, shared by all the
+ * {@link PackObjectDatabase}s for it through {@link #acquire} and {@link #release}, and it holds a
+ * lock file so that no other process opens the same directory.
+ * <p>
+ * Readers don't lock: they read an immutable snapshot of the packs, and packs remain readable
+ * after being sealed or merged into others. Writes are serialized.
+ */
+final class PackStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PackStore.class);
+
+    static final String PACK_SUFFIX = ".pack";
+
+    static final String INDEX_SUFFIX = ".idx";
+
+    static final String TOMBSTONES_SUFFIX = ".del";
+
+    static final String TMP_SUFFIX = ".tmp";
+
+    private static final String PREFIX = "pack-";
+
+    private static final int DELETE_BATCH_SIZE = 10_000;
+
+    private static final int COPY_BATCH_BYTES = 1024 * 1024;
+
+    private static final Map<File, PackStore> STORES = new HashMap<>();
+
+    private final File dir;
+
+    private final long maxPackSize;
+
+    private final int compactionThreshold;
+
+    private final int maxDeltaChain;
+
+    private int references;
+
+    private RandomAccessFile lockFile;
+
+    private FileLock lock;
+
+    private final Object writeLock = new Object();
+
+    /**
+     * Serializes compaction rounds, so that the same packs are never merged twice
+     */
+    private final Object compactionLock = new Object();
+
+    private volatile State state;
+
+    private long nextSeq;
+
+    private boolean closed;
+
+    private ExecutorService compactor;
+
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /**
+     * An immutable snapshot of the store's packs
+     */
+    private static final class State {
+
+        @Nullable
+        final ActivePack active;
+
+        /**
+         * Newest first
+         */
+        final ImmutableList<SealedPack> sealed;
+
+        final ImmutableList<Pack> packs;
+
+        State(@Nullable ActivePack active, ImmutableList<SealedPack> sealed) {
+            this.active = active;
+            this.sealed = sealed;
+            ImmutableList.Builder<Pack> packs = ImmutableList.builder();
+            if (active != null) {
+                packs.add(active);
+            }
+            this.packs = packs.addAll(sealed).build();
+        }
+    }
+
+    /**
+     * The location of an object's record, to read the objects of a batch in storage order
+     */
+    static final class Location {
+
+        static final Ordering<Location> STORAGE_ORDER = new Ordering<Location>() {
+            @Override
+            public int compare(Location l1, Location l2) {
+                return ComparisonChain.start().compare(l1.pack.getSeq(), l2.pack.getSeq())
+                        .compare(l1.offset, l2.offset).result();
+            }
+        };
+
+        final ObjectId id;
+
+        private final Pack pack;
+
+        private final long offset;
+
+        Location(ObjectId id, Pack pack, long offset) {
+            this.id = id;
+            this.pack = pack;
+            this.offset = offset;
+        }
+
+        byte[] read() {
+            try {
+                return pack.read(offset);
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+
+    private PackStore(File dir, long maxPackSize, int compactionThreshold, int maxDeltaChain) {
+        this.dir = dir;
+        this.maxPackSize = maxPackSize;
+        this.compactionThreshold = compactionThreshold;
+        this.maxDeltaChain = maxDeltaChain;
+    }
+
+    /**
+     * Returns the store for {@code dir}, opening it if it's not already open by another database
+     * in this JVM, in which case its settings are kept.
+     *
+     * @param maxDeltaChain the maximum number of deltas to apply to read a feature, {@code 0}
+     *        disables delta compression
+     */
+    static PackStore acquire(File dir, long maxPackSize, int compactionThreshold,
+            int maxDeltaChain) {
+        synchronized (STORES) {
+            File key;
+            try {
+                key = dir.getCanonicalFile();
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+            PackStore store = STORES.get(key);
+            if (store == null) {
+                store = new PackStore(key, maxPackSize, compactionThreshold, maxDeltaChain);
+                store.open();
+                STORES.put(key, store);
+            }
+            store.references++;
+            return store;
+        }
+    }
+
+    /**
+     * Closes the store once released by all the databases that acquired it
+     */
+    void release() {
+        synchronized (STORES) {
+            if (--references == 0) {
+                STORES.remove(dir);
+                close();
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    private void open() {
+        checkState(dir.isDirectory() || dir.mkdirs(), "Can't create pack directory %s", dir);
+        try {
+            lockFile = new RandomAccessFile(new File(dir, "pack.lock"), "rw");
+            try {
+                lock = lockFile.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                lockFile.close();
+                throw new IllegalStateException(
+                        "The repository is already open by another process for writing");
+            }
+            try {
+                load();
+            } catch (IOException | RuntimeException e) {
+                lock.release();
+                lockFile.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        compactor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("PackStore-compaction-%d").setDaemon(true).build());
+        scheduleCompaction();
+        LOGGER.debug("Opened pack store at {} with {} packs", dir, state.sealed.size());
+    }
+
+    private void load() throws IOException {
+        final File[] files = dir.listFiles();
+        checkState(files != null, "Can't list directory %s", dir);
+
+        SortedMap<Long, File> packFiles = new TreeMap<>();
+        for (File f : files) {
+            final String name = f.getName();
+            if (name.endsWith(TMP_SUFFIX)) {
+                // left over by an interrupted compaction or index write
+                f.delete();
+            } else if (name.endsWith(PACK_SUFFIX) && seq(name) != null) {
+                packFiles.put(seq(name), f);
+            }
+        }
+        List<SealedPack> sealed = new ArrayList<>();
+        for (Map.Entry<Long, File> e : packFiles.entrySet()) {
+            final long seq = e.getKey().longValue();
+            final File file = e.getValue();
+            final File indexFile = file(seq, INDEX_SUFFIX);
+            Tombstones tombstones = Tombstones.load(file(seq, TOMBSTONES_SUFFIX));
+            if (indexFile.exists()) {
+                sealed.add(0, SealedPack.open(seq, file, indexFile, tombstones));
+            } else {
+                LOGGER.info("Recovering unsealed pack {}", file);
+                ActivePack recovered = ActivePack.recover(seq, file, indexFile, tombstones);
+                if (recovered.isEmpty()) {
+                    recovered.discard();
+                } else {
+                    sealed.add(0, recovered.seal(file));
+                }
+            }
+            nextSeq = seq + 1;
+        }
+        for (File f : files) {
+            final String name = f.getName();
+            if ((name.endsWith(INDEX_SUFFIX) || name.endsWith(TOMBSTONES_SUFFIX))
+                    && seq(name) != null && !packFiles.containsKey(seq(name))) {
+                // left behind by a compaction
+                f.delete();
+            }
+        }
+        state = new State(null, ImmutableList.copyOf(sealed));
+    }
+
+    private void close() {
+        compactor.shutdown();
+        try {
+            // let a running compaction finish
+            while (!compactor.awaitTermination(1, TimeUnit.SECONDS)) {
+                LOGGER.debug("Waiting for pack compaction to finish at {}", dir);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            closed = true;
+            try {
+                final State state = this.state;
+                if (state.active != null) {
+                    if (state.active.isEmpty()) {
+                        state.active.discard();
+                    } else {
+                        state.active.seal(state.active.getFile());
+                    }
+                }
+                for (Pack pack : state.packs) {
+                    pack.close();
+                }
+                lock.release();
+                lockFile.close();
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            } finally {
+                this.state = new State(null, ImmutableList.<SealedPack> of());
+            }
+        }
+        LOGGER.debug("Closed pack store at {}", dir);
+    }
+
+    public boolean exists(ObjectId id) {
+        for (Pack pack : state.packs) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    public Location locate(ObjectId id) {
+        for (Pack pack : state.packs) {
+            final long offset = pack.liveOffset(id);
+            if (offset >= 0) {
+                return new Location(id, pack, offset);
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    public byte[] get(ObjectId id) {
+        Location location = locate(id);
+        return location == null ? null : location.read();
+    }
+
+    public List<ObjectId> lookUp(byte[] prefix) {
+        Set<ObjectId> matches = new LinkedHashSet<>();
+        for (Pack pack : state.packs) {
+            for (ObjectId id : pack.lookUp(prefix)) {
+                if (pack.contains(id)) {
+                    matches.add(id);
+                }
+            }
+        }
+        return new ArrayList<>(matches);
+    }
+
+    /**
+     * @return the ids of the objects in the store as of the call, each one reported once even if
+     *         it's stored in more than one pack
+     */
+    public Iterator<ObjectId> objectIds() {
+        final ImmutableList<Pack> packs = state.packs;
+        return Iterators.concat(Iterators.transform(packs.iterator(),
+                new Function<Pack, Iterator<ObjectId>>() {
+                    @Override
+                    public Iterator<ObjectId> apply(final Pack pack) {
+                        final List<Pack> previous = packs.subList(0, packs.indexOf(pack));
+                        return Iterators.filter(pack.liveIds(), new Predicate<ObjectId>() {
+                            @Override
+                            public boolean apply(ObjectId id) {
+                                for (Pack p : previous) {
+                                    if (p.contains(id)) {
+                                        return false;
+                                    }
+                                }
+                                return true;
+                            }
+                        });
+                    }
+                }));
+    }
+
+    /**
+     * Adds the object unless it already exists
+     *
+     * @return whether the object was added
+     */
+    public boolean put(ObjectId id, byte[] data) {
+        synchronized (writeLock) {
+            checkState(!closed, "pack store is closed");
+            if (exists(id)) {
+                return false;
+            }
+            try {
+                active().append(id, data);
+                sealIfFull();
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Appends the objects that don't already exist in a single write, in the given order.
+     */
+    public void putAll(List<ObjectId> ids, List<byte[]> data, BulkOpListener listener) {
+        synchronized (writeLock) {
+            checkState(!closed, "pack store is closed");
+            List<ObjectId> newIds = new ArrayList<>(ids.size());
+            List<byte[]> newData = new ArrayList<>(ids.size());
+            Set<ObjectId> batch = new HashSet<>();
+            for (int i = 0; i < ids.size(); i++) {
+                ObjectId id = ids.get(i);
+                if (exists(id) || !batch.add(id)) {
+                    listener.found(id, null);
+                } else {
+                    newIds.add(id);
+                    newData.add(data.get(i));
+                }
+            }
+            if (newIds.isEmpty()) {
+                return;
+            }
+            try {
+                active().append(newIds, newData);
+                sealIfFull();
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+            for (int i = 0; i < newIds.size(); i++) {
+                listener.inserted(newIds.get(i), newData.get(i).length);
+            }
+        }
+    }
+
+    public boolean delete(ObjectId id) {
+        synchronized (writeLock) {
+            checkState(!closed, "pack store is closed");
+            try {
+                boolean deleted = false;
+                for (Pack pack : state.packs) {
+                    if (pack.delete(id)) {
+                        pack.flushTombstones();
+                        deleted = true;
+                    }
+                }
+                return deleted;
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+
+    public long deleteAll(Iterator<ObjectId> ids, BulkOpListener listener) {
+        long count = 0;
+        Iterator<List<ObjectId>> batches = Iterators.partition(ids, DELETE_BATCH_SIZE);
+        while (batches.hasNext()) {
+            List<ObjectId> batch = batches.next();
+            synchronized (writeLock) {
+                checkState(!closed, "pack store is closed");
+                final ImmutableList<Pack> packs = state.packs;
+                try {
+                    for (ObjectId id : batch) {
+                        boolean deleted = false;
+                        for (Pack pack : packs) {
+                            deleted |= pack.delete(id);
+                        }
+                        if (deleted) {
+                            count++;
+                            listener.deleted(id);
+                        } else {
+                            listener.notFound(id);
+                        }
+                    }
+                    for (Pack pack : packs) {
+                        pack.flushTombstones();
+                    }
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+        }
+        scheduleCompaction();
+        return count;
+    }
+
+    /**
+     * @return the active pack, creating it if needed. Called while holding the write lock.
+     */
+    private ActivePack active() throws IOException {
+        ActivePack active = state.active;
+        if (active == null) {
+            final long seq = nextSeq++;
+            active = ActivePack.create(seq, file(seq, PACK_SUFFIX), file(seq, INDEX_SUFFIX),
+                    Tombstones.load(file(seq, TOMBSTONES_SUFFIX)));
+            state = new State(active, state.sealed);
+        }
+        return active;
+    }
+
+    private void sealIfFull() throws IOException {
+        final ActivePack active = state.active;
+        if (active != null && active.sizeBytes() >= maxPackSize) {
+            SealedPack sealed = active.seal(active.getFile());
+            state = new State(null, ImmutableList.<SealedPack> builder().add(sealed)
+                    .addAll(state.sealed).build());
+            LOGGER.debug("Sealed {}", sealed);
+            scheduleCompaction();
+        }
+    }
+
+    private void scheduleCompaction() {
+        if (!compactionCandidates(state.sealed).isEmpty()
+                && compactionScheduled.compareAndSet(false, true)) {
+            try {
+                compactor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        compactionScheduled.set(false);
+                        try {
+                            if (compact()) {
+                                scheduleCompaction();
+                            }
+                        } catch (Exception e) {
+                            LOGGER.warn("Error compacting packs at " + dir, e);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException closing) {
+                compactionScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Selects, oldest first, the packs smaller than half the maximum pack size, if there are at
+     * least as many as the compaction threshold, and the ones where most objects are deleted, up
+     * to the maximum pack size.
+     */
+    private List<SealedPack> compactionCandidates(List<SealedPack> newestFirst) {
+        List<SealedPack> candidates = new ArrayList<>();
+        int small = 0;
+        boolean mostlyDeleted = false;
+        for (SealedPack pack : Lists.reverse(newestFirst)) {
+            final boolean isSmall = pack.sizeBytes() < maxPackSize / 2;
+            final boolean isMostlyDeleted = 2L * pack.deadCount() > pack.count();
+            if (isSmall || isMostlyDeleted) {
+                candidates.add(pack);
+                small += isSmall ? 1 : 0;
+                mostlyDeleted |= isMostlyDeleted;
+            }
+        }
+        if (small < compactionThreshold && !mostlyDeleted) {
+            return ImmutableList.of();
+        }
+        List<SealedPack> selected = new ArrayList<>();
+        long bytes = 0;
+        for (SealedPack pack : candidates) {
+            if (!selected.isEmpty() && bytes + pack.sizeBytes() > maxPackSize) {
+                break;
+            }
+            selected.add(pack);
+            bytes += pack.sizeBytes();
+        }
+        if (selected.size() == 1 && 2L * selected.get(0).deadCount() <= selected.get(0).count()) {
+            return ImmutableList.of();
+        }
+        return selected;
+    }
+
+    /**
+     * Runs a compaction round: merges the {@link #compactionCandidates candidate} packs into a
+     * new one, copying the objects that are not deleted in the order they were written, and then
+     * replaces them with it.
+     * <p>
+     * Writers are only blocked while selecting the packs and while replacing them, objects deleted
+     * from the merged packs in between are deleted from the new pack as well.
+     *
+     * @return whether any packs were merged
+     */
+    boolean compact() throws IOException {
+        synchronized (compactionLock) {
+            return compactRound();
+        }
+    }
+
+    private boolean compactRound() throws IOException {
+        final List<SealedPack> inputs;
+        final long seq;
+        final int[] deadCounts;
+        final ActivePack output;
+        synchronized (writeLock) {
+            if (closed) {
+                return false;
+            }
+            inputs = compactionCandidates(state.sealed);
+            if (inputs.isEmpty()) {
+                return false;
+            }
+            deadCounts = new int[inputs.size()];
+            for (int i = 0; i < inputs.size(); i++) {
+                deadCounts[i] = inputs.get(i).deadCount();
+            }
+            seq = nextSeq++;
+            output = ActivePack.create(seq, file(seq, PACK_SUFFIX + TMP_SUFFIX),
+                    file(seq, INDEX_SUFFIX), Tombstones.load(file(seq, TOMBSTONES_SUFFIX)));
+        }
+        final SealedPack merged;
+        try {
+            copy(inputs, output);
+            synchronized (writeLock) {
+                boolean deletedMeanwhile = false;
+                for (int i = 0; i < inputs.size(); i++) {
+                    deletedMeanwhile |= inputs.get(i).deadCount() != deadCounts[i];
+                }
+                if (deletedMeanwhile) {
+                    for (Iterator<ObjectId> ids = output.ids(); ids.hasNext();) {
+                        ObjectId id = ids.next();
+                        if (!containsAny(inputs, id)) {
+                            output.delete(id);
+                        }
+                    }
+                }
+                List<SealedPack> sealed = new ArrayList<>(state.sealed);
+                sealed.removeAll(inputs);
+                if (output.deadCount() == output.count()) {
+                    // nothing left
+                    merged = null;
+                    output.discard();
+                } else {
+                    merged = output.seal(file(seq, PACK_SUFFIX));
+                    sealed.add(0, merged);
+                }
+                state = new State(state.active, ImmutableList.copyOf(sealed));
+            }
+        } catch (IOException | RuntimeException e) {
+            output.discard();
+            throw e;
+        }
+        for (SealedPack input : inputs) {
+            // readers may still be using it, but the mapped buffers outlive the files
+            if (!input.deleteFiles()) {
+                LOGGER.warn("Unable to delete compacted pack {}", input.getFile());
+            }
+        }
+        LOGGER.debug("Merged {} packs into {}", inputs.size(), merged);
+        return true;
+    }
+
+    /**
+     * Copies the live records of {@code inputs} to {@code output}. Delta records are rewritten,
+     * either whole or as deltas against a record in the output, since their bases are in the
+     * input packs.
+     */
+    private void copy(List<SealedPack> inputs, ActivePack output) throws IOException {
+        final DeltaCompressor deltaCompressor = maxDeltaChain > 0 ? DeltaCompressor.create(
+                inputs, maxDeltaChain) : null;
+        final Set<ObjectId> copied = new HashSet<>();
+        final List<ObjectId> ids = new ArrayList<>();
+        final List<byte[]> data = new ArrayList<>();
+        final BitSet deltas = new BitSet();
+        long nextOffset = output.sizeBytes();
+        int bytes = 0;
+        for (SealedPack input : inputs) {
+            for (Iterator<Long> offsets = input.recordOffsets(); offsets.hasNext();) {
+                final long offset = offsets.next().longValue();
+                final ObjectId id = input.idAt(offset);
+                if (input.liveOffset(id) != offset || !copied.add(id)) {
+                    continue;
+                }
+                final String name = deltaCompressor == null ? null : deltaCompressor.name(id);
+                byte[] record = input.isDelta(offset) ? null : input.readRecord(offset);
+                boolean delta = false;
+                if (name != null) {
+                    byte[] contents = input.readUncompressed(offset);
+                    if (record == null) {
+                        record = LZFEncoder.encode(contents);
+                    }
+                    byte[] deltaRecord = deltaCompressor.encode(name, contents, record.length,
+                            nextOffset);
+                    if (deltaRecord != null) {
+                        record = deltaRecord;
+                        delta = true;
+                    }
+                } else if (record == null) {
+                    record = LZFEncoder.encode(input.readUncompressed(offset));
+                }
+                deltas.set(ids.size(), delta);
+                ids.add(id);
+                data.add(record);
+                bytes += record.length;
+                nextOffset += Pack.RECORD_HEADER_SIZE + record.length;
+                if (bytes >= COPY_BATCH_BYTES) {
+                    output.append(ids, data, deltas);
+                    ids.clear();
+                    data.clear();
+                    deltas.clear();
+                    bytes = 0;
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            output.append(ids, data, deltas);
+        }
+    }
+
+    private static boolean containsAny(List<SealedPack> packs, ObjectId id) {
+        for (Pack pack : packs) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the current packs, newest first, for testing purposes
+     */
+    List<Pack> packs() {
+        return state.packs;
+    }
+
+    private File file(long seq, String suffix) {
+        return new File(dir, String.format("%s%016x%s", PREFIX, seq, suffix));
+    }
+
+    /**
+     * @return the sequence number of a pack file, index or tombstones name, {@code null} if it's
+     *         not one
+     */
+    @Nullable
+    private static Long seq(String fileName) {
+        final int dot = fileName.indexOf('.');
+        if (!fileName.startsWith(PREFIX) || dot != PREFIX.length() + 16) {
+            return null;
+        }
+        try {
+            return Long.valueOf(Long.parseLong(fileName.substring(PREFIX.length(), dot), 16));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s]", getClass().getSimpleName(), dir);
+    }
+}
@@ -0,0 +1,158 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.pack;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Iterator;
+import java.util.List;
+
+import org.locationtech.geogig.api.ObjectId;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * An immutable pack, read through memory mapped buffers for both the pack and its
+ * {@link PackIndex index}.
+ * <p>
+ * The buffers are only read with absolute positions or through {@link ByteBuffer#duplicate()
+ * duplicates}, so that any number of threads can read concurrently without locking.
+ */
+final class SealedPack extends Pack {
+
+    private final File file;
+
+    private final ByteBuffer data;
+
+    private final PackIndex index;
+
+    private SealedPack(long seq, File file, File indexFile, Tombstones tombstones,
+            ByteBuffer data, PackIndex index) {
+        super(seq, indexFile, tombstones);
+        this.file = file;
+        this.data = data;
+        this.index = index;
+    }
+
+    static SealedPack open(long seq, File file, File indexFile, Tombstones tombstones)
+            throws IOException {
+        final ByteBuffer data;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            checkState(channel.size() < Integer.MAX_VALUE, "pack %s is too big", file);
+            // the mapping stays valid after the channel is closed
+            data = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+        checkState(data.capacity() >= HEADER_SIZE && data.getInt(0) == MAGIC,
+                "%s is not a pack file", file);
+        checkState(data.getInt(4) == VERSION, "unsupported pack version %s in %s",
+                data.getInt(4), file);
+        PackIndex index = PackIndex.open(indexFile);
+        return new SealedPack(seq, file, indexFile, tombstones, data, index);
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public long sizeBytes() {
+        return data.capacity();
+    }
+
+    @Override
+    public int count() {
+        return index.size();
+    }
+
+    @Override
+    public long offset(ObjectId id) {
+        return index.offset(id);
+    }
+
+    @Override
+    protected int header(final long offset) {
+        return data.getInt((int) offset + ObjectId.NUM_BYTES);
+    }
+
+    @Override
+    protected byte[] data(final long offset, final int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer record = data.duplicate();
+        record.position((int) offset + RECORD_HEADER_SIZE);
+        record.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public Iterator<ObjectId> ids() {
+        return index.ids();
+    }
+
+    @Override
+    public List<ObjectId> lookUp(byte[] prefix) {
+        return index.lookUp(prefix);
+    }
+
+    /**
+     * @return the id of the record at {@code offset}
+     */
+    public ObjectId idAt(final long offset) {
+        byte[] raw = new byte[ObjectId.NUM_BYTES];
+        ByteBuffer record = data.duplicate();
+        record.position((int) offset);
+        record.get(raw);
+        return ObjectId.createNoClone(raw);
+    }
+
+    /**
+     * @return the offsets of the records in the order they were written, which is the order
+     *         compaction preserves
+     */
+    public Iterator<Long> recordOffsets() {
+        return new AbstractIterator<Long>() {
+            private int next = HEADER_SIZE;
+
+            @Override
+            protected Long computeNext() {
+                if (next >= data.capacity()) {
+                    return endOfData();
+                }
+                final int offset = next;
+                next += RECORD_HEADER_SIZE + (header(offset) & LENGTH_MASK);
+                return Long.valueOf(offset);
+            }
+        };
+    }
+
+    /**
+     * Deletes the pack files once it's been merged into another pack. The index and tombstones
+     * are only deleted if the pack file could be deleted, otherwise the pack is loaded again the
+     * next time the store is open, with its deleted objects still deleted.
+     *
+     * @return whether the pack file could be deleted
+     */
+    public boolean deleteFiles() throws IOException {
+        close();
+        if (!file.delete()) {
+            return false;
+        }
+        indexFile.delete();
+        tombstones.getFile().delete();
+        return true;
+    }
+}
@@ -0,0 +1,104 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.pack;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.locationtech.geogig.api.ObjectId;
+
+/**
+ * The records of a pack that have been deleted, since packs are immutable. Kept in an append only
+ * {@code .del} file next to the pack until compaction rewrites it without them.
+ * <p>
+ * Each entry holds the id and the offset of the deleted record, so that an object deleted and
+ * then added again to the same pack is not considered deleted.
+ */
+final class Tombstones {
+
+    private static final int ENTRY_SIZE = ObjectId.NUM_BYTES + 8;
+
+    private final File file;
+
+    private final ConcurrentMap<ObjectId, Long> deleted = new ConcurrentHashMap<>();
+
+    private DataOutputStream out;
+
+    private Tombstones(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the tombstones in {@code file}, if it exists, ignoring a truncated last entry
+     */
+    static Tombstones load(File file) throws IOException {
+        Tombstones tombstones = new Tombstones(file);
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)))) {
+                final long entries = file.length() / ENTRY_SIZE;
+                for (long i = 0; i < entries; i++) {
+                    byte[] raw = new byte[ObjectId.NUM_BYTES];
+                    in.readFully(raw);
+                    tombstones.deleted.put(ObjectId.createNoClone(raw), in.readLong());
+                }
+            }
+        }
+        return tombstones;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int size() {
+        return deleted.size();
+    }
+
+    public boolean isDeleted(ObjectId id, long offset) {
+        Long deletedOffset = deleted.get(id);
+        return deletedOffset != null && deletedOffset.longValue() == offset;
+    }
+
+    /**
+     * Records the deletion of the record of {@code id} at {@code offset}. Callers are expected to
+     * be serialized by the pack store and to {@link #flush()} once done.
+     */
+    public void add(ObjectId id, long offset) throws IOException {
+        if (out == null) {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+        out.write(id.getRawValue());
+        out.writeLong(offset);
+        deleted.put(id, Long.valueOf(offset));
+    }
+
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    public void close() throws IOException {
+        if (out != null) {
+            DataOutputStream out = this.out;
+            this.out = null;
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.pack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevFeature;
+import org.locationtech.geogig.api.RevFeatureImpl;
+import org.locationtech.geogig.api.RevObject;
+import org.locationtech.geogig.api.RevObject.TYPE;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.RevTreeImpl;
+import org.locationtech.geogig.storage.BulkOpListener;
+import org.locationtech.geogig.storage.BulkOpListener.CountingListener;
+import org.locationtech.geogig.storage.datastream.DataStreamSerializationFactoryV2;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+import com.ning.compress.lzf.LZFDecoder;
+import com.ning.compress.lzf.LZFEncoder;
+
+public class PackStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+
+    private PackStore store;
+
+    @Before
+    public void before() throws IOException {
+        dir = tmp.newFolder("packs");
+        store = PackStore.acquire(dir, 64 * 1024 * 1024, Integer.MAX_VALUE, 0);
+    }
+
+    @After
+    public void after() {
+        if (store != null) {
+            store.release();
+        }
+    }
+
+    private PackStore reopen(long maxPackSize, int compactionThreshold) {
+        return reopen(maxPackSize, compactionThreshold, 0);
+    }
+
+    private PackStore reopen(long maxPackSize, int compactionThreshold, int maxDeltaChain) {
+        store.release();
+        store = null;
+        store = PackStore.acquire(dir, maxPackSize, compactionThreshold, maxDeltaChain);
+        return store;
+    }
+
+    private static ObjectId id(int i) {
+        return ObjectId.forString("object-" + i);
+    }
+
+    private static byte[] data(int i) {
+        byte[] data = new byte[100 + i % 50];
+        Arrays.fill(data, (byte) i);
+        return data;
+    }
+
+    private void putAll(int from, int to) {
+        List<ObjectId> ids = new ArrayList<>();
+        List<byte[]> data = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add(id(i));
+            data.add(data(i));
+        }
+        store.putAll(ids, data, BulkOpListener.NOOP_LISTENER);
+    }
+
+    private void assertContents(int from, int to) {
+        for (int i = from; i < to; i++) {
+            assertArrayEquals("object " + i, data(i), store.get(id(i)));
+        }
+    }
+
+    @Test
+    public void testPutGet() {
+        assertTrue(store.put(id(1), data(1)));
+        assertFalse(store.put(id(1), data(1)));
+        assertTrue(store.exists(id(1)));
+        assertArrayEquals(data(1), store.get(id(1)));
+        assertNull(store.get(id(2)));
+        assertFalse(store.exists(id(2)));
+    }
+
+    @Test
+    public void testPutAllReportsInsertedAndFound() {
+        putAll(0, 10);
+        CountingListener listener = BulkOpListener.newCountingListener();
+        List<ObjectId> ids = ImmutableList.of(id(5), id(10), id(11), id(11));
+        List<byte[]> data = ImmutableList.of(data(5), data(10), data(11), data(11));
+        store.putAll(ids, data, listener);
+        assertEquals(2, listener.inserted());
+        assertEquals(2, listener.found());
+        assertContents(0, 12);
+    }
+
+    @Test
+    public void testPersistence() {
+        putAll(0, 100);
+        reopen(64 * 1024 * 1024, Integer.MAX_VALUE);
+        assertContents(0, 100);
+        assertEquals(1, store.packs().size());
+        assertTrue(new File(dir, store.packs().get(0).getFile().getName().replace(".pack", ".idx"))
+                .exists());
+    }
+
+    @Test
+    public void testRollsPacksAtMaxSize() {
+        reopen(10 * 1024, Integer.MAX_VALUE);
+        for (int i = 0; i < 1000; i += 10) {
+            putAll(i, i + 10);
+        }
+        assertTrue(store.packs().size() > 5);
+        assertContents(0, 1000);
+        reopen(10 * 1024, Integer.MAX_VALUE);
+        assertContents(0, 1000);
+    }
+
+    @Test
+    public void testRecoverUnsealedPack() throws IOException {
+        putAll(0, 100);
+        final File pack = store.packs().get(0).getFile();
+        store.release();
+        store = null;
+
+        // simulate a crash while appending: no index and an incomplete last record
+        new File(dir, pack.getName().replace(".pack", ".idx")).delete();
+        try (RandomAccessFile raf = new RandomAccessFile(pack, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        store = PackStore.acquire(dir, 64 * 1024 * 1024, Integer.MAX_VALUE, 0);
+        assertContents(0, 99);
+        assertFalse(store.exists(id(99)));
+        assertEquals(99, Iterators.size(store.objectIds()));
+    }
+
+    @Test
+    public void testDelete() {
+        putAll(0, 10);
+        reopen(64 * 1024 * 1024, Integer.MAX_VALUE);
+        putAll(10, 20);
+
+        assertTrue(store.delete(id(1)));
+        assertTrue(store.delete(id(11)));
+        assertFalse(store.delete(id(11)));
+        assertFalse(store.exists(id(1)));
+        assertFalse(store.exists(id(11)));
+
+        reopen(64 * 1024 * 1024, Integer.MAX_VALUE);
+        assertFalse(store.exists(id(1)));
+        assertFalse(store.exists(id(11)));
+        assertEquals(18, Iterators.size(store.objectIds()));
+
+        assertTrue(store.put(id(1), data(1)));
+        assertArrayEquals(data(1), store.get(id(1)));
+        reopen(64 * 1024 * 1024, Integer.MAX_VALUE);
+        assertArrayEquals(data(1), store.get(id(1)));
+    }
+
+    @Test
+    public void testDeleteAll() {
+        putAll(0, 10);
+        CountingListener listener = BulkOpListener.newCountingListener();
+        long deleted = store.deleteAll(
+                ImmutableList.of(id(1), id(2), id(20)).iterator(), listener);
+        assertEquals(2, deleted);
+        assertEquals(2, listener.deleted());
+        assertEquals(1, listener.notFound());
+        assertEquals(8, Iterators.size(store.objectIds()));
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        reopen(10 * 1024, Integer.MAX_VALUE);
+        for (int i = 0; i < 100; i += 5) {
+            putAll(i, i + 5);
+            reopen(10 * 1024, Integer.MAX_VALUE);
+        }
+        final int packCount = store.packs().size();
+        assertEquals(20, packCount);
+        store.deleteAll(ImmutableList.of(id(0), id(50), id(99)).iterator(),
+                BulkOpListener.NOOP_LISTENER);
+
+        reopen(10 * 1024, 2);
+        while (store.compact()) {
+            ;
+        }
+        assertTrue(store.packs().size() < packCount);
+        assertEquals(97, Iterators.size(store.objectIds()));
+        assertContents(1, 50);
+        assertContents(51, 99);
+
+        reopen(10 * 1024, Integer.MAX_VALUE);
+        assertEquals(97, ImmutableSet.copyOf(store.objectIds()).size());
+        assertFalse(store.exists(id(0)));
+        assertFalse(store.exists(id(50)));
+        assertContents(1, 50);
+        assertContents(51, 99);
+        for (File f : dir.listFiles()) {
+            assertFalse(f.getName(), f.getName().endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public void testCompactionOfMostlyDeletedPack() throws IOException {
+        putAll(0, 100);
+        reopen(64 * 1024 * 1024, Integer.MAX_VALUE);
+        List<ObjectId> deletes = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            deletes.add(id(i));
+        }
+        store.deleteAll(deletes.iterator(), BulkOpListener.NOOP_LISTENER);
+        while (store.compact()) {
+            ;
+        }
+        assertEquals(1, store.packs().size());
+        assertEquals(40, store.packs().get(0).count());
+        assertContents(60, 100);
+    }
+
+    @Test
+    public void testObjectIdsHasNoDuplicates() {
+        putAll(0, 10);
+        reopen(64 * 1024 * 1024, Integer.MAX_VALUE);
+        store.delete(id(3));
+        putAll(0, 20);
+        List<ObjectId> ids = Lists.newArrayList(store.objectIds());
+        assertEquals(20, ids.size());
+        assertEquals(20, ImmutableSet.copyOf(ids).size());
+    }
+
+    @Test
+    public void testLookUp() {
+        putAll(0, 10);
+        reopen(64 * 1024 * 1024, Integer.MAX_VALUE);
+        putAll(10, 20);
+        for (int i = 0; i < 20; i++) {
+            byte[] prefix = Arrays.copyOf(id(i).getRawValue(), 4);
+            assertEquals(ImmutableList.of(id(i)), store.lookUp(prefix));
+        }
+        store.delete(id(5));
+        assertTrue(store.lookUp(Arrays.copyOf(id(5).getRawValue(), 4)).isEmpty());
+    }
+
+    private static byte[] serialize(RevObject object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataStreamSerializationFactoryV2.INSTANCE.write(object, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a version of {@code count} features with a large attribute, only a few bytes of which
+     * change between versions, and the tree pointing to them, in a pack of its own
+     */
+    private List<RevFeature> putVersion(int version, int count) throws IOException {
+        List<RevFeature> features = new ArrayList<>();
+        List<Node> nodes = new ArrayList<>();
+        List<ObjectId> ids = new ArrayList<>();
+        List<byte[]> data = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder text = new StringBuilder();
+            Random random = new Random(i);
+            for (int c = 0; c < 4000; c++) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+            text.replace(1000, 1010, String.format("v%09d", version));
+            ObjectId id = ObjectId.forString("feature-" + i + "-" + version);
+            RevFeature feature = new RevFeatureImpl(id, ImmutableList.of(
+                    Optional.<Object> of(Integer.valueOf(i)),
+                    Optional.<Object> of(text.toString())));
+            features.add(feature);
+            nodes.add(Node.create("feature." + i, id, ObjectId.NULL, TYPE.FEATURE, null));
+            ids.add(id);
+            data.add(LZFEncoder.encode(serialize(feature)));
+        }
+        RevTree tree = RevTreeImpl.createLeafTree(ObjectId.forString("tree-" + version), count,
+                ImmutableList.copyOf(nodes), ImmutableList.<Node> of());
+        ids.add(tree.getId());
+        data.add(LZFEncoder.encode(serialize(tree)));
+        store.putAll(ids, data, BulkOpListener.NOOP_LISTENER);
+        store.release();
+        store = null;
+        store = PackStore.acquire(dir, 64 * 1024 * 1024, Integer.MAX_VALUE, 0);
+        return features;
+    }
+
+    private long packBytes() {
+        long bytes = 0;
+        for (Pack pack : store.packs()) {
+            bytes += pack.sizeBytes();
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testDeltaCompression() throws IOException {
+        final int maxDeltaChain = 3;
+        List<RevFeature> features = new ArrayList<>();
+        for (int version = 0; version < 8; version++) {
+            features.addAll(putVersion(version, 10));
+        }
+        final long bytesBefore = packBytes();
+
+        reopen(64 * 1024 * 1024, 2, maxDeltaChain);
+        while (store.compact()) {
+            ;
+        }
+        assertEquals(1, store.packs().size());
+        final long bytesAfter = packBytes();
+        assertTrue(bytesBefore + " -> " + bytesAfter, bytesAfter < bytesBefore / 2);
+
+        reopen(64 * 1024 * 1024, Integer.MAX_VALUE, maxDeltaChain);
+        final SealedPack pack = (SealedPack) store.packs().get(0);
+        int deltas = 0;
+        for (RevFeature feature : features) {
+            final long offset = pack.offset(feature.getId());
+            byte[] contents = LZFDecoder.decode(store.get(feature.getId()));
+            assertArrayEquals(serialize(feature), contents);
+            assertArrayEquals(contents, pack.readUncompressed(offset));
+
+            int chain = 0;
+            for (long o = offset; pack.isDelta(o); o = Longs.fromByteArray(pack.readRecord(o))) {
+                chain++;
+            }
+            assertTrue(chain <= maxDeltaChain);
+            deltas += chain > 0 ? 1 : 0;
+        }
+        // the first version of each feature and every (maxDeltaChain + 1)th one are whole
+        assertEquals(80 - 20, deltas);
+
+        // deleting a base doesn't affect the versions stored as deltas against it
+        store.delete(features.get(0).getId());
+        assertArrayEquals(serialize(features.get(10)),
+                LZFDecoder.decode(store.get(features.get(10).getId())));
+    }
+
+    @Test
+    public void testCompactionRewritesDeltasWhole() throws IOException {
+        List<RevFeature> features = new ArrayList<>();
+        for (int version = 0; version < 4; version++) {
+            features.addAll(putVersion(version, 5));
+        }
+        reopen(64 * 1024 * 1024, 2, 2);
+        while (store.compact()) {
+            ;
+        }
+        // delete most of the objects, including the bases of the remaining deltas, so that the
+        // pack is compacted again without delta compression
+        List<ObjectId> deletes = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            deletes.add(features.get(i).getId());
+        }
+        reopen(64 * 1024 * 1024, Integer.MAX_VALUE, 0);
+        store.deleteAll(deletes.iterator(), BulkOpListener.NOOP_LISTENER);
+        while (store.compact()) {
+            ;
+        }
+        final SealedPack pack = (SealedPack) store.packs().get(0);
+        for (RevFeature feature : features.subList(15, 20)) {
+            assertFalse(pack.isDelta(pack.offset(feature.getId())));
+            assertArrayEquals(serialize(feature),
+                    LZFDecoder.decode(store.get(feature.getId())));
+        }
+    }
+}
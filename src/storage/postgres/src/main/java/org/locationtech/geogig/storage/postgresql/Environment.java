@@ -51,6 +51,10 @@ public class Environment {
 
     public static final String KEY_PUTALL_BATCH_SIZE = "postgres.putAllBatchSize";
 
+    public static final String KEY_SHARED_THREADPOOL_SIZE = "postgres.sharedThreadPoolSize";
+
+    public static final String KEY_MAX_QUEUED_TASKS = "postgres.maxQueuedTasks";
+
     static class ConnectionConfig {
         
         private final String user;
@@ -0,0 +1,374 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.postgresql;
+
+import static org.locationtech.geogig.storage.postgresql.Environment.KEY_MAX_QUEUED_TASKS;
+import static org.locationtech.geogig.storage.postgresql.Environment.KEY_SHARED_THREADPOOL_SIZE;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.locationtech.geogig.storage.ConfigDatabase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Thread pool shared by all the {@link PGObjectDatabase}s open in the JVM to run their background
+ * database tasks, so that many repositories on the same cluster can't exhaust its connections or
+ * starve each other.
+ * <ul>
+ * <li>At most {@code postgres.sharedThreadPoolSize} tasks run at the same time, which is lower
+ * than the size of the connection pool, leaving connections for the operations that run on the
+ * calling threads.
+ * <li>Each repository runs at most its {@code quota} of tasks at the same time, the rest wait in
+ * the repository's own queue without holding a thread.
+ * <li>Tasks in the {@link Lane#INTERACTIVE interactive} lane run before any waiting
+ * {@link Lane#BULK bulk} task.
+ * <li>When {@code postgres.maxQueuedTasks} tasks are already waiting, new tasks are rejected
+ * right away with a {@link RejectedExecutionException} instead of piling up.
+ * </ul>
+ * The budget is {@link #acquire(ConfigDatabase) acquired} when an object database is opened and
+ * {@link #release(ExecutionBudget) released} when it's closed, and its threads are stopped once no
+ * database uses it. Its settings are read from the global config of the first database that
+ * acquires it.
+ */
+class ExecutionBudget {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionBudget.class);
+
+    /**
+     * Default size of the shared thread pool, two less than the default connection pool size of
+     * {@link DataSourceManager}
+     */
+    static final int DEFAULT_THREADS = 8;
+
+    static final int DEFAULT_MAX_QUEUED = 1000;
+
+    /**
+     * Priority of a task, interactive tasks are run before bulk ones
+     */
+    enum Lane {
+        INTERACTIVE, BULK
+    }
+
+    private static ExecutionBudget shared;
+
+    private static int clients;
+
+    private final int threads;
+
+    private final int maxQueued;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ConcurrentMap<String, RepositoryQueue> repositories = new ConcurrentHashMap<>();
+
+    private final LaneStats[] stats = { new LaneStats(Lane.INTERACTIVE),
+            new LaneStats(Lane.BULK) };
+
+    @VisibleForTesting
+    ExecutionBudget(final int threads, final int maxQueued) {
+        Preconditions.checkArgument(threads > 0, "threads must be > 0: %s", threads);
+        Preconditions.checkArgument(maxQueued >= 0, "maxQueued must be >= 0: %s", maxQueued);
+        this.threads = threads;
+        this.maxQueued = maxQueued;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(64, TASK_ORDER), new ThreadFactoryBuilder()
+                        .setNameFormat("pg-geogig-pool-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Returns the shared budget, creating it if needed.
+     */
+    static synchronized ExecutionBudget acquire(ConfigDatabase configdb) {
+        if (shared == null) {
+            int threads = getGlobal(configdb, KEY_SHARED_THREADPOOL_SIZE, DEFAULT_THREADS);
+            int maxQueued = getGlobal(configdb, KEY_MAX_QUEUED_TASKS, DEFAULT_MAX_QUEUED);
+            Preconditions.checkState(threads > 0,
+                    "%s must be a positive integer: %s. Check your config.",
+                    KEY_SHARED_THREADPOOL_SIZE, threads);
+            Preconditions.checkState(maxQueued >= 0,
+                    "%s must be zero or a positive integer: %s. Check your config.",
+                    KEY_MAX_QUEUED_TASKS, maxQueued);
+            shared = new ExecutionBudget(threads, maxQueued);
+        }
+        clients++;
+        return shared;
+    }
+
+    /**
+     * Releases the shared budget, shutting it down if it's not used by any other database.
+     */
+    static synchronized void release(ExecutionBudget budget) {
+        Preconditions.checkArgument(budget == shared, "Not the shared budget");
+        clients--;
+        if (clients == 0) {
+            shared = null;
+            budget.shutdown();
+        }
+    }
+
+    private static int getGlobal(ConfigDatabase configdb, String key, int defaultValue) {
+        Optional<Integer> value = configdb.getGlobal(key, Integer.class);
+        return value.or(Integer.valueOf(defaultValue)).intValue();
+    }
+
+    /**
+     * @return the number of tasks that can run at the same time
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Submits a task to be run on behalf of the given repository.
+     * <p>
+     * Tasks hold a shared thread for as long as they run, so they should be short, and never wait
+     * for other tasks or for their submitter to hand them more work.
+     *
+     * @param repositoryId the repository the task works on
+     * @param quota maximum number of tasks the repository can run at the same time
+     * @param lane the priority of the task
+     * @throws RejectedExecutionException if there are already too many tasks waiting to run, or
+     *         the budget has been shut down
+     */
+    public <T> Future<T> submit(final String repositoryId, final int quota, final Lane lane,
+            final Callable<T> callable) throws RejectedExecutionException {
+        Preconditions.checkArgument(quota > 0, "quota must be > 0: %s", quota);
+        final LaneStats laneStats = stats[lane.ordinal()];
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Thread pool has been shut down");
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            laneStats.rejected.incrementAndGet();
+            throw new RejectedExecutionException(String.format(
+                    "PostgreSQL backend is saturated, %,d tasks are waiting to run. "
+                            + "Try again later.", maxQueued));
+        }
+        laneStats.submitted.incrementAndGet();
+
+        RepositoryQueue repository = repositories.get(repositoryId);
+        if (repository == null) {
+            RepositoryQueue newQueue = new RepositoryQueue();
+            repository = repositories.putIfAbsent(repositoryId, newQueue);
+            if (repository == null) {
+                repository = newQueue;
+            }
+        }
+        Task<T> task = new Task<T>(callable, lane, sequence.getAndIncrement(), repository);
+        repository.offer(task, quota);
+        return task;
+    }
+
+    /**
+     * @return the statistics for the given lane, since this budget was created
+     */
+    public LaneStats getStats(Lane lane) {
+        return stats[lane.ordinal()];
+    }
+
+    /**
+     * @return the number of tasks waiting to run
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    @VisibleForTesting
+    void shutdown() {
+        executor.shutdownNow();
+        for (LaneStats s : stats) {
+            LOG.debug("{}", s);
+        }
+    }
+
+    private static final Comparator<Runnable> TASK_ORDER = new Comparator<Runnable>() {
+        @Override
+        public int compare(Runnable o1, Runnable o2) {
+            Task<?> t1 = (Task<?>) o1;
+            Task<?> t2 = (Task<?>) o2;
+            int c = t1.lane.compareTo(t2.lane);
+            if (c == 0) {
+                c = Long.compare(t1.sequence, t2.sequence);
+            }
+            return c;
+        }
+    };
+
+    private class Task<T> extends FutureTask<T> {
+
+        final Lane lane;
+
+        final long sequence;
+
+        final RepositoryQueue repository;
+
+        final long submitTime = System.nanoTime();
+
+        Task(Callable<T> callable, Lane lane, long sequence, RepositoryQueue repository) {
+            super(callable);
+            this.lane = lane;
+            this.sequence = sequence;
+            this.repository = repository;
+        }
+
+        @Override
+        public void run() {
+            queued.decrementAndGet();
+            stats[lane.ordinal()].started(System.nanoTime() - submitTime);
+            try {
+                super.run();
+            } finally {
+                repository.done();
+            }
+        }
+    }
+
+    /**
+     * Tasks of a single repository waiting for the repository to be under its quota
+     */
+    private class RepositoryQueue {
+
+        private final Queue<Task<?>> interactive = new ArrayDeque<>();
+
+        private final Queue<Task<?>> bulk = new ArrayDeque<>();
+
+        private int running;
+
+        private int quota;
+
+        synchronized void offer(Task<?> task, int quota) {
+            this.quota = quota;
+            if (running < quota) {
+                running++;
+                execute(task);
+            } else {
+                (task.lane == Lane.INTERACTIVE ? interactive : bulk).add(task);
+            }
+        }
+
+        synchronized void done() {
+            running--;
+            while (running < quota) {
+                Task<?> next = interactive.poll();
+                if (next == null) {
+                    next = bulk.poll();
+                }
+                if (next == null) {
+                    break;
+                }
+                running++;
+                execute(next);
+            }
+        }
+
+        private void execute(Task<?> task) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // shut down, fail the task instead of leaving the caller waiting forever
+                running--;
+                queued.decrementAndGet();
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Counters of the tasks submitted to a {@link Lane}
+     */
+    static class LaneStats {
+
+        private final Lane lane;
+
+        private final AtomicLong submitted = new AtomicLong();
+
+        private final AtomicLong rejected = new AtomicLong();
+
+        private final AtomicLong started = new AtomicLong();
+
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        LaneStats(Lane lane) {
+            this.lane = lane;
+        }
+
+        void started(long waitNanos) {
+            started.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            long max;
+            while (waitNanos > (max = maxWaitNanos.get())) {
+                if (maxWaitNanos.compareAndSet(max, waitNanos)) {
+                    break;
+                }
+            }
+        }
+
+        public long getSubmitted() {
+            return submitted.get();
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        public long getStarted() {
+            return started.get();
+        }
+
+        /**
+         * @return the average time tasks waited in the queue before starting, in milliseconds
+         */
+        public double getAverageWaitMillis() {
+            long count = started.get();
+            return count == 0 ? 0 : (totalWaitNanos.get() / 1_000_000d) / count;
+        }
+
+        /**
+         * @return the maximum time a task waited in the queue before starting, in milliseconds
+         */
+        public double getMaxWaitMillis() {
+            return maxWaitNanos.get() / 1_000_000d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%s tasks: submitted: %,d, rejected: %,d, started: %,d, "
+                            + "avg wait: %.2fms, max wait: %.2fms",
+                    lane, getSubmitted(), getRejected(), getStarted(), getAverageWaitMillis(),
+                    getMaxWaitMillis());
+        }
+    }
+}
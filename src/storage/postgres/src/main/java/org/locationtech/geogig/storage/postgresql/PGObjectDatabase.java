@@ -23,6 +23,7 @@ import static org.locationtech.geogig.storage.postgresql.PGStorageProvider.VERSI
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
@@ -31,19 +32,17 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -70,6 +69,7 @@ import org.locationtech.geogig.storage.ObjectInserter;
 import org.locationtech.geogig.storage.ObjectSerializingFactory;
 import org.locationtech.geogig.storage.datastream.DataStreamSerializationFactoryV1;
 import org.locationtech.geogig.storage.datastream.DataStreamSerializationFactoryV2;
+import org.locationtech.geogig.storage.postgresql.ExecutionBudget.Lane;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,7 +82,6 @@ import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.ning.compress.lzf.LZFInputStream;
 import com.ning.compress.lzf.LZFOutputStream;
@@ -112,7 +111,7 @@ public class PGObjectDatabase implements ObjectDatabase {
 
     private PGBlobStore blobStore;
 
-    private ExecutorService executor;
+    private ExecutionBudget budget;
 
     private int getAllBatchSize = DEFAULT_GET_ALL_PARTITION_SIZE;
 
@@ -184,6 +183,8 @@ public class PGObjectDatabase implements ObjectDatabase {
             this.putAllBatchSize = batchSize;
         }
 
+        budget = ExecutionBudget.acquire(configdb);
+
         Optional<Integer> tpoolSize = configdb.get(KEY_THREADPOOL_SIZE, Integer.class)
                 .or(configdb.getGlobal(KEY_THREADPOOL_SIZE, Integer.class));
         if (tpoolSize.isPresent()) {
@@ -192,6 +193,9 @@ public class PGObjectDatabase implements ObjectDatabase {
                     "postgres.threadPoolSize must be a positive integer: %s. Check your config.",
                     poolSize);
             this.threadPoolSize = poolSize;
+        } else {
+            // leave room in the shared pool for other repositories
+            this.threadPoolSize = Math.max(1, budget.getThreads() / 2);
         }
 
         final String repositoryId = config.getRepositoryId();
@@ -200,8 +204,6 @@ public class PGObjectDatabase implements ObjectDatabase {
 
         conflicts = new PGConflictsDatabase(dataSource, conflictsTable, repositoryId);
         blobStore = new PGBlobStore(dataSource, blobsTable, repositoryId);
-        executor = Executors.newFixedThreadPool(threadPoolSize, new ThreadFactoryBuilder()
-                .setNameFormat("pg-geogig-pool-%d").setDaemon(true).build());
 
     }
 
@@ -227,8 +229,9 @@ public class PGObjectDatabase implements ObjectDatabase {
         }
         printStats("get()", getCount, getTimeNanos, getObjectCount);
         printStats("getAll()", getAllCount, getAllTimeNanos, getAllObjectCount);
-        if (executor != null) {
-            executor.shutdownNow();
+        if (budget != null) {
+            ExecutionBudget.release(budget);
+            budget = null;
         }
     }
 
@@ -322,6 +325,109 @@ public class PGObjectDatabase implements ObjectDatabase {
         }.run(dataSource);
     }
 
+    /**
+     * Streams the ids out of a single query with a server side cursor, on a connection of its own
+     * that's released once the iterator is exhausted or {@link Closeable#close() closed}.
+     * 
+     * @throws UnsupportedOperationException if the objects table holds the objects of more than
+     *         one repository, since objects are shared among them and hence it can't be told which
+     *         ones are referenced by this repository alone
+     */
+    @Override
+    public Iterator<ObjectId> objectIds() {
+        checkState(isOpen(), "db is closed");
+        config.checkRepositoryExists();
+
+        final int repositories = new DbOp<Integer>() {
+            @Override
+            protected Integer doRun(Connection cx) throws IOException, SQLException {
+                String sql = format("SELECT count(*) FROM %s", config.getTables().repositories());
+                try (PreparedStatement ps = cx.prepareStatement(log(sql, LOG))) {
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        return Integer.valueOf(rs.getInt(1));
+                    }
+                }
+            }
+        }.run(dataSource).intValue();
+        if (repositories > 1) {
+            throw new UnsupportedOperationException(String.format(
+                    "Objects are shared by the %d repositories in the database", repositories));
+        }
+        try {
+            return new ObjectIdsIterator(dataSource.getConnection(), config.getTables().objects(),
+                    putAllBatchSize);
+        } catch (SQLException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static class ObjectIdsIterator extends AbstractIterator<ObjectId>
+            implements Closeable {
+
+        private Connection cx;
+
+        private PreparedStatement ps;
+
+        private ResultSet rs;
+
+        ObjectIdsIterator(Connection cx, String objectsTable, int fetchSize) throws SQLException {
+            this.cx = cx;
+            try {
+                // a cursor is only used with auto commit off, otherwise the whole result is fetched
+                cx.setAutoCommit(false);
+                String sql = format("SELECT ((id).h1), ((id).h2), ((id).h3) FROM %s",
+                        objectsTable);
+                ps = cx.prepareStatement(log(sql, LOG));
+                ps.setFetchSize(fetchSize);
+                rs = ps.executeQuery();
+            } catch (SQLException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        protected ObjectId computeNext() {
+            if (rs == null) {
+                return endOfData();
+            }
+            try {
+                if (rs.next()) {
+                    return PGId.valueOf(rs, 1).toObjectId();
+                }
+            } catch (SQLException e) {
+                close();
+                throw Throwables.propagate(e);
+            }
+            close();
+            return endOfData();
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (ps != null) {
+                    ps.close();
+                }
+                if (cx != null) {
+                    cx.rollback();
+                    cx.setAutoCommit(true);
+                    cx.close();
+                }
+            } catch (SQLException e) {
+                LOG.warn("Error closing object ids cursor", e);
+            } finally {
+                rs = null;
+                ps = null;
+                cx = null;
+            }
+        }
+    }
+
     @Override
     public RevObject get(ObjectId id) throws IllegalArgumentException {
         checkNotNull(id, "argument id is null");
@@ -362,7 +468,12 @@ public class PGObjectDatabase implements ObjectDatabase {
 
     private AtomicLong getAllTimeNanos = new AtomicLong();
 
-    public int threadPoolSize = 10;
+    /**
+     * Maximum number of tasks this database runs at the same time on the shared
+     * {@link ExecutionBudget}, {@code postgres.threadPoolSize} if set, or half the shared pool
+     * size otherwise
+     */
+    public int threadPoolSize = 1;
 
     @Override
     public RevObject getIfPresent(ObjectId id) {
@@ -468,6 +579,8 @@ public class PGObjectDatabase implements ObjectDatabase {
 
         private Iterator<RevObject> delegate = Collections.emptyIterator();
 
+        private boolean firstPartition = true;
+
         @Nullable
         private TYPE type;
 
@@ -505,13 +618,17 @@ public class PGObjectDatabase implements ObjectDatabase {
 
             Iterator<ObjectId> ids = this.ids;
             final int getAllPartitionSize = db.getAllBatchSize;
+            // the first round of queries is likely to be all that's asked for, beyond that it's
+            // a bulk operation and shall not delay other repositories' interactive queries
+            final Lane lane = firstPartition ? Lane.INTERACTIVE : Lane.BULK;
+            firstPartition = false;
 
             for (int j = 0; j < db.threadPoolSize && ids.hasNext(); j++) {
                 List<ObjectId> idList = new ArrayList<>(getAllPartitionSize);
                 for (int i = 0; i < getAllPartitionSize && ids.hasNext(); i++) {
                     idList.add(ids.next());
                 }
-                Future<List<RevObject>> objects = db.getAll(idList, dataSource, listener, type);
+                Future<List<RevObject>> objects = db.getAll(idList, listener, type, lane);
                 list.add(objects);
             }
             Function<Future<List<RevObject>>, List<RevObject>> function = new Function<Future<List<RevObject>>, List<RevObject>>() {
@@ -712,14 +829,18 @@ public class PGObjectDatabase implements ObjectDatabase {
         }.run(ds);
     }
 
-    private Future<List<RevObject>> getAll(final List<ObjectId> ids, final DataSource ds,
-            final BulkOpListener listener, final @Nullable TYPE type) {
+    private Future<List<RevObject>> getAll(final List<ObjectId> ids,
+            final BulkOpListener listener, final @Nullable TYPE type, final Lane lane) {
 
         GetAllOp getAllOp = new GetAllOp(ids, listener, this, type);
-        Future<List<RevObject>> future = executor.submit(getAllOp);
+        Future<List<RevObject>> future = submit(lane, getAllOp);
         return future;
     }
 
+    private <T> Future<T> submit(Lane lane, Callable<T> task) {
+        return budget.submit(config.getRepositoryId(), threadPoolSize, lane, task);
+    }
+
     private static class GetAllOp extends DbOp<List<RevObject>>
             implements Callable<List<RevObject>> {
 
@@ -882,6 +1003,10 @@ public class PGObjectDatabase implements ObjectDatabase {
         }
     }
 
+    /**
+     * Inserts a single batch of objects in its own transaction, so that it only holds a thread of
+     * the shared {@link ExecutionBudget} for as long as the batch takes
+     */
     private static class InsertDbOp extends DbOp<Void> implements Callable<Void> {
 
         private final DataSource ds;
@@ -892,23 +1017,22 @@ public class PGObjectDatabase implements ObjectDatabase {
 
         private final TableNames tables;
 
-        private final BlockingQueue<List<EncodedObject>> objects;
-
-        private final AtomicBoolean eofFlag;
+        private final List<EncodedObject> partition;
 
-        public InsertDbOp(DataSource ds, AtomicBoolean abortFlag, AtomicBoolean eofFlag,
-                BlockingQueue<List<EncodedObject>> queue, BulkOpListener listener,
-                TableNames tables) {
+        public InsertDbOp(DataSource ds, AtomicBoolean abortFlag, List<EncodedObject> partition,
+                BulkOpListener listener, TableNames tables) {
             this.ds = ds;
             this.abortFlag = abortFlag;
-            this.eofFlag = eofFlag;
-            this.objects = queue;
+            this.partition = partition;
             this.listener = listener;
             this.tables = tables;
         }
 
         @Override
         public Void call() throws Exception {
+            if (abortFlag.get()) {
+                return null;
+            }
             return super.run(ds);
         }
 
@@ -923,61 +1047,38 @@ public class PGObjectDatabase implements ObjectDatabase {
             Map<String, PreparedStatement> perTableStatements = new HashMap<>();
             ArrayListMultimap<String, ObjectId> perTableIds = ArrayListMultimap.create();
 
-            long insertedCount = 0;
-            long processedCount = 0;
             try {
-                // Stopwatch sw = Stopwatch.createStarted();
-                while (true) {
-                    List<EncodedObject> partition = null;
-                    while (null == (partition = objects.poll(50, TimeUnit.MILLISECONDS))) {
-                        if (abortFlag.get() || eofFlag.get()) {
-                            break;
-                        }
-                    }
-                    if (abortFlag.get() || partition == null) {
+                for (EncodedObject obj : partition) {
+                    if (abortFlag.get()) {
                         break;
                     }
-
-                    // partition the objects into chunks for batch processing
-                    for (EncodedObject obj : partition) {
-                        if (abortFlag.get()) {
-                            break;
-                        }
-                        processedCount++;
-                        final TYPE type = obj.type;
-                        final ObjectId id = obj.id;
-                        final PGId pgid = PGId.valueOf(id);
-                        final byte[] bytes = obj.serialized;
-                        {
-                            final String tableName = tableName(tables, type, pgid.hash1());
-                            perTableIds.put(tableName, id);
-
-                            PreparedStatement stmt = prepare(cx, tableName, perTableStatements);
-                            pgid.setArgs(stmt, 1);
-                            stmt.setBytes(4, bytes);
-                            stmt.addBatch();
-                        }
+                    final TYPE type = obj.type;
+                    final ObjectId id = obj.id;
+                    final PGId pgid = PGId.valueOf(id);
+                    final byte[] bytes = obj.serialized;
+                    {
+                        final String tableName = tableName(tables, type, pgid.hash1());
+                        perTableIds.put(tableName, id);
+
+                        PreparedStatement stmt = prepare(cx, tableName, perTableStatements);
+                        pgid.setArgs(stmt, 1);
+                        stmt.setBytes(4, bytes);
+                        stmt.addBatch();
                     }
+                }
 
-                    for (String tableName : new HashSet<String>(perTableIds.keySet())) {
-                        if (abortFlag.get()) {
-                            break;
-                        }
-                        PreparedStatement tableStatement;
-                        tableStatement = perTableStatements.get(tableName);
-                        List<ObjectId> ids = perTableIds.removeAll(tableName);
-                        // Stopwatch sw = Stopwatch.createStarted();
-                        int[] batchResults = tableStatement.executeBatch();
-                        // System.err.printf("%,d batch inserts to %s in %s\n", ids.size(),
-                        // tableName, sw.stop());
-                        tableStatement.clearParameters();
-                        tableStatement.clearBatch();
-
-                        int newObjects = notifyInserted(batchResults, ids, listener);
-                        insertedCount += newObjects;
+                for (String tableName : new HashSet<String>(perTableIds.keySet())) {
+                    if (abortFlag.get()) {
+                        break;
                     }
+                    PreparedStatement tableStatement = perTableStatements.get(tableName);
+                    List<ObjectId> ids = perTableIds.removeAll(tableName);
+                    int[] batchResults = tableStatement.executeBatch();
+                    tableStatement.clearParameters();
+                    tableStatement.clearBatch();
 
-                } // while
+                    notifyInserted(batchResults, ids, listener);
+                }
 
                 for (PreparedStatement tableStatement : perTableStatements.values()) {
                     tableStatement.close();
@@ -986,18 +1087,13 @@ public class PGObjectDatabase implements ObjectDatabase {
                     cx.rollback();
                 } else {
                     cx.commit();
-                    // System.err.printf("Inserted %,d of %,d objects in %s\n", insertedCount,
-                    // processedCount, sw.stop());
                 }
 
             } catch (SQLException e) {
                 abortFlag.set(true);
-                e.printStackTrace();
-                Throwables.getRootCause(e).printStackTrace();
                 rollbackAndRethrow(cx, e);
             } catch (Exception e) {
                 abortFlag.set(true);
-                e.printStackTrace();
                 rollbackAndRethrow(cx, e);
             }
             return null;
@@ -1044,59 +1140,42 @@ public class PGObjectDatabase implements ObjectDatabase {
 
         final int maxTasks = Math.max(1,
                 Math.min(Runtime.getRuntime().availableProcessors(), this.threadPoolSize) / 2);
+        // one batch waiting for each one being inserted, bounds the memory used by the encoded
+        // batches and the tasks queued in the shared budget
+        final int maxPending = 2 * maxTasks;
 
         final Iterator<List<EncodedObject>> encoded = Iterators
                 .partition(Iterators.transform(objects, new Encoder(serializer)), putAllBatchSize);
 
-        final BlockingQueue<List<EncodedObject>> queue = new ArrayBlockingQueue<>(2 + maxTasks);
-
-        int numTasks = 0;
-        for (int i = 0; i < maxTasks; i++) {
-            if (encoded.hasNext()) {
-                queue.add(encoded.next());
-                numTasks++;
-            }
-        }
-        if (numTasks == 0) {
-            return;
-        }
-        LOG.debug("putAll(): inserting using {} threads", numTasks);
-
-        AtomicBoolean abortFlag = new AtomicBoolean();
-        AtomicBoolean eofFlag = new AtomicBoolean();
-        TableNames tables = config.getTables();
-
-        List<Future<Void>> tasks = new ArrayList<>(numTasks);
-        for (int i = 0; i < numTasks; i++) {
-            InsertDbOp task = new InsertDbOp(dataSource, abortFlag, eofFlag, queue, listener,
-                    tables);
-            tasks.add(executor.submit(task));
-        }
-
-        while (!abortFlag.get() && encoded.hasNext()) {
-            List<EncodedObject> encodedPartition = encoded.next();
-            try {
-                while (!queue.offer(encodedPartition, 50, TimeUnit.MILLISECONDS)) {
-                    if (abortFlag.get()) {
-                        return;
-                    }
+        final AtomicBoolean abortFlag = new AtomicBoolean();
+        final TableNames tables = config.getTables();
+        final Deque<Future<Void>> pending = new ArrayDeque<>(maxPending);
+        try {
+            while (encoded.hasNext()) {
+                while (pending.size() >= maxPending) {
+                    pending.removeFirst().get();
                 }
-            } catch (InterruptedException e) {
-                abortFlag.set(true);
-                e.printStackTrace();
-                return;
+                InsertDbOp task = new InsertDbOp(dataSource, abortFlag, encoded.next(), listener,
+                        tables);
+                pending.addLast(submit(Lane.BULK, task));
             }
-        }
-
-        eofFlag.set(true);
-
-        try {
-            for (Future<Void> f : tasks) {
-                f.get();
+            while (!pending.isEmpty()) {
+                pending.removeFirst().get();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+        } catch (InterruptedException e) {
+            abortFlag.set(true);
+            Thread.currentThread().interrupt();
             throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            abortFlag.set(true);
+            throw Throwables.propagate(e.getCause());
+        } catch (RuntimeException e) {
+            abortFlag.set(true);
+            throw e;
+        } finally {
+            for (Future<Void> f : pending) {
+                f.cancel(false);
+            }
         }
     }
 
@@ -35,6 +35,7 @@ import org.locationtech.geogig.api.Ref;
 import org.locationtech.geogig.repository.Hints;
 import org.locationtech.geogig.repository.RepositoryConnectionException;
 import org.locationtech.geogig.storage.ConfigDatabase;
+import org.locationtech.geogig.storage.RefChangeTracker;
 import org.locationtech.geogig.storage.RefDatabase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,7 +45,15 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.inject.Inject;
 
-public class PGRefDatabase implements RefDatabase {
+/**
+ * A {@link RefDatabase} that stores the refs in a PostgreSQL table.
+ * <p>
+ * Every write announces itself through {@code NOTIFY} when it commits, and the
+ * {@link #version(String) version} of the refs is the number of such announcements received for
+ * the repository, so that the refs cached by any process can be discarded when another one changes
+ * them.
+ */
+public class PGRefDatabase implements RefDatabase, RefChangeTracker {
 
     private static final Logger LOG = LoggerFactory.getLogger(PGRefDatabase.class);
 
@@ -56,6 +65,8 @@ public class PGRefDatabase implements RefDatabase {
 
     private final String refsTableName;
 
+    private RefChangeListener changeListener;
+
     private static ThreadLocal<Connection> LockConnection = new ThreadLocal<>();
 
     @Inject
@@ -93,6 +104,10 @@ public class PGRefDatabase implements RefDatabase {
 
     @Override
     public synchronized void close() {
+        if (changeListener != null) {
+            RefChangeListener.release(changeListener);
+            changeListener = null;
+        }
         if (dataSource != null) {
             try {
                 PGStorage.closeDataSource(dataSource);
@@ -197,6 +212,24 @@ public class PGRefDatabase implements RefDatabase {
         return value;
     }
 
+    /**
+     * Returns the number of changes to any ref of the repository notified so far, starting to
+     * listen for them on the first call.
+     */
+    @Override
+    public Object version(String refName) {
+        final RefChangeListener listener;
+        synchronized (this) {
+            Preconditions.checkState(dataSource != null, "Database is closed");
+            if (changeListener == null) {
+                changeListener = RefChangeListener.acquire(dataSource);
+            }
+            listener = changeListener;
+        }
+        Long changes = listener.changes(config.getRepositoryId());
+        return changes == null ? new Object() : changes;
+    }
+
     private String getInternal(final String refPath) {
         return new DbOp<String>() {
 
@@ -277,6 +310,7 @@ public class PGRefDatabase implements RefDatabase {
                         is.setString(4, value);
                         is.executeUpdate();
                     }
+                    RefChangeListener.notifyChange(cx, repo);
                     cx.commit();
                 } catch (SQLException e) {
                     cx.rollback();
@@ -317,6 +351,7 @@ public class PGRefDatabase implements RefDatabase {
                             st.setString(3, localName);
                             updateCount = st.executeUpdate();
                         }
+                        RefChangeListener.notifyChange(cx, repo);
                         cx.commit();
                     }
                 } catch (SQLException e) {
@@ -406,6 +441,7 @@ public class PGRefDatabase implements RefDatabase {
                             st.setString(1, repo);
                             st.executeUpdate();
                         }
+                        RefChangeListener.notifyChange(cx, repo);
                         cx.commit();
                     }
                 } catch (SQLException e) {
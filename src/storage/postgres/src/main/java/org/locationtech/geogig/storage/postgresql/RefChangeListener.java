@@ -0,0 +1,202 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.postgresql;
+
+import static org.locationtech.geogig.storage.postgresql.PGStorage.log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Counts the changes to the refs of each repository stored in a database, as announced by the
+ * {@link PGRefDatabase}s of any process through {@code NOTIFY} when they commit a write.
+ * <p>
+ * A single listener is shared by all the repositories using the same {@link DataSource}. It holds
+ * one connection of the pool on a daemon thread that {@code LISTEN}s on the {@link #CHANNEL} and
+ * checks for notifications every {@link #POLL_MILLIS} milliseconds (the driver only receives them
+ * when a statement is executed). A change made by another process is hence seen at most that long
+ * after it was committed.
+ * <p>
+ * While the connection is down, {@link #changes(String)} returns {@code null} since notifications
+ * may be missed.
+ */
+class RefChangeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RefChangeListener.class);
+
+    static final String CHANNEL = "geogig_refs";
+
+    static final long POLL_MILLIS = 100;
+
+    private static final long RETRY_MILLIS = 5_000;
+
+    private static final Map<DataSource, RefChangeListener> LISTENERS = new IdentityHashMap<>();
+
+    private final DataSource dataSource;
+
+    private final ConcurrentMap<String, AtomicLong> changes = new ConcurrentHashMap<>();
+
+    private volatile boolean listening;
+
+    private volatile boolean stopped;
+
+    private int clients;
+
+    private Thread thread;
+
+    private RefChangeListener(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Returns the listener for the given data source, starting it if needed.
+     */
+    static synchronized RefChangeListener acquire(DataSource dataSource) {
+        Preconditions.checkNotNull(dataSource);
+        RefChangeListener listener = LISTENERS.get(dataSource);
+        if (listener == null) {
+            listener = new RefChangeListener(dataSource);
+            listener.start();
+            LISTENERS.put(dataSource, listener);
+        }
+        listener.clients++;
+        return listener;
+    }
+
+    /**
+     * Releases the listener, stopping it if it's not used by any other ref database.
+     */
+    static synchronized void release(RefChangeListener listener) {
+        Preconditions.checkArgument(LISTENERS.get(listener.dataSource) == listener,
+                "Not a shared listener");
+        listener.clients--;
+        if (listener.clients == 0) {
+            LISTENERS.remove(listener.dataSource);
+            listener.stop();
+        }
+    }
+
+    /**
+     * Announces a change to the refs of the given repository, to be sent when the transaction of
+     * {@code cx} commits.
+     */
+    static void notifyChange(Connection cx, String repositoryId) throws SQLException {
+        final String sql = "SELECT pg_notify(?, ?)";
+        try (PreparedStatement st = cx.prepareStatement(log(sql, LOG, CHANNEL, repositoryId))) {
+            st.setString(1, CHANNEL);
+            st.setString(2, repositoryId);
+            st.executeQuery().close();
+        }
+    }
+
+    /**
+     * @return the number of changes notified for the repository so far, or {@code null} if the
+     *         listener is not connected
+     */
+    @Nullable
+    Long changes(String repositoryId) {
+        AtomicLong count = changes.get(repositoryId);
+        if (count == null) {
+            changes.putIfAbsent(repositoryId, new AtomicLong());
+            count = changes.get(repositoryId);
+        }
+        long value = count.get();
+        return listening ? Long.valueOf(value) : null;
+    }
+
+    private void start() {
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                listen();
+            }
+        }, "pg-geogig-refs-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void stop() {
+        stopped = true;
+        thread.interrupt();
+    }
+
+    private void listen() {
+        while (!stopped) {
+            try {
+                try (Connection cx = dataSource.getConnection()) {
+                    poll(cx);
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!stopped) {
+                    LOG.warn("Lost connection listening to ref changes, retrying in {}ms",
+                            RETRY_MILLIS, e);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                listening = false;
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    private void poll(Connection cx) throws SQLException, InterruptedException {
+        final PGConnection pgcx = cx.unwrap(PGConnection.class);
+        cx.setAutoCommit(true);
+        try (Statement st = cx.createStatement()) {
+            st.execute(log("LISTEN " + CHANNEL, LOG));
+            try {
+                // changes may have been missed while not listening
+                for (AtomicLong count : changes.values()) {
+                    count.incrementAndGet();
+                }
+                listening = true;
+                while (!stopped) {
+                    st.executeQuery("SELECT 1").close();
+                    PGNotification[] notifications = pgcx.getNotifications();
+                    if (notifications != null) {
+                        for (PGNotification n : notifications) {
+                            AtomicLong count = changes.get(n.getParameter());
+                            if (count != null) {
+                                count.incrementAndGet();
+                            }
+                        }
+                    }
+                    Thread.sleep(POLL_MILLIS);
+                }
+            } finally {
+                listening = false;
+                // don't return a listening connection to the pool
+                st.execute(log("UNLISTEN " + CHANNEL, LOG));
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.postgresql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.geogig.api.TestPlatform;
+import org.locationtech.geogig.storage.ConfigDatabase;
+import org.locationtech.geogig.storage.fs.IniFileConfigDatabase;
+import org.locationtech.geogig.storage.postgresql.ExecutionBudget.Lane;
+
+public class ExecutionBudgetTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutionBudget budget;
+
+    @After
+    public void after() {
+        if (budget != null) {
+            budget.shutdown();
+        }
+    }
+
+    @Test
+    public void testRepositoryQuota() throws Exception {
+        budget = new ExecutionBudget(4, 100);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        Callable<Void> task = () -> {
+            int r = running.incrementAndGet();
+            maxRunning.accumulateAndGet(r, Math::max);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return null;
+        };
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(budget.submit("repo1", 2, Lane.BULK, task));
+        }
+        for (Future<Void> f : futures) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(2, maxRunning.get());
+        assertEquals(8, budget.getStats(Lane.BULK).getStarted());
+        assertEquals(0, budget.getQueued());
+    }
+
+    @Test
+    public void testInteractiveLaneRunsFirst() throws Exception {
+        budget = new ExecutionBudget(1, 100);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<Void> blocker = budget.submit("repo1", 10, Lane.BULK, () -> {
+            blocked.countDown();
+            release.await();
+            return null;
+        });
+        blocked.await();
+
+        final List<String> order = new CopyOnWriteArrayList<>();
+        List<Future<Boolean>> futures = new ArrayList<>();
+        futures.add(budget.submit("repo1", 10, Lane.BULK, () -> order.add("bulk1")));
+        futures.add(budget.submit("repo2", 10, Lane.BULK, () -> order.add("bulk2")));
+        futures.add(budget.submit("repo2", 10, Lane.INTERACTIVE, () -> order.add("read1")));
+        futures.add(budget.submit("repo1", 10, Lane.INTERACTIVE, () -> order.add("read2")));
+        assertEquals(4, budget.getQueued());
+
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        for (Future<Boolean> f : futures) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList("read1", "read2", "bulk1", "bulk2"), order);
+        assertTrue(budget.getStats(Lane.BULK).getMaxWaitMillis() > 0);
+        assertEquals(2, budget.getStats(Lane.INTERACTIVE).getStarted());
+    }
+
+    @Test
+    public void testFailFastWhenSaturated() throws Exception {
+        budget = new ExecutionBudget(1, 2);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<Void> blocking = () -> {
+            started.countDown();
+            release.await();
+            return null;
+        };
+        // one running, two waiting
+        List<Future<Void>> futures = new ArrayList<>();
+        futures.add(budget.submit("repo1", 1, Lane.BULK, blocking));
+        started.await();
+        futures.add(budget.submit("repo1", 1, Lane.BULK, blocking));
+        futures.add(budget.submit("repo1", 1, Lane.BULK, blocking));
+        try {
+            budget.submit("repo2", 1, Lane.INTERACTIVE, blocking);
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("saturated"));
+        }
+        assertEquals(1, budget.getStats(Lane.INTERACTIVE).getRejected());
+        assertEquals(0, budget.getStats(Lane.INTERACTIVE).getSubmitted());
+
+        release.countDown();
+        for (Future<Void> f : futures) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+        // there's room again
+        budget.submit("repo2", 1, Lane.INTERACTIVE, blocking).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testSharedBudget() throws Exception {
+        TestPlatform platform = new TestPlatform(folder.getRoot());
+        platform.setUserHome(folder.newFolder("home"));
+        ConfigDatabase configdb = new IniFileConfigDatabase(platform);
+        configdb.putGlobal(Environment.KEY_SHARED_THREADPOOL_SIZE, 3);
+
+        ExecutionBudget b1 = ExecutionBudget.acquire(configdb);
+        ExecutionBudget b2 = ExecutionBudget.acquire(configdb);
+        assertSame(b1, b2);
+        assertEquals(3, b1.getThreads());
+
+        ExecutionBudget.release(b1);
+        assertEquals("ok", b2.submit("repo", 1, Lane.INTERACTIVE, () -> "ok").get());
+        ExecutionBudget.release(b2);
+        try {
+            b2.submit("repo", 1, Lane.INTERACTIVE, () -> "ok");
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("shut down"));
+        }
+
+        ExecutionBudget b3 = ExecutionBudget.acquire(configdb);
+        assertNotSame(b1, b3);
+        ExecutionBudget.release(b3);
+    }
+}
@@ -23,6 +23,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
+import org.eclipse.jdt.annotation.Nullable;
 import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.api.Platform;
 import org.locationtech.geogig.api.RevCommit;
@@ -43,6 +44,8 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 
 /**
@@ -60,6 +63,8 @@ public abstract class SQLiteObjectDatabase<C> implements ObjectDatabase {
 
     final ObjectSerializingFactory serializer = DataStreamSerializationFactoryV1.INSTANCE;
 
+    private static final int LIST_BATCH_SIZE = 10_000;
+
     protected C cx;
 
     public SQLiteObjectDatabase(ConfigDatabase configdb, Platform platform) {
@@ -111,6 +116,24 @@ public abstract class SQLiteObjectDatabase<C> implements ObjectDatabase {
         return Lists.newArrayList(transform(search(partialId, cx), StringToObjectId.INSTANCE));
     }
 
+    @Override
+    public Iterator<ObjectId> objectIds() {
+        return Iterators.concat(new AbstractIterator<Iterator<ObjectId>>() {
+
+            private String lastId;
+
+            @Override
+            protected Iterator<ObjectId> computeNext() {
+                List<String> batch = Lists.newArrayList(list(lastId, LIST_BATCH_SIZE, cx));
+                if (batch.isEmpty()) {
+                    return endOfData();
+                }
+                lastId = batch.get(batch.size() - 1);
+                return transform(batch, StringToObjectId.INSTANCE).iterator();
+            }
+        });
+    }
+
     @Override
     public RevObject get(ObjectId id) throws IllegalArgumentException {
         RevObject obj = getIfPresent(id);
@@ -311,6 +334,16 @@ public abstract class SQLiteObjectDatabase<C> implements ObjectDatabase {
      */
     protected abstract Iterable<String> search(String partialId, C cx);
 
+    /**
+     * Lists object ids in ascending order.
+     * 
+     * @param afterId the id to start after, or {@code null} to start from the first one
+     * @param limit the maximum number of ids to return
+     * 
+     * @return Iterable of at most {@code limit} ids.
+     */
+    protected abstract Iterable<String> list(@Nullable String afterId, int limit, C cx);
+
     /**
      * Retrieves the object with the specified id.
      * <p>
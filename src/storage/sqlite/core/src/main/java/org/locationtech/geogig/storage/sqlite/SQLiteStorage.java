@@ -34,6 +34,11 @@ public class SQLiteStorage {
      */
     public static final String VERSION = "0.1";
 
+    /**
+     * Version of the format that stores objects by their binary id.
+     */
+    public static final String VERSION_0_2 = "0.2";
+
     /**
      * Returns the .geogig directory for the platform object.
      */
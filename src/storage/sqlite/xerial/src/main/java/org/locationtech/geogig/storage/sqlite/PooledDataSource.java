@@ -0,0 +1,433 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.sqlite;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.JournalMode;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link DataSource} for a single SQLite database file that keeps its connections open instead
+ * of opening a new one for each operation.
+ * <p>
+ * The database is put in {@code WAL} journal mode, so that readers don't block the writer nor
+ * each other:
+ * <ul>
+ * <li>{@link #getConnection()} hands out the only writer connection, one thread at a time. The
+ * calling thread holds it until the returned connection is closed, and may get it again in the
+ * meantime (e.g. from a nested {@link DbOp}). Only closing the outermost of those rolls back any
+ * pending transaction and lets other threads have the writer.
+ * <li>{@link #readers()} is a view of this data source that hands out read only connections, that
+ * can be used concurrently. Up to {@code maxReaders} of them are kept open when returned, any
+ * extra connection needed when all of them are in use is closed as soon as it's returned.
+ * </ul>
+ * Closing the connections returned by either of them gives them back to the pool, they're only
+ * actually closed by {@link #close()}.
+ * <p>
+ * If the data source is read only, there's no writer connection and {@link #getConnection()}
+ * returns a reader connection too.
+ */
+public final class PooledDataSource implements DataSource {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(PooledDataSource.class);
+
+    private final File db;
+
+    private final boolean readOnly;
+
+    private final int maxReaders;
+
+    private final int mmapSizeMB;
+
+    private final int cacheSizeKB;
+
+    private final SynchronousMode syncMode;
+
+    private final Object writerLock = new Object();
+
+    /**
+     * The thread the writer connection is handed to, guarded by {@link #writerLock}
+     */
+    private Thread writerOwner;
+
+    /**
+     * How many of the connections handed to {@link #writerOwner} are still open, guarded by
+     * {@link #writerLock}
+     */
+    private int writerDepth;
+
+    private Connection writer;
+
+    private volatile boolean initialized;
+
+    private final BlockingQueue<Connection> idleReaders;
+
+    private final DataSource readers = new ReadersView();
+
+    private volatile boolean closed;
+
+    /**
+     * @param db the database file
+     * @param readOnly whether the database is to be opened read only
+     * @param maxReaders maximum number of idle reader connections kept open
+     * @param mmapSizeMB maximum size of the memory mapped I/O for each connection, in megabytes,
+     *        or a negative value to use SQLite's default
+     * @param cacheSizeKB page cache size for each connection, in kilobytes, or zero or a negative
+     *        value to use SQLite's default
+     * @param syncMode synchronization mode of the writer connection
+     */
+    PooledDataSource(File db, boolean readOnly, int maxReaders, int mmapSizeMB, int cacheSizeKB,
+            SynchronousMode syncMode) {
+        Preconditions.checkArgument(maxReaders > 0, "maxReaders must be > 0: %s", maxReaders);
+        this.db = db;
+        this.readOnly = readOnly;
+        this.maxReaders = maxReaders;
+        this.mmapSizeMB = mmapSizeMB;
+        this.cacheSizeKB = cacheSizeKB;
+        this.syncMode = syncMode;
+        this.idleReaders = new ArrayBlockingQueue<>(maxReaders);
+    }
+
+    /**
+     * @return a data source whose connections can run queries concurrently with the writer and
+     *         each other, but can't modify the database
+     */
+    public DataSource readers() {
+        return readers;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Returns the writer connection, waiting for any other thread using it to close it first.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (readOnly) {
+            return readers.getConnection();
+        }
+        acquireWriter();
+        try {
+            checkOpen();
+            if (writer == null) {
+                writer = open(false);
+                initialized = true;
+            }
+        } catch (SQLException | RuntimeException e) {
+            releaseWriter();
+            throw e;
+        }
+        final Connection cx = writer;
+        return pooled(cx, new OnClose() {
+            @Override
+            public void run() throws SQLException {
+                try {
+                    if (isOutermostWriter()) {
+                        reset(cx);
+                    }
+                } finally {
+                    releaseWriter();
+                }
+            }
+        });
+    }
+
+    private void acquireWriter() throws SQLException {
+        final Thread current = Thread.currentThread();
+        synchronized (writerLock) {
+            while (writerOwner != null && writerOwner != current) {
+                try {
+                    writerLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted waiting for the writer connection", e);
+                }
+            }
+            writerOwner = current;
+            writerDepth++;
+        }
+    }
+
+    private boolean isOutermostWriter() {
+        synchronized (writerLock) {
+            return writerDepth == 1;
+        }
+    }
+
+    /**
+     * Gives back one of the writer connections handed out. Can be called from any thread, since
+     * connections may be closed by a thread other than the one that got them.
+     */
+    private void releaseWriter() {
+        synchronized (writerLock) {
+            Preconditions.checkState(writerDepth > 0, "Writer connection is not in use");
+            if (--writerDepth == 0) {
+                writerOwner = null;
+                writerLock.notifyAll();
+            }
+        }
+    }
+
+    private Connection getReaderConnection() throws SQLException {
+        checkOpen();
+        if (!readOnly && !initialized) {
+            // make sure the database exists and is in WAL mode before opening it read only
+            getConnection().close();
+        }
+        Connection idle = idleReaders.poll();
+        final Connection cx = idle == null ? open(true) : idle;
+        return pooled(cx, new OnClose() {
+            @Override
+            public void run() throws SQLException {
+                try {
+                    reset(cx);
+                } finally {
+                    if (closed || !idleReaders.offer(cx)) {
+                        closeQuietly(cx);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Closes all idle connections, connections in use are closed as they're returned.
+     */
+    public void close() {
+        closed = true;
+        Connection cx;
+        while ((cx = idleReaders.poll()) != null) {
+            closeQuietly(cx);
+        }
+        try {
+            acquireWriter();
+        } catch (SQLException e) {
+            LOG.warn("Interrupted closing {}, the writer connection is left open", db);
+            return;
+        }
+        try {
+            if (writer != null) {
+                closeQuietly(writer);
+                writer = null;
+            }
+        } finally {
+            releaseWriter();
+        }
+    }
+
+    private void checkOpen() {
+        Preconditions.checkState(!closed, "Database is closed: %s", db);
+    }
+
+    private Connection open(final boolean readOnlyConnection) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(readOnlyConnection);
+        if (!readOnlyConnection) {
+            config.setJournalMode(JournalMode.WAL);
+            config.setSynchronous(syncMode);
+        }
+        if (cacheSizeKB > 0) {
+            // negative values are interpreted by SQLite as kibibytes instead of pages
+            config.setCacheSize(-cacheSizeKB);
+        }
+        Connection cx = config.createConnection("jdbc:sqlite:" + db.getAbsolutePath());
+        if (mmapSizeMB >= 0) {
+            try (Statement st = cx.createStatement()) {
+                st.execute("PRAGMA mmap_size = " + (mmapSizeMB * 1024L * 1024L));
+            } catch (SQLException e) {
+                closeQuietly(cx);
+                throw e;
+            }
+        }
+        LOG.debug("Opened {} connection to {}", readOnlyConnection ? "reader" : "writer", db);
+        return cx;
+    }
+
+    private static void closeQuietly(Connection cx) {
+        try {
+            cx.close();
+        } catch (SQLException e) {
+            LOG.warn("Error closing connection", e);
+        }
+    }
+
+    /**
+     * Rolls back any pending transaction on a connection being returned to the pool
+     */
+    private static void reset(Connection cx) throws SQLException {
+        if (!cx.isClosed() && !cx.getAutoCommit()) {
+            cx.rollback();
+            cx.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Gives a pooled connection back when the connection handed out for it is closed
+     */
+    private static interface OnClose {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Wraps a pooled connection so that closing it runs {@code onClose} instead of actually
+     * closing it.
+     */
+    private static Connection pooled(final Connection cx, final OnClose onClose) {
+        InvocationHandler handler = new InvocationHandler() {
+
+            private boolean returned;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                final String name = method.getName();
+                if ("close".equals(name) && method.getParameterTypes().length == 0) {
+                    if (!returned) {
+                        returned = true;
+                        onClose.run();
+                    }
+                    return null;
+                }
+                if ("isClosed".equals(name) && method.getParameterTypes().length == 0) {
+                    return Boolean.valueOf(returned || cx.isClosed());
+                }
+                if (returned) {
+                    throw new SQLException("Connection is closed");
+                }
+                if ("unwrap".equals(name) && ((Class<?>) args[0]).isInstance(cx)) {
+                    return cx;
+                }
+                try {
+                    return method.invoke(cx, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(PooledDataSource.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, handler);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        // not supported
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        // not supported
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s, readers: %d]", getClass().getSimpleName(), db, maxReaders);
+    }
+
+    private class ReadersView implements DataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return getReaderConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getReaderConnection();
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return null;
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            // not supported
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            // not supported
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return 0;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return PooledDataSource.this.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return PooledDataSource.this.isWrapperFor(iface);
+        }
+    }
+}
@@ -17,11 +17,14 @@ import javax.sql.DataSource;
 
 import org.locationtech.geogig.api.Context;
 import org.locationtech.geogig.di.GeogigModule;
+import org.locationtech.geogig.storage.ConfigDatabase;
 import org.slf4j.Logger;
 import org.sqlite.SQLiteConfig.SynchronousMode;
 import org.sqlite.SQLiteDataSource;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.inject.Guice;
 import com.google.inject.util.Modules;
 
@@ -33,6 +36,25 @@ import com.google.inject.util.Modules;
  */
 public class Xerial {
 
+    /**
+     * Config key for the maximum number of idle reader connections kept open for each database,
+     * see {@link PooledDataSource}
+     */
+    public static final String READERS_CONFIG_KEY = "sqlite.readers";
+
+    /**
+     * Config key for the maximum size of memory mapped I/O for each connection, in megabytes
+     */
+    public static final String MMAP_SIZE_CONFIG_KEY = "sqlite.mmap_size";
+
+    /**
+     * Config key for the size of the page cache of each connection, in kilobytes
+     */
+    public static final String CACHE_SIZE_CONFIG_KEY = "sqlite.cache_size";
+
+    private static final int DEFAULT_READERS = Math.max(2,
+            Runtime.getRuntime().availableProcessors());
+
     /**
      * Default synchronization setting, see {@link #turnSynchronizationOff()}
      */
@@ -94,6 +116,59 @@ public class Xerial {
         return dataSource;
     }
 
+    /**
+     * Creates a pooled, {@code WAL} mode data source for the given database file using SQLite's
+     * default memory settings.
+     */
+    public static PooledDataSource newPooledDataSource(File db, boolean readOnly) {
+        return new PooledDataSource(db, readOnly, DEFAULT_READERS, -1, -1, DEFAULT_SYNC_MODE);
+    }
+
+    /**
+     * Creates a pooled, {@code WAL} mode data source for the given database file, tuned by the
+     * {@link #READERS_CONFIG_KEY}, {@link #MMAP_SIZE_CONFIG_KEY}, and
+     * {@link #CACHE_SIZE_CONFIG_KEY} repository or global config settings, if present.
+     */
+    public static PooledDataSource newPooledDataSource(File db, boolean readOnly,
+            ConfigDatabase configdb) {
+        final int readers = getInt(configdb, READERS_CONFIG_KEY, DEFAULT_READERS);
+        final int mmapSizeMB = getInt(configdb, MMAP_SIZE_CONFIG_KEY, -1);
+        final int cacheSizeKB = getInt(configdb, CACHE_SIZE_CONFIG_KEY, -1);
+        Preconditions.checkState(readers > 0,
+                "%s must be a positive integer: %s. Check your config.", READERS_CONFIG_KEY,
+                readers);
+        return new PooledDataSource(db, readOnly, readers, mmapSizeMB, cacheSizeKB,
+                DEFAULT_SYNC_MODE);
+    }
+
+    private static int getInt(ConfigDatabase configdb, String key, int defaultValue) {
+        Optional<Integer> value = configdb.get(key, Integer.class);
+        if (!value.isPresent()) {
+            value = configdb.getGlobal(key, Integer.class);
+        }
+        return value.or(Integer.valueOf(defaultValue)).intValue();
+    }
+
+    /**
+     * @return the {@link PooledDataSource#readers() readers} of {@code ds} if it's a pooled data
+     *         source, or {@code ds} itself otherwise
+     */
+    public static DataSource readers(DataSource ds) {
+        if (ds instanceof PooledDataSource) {
+            return ((PooledDataSource) ds).readers();
+        }
+        return ds;
+    }
+
+    /**
+     * Closes {@code ds} if it's a pooled data source, does nothing otherwise
+     */
+    public static void close(DataSource ds) {
+        if (ds instanceof PooledDataSource) {
+            ((PooledDataSource) ds).close();
+        }
+    }
+
     public static Connection newConnection(DataSource ds) {
         try {
             return ds.getConnection();
@@ -11,19 +11,22 @@ package org.locationtech.geogig.storage.sqlite;
 
 import static org.locationtech.geogig.storage.sqlite.Xerial.log;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.sql.DataSource;
+
 import org.locationtech.geogig.api.Platform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.sqlite.SQLiteDataSource;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -38,7 +41,7 @@ public class XerialConfigDatabase extends SQLiteConfigDatabase {
 
     static final Logger LOG = LoggerFactory.getLogger(XerialConfigDatabase.class);
 
-    private SQLiteDataSource dataSource;
+    private final Map<File, PooledDataSource> dataSources = new HashMap<>();
 
     @Inject
     public XerialConfigDatabase(Platform platform) {
@@ -64,7 +67,7 @@ public class XerialConfigDatabase extends SQLiteConfigDatabase {
                     }
                 }
             }
-        }.run(connect(config));
+        }.run(readers(config));
     }
 
     @Override
@@ -84,7 +87,7 @@ public class XerialConfigDatabase extends SQLiteConfigDatabase {
                     return all;
                 }
             }
-        }.run(connect(config));
+        }.run(readers(config));
     }
 
     @Override
@@ -107,7 +110,7 @@ public class XerialConfigDatabase extends SQLiteConfigDatabase {
                     return all;
                 }
             }
-        }.run(connect(config));
+        }.run(readers(config));
     }
 
     @Override
@@ -129,7 +132,7 @@ public class XerialConfigDatabase extends SQLiteConfigDatabase {
                 }
             }
 
-        }.run(connect(config));
+        }.run(readers(config));
 
     }
 
@@ -211,11 +214,16 @@ public class XerialConfigDatabase extends SQLiteConfigDatabase {
         }.run(connect(config));
     }
 
-    synchronized SQLiteDataSource connect(Config config) {
+    private DataSource readers(Config config) {
+        return connect(config).readers();
+    }
+
+    synchronized PooledDataSource connect(Config config) {
+        PooledDataSource dataSource = dataSources.get(config.file);
         if (dataSource != null) {
             return dataSource;
         }
-        dataSource = Xerial.newDataSource(config.file);
+        dataSource = Xerial.newPooledDataSource(config.file, false);
         new DbOp<Void>() {
             @Override
             protected Void doRun(Connection cx) throws IOException, SQLException {
@@ -236,11 +244,15 @@ public class XerialConfigDatabase extends SQLiteConfigDatabase {
             }
         }.run(dataSource);
 
+        dataSources.put(config.file, dataSource);
         return dataSource;
     }
 
     @Override
-    public void close() throws IOException {
-        // nothing to do apparently
+    public synchronized void close() throws IOException {
+        for (PooledDataSource dataSource : dataSources.values()) {
+            dataSource.close();
+        }
+        dataSources.clear();
     }
 }
@@ -11,6 +11,7 @@ package org.locationtech.geogig.storage.sqlite;
 
 import static java.lang.String.format;
 import static org.locationtech.geogig.storage.sqlite.Xerial.log;
+import static org.locationtech.geogig.storage.sqlite.Xerial.readers;
 
 import java.io.IOException;
 import java.sql.Connection;
@@ -18,6 +19,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.sql.DataSource;
 
@@ -77,30 +80,35 @@ class XerialConflictsDatabase extends SQLiteConflictsDatabase<DataSource> {
                     return Integer.valueOf(count);
                 }
             }
-        }.run(ds);
+        }.run(readers(ds));
 
         return count.intValue();
     }
 
     @Override
     protected Iterable<String> get(final String namespace, final String pathFilter, DataSource ds) {
-        Connection cx = Xerial.newConnection(ds);
-        ResultSet rs = new DbOp<ResultSet>() {
+        // read eagerly, the statement's result set can't outlive it and the reader connection is
+        // given back to the pool as soon as the op finishes
+        return new DbOp<List<String>>() {
             @Override
-            protected ResultSet doRun(Connection cx) throws IOException, SQLException {
+            protected List<String> doRun(Connection cx) throws IOException, SQLException {
                 String sql = format(
                         "SELECT conflict FROM %s WHERE namespace = ? AND path LIKE '%%%s%%'",
                         CONFLICTS, pathFilter);
 
+                List<String> conflicts = new ArrayList<>();
                 try (PreparedStatement ps = cx.prepareStatement(log(sql, LOG, namespace))) {
                     ps.setString(1, namespace);
 
-                    return ps.executeQuery();
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            conflicts.add(rs.getString(1));
+                        }
+                    }
                 }
+                return conflicts;
             }
-        }.run(cx);
-
-        return new StringResultSetIterable(rs, cx);
+        }.run(readers(ds));
     }
 
     @Override
@@ -11,6 +11,7 @@ package org.locationtech.geogig.storage.sqlite;
 
 import static java.lang.String.format;
 import static org.locationtech.geogig.storage.sqlite.Xerial.log;
+import static org.locationtech.geogig.storage.sqlite.Xerial.readers;
 
 import java.io.File;
 import java.io.IOException;
@@ -55,11 +56,12 @@ public class XerialGraphDatabase extends SQLiteGraphDatabase<DataSource> {
 
     @Override
     protected DataSource connect(File geogigDir) {
-        return Xerial.newDataSource(new File(geogigDir, "graph.db"));
+        return Xerial.newPooledDataSource(new File(geogigDir, "graph.db"), false, configdb);
     }
 
     @Override
     protected void close(DataSource ds) {
+        Xerial.close(ds);
     }
 
     @Override
@@ -145,7 +147,7 @@ public class XerialGraphDatabase extends SQLiteGraphDatabase<DataSource> {
                     }
                 }
             }
-        }.run(ds);
+        }.run(readers(ds));
     }
 
     @Override
@@ -202,7 +204,7 @@ public class XerialGraphDatabase extends SQLiteGraphDatabase<DataSource> {
                 }
                 return nid;
             }
-        }.run(ds);
+        }.run(readers(ds));
     }
 
     @Override
@@ -244,7 +246,7 @@ public class XerialGraphDatabase extends SQLiteGraphDatabase<DataSource> {
                     }
                 }
             }
-        }.run(ds);
+        }.run(readers(ds));
     }
 
     @Override
@@ -266,7 +268,7 @@ public class XerialGraphDatabase extends SQLiteGraphDatabase<DataSource> {
                 }
                 return matches;
             }
-        }.run(ds);
+        }.run(readers(ds));
 
         return matches;
 
@@ -290,7 +292,7 @@ public class XerialGraphDatabase extends SQLiteGraphDatabase<DataSource> {
                 }
                 return matches;
             }
-        }.run(ds);
+        }.run(readers(ds));
 
         return matches;
     }
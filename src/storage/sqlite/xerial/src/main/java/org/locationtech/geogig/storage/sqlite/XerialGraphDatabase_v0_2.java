@@ -0,0 +1,43 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.sqlite;
+
+import static org.locationtech.geogig.storage.sqlite.SQLiteStorage.FORMAT_NAME;
+import static org.locationtech.geogig.storage.sqlite.SQLiteStorage.VERSION_0_2;
+
+import org.locationtech.geogig.api.Platform;
+import org.locationtech.geogig.repository.RepositoryConnectionException;
+import org.locationtech.geogig.storage.ConfigDatabase;
+
+import com.google.inject.Inject;
+
+/**
+ * The graph database of the {@link XerialStorageProviderV02 0.2 format}, which is stored the same
+ * way as in 0.1, but has to be configured as 0.2 since the graph and object databases share the
+ * {@code sqlite.version} config key.
+ */
+public class XerialGraphDatabase_v0_2 extends XerialGraphDatabase {
+
+    @Inject
+    public XerialGraphDatabase_v0_2(ConfigDatabase configdb, Platform platform) {
+        super(configdb, platform);
+    }
+
+    @Override
+    public void configure() throws RepositoryConnectionException {
+        RepositoryConnectionException.StorageType.GRAPH.configure(configdb, FORMAT_NAME,
+                VERSION_0_2);
+    }
+
+    @Override
+    public void checkConfig() throws RepositoryConnectionException {
+        RepositoryConnectionException.StorageType.GRAPH.verify(configdb, FORMAT_NAME, VERSION_0_2);
+    }
+}
@@ -11,6 +11,7 @@ package org.locationtech.geogig.storage.sqlite;
 
 import static java.lang.String.format;
 import static org.locationtech.geogig.storage.sqlite.Xerial.log;
+import static org.locationtech.geogig.storage.sqlite.Xerial.readers;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -88,11 +89,12 @@ public class XerialObjectDatabase extends SQLiteObjectDatabase<DataSource> {
     @Override
     protected DataSource connect(File geogigDir) {
         File file = new File(geogigDir, dbName + ".db");
-        return Xerial.newDataSource(file, readOnly);
+        return Xerial.newPooledDataSource(file, readOnly, configdb);
     }
 
     @Override
     protected void close(DataSource ds) {
+        Xerial.close(ds);
     }
 
     @Override
@@ -143,7 +145,7 @@ public class XerialObjectDatabase extends SQLiteObjectDatabase<DataSource> {
                     }
                 }
             }
-        }.run(ds);
+        }.run(readers(ds));
     }
 
     @Override
@@ -164,11 +166,37 @@ public class XerialObjectDatabase extends SQLiteObjectDatabase<DataSource> {
                 }
                 return matches;
             }
-        }.run(ds);
+        }.run(readers(ds));
 
         return matches;
     }
 
+    @Override
+    public Iterable<String> list(final String afterId, final int limit, DataSource ds) {
+        return new DbOp<Iterable<String>>() {
+            @Override
+            protected Iterable<String> doRun(Connection cx) throws SQLException {
+                String sql = afterId == null ? format("SELECT id FROM %s ORDER BY id LIMIT ?",
+                        OBJECTS) : format("SELECT id FROM %s WHERE id > ? ORDER BY id LIMIT ?",
+                        OBJECTS);
+                List<String> ids = new ArrayList<>(limit);
+                try (PreparedStatement ps = cx.prepareStatement(log(sql, LOG, afterId, limit))) {
+                    int index = 1;
+                    if (afterId != null) {
+                        ps.setString(index++, afterId);
+                    }
+                    ps.setInt(index, limit);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(rs.getString(1));
+                        }
+                    }
+                }
+                return ids;
+            }
+        }.run(readers(ds));
+    }
+
     @Override
     public InputStream get(final String id, DataSource ds) {
         return new DbOp<InputStream>() {
@@ -189,7 +217,7 @@ public class XerialObjectDatabase extends SQLiteObjectDatabase<DataSource> {
                 }
                 return in;
             }
-        }.run(ds);
+        }.run(readers(ds));
     }
 
     @Override
@@ -0,0 +1,560 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.sqlite;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.String.format;
+import static org.locationtech.geogig.storage.sqlite.SQLiteStorage.FORMAT_NAME;
+import static org.locationtech.geogig.storage.sqlite.SQLiteStorage.VERSION_0_2;
+import static org.locationtech.geogig.storage.sqlite.Xerial.log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.Platform;
+import org.locationtech.geogig.api.RevObject;
+import org.locationtech.geogig.repository.Hints;
+import org.locationtech.geogig.repository.RepositoryConnectionException;
+import org.locationtech.geogig.storage.AbstractObjectDatabase;
+import org.locationtech.geogig.storage.BlobStore;
+import org.locationtech.geogig.storage.BulkOpListener;
+import org.locationtech.geogig.storage.ConfigDatabase;
+import org.locationtech.geogig.storage.ConflictsDatabase;
+import org.locationtech.geogig.storage.ObjectDatabase;
+import org.locationtech.geogig.storage.datastream.DataStreamSerializationFactoryV2;
+import org.locationtech.geogig.storage.fs.FileBlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.inject.Inject;
+import com.ning.compress.lzf.LZFInputStream;
+
+/**
+ * Object database based on Xerial SQLite jdbc driver that stores objects keyed by their 20 bytes
+ * binary id instead of its hex string representation.
+ * <p>
+ * Objects are stored LZF compressed with the {@link DataStreamSerializationFactoryV2 V2
+ * serialization format}, in a {@code WITHOUT ROWID} table, so the objects themselves live in the
+ * primary key b-tree:
+ *
+ * <pre>
+ * objects(id:blob PRIMARY KEY, object:blob) WITHOUT ROWID
+ * </pre>
+ *
+ * {@link #putAll} and {@link #deleteAll} run batched prepared statements, committing a transaction
+ * every {@value #PARTITION_SIZE} objects, and {@link #getAll} queries up to
+ * {@value #GET_ALL_BATCH_SIZE} ids at a time with a single {@code IN} query that returns them in
+ * key order.
+ *
+ * @see XerialStorageProviderV02
+ */
+public class XerialObjectDatabase_v0_2 extends AbstractObjectDatabase implements ObjectDatabase {
+
+    static Logger LOG = LoggerFactory.getLogger(XerialObjectDatabase_v0_2.class);
+
+    static final String OBJECTS = "objects";
+
+    private static final int PARTITION_SIZE = 10 * 1000;
+
+    /**
+     * Number of ids queried at once by {@link #getAll}, below SQLite's default limit of 999 host
+     * parameters per statement
+     */
+    private static final int GET_ALL_BATCH_SIZE = 500;
+
+    private static final int LIST_BATCH_SIZE = 10 * 1000;
+
+    private final Platform platform;
+
+    private final ConfigDatabase configdb;
+
+    private final String dbName;
+
+    private final boolean readOnly;
+
+    private XerialConflictsDatabase conflicts;
+
+    private FileBlobStore blobStore;
+
+    private volatile PooledDataSource dataSource;
+
+    @Inject
+    public XerialObjectDatabase_v0_2(ConfigDatabase configdb, Platform platform, Hints hints) {
+        this(configdb, platform, "objects", hints == null ? false : hints
+                .getBoolean(Hints.OBJECTS_READ_ONLY));
+    }
+
+    public XerialObjectDatabase_v0_2(final ConfigDatabase configdb, final Platform platform,
+            final String dbName, final boolean readOnly) {
+        super(DataStreamSerializationFactoryV2.INSTANCE);
+        this.configdb = configdb;
+        this.platform = platform;
+        this.dbName = dbName;
+        this.readOnly = readOnly;
+    }
+
+    @Override
+    public synchronized void open() {
+        if (isOpen()) {
+            return;
+        }
+        File file = new File(SQLiteStorage.geogigDir(platform), dbName + ".db");
+        final PooledDataSource ds = Xerial.newPooledDataSource(file, readOnly, configdb);
+        new DbOp<Void>() {
+            @Override
+            protected Void doRun(Connection cx) throws SQLException {
+                String sql = format("CREATE TABLE IF NOT EXISTS %s "
+                        + "(id BLOB PRIMARY KEY, object BLOB) WITHOUT ROWID", OBJECTS);
+                try (Statement st = cx.createStatement()) {
+                    st.execute(log(sql, LOG));
+                }
+                return null;
+            }
+        }.run(ds);
+
+        conflicts = new XerialConflictsDatabase(ds);
+        conflicts.open();
+        blobStore = new FileBlobStore(platform);
+        blobStore.open();
+        this.dataSource = ds;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+            blobStore.close();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return dataSource != null;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    @Override
+    public void configure() throws RepositoryConnectionException {
+        RepositoryConnectionException.StorageType.OBJECT.configure(configdb, FORMAT_NAME,
+                VERSION_0_2);
+    }
+
+    @Override
+    public void checkConfig() throws RepositoryConnectionException {
+        RepositoryConnectionException.StorageType.OBJECT.verify(configdb, FORMAT_NAME, VERSION_0_2);
+    }
+
+    @Override
+    public ConflictsDatabase getConflictsDatabase() {
+        return conflicts;
+    }
+
+    @Override
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    @Override
+    public boolean exists(final ObjectId id) {
+        checkNotNull(id, "argument id is null");
+        return new DbOp<Boolean>() {
+            @Override
+            protected Boolean doRun(Connection cx) throws SQLException {
+                String sql = format("SELECT 1 FROM %s WHERE id = ?", OBJECTS);
+
+                try (PreparedStatement ps = cx.prepareStatement(log(sql, LOG, id))) {
+                    ps.setBytes(1, id.getRawValue());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        return Boolean.valueOf(rs.next());
+                    }
+                }
+            }
+        }.run(dataSource()).booleanValue();
+    }
+
+    /**
+     * Walks the primary key from the first id that may start with {@code raw} for as long as they
+     * do.
+     */
+    @Override
+    protected List<ObjectId> lookUpInternal(final byte[] raw) {
+        return new DbOp<List<ObjectId>>() {
+            @Override
+            protected List<ObjectId> doRun(Connection cx) throws SQLException {
+                String sql = format("SELECT id FROM %s WHERE id >= ? ORDER BY id", OBJECTS);
+
+                List<ObjectId> matches = new ArrayList<>(2);
+                try (PreparedStatement ps = cx.prepareStatement(log(sql, LOG, raw))) {
+                    ps.setBytes(1, raw);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            byte[] id = rs.getBytes(1);
+                            if (!startsWith(id, raw)) {
+                                break;
+                            }
+                            matches.add(ObjectId.createNoClone(id));
+                        }
+                    }
+                }
+                return matches;
+            }
+        }.run(dataSource());
+    }
+
+    private static boolean startsWith(byte[] id, byte[] prefix) {
+        if (id.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (id[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected InputStream getRawInternal(final ObjectId id, final boolean failIfNotFound)
+            throws IllegalArgumentException {
+        final byte[] data = new DbOp<byte[]>() {
+            @Override
+            protected byte[] doRun(Connection cx) throws SQLException {
+                String sql = format("SELECT object FROM %s WHERE id = ?", OBJECTS);
+
+                try (PreparedStatement ps = cx.prepareStatement(log(sql, LOG, id))) {
+                    ps.setBytes(1, id.getRawValue());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        return rs.next() ? rs.getBytes(1) : null;
+                    }
+                }
+            }
+        }.run(dataSource());
+
+        if (data == null) {
+            if (failIfNotFound) {
+                throw new IllegalArgumentException("Object does not exist: " + id);
+            }
+            return null;
+        }
+        return new ByteArrayInputStream(data);
+    }
+
+    @Override
+    protected boolean putInternal(final ObjectId id, final byte[] rawData) {
+        return new DbOp<Boolean>() {
+            @Override
+            protected Boolean doRun(Connection cx) throws SQLException {
+                String sql = format("INSERT OR IGNORE INTO %s (id,object) VALUES (?,?)", OBJECTS);
+
+                try (PreparedStatement ps = cx.prepareStatement(log(sql, LOG, id))) {
+                    ps.setBytes(1, id.getRawValue());
+                    ps.setBytes(2, rawData);
+                    return Boolean.valueOf(ps.executeUpdate() > 0);
+                }
+            }
+        }.run(writableDataSource()).booleanValue();
+    }
+
+    /**
+     * Inserts the objects with a batched prepared statement, in one transaction per
+     * {@value #PARTITION_SIZE} objects.
+     */
+    @Override
+    public void putAll(final Iterator<? extends RevObject> objects, final BulkOpListener listener) {
+        checkNotNull(objects, "objects is null");
+        checkNotNull(listener, "listener is null");
+        final DataSource ds = writableDataSource();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final List<ObjectId> ids = new ArrayList<>(PARTITION_SIZE);
+        final List<byte[]> data = new ArrayList<>(PARTITION_SIZE);
+        while (objects.hasNext()) {
+            RevObject object = objects.next();
+            out.reset();
+            writeObject(object, out);
+            ids.add(object.getId());
+            data.add(out.toByteArray());
+            if (ids.size() == PARTITION_SIZE || !objects.hasNext()) {
+                insert(ids, data, listener, ds);
+                ids.clear();
+                data.clear();
+            }
+        }
+    }
+
+    private void insert(final List<ObjectId> ids, final List<byte[]> data,
+            final BulkOpListener listener, final DataSource ds) {
+        new DbOp<Void>() {
+            @Override
+            protected boolean isAutoCommit() {
+                return false;
+            }
+
+            @Override
+            protected Void doRun(Connection cx) throws SQLException {
+                // use INSERT OR IGNORE to deal with duplicates cleanly
+                String sql = format("INSERT OR IGNORE INTO %s (id,object) VALUES (?,?)", OBJECTS);
+                final int[] inserted;
+                try (PreparedStatement stmt = cx.prepareStatement(log(sql, LOG))) {
+                    for (int i = 0; i < ids.size(); i++) {
+                        stmt.setBytes(1, ids.get(i).getRawValue());
+                        stmt.setBytes(2, data.get(i));
+                        stmt.addBatch();
+                    }
+                    inserted = stmt.executeBatch();
+                    cx.commit();
+                } catch (SQLException e) {
+                    cx.rollback();
+                    throw e;
+                }
+                for (int i = 0; i < inserted.length; i++) {
+                    if (inserted[i] > 0) {
+                        listener.inserted(ids.get(i), data.get(i).length);
+                    } else {
+                        listener.found(ids.get(i), null);
+                    }
+                }
+                return null;
+            }
+        }.run(ds);
+    }
+
+    @Override
+    public boolean delete(final ObjectId id) {
+        checkNotNull(id, "argument id is null");
+        return new DbOp<Boolean>() {
+            @Override
+            protected Boolean doRun(Connection cx) throws SQLException {
+                String sql = format("DELETE FROM %s WHERE id = ?", OBJECTS);
+
+                try (PreparedStatement ps = cx.prepareStatement(log(sql, LOG, id))) {
+                    ps.setBytes(1, id.getRawValue());
+                    return Boolean.valueOf(ps.executeUpdate() > 0);
+                }
+            }
+        }.run(writableDataSource()).booleanValue();
+    }
+
+    /**
+     * Deletes the objects with a batched prepared statement, in one transaction per
+     * {@value #PARTITION_SIZE} ids.
+     */
+    @Override
+    public long deleteAll(final Iterator<ObjectId> ids, final BulkOpListener listener) {
+        checkNotNull(ids, "argument ids is null");
+        checkNotNull(listener, "argument listener is null");
+        final DataSource ds = writableDataSource();
+
+        long count = 0;
+        for (Iterator<List<ObjectId>> it = Iterators.partition(ids, PARTITION_SIZE); it
+                .hasNext();) {
+            final List<ObjectId> partition = it.next();
+            count += new DbOp<Long>() {
+                @Override
+                protected boolean isAutoCommit() {
+                    return false;
+                }
+
+                @Override
+                protected Long doRun(Connection cx) throws SQLException {
+                    String sql = format("DELETE FROM %s WHERE id = ?", OBJECTS);
+                    final int[] deleted;
+                    try (PreparedStatement stmt = cx.prepareStatement(log(sql, LOG))) {
+                        for (ObjectId id : partition) {
+                            stmt.setBytes(1, id.getRawValue());
+                            stmt.addBatch();
+                        }
+                        deleted = stmt.executeBatch();
+                        cx.commit();
+                    } catch (SQLException e) {
+                        cx.rollback();
+                        throw e;
+                    }
+                    long count = 0;
+                    for (int i = 0; i < deleted.length; i++) {
+                        if (deleted[i] > 0) {
+                            count++;
+                            listener.deleted(partition.get(i));
+                        } else {
+                            listener.notFound(partition.get(i));
+                        }
+                    }
+                    return Long.valueOf(count);
+                }
+            }.run(ds).longValue();
+        }
+        return count;
+    }
+
+    @Override
+    public Iterator<RevObject> getAll(final Iterable<ObjectId> ids, final BulkOpListener listener) {
+        return getAll(ids, listener, RevObject.class);
+    }
+
+    /**
+     * Queries the objects {@value #GET_ALL_BATCH_SIZE} at a time with a single
+     * {@code SELECT ... WHERE id IN (...)}, which SQLite answers walking the primary key in
+     * order, so each batch is returned sorted by id.
+     */
+    @Override
+    public <T extends RevObject> Iterator<T> getAll(final Iterable<ObjectId> ids,
+            final BulkOpListener listener, final Class<T> type) {
+        checkNotNull(ids, "ids is null");
+        checkNotNull(listener, "listener is null");
+        checkNotNull(type, "type is null");
+        final DataSource ds = dataSource();
+
+        Iterator<List<ObjectId>> batches = Iterators.partition(ids.iterator(), GET_ALL_BATCH_SIZE);
+        return Iterators.concat(Iterators.transform(batches,
+                new Function<List<ObjectId>, Iterator<T>>() {
+                    @Override
+                    public Iterator<T> apply(List<ObjectId> batch) {
+                        return query(batch, listener, type, ds).iterator();
+                    }
+                }));
+    }
+
+    private <T extends RevObject> List<T> query(final List<ObjectId> batch,
+            final BulkOpListener listener, final Class<T> type, final DataSource ds) {
+        return new DbOp<List<T>>() {
+            @Override
+            protected List<T> doRun(Connection cx) throws SQLException, IOException {
+                final Set<ObjectId> missing = new HashSet<>(batch);
+                String sql = format("SELECT id, object FROM %s WHERE id IN (%s) ORDER BY id",
+                        OBJECTS, Joiner.on(',').join(Collections.nCopies(missing.size(), "?")));
+
+                List<T> objects = new ArrayList<>(missing.size());
+                try (PreparedStatement ps = cx.prepareStatement(log(sql, LOG, missing))) {
+                    int index = 1;
+                    for (ObjectId id : missing) {
+                        ps.setBytes(index++, id.getRawValue());
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            final ObjectId id = ObjectId.createNoClone(rs.getBytes(1));
+                            final byte[] data = rs.getBytes(2);
+                            missing.remove(id);
+                            RevObject object = serializer.read(id, new LZFInputStream(
+                                    new ByteArrayInputStream(data)));
+                            if (type.isInstance(object)) {
+                                listener.found(id, data.length);
+                                objects.add(type.cast(object));
+                            } else {
+                                listener.notFound(id);
+                            }
+                        }
+                    }
+                }
+                for (ObjectId id : missing) {
+                    listener.notFound(id);
+                }
+                return objects;
+            }
+        }.run(ds);
+    }
+
+    /**
+     * Lists the ids in key order, {@value #LIST_BATCH_SIZE} at a time, each batch starting after
+     * the last id of the previous one.
+     */
+    @Override
+    public Iterator<ObjectId> objectIds() {
+        final DataSource ds = dataSource();
+        return Iterators.concat(new AbstractIterator<Iterator<ObjectId>>() {
+
+            private byte[] lastId;
+
+            @Override
+            protected Iterator<ObjectId> computeNext() {
+                List<ObjectId> batch = list(lastId, ds);
+                if (batch.isEmpty()) {
+                    return endOfData();
+                }
+                lastId = batch.get(batch.size() - 1).getRawValue();
+                return batch.iterator();
+            }
+        });
+    }
+
+    private List<ObjectId> list(final @Nullable byte[] afterId, final DataSource ds) {
+        return new DbOp<List<ObjectId>>() {
+            @Override
+            protected List<ObjectId> doRun(Connection cx) throws SQLException {
+                String sql = afterId == null ? format("SELECT id FROM %s ORDER BY id LIMIT ?",
+                        OBJECTS) : format("SELECT id FROM %s WHERE id > ? ORDER BY id LIMIT ?",
+                        OBJECTS);
+                List<ObjectId> ids = new ArrayList<>(LIST_BATCH_SIZE);
+                try (PreparedStatement ps = cx.prepareStatement(log(sql, LOG, afterId,
+                        LIST_BATCH_SIZE))) {
+                    int index = 1;
+                    if (afterId != null) {
+                        ps.setBytes(index++, afterId);
+                    }
+                    ps.setInt(index, LIST_BATCH_SIZE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(ObjectId.createNoClone(rs.getBytes(1)));
+                        }
+                    }
+                }
+                return ids;
+            }
+        }.run(ds);
+    }
+
+    private DataSource dataSource() {
+        return pool().readers();
+    }
+
+    private DataSource writableDataSource() {
+        final PooledDataSource ds = pool();
+        checkState(!readOnly, "%s is read only.", dbName);
+        return ds;
+    }
+
+    private PooledDataSource pool() {
+        final PooledDataSource ds = this.dataSource;
+        checkState(ds != null, "Database is closed");
+        return ds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[db: %s]", getClass().getSimpleName(), dbName);
+    }
+}
@@ -0,0 +1,197 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.sqlite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+
+public class PooledDataSourceTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private PooledDataSource ds;
+
+    private ExecutorService executor;
+
+    @Before
+    public void before() throws Exception {
+        File db = new File(tmp.getRoot(), "test.db");
+        ds = new PooledDataSource(db, false, 2, 16, 1024, SynchronousMode.OFF);
+        try (Connection cx = ds.getConnection(); Statement st = cx.createStatement()) {
+            st.execute("CREATE TABLE test (id INTEGER PRIMARY KEY, value VARCHAR)");
+            st.execute("INSERT INTO test VALUES (1, 'one')");
+        }
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+        ds.close();
+    }
+
+    @Test
+    public void testWalMode() throws Exception {
+        assertEquals("wal", query(ds, "PRAGMA journal_mode"));
+        assertEquals("wal", query(ds.readers(), "PRAGMA journal_mode"));
+        assertEquals(String.valueOf(16 * 1024 * 1024), query(ds.readers(), "PRAGMA mmap_size"));
+        assertEquals("-1024", query(ds.readers(), "PRAGMA cache_size"));
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws Exception {
+        Connection writer1 = ds.getConnection().unwrap(Connection.class);
+        Connection writer2 = ds.getConnection().unwrap(Connection.class);
+        assertSame(writer1, writer2);
+
+        Connection reader = ds.readers().getConnection();
+        Connection target = reader.unwrap(Connection.class);
+        reader.close();
+        assertTrue(reader.isClosed());
+        assertFalse(target.isClosed());
+        reader = ds.readers().getConnection();
+        assertSame(target, reader.unwrap(Connection.class));
+        reader.close();
+    }
+
+    @Test
+    public void testReadersDontWaitForWriter() throws Exception {
+        try (Connection writer = ds.getConnection()) {
+            writer.setAutoCommit(false);
+            try (Statement st = writer.createStatement()) {
+                st.execute("INSERT INTO test VALUES (2, 'two')");
+            }
+            // other threads can read the last committed state while the transaction is open
+            Future<String> read = executor.submit(() -> query(ds.readers(),
+                    "SELECT count(*) FROM test"));
+            assertEquals("1", read.get(5, TimeUnit.SECONDS));
+
+            // but have to wait for the writer to be returned
+            Future<String> write = executor.submit(() -> query(ds, "SELECT count(*) FROM test"));
+            try {
+                write.get(200, TimeUnit.MILLISECONDS);
+                fail("Expected timeout");
+            } catch (TimeoutException expected) {
+                // ok
+            }
+            writer.commit();
+            writer.setAutoCommit(true);
+            writer.close();
+            assertEquals("2", write.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testPendingTransactionRolledBackOnClose() throws Exception {
+        Connection writer = ds.getConnection();
+        writer.setAutoCommit(false);
+        try (Statement st = writer.createStatement()) {
+            st.execute("INSERT INTO test VALUES (2, 'two')");
+        }
+        writer.close();
+        assertEquals("1", query(ds, "SELECT count(*) FROM test"));
+        assertEquals("1", query(ds.readers(), "SELECT count(*) FROM test"));
+    }
+
+    @Test
+    public void testNestedConnectionKeepsOuterTransaction() throws Exception {
+        try (Connection outer = ds.getConnection()) {
+            outer.setAutoCommit(false);
+            try (Statement st = outer.createStatement()) {
+                st.execute("INSERT INTO test VALUES (2, 'two')");
+            }
+            // e.g. a nested DbOp run on the same thread
+            assertEquals("2", query(ds, "SELECT count(*) FROM test"));
+            assertFalse(outer.getAutoCommit());
+
+            // the writer is still held by this thread
+            Future<String> write = executor.submit(() -> query(ds, "SELECT count(*) FROM test"));
+            try {
+                write.get(200, TimeUnit.MILLISECONDS);
+                fail("Expected timeout");
+            } catch (TimeoutException expected) {
+                // ok
+            }
+            outer.commit();
+            outer.setAutoCommit(true);
+            outer.close();
+            assertEquals("2", write.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testCloseFromOtherThread() throws Exception {
+        final Connection writer = ds.getConnection();
+        executor.submit(() -> {
+            writer.close();
+            return null;
+        }).get(5, TimeUnit.SECONDS);
+        assertTrue(writer.isClosed());
+
+        Future<String> write = executor.submit(() -> query(ds, "SELECT count(*) FROM test"));
+        assertEquals("1", write.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReadersCantWrite() throws Exception {
+        try (Connection cx = ds.readers().getConnection(); Statement st = cx.createStatement()) {
+            st.execute("INSERT INTO test VALUES (2, 'two')");
+            fail("Expected SQLException");
+        } catch (SQLException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        Connection reader = ds.readers().getConnection();
+        Connection target = reader.unwrap(Connection.class);
+        ds.close();
+        reader.close();
+        assertTrue(target.isClosed());
+        try {
+            ds.getConnection();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("Database is closed"));
+        }
+    }
+
+    private static String query(javax.sql.DataSource ds, String sql) throws SQLException {
+        try (Connection cx = ds.getConnection(); Statement st = cx.createStatement()) {
+            try (ResultSet rs = st.executeQuery(sql)) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.storage.sqlite;
+
+import org.locationtech.geogig.api.Platform;
+import org.locationtech.geogig.repository.Hints;
+import org.locationtech.geogig.storage.ConfigDatabase;
+import org.locationtech.geogig.storage.ObjectDatabase;
+import org.locationtech.geogig.storage.ObjectStoreConformanceTest;
+import org.locationtech.geogig.storage.fs.IniFileConfigDatabase;
+
+public class XerialObjectStoreConformanceTest extends ObjectStoreConformanceTest {
+
+    @Override
+    protected ObjectDatabase createOpen(Platform platform, Hints hints) {
+        ConfigDatabase configDB = new IniFileConfigDatabase(platform);
+        XerialObjectDatabase_v0_2 db = new XerialObjectDatabase_v0_2(configDB, platform, hints);
+        db.open();
+        return db;
+    }
+}
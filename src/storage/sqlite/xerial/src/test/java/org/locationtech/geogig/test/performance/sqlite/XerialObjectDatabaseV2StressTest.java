@@ -0,0 +1,25 @@
+/* Copyright (c) 2016 Boundless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ * Gabriel Roldan (Boundless) - initial implementation
+ */
+package org.locationtech.geogig.test.performance.sqlite;
+
+import org.locationtech.geogig.api.Platform;
+import org.locationtech.geogig.storage.ConfigDatabase;
+import org.locationtech.geogig.storage.ObjectDatabase;
+import org.locationtech.geogig.storage.ObjectDatabaseStressTest;
+import org.locationtech.geogig.storage.sqlite.XerialObjectDatabase_v0_2;
+
+public class XerialObjectDatabaseV2StressTest extends ObjectDatabaseStressTest {
+
+    @Override
+    protected ObjectDatabase createDb(Platform platform, ConfigDatabase config) {
+        return new XerialObjectDatabase_v0_2(config, platform, "objects", false);
+    }
+
+}
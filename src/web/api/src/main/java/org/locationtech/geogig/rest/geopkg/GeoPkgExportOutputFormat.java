@@ -22,6 +22,7 @@ import org.geotools.geopkg.GeoPackage;
 import org.geotools.geopkg.GeoPkgDataStoreFactory;
 import org.locationtech.geogig.api.AbstractGeoGigOp;
 import org.locationtech.geogig.geotools.geopkg.GeopkgDataStoreExportOp;
+import org.locationtech.geogig.geotools.geopkg.GeopkgFunctions;
 import org.locationtech.geogig.geotools.plumbing.DataStoreExportOp;
 import org.locationtech.geogig.rest.AsyncCommandRepresentation;
 import org.locationtech.geogig.rest.AsyncContext.AsyncCommand;
@@ -118,6 +119,7 @@ public class GeoPkgExportOutputFormat extends ExportWebOp.OutputFormat {
                 if (null == dataStore) {
                     throw new RuntimeException("Unable to create GeoPkgDataStore");
                 }
+                GeopkgFunctions.register(dataStore);
                 this.dataStore = dataStore;
 
             }
@@ -17,6 +17,7 @@ import java.util.HashMap;
 import org.geotools.data.DataStore;
 import org.geotools.geopkg.GeoPkgDataStoreFactory;
 import org.geotools.jdbc.JDBCDataStore;
+import org.locationtech.geogig.geotools.geopkg.GeopkgFunctions;
 import org.locationtech.geogig.geotools.plumbing.DataStoreImportOp.DataStoreSupplier;
 import org.locationtech.geogig.rest.geotools.DataStoreImportContextService;
 import org.locationtech.geogig.rest.repository.UploadCommandResource;
@@ -93,6 +94,7 @@ public class GeoPkgImportContext implements DataStoreImportContextService {
                 throw new CommandSpecException(
                     "Unable to create GeoPkgDataStore from uploaded file.");
             }
+            GeopkgFunctions.register(dataStore);
         }
 
         @Override
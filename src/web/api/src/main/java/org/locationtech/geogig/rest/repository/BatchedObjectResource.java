@@ -86,6 +86,7 @@ public class BatchedObjectResource extends Finder {
             LOGGER.info("Serving request to send objects based on message {}", messageJson);
             final List<ObjectId> want = new ArrayList<ObjectId>();
             final List<ObjectId> have = new ArrayList<ObjectId>();
+            boolean deltas = false;
 
             if (messageJson.isJsonObject()) {
                 final JsonObject message = messageJson.getAsJsonObject();
@@ -111,6 +112,9 @@ public class BatchedObjectResource extends Finder {
                         have.add(ObjectId.valueOf(e.getAsJsonPrimitive().getAsString()));
                     }
                 }
+                if (message.has("deltas") && message.get("deltas").isJsonPrimitive()) {
+                    deltas = message.get("deltas").getAsBoolean();
+                }
             }
 
             Request request = getRequest();
@@ -119,7 +123,8 @@ public class BatchedObjectResource extends Finder {
             final Deduplicator deduplicator = ggit.command(CreateDeduplicator.class).call();
 
             BinaryPackedObjects packer = new BinaryPackedObjects(repository.objectDatabase());
-            Representation rep = new RevObjectBinaryRepresentation(packer, want, have, deduplicator);
+            Representation rep = new RevObjectBinaryRepresentation(packer, want, have, deltas,
+                    deduplicator);
             Response response = getResponse();
             response.setEntity(rep);
         }
@@ -132,18 +137,22 @@ public class BatchedObjectResource extends Finder {
 
         private final List<ObjectId> have;
 
+        private final boolean deltas;
+
         private Deduplicator deduplicator;
 
         public RevObjectBinaryRepresentation( //
                 BinaryPackedObjects packer, //
                 List<ObjectId> want, //
                 List<ObjectId> have, //
+                boolean deltas, //
                 Deduplicator deduplicator) //
         {
             super(MediaType.APPLICATION_OCTET_STREAM);
             this.packer = packer;
             this.want = want;
             this.have = have;
+            this.deltas = deltas;
             this.deduplicator = deduplicator;
         }
 
@@ -153,7 +162,13 @@ public class BatchedObjectResource extends Finder {
             OutputStream output = counting;
             try {
                 ObjectFunnel funnel;
-                funnel = ObjectFunnels.newFunnel(output, DataStreamSerializationFactoryV1.INSTANCE);
+                if (deltas) {
+                    funnel = ObjectFunnels.newDeltaFunnel(output,
+                            DataStreamSerializationFactoryV1.INSTANCE);
+                } else {
+                    funnel = ObjectFunnels.newFunnel(output,
+                            DataStreamSerializationFactoryV1.INSTANCE);
+                }
                 packer.write(funnel, want, have, false, deduplicator);
                 counting.flush();
                 funnel.close();